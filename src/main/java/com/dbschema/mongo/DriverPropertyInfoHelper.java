@@ -15,6 +15,31 @@ public class DriverPropertyInfoHelper {
   public static final int FETCH_DOCUMENTS_FOR_METAINFO_DEFAULT = 10;
   public static final String MAX_POOL_SIZE = "max_connection_pool_size";
   public static final int MAX_POOL_SIZE_DEFAULT = 3;
+  public static final String ADAPTIVE_POOL = "adaptive_connection_pool";
+  public static final boolean ADAPTIVE_POOL_DEFAULT = false;
+  public static final int ADAPTIVE_POOL_MAX_SIZE_DEFAULT = 20;
+  public static final String MIN_POOL_SIZE = "min_connection_pool_size";
+  public static final int MIN_POOL_SIZE_DEFAULT = 1;
+  public static final String METADATA_POOL_SIZE = "metadata_connection_pool_size";
+  public static final int METADATA_POOL_SIZE_DEFAULT = 0;
+  public static final String METADATA_READ_PREFERENCE = "metadata_read_preference";
+  public static final String METADATA_TIMEOUT = "metadata_timeout_ms";
+  public static final int METADATA_TIMEOUT_DEFAULT = 0;
+  public static final String DNS_CACHE_TTL = "dns_cache_ttl_seconds";
+  public static final int DNS_CACHE_TTL_DEFAULT = 0;
+  public static final String SHARE_CLUSTER_TOPOLOGY = "share_cluster_topology";
+  public static final boolean SHARE_CLUSTER_TOPOLOGY_DEFAULT = false;
+  public static final String RESUMABLE_READ_RETRIES = "resumable_read_retries";
+  public static final int RESUMABLE_READ_RETRIES_DEFAULT = 0;
+  public static final String CURSOR_KEEP_ALIVE = "cursor_keep_alive";
+  public static final boolean CURSOR_KEEP_ALIVE_DEFAULT = false;
+  public static final String ADAPTIVE_BATCH_SIZE = "adaptive_batch_size";
+  public static final boolean ADAPTIVE_BATCH_SIZE_DEFAULT = false;
+  public static final String WARM_UP_STEPS = "warm_up_steps";
+  public static final String WARM_UP_STEPS_DEFAULT = "";
+  public static final String SCHEMA_CACHE_TTL = "schema_cache_ttl_seconds";
+  public static final int SCHEMA_CACHE_TTL_DEFAULT = 0;
+  public static final int SCHEMA_CACHE_TTL_WARM_UP_DEFAULT = 300;
   private static final String GET_MAX_SIZE_DOCS = "https://mongodb.github.io/mongo-java-driver/3.6/javadoc/com/mongodb/connection/ConnectionPoolSettings.html#getMaxSize--";
   public static final String ENCODE_CREDENTIALS = "auto_encode_username_and_password";
   public static final boolean ENCODE_CREDENTIALS_DEFAULT = true;
@@ -23,6 +48,40 @@ public class DriverPropertyInfoHelper {
   public static final boolean ALLOW_INVALID_CERTIFICATES_DEFAULT = false;
   public static final String ALLOW_INVALID_HOSTNAMES = "tlsAllowInvalidHostnames";
   public static final boolean ALLOW_INVALID_HOSTNAMES_DEFAULT = false;
+  public static final String SLOW_STATEMENT_THRESHOLD = "slow_statement_threshold_ms";
+  public static final int SLOW_STATEMENT_THRESHOLD_DEFAULT = -1;
+  public static final String SLOW_STATEMENT_EXPLAIN = "slow_statement_explain";
+  public static final boolean SLOW_STATEMENT_EXPLAIN_DEFAULT = false;
+  public static final String SLOW_STATEMENT_LOG_CAPACITY = "slow_statement_log_capacity";
+  public static final int SLOW_STATEMENT_LOG_CAPACITY_DEFAULT = 1000;
+  public static final String QUERY_CACHE_SIZE = "query_cache_size_mb";
+  public static final int QUERY_CACHE_SIZE_DEFAULT = 0;
+  public static final String QUERY_CACHE_TTL = "query_cache_ttl_seconds";
+  public static final int QUERY_CACHE_TTL_DEFAULT = 30;
+  public static final String SHELL_POOL_SIZE = "shell_pool_size";
+  public static final int SHELL_POOL_SIZE_DEFAULT = 0;
+  public static final String READ_ONLY = "read_only";
+  public static final boolean READ_ONLY_DEFAULT = false;
+  public static final String READ_ONLY_READ_PREFERENCE = "read_only_read_preference";
+  public static final String READ_ONLY_READ_PREFERENCE_DEFAULT = "secondaryPreferred";
+  public static final String[] READ_PREFERENCE_CHOICES = new String[]{"primary", "primaryPreferred", "secondary", "secondaryPreferred", "nearest"};
+  public static final String READ_PREFERENCE_TAGS = "read_preference_tags";
+  public static final String MAX_STALENESS_SECONDS = "max_staleness_seconds";
+  public static final int MAX_STALENESS_SECONDS_DEFAULT = -1;
+  public static final String HEDGED_READS = "hedged_reads";
+  public static final boolean HEDGED_READS_DEFAULT = false;
+  public static final String HEDGED_READS_PERCENTILE = "hedged_reads_percentile";
+  public static final int HEDGED_READS_PERCENTILE_DEFAULT = 95;
+  public static final String HEDGED_READS_BUDGET = "hedged_reads_budget_percent";
+  public static final int HEDGED_READS_BUDGET_DEFAULT = 10;
+  public static final String MAX_CONCURRENT_STATEMENTS = "max_concurrent_statements";
+  public static final int MAX_CONCURRENT_STATEMENTS_DEFAULT = 0;
+  public static final String CIRCUIT_BREAKER_FAILURE_RATE = "circuit_breaker_failure_rate";
+  public static final int CIRCUIT_BREAKER_FAILURE_RATE_DEFAULT = 0;
+  public static final String CIRCUIT_BREAKER_SLOW_STATEMENT = "circuit_breaker_slow_statement_ms";
+  public static final int CIRCUIT_BREAKER_SLOW_STATEMENT_DEFAULT = -1;
+  public static final String CIRCUIT_BREAKER_PROBE_INTERVAL = "circuit_breaker_probe_interval_ms";
+  public static final int CIRCUIT_BREAKER_PROBE_INTERVAL_DEFAULT = 5000;
 
 
   public DriverPropertyInfo[] getPropertyInfo() {
@@ -47,9 +106,87 @@ public class DriverPropertyInfoHelper {
         "to return meta information from DatabaseMetaData.getColumns method.", null);
 
     addPropInfo(propInfos, MAX_POOL_SIZE, Integer.toString(MAX_POOL_SIZE_DEFAULT), "MongoDB connections pool size per one connection from IDE. See " + GET_MAX_SIZE_DOCS, null);
+    addPropInfo(propInfos, ADAPTIVE_POOL, Boolean.toString(ADAPTIVE_POOL_DEFAULT), "Adjust the number of statements that use the pool " +
+        "at the same time between " + MIN_POOL_SIZE + " and " + MAX_POOL_SIZE + " (" + ADAPTIVE_POOL_MAX_SIZE_DEFAULT + " if not set). " +
+        "The size is shared by connections to the same cluster, grows while statements wait for connections " +
+        "and shrinks when server latency or errors rise. Decisions are written to the standard error stream.", new String[]{"true", "false"});
+    addPropInfo(propInfos, MIN_POOL_SIZE, Integer.toString(MIN_POOL_SIZE_DEFAULT), "Lower bound of the adaptive pool size, " +
+        "also the number of connections opened by 'pool' warm-up step.", null);
+    addPropInfo(propInfos, METADATA_POOL_SIZE, Integer.toString(METADATA_POOL_SIZE_DEFAULT), "Schema discovery uses its own client " +
+        "with this many connections and the same number of low priority threads, so it does not take connections from statements. " +
+        "0 means schema discovery uses the client of statements and samples one collection at a time.", null);
+    addPropInfo(propInfos, METADATA_READ_PREFERENCE, null, "Read preference of schema discovery on its own client " +
+        "(see " + METADATA_POOL_SIZE + "). By default the read preference of statements.", READ_PREFERENCE_CHOICES);
+    addPropInfo(propInfos, METADATA_TIMEOUT, Integer.toString(METADATA_TIMEOUT_DEFAULT), "Socket read timeout of schema discovery " +
+        "on its own client (see " + METADATA_POOL_SIZE + ") in milliseconds. 0 keeps the socket timeout of statements.", null);
+    addPropInfo(propInfos, DNS_CACHE_TTL, Integer.toString(DNS_CACHE_TTL_DEFAULT), "How long SRV and TXT records of mongodb+srv:// " +
+        "urls are reused by new connections. Expired records are still used while the DNS server does not answer. 0 turns the cache off.", null);
+    addPropInfo(propInfos, SHARE_CLUSTER_TOPOLOGY, Boolean.toString(SHARE_CLUSTER_TOPOLOGY_DEFAULT), "New connections to a replica set " +
+        "start with the members seen by earlier connections with the same url and user, instead of the seed list. The replica set " +
+        "name is still taken from the url only.",
+        new String[]{"true", "false"});
+    addPropInfo(propInfos, WARM_UP_STEPS, WARM_UP_STEPS_DEFAULT, "Comma separated work done in background right after connecting: " +
+        "'pool' opens " + MIN_POOL_SIZE + " connections, 'server_info' fetches server version and capabilities, 'shell' creates the JS context, " +
+        "'schema' samples collections of the default database. 'all' runs every step.", null);
+    addPropInfo(propInfos, SCHEMA_CACHE_TTL, Integer.toString(SCHEMA_CACHE_TTL_DEFAULT), "How long sampled collection schemas are reused " +
+        "by metadata queries, " + SCHEMA_CACHE_TTL_WARM_UP_DEFAULT + " if not set and " + WARM_UP_STEPS + " includes 'schema'. 0 turns the cache off.", null);
 
     addPropInfo(propInfos, APPLICATION_NAME, null, "Sets the logical name of the application.", null);
 
+    addPropInfo(propInfos, SLOW_STATEMENT_THRESHOLD, Integer.toString(SLOW_STATEMENT_THRESHOLD_DEFAULT), "Statements that take longer than this number " +
+        "of milliseconds (execution plus fetching of documents) are written to com.dbschema.mongo.slow logger. Negative value turns the log off.", null);
+    addPropInfo(propInfos, SLOW_STATEMENT_EXPLAIN, Boolean.toString(SLOW_STATEMENT_EXPLAIN_DEFAULT), "Attach output of explain(\"queryPlanner\") " +
+        "to slow find and aggregate statements. Explain is run in background.", new String[]{"true", "false"});
+    addPropInfo(propInfos, SLOW_STATEMENT_LOG_CAPACITY, Integer.toString(SLOW_STATEMENT_LOG_CAPACITY_DEFAULT), "Maximum number of slow statements " +
+        "waiting to be logged. Statements that do not fit are dropped.", null);
+
+    addPropInfo(propInfos, QUERY_CACHE_SIZE, Integer.toString(QUERY_CACHE_SIZE_DEFAULT), "Size in megabytes of the cache for results " +
+        "of read-only find and aggregate statements. The cache is shared by connections with the same url and user. 0 turns the cache off.", null);
+    addPropInfo(propInfos, QUERY_CACHE_TTL, Integer.toString(QUERY_CACHE_TTL_DEFAULT), "How long cached results are served. " +
+        "Writes executed through the driver invalidate cached results of the collection immediately.", null);
+
+    addPropInfo(propInfos, SHELL_POOL_SIZE, Integer.toString(SHELL_POOL_SIZE_DEFAULT), "Number of shell contexts shared by connections " +
+        "with the same url and user. Statements wait for a free shell, JS variables are not kept between statements. " +
+        "0 gives every connection its own shell.", null);
+
+    addPropInfo(propInfos, READ_ONLY, Boolean.toString(READ_ONLY_DEFAULT), "Open connections in read-only mode, " +
+        "same as Connection.setReadOnly(true).", new String[]{"true", "false"});
+    addPropInfo(propInfos, READ_ONLY_READ_PREFERENCE, READ_ONLY_READ_PREFERENCE_DEFAULT, "Read preference of read-only connections. " +
+        "Applies to statements and metadata queries, 'nearest' picks members within localThresholdMS of the fastest one.", READ_PREFERENCE_CHOICES);
+    addPropInfo(propInfos, READ_PREFERENCE_TAGS, null, "Tag sets for the read preference of read-only connections, " +
+        "e.g. dc:east,use:reporting;dc:west. Tag sets separated with ';' are tried in order.", null);
+    addPropInfo(propInfos, MAX_STALENESS_SECONDS, Integer.toString(MAX_STALENESS_SECONDS_DEFAULT), "Secondaries that lag behind " +
+        "the primary more than this are not used by read-only connections. Negative value means no limit, minimum is 90.", null);
+
+    addPropInfo(propInfos, RESUMABLE_READ_RETRIES, Integer.toString(RESUMABLE_READ_RETRIES_DEFAULT), "Find statements that are " +
+        "sorted by _id, or have neither filter nor sort and are then sorted by _id, continue from the last returned _id after " +
+        "a network error or failover. This many failures in a row fail the statement. Also applies to exports. 0 turns it off.", null);
+    addPropInfo(propInfos, CURSOR_KEEP_ALIVE, Boolean.toString(CURSOR_KEEP_ALIVE_DEFAULT), "Find and aggregate statements with JSON " +
+        "arguments are executed in their own sessions that are refreshed while the result set is open, so cursors of slow consumers " +
+        "do not hit the 10 minute idle timeout. Cursors are closed with the result set or the connection, cursors that are not " +
+        "read for an hour are no longer refreshed and expire on the server.", new String[]{"true", "false"});
+    addPropInfo(propInfos, ADAPTIVE_BATCH_SIZE, Boolean.toString(ADAPTIVE_BATCH_SIZE_DEFAULT), "Find and aggregate statements " +
+        "with JSON arguments and exports that read with the primary read preference start with small batches, then the batch size of " +
+        "every getMore grows or shrinks from document sizes, round trip times and how fast rows are read. Not used with several mongos " +
+        "routers. Statements with an explicit fetch size use it instead, other statements use the server default batch size.", new String[]{"true", "false"});
+    addPropInfo(propInfos, HEDGED_READS, Boolean.toString(HEDGED_READS_DEFAULT), "Send a second copy of slow find and aggregate " +
+        "statements to another member and use the first answer: the primary for secondary reads, a secondary for primaryPreferred " +
+        "reads. Reads with nearest read preference are not hedged.", new String[]{"true", "false"});
+    addPropInfo(propInfos, HEDGED_READS_PERCENTILE, Integer.toString(HEDGED_READS_PERCENTILE_DEFAULT), "Hedge is sent when the first batch " +
+        "takes longer than this percentile of recent read latencies.", null);
+    addPropInfo(propInfos, HEDGED_READS_BUDGET, Integer.toString(HEDGED_READS_BUDGET_DEFAULT), "Maximum number of hedges per 100 reads.", null);
+
+    addPropInfo(propInfos, MAX_CONCURRENT_STATEMENTS, Integer.toString(MAX_CONCURRENT_STATEMENTS_DEFAULT), "Upper bound of the adaptive " +
+        "limit of statements executed at the same time by connections with the same url and user. The limit shrinks when statements " +
+        "fail or are slow and grows back while they succeed. Statements above the limit fail immediately. 0 turns the limit off.", null);
+    addPropInfo(propInfos, CIRCUIT_BREAKER_FAILURE_RATE, Integer.toString(CIRCUIT_BREAKER_FAILURE_RATE_DEFAULT), "Percent of the last 20 " +
+        "statements that may fail with timeout, network or not-primary errors before all statements are rejected until the cluster " +
+        "answers a ping. 0 turns the circuit breaker off.", null);
+    addPropInfo(propInfos, CIRCUIT_BREAKER_SLOW_STATEMENT, Integer.toString(CIRCUIT_BREAKER_SLOW_STATEMENT_DEFAULT), "Statements that " +
+        "take longer than this number of milliseconds count as failed for the limit and the circuit breaker. Negative value turns it off.", null);
+    addPropInfo(propInfos, CIRCUIT_BREAKER_PROBE_INTERVAL, Integer.toString(CIRCUIT_BREAKER_PROBE_INTERVAL_DEFAULT), "How often the " +
+        "cluster is pinged while the circuit breaker is open.", null);
+
     return propInfos.toArray(new DriverPropertyInfo[0]);
   }
 
@@ -0,0 +1,34 @@
+package com.dbschema.mongo;
+
+import org.bson.Document;
+import org.jetbrains.annotations.NotNull;
+import org.reactivestreams.Publisher;
+
+import java.sql.ResultSet;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking execution of find and aggregate statements, obtained with
+ * {@code statement.unwrap(MongoAsyncStatement.class)}:
+ * <pre>
+ * MongoAsyncStatement async = statement.unwrap(MongoAsyncStatement.class);
+ * async.executeAsync("db.orders.find({status: 'A'})").thenAccept(resultSet -> ...);
+ * </pre>
+ * Statements are executed by the reactive streams driver, no thread waits for the server.
+ * Only {@code db.<collection>.find(...)} and {@code db.<collection>.aggregate(...)} with JSON arguments
+ * are supported, other statements complete with {@link java.sql.SQLFeatureNotSupportedException}.
+ * Fetch size of the statement is used as batch size, max rows limits the number of documents.
+ */
+public interface MongoAsyncStatement {
+  /**
+   * Documents are collected in memory, the future completes when the cursor is exhausted
+   */
+  @NotNull
+  CompletableFuture<ResultSet> executeAsync(@NotNull String query);
+
+  /**
+   * Documents are fetched from the server as the subscriber requests them, cancelling the subscription kills the cursor
+   */
+  @NotNull
+  Publisher<Document> executePublisher(@NotNull String query);
+}
@@ -1,5 +1,8 @@
 package com.dbschema.mongo;
 
+import static com.dbschema.mongo.DriverPropertyInfoHelper.ADAPTIVE_POOL;
+import static com.dbschema.mongo.DriverPropertyInfoHelper.ADAPTIVE_POOL_DEFAULT;
+import static com.dbschema.mongo.DriverPropertyInfoHelper.ADAPTIVE_POOL_MAX_SIZE_DEFAULT;
 import static com.dbschema.mongo.DriverPropertyInfoHelper.ALLOW_INVALID_CERTIFICATES;
 import static com.dbschema.mongo.DriverPropertyInfoHelper.ALLOW_INVALID_CERTIFICATES_DEFAULT;
 import static com.dbschema.mongo.DriverPropertyInfoHelper.ALLOW_INVALID_HOSTNAMES;
@@ -7,15 +10,34 @@ import static com.dbschema.mongo.DriverPropertyInfoHelper.ALLOW_INVALID_HOSTNAME
 import static com.dbschema.mongo.DriverPropertyInfoHelper.APPLICATION_NAME;
 import static com.dbschema.mongo.DriverPropertyInfoHelper.CONNECT_TIMEOUT;
 import static com.dbschema.mongo.DriverPropertyInfoHelper.CONNECT_TIMEOUT_DEFAULT;
+import static com.dbschema.mongo.DriverPropertyInfoHelper.DNS_CACHE_TTL;
+import static com.dbschema.mongo.DriverPropertyInfoHelper.DNS_CACHE_TTL_DEFAULT;
 import static com.dbschema.mongo.DriverPropertyInfoHelper.ENCODE_CREDENTIALS;
 import static com.dbschema.mongo.DriverPropertyInfoHelper.ENCODE_CREDENTIALS_DEFAULT;
 import static com.dbschema.mongo.DriverPropertyInfoHelper.MAX_POOL_SIZE;
 import static com.dbschema.mongo.DriverPropertyInfoHelper.MAX_POOL_SIZE_DEFAULT;
+import static com.dbschema.mongo.DriverPropertyInfoHelper.MAX_STALENESS_SECONDS;
+import static com.dbschema.mongo.DriverPropertyInfoHelper.MAX_STALENESS_SECONDS_DEFAULT;
+import static com.dbschema.mongo.DriverPropertyInfoHelper.METADATA_POOL_SIZE;
+import static com.dbschema.mongo.DriverPropertyInfoHelper.METADATA_POOL_SIZE_DEFAULT;
+import static com.dbschema.mongo.DriverPropertyInfoHelper.METADATA_READ_PREFERENCE;
+import static com.dbschema.mongo.DriverPropertyInfoHelper.METADATA_TIMEOUT;
+import static com.dbschema.mongo.DriverPropertyInfoHelper.METADATA_TIMEOUT_DEFAULT;
+import static com.dbschema.mongo.DriverPropertyInfoHelper.MIN_POOL_SIZE;
+import static com.dbschema.mongo.DriverPropertyInfoHelper.MIN_POOL_SIZE_DEFAULT;
+import static com.dbschema.mongo.DriverPropertyInfoHelper.READ_ONLY_READ_PREFERENCE;
+import static com.dbschema.mongo.DriverPropertyInfoHelper.READ_ONLY_READ_PREFERENCE_DEFAULT;
+import static com.dbschema.mongo.DriverPropertyInfoHelper.READ_PREFERENCE_TAGS;
 import static com.dbschema.mongo.DriverPropertyInfoHelper.SERVER_SELECTION_TIMEOUT;
 import static com.dbschema.mongo.DriverPropertyInfoHelper.SERVER_SELECTION_TIMEOUT_DEFAULT;
+import static com.dbschema.mongo.DriverPropertyInfoHelper.SHARE_CLUSTER_TOPOLOGY;
+import static com.dbschema.mongo.DriverPropertyInfoHelper.SHARE_CLUSTER_TOPOLOGY_DEFAULT;
 import static com.dbschema.mongo.DriverPropertyInfoHelper.UUID_REPRESENTATION;
 import static com.dbschema.mongo.DriverPropertyInfoHelper.UUID_REPRESENTATION_DEFAULT;
-import static com.dbschema.mongo.SSLUtil.getTrustEverybodySSLContext;
+import static com.dbschema.mongo.DriverPropertyInfoHelper.WARM_UP_STEPS;
+import static com.dbschema.mongo.SSLUtil.getCachedTrustEverybodySSLContext;
+import static com.dbschema.mongo.Util.getBooleanProperty;
+import static com.dbschema.mongo.Util.getIntProperty;
 import static com.dbschema.mongo.Util.insertCredentials;
 import static com.dbschema.mongo.Util.isNullOrEmpty;
 import static com.dbschema.mongo.Util.isTrue;
@@ -24,6 +46,8 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.security.KeyStore;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 import java.util.concurrent.TimeUnit;
 
@@ -31,18 +55,40 @@ import org.bson.UuidRepresentation;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import com.dbschema.mongo.discovery.ServerCapabilities;
+import com.dbschema.mongo.discovery.SrvCache;
+import com.dbschema.mongo.discovery.TopologySnapshots;
+import com.dbschema.mongo.pool.AdaptivePool;
 import com.mongodb.ConnectionString;
 import com.mongodb.MongoClientSettings;
 import com.mongodb.MongoCredential;
+import com.mongodb.ReadPreference;
+import com.mongodb.Tag;
+import com.mongodb.TagSet;
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoClients;
 import com.mongodb.client.MongoDatabase;
 import com.mongodb.client.MongoIterable;
+import com.mongodb.connection.ConnectionPoolSettings;
 
 
 public class MongoClientWrapper implements AutoCloseable {
-  private boolean isClosed = false;
+  private volatile boolean isClosed = false;
   private final MongoClient mongoClient;
+  private final MongoClientSettings settings;
+  /**
+   * Settings of the reactive, read-only and metadata clients: cluster listeners and listeners of the adaptive pool
+   * are not attached to them
+   */
+  private final MongoClientSettings derivedSettings;
+  private com.mongodb.reactivestreams.client.MongoClient reactiveClient;
+  private final ReadPreference readOnlyPreference;
+  private MongoClient readOnlyClient;
+  private final AdaptivePool adaptivePool;
+  private final ReadPreference metadataPreference;
+  private final int metadataPoolSize;
+  private final int metadataTimeout;
+  private MongoClient metadataClient;
   public final String databaseNameFromUrl;
 
   public MongoClientWrapper(@NotNull String uri, @NotNull Properties prop, @Nullable String username, @Nullable String password) throws SQLException {
@@ -51,6 +97,9 @@ public class MongoClientWrapper implements AutoCloseable {
       if (prop.getProperty(ENCODE_CREDENTIALS) != null) {
         automaticEncoding = Boolean.parseBoolean(prop.getProperty(ENCODE_CREDENTIALS));
       }
+      String clientKey = username + "@" + uri;
+      int dnsCacheTtl = getIntProperty(prop, DNS_CACHE_TTL, DNS_CACHE_TTL_DEFAULT);
+      if (dnsCacheTtl > 0) uri = SrvCache.getInstance().resolve(uri, dnsCacheTtl * 1000L);
       uri = insertCredentials(uri, username, password, automaticEncoding);
       ConnectionString connectionString = new ConnectionString(uri);
       databaseNameFromUrl = connectionString.getDatabase();
@@ -72,6 +121,21 @@ public class MongoClientWrapper implements AutoCloseable {
                   .applyToConnectionPoolSettings(b -> b.maxSize(maxPoolSize));
       }
 
+      AdaptivePool pool = null;
+      if (getBooleanProperty(prop, ADAPTIVE_POOL, ADAPTIVE_POOL_DEFAULT)) {
+        pool = AdaptivePool.retain(clientKey, getIntProperty(prop, MIN_POOL_SIZE, MIN_POOL_SIZE_DEFAULT),
+            prop.getProperty(MAX_POOL_SIZE) != null ? maxPoolSize : ADAPTIVE_POOL_MAX_SIZE_DEFAULT);
+        AdaptivePool sizes = pool;
+        builder.applyToConnectionPoolSettings(b -> b.maxSize(sizes.getMaxSize()).minSize(sizes.getMinSize()));
+      }
+      adaptivePool = pool;
+      boolean shareTopology = getBooleanProperty(prop, SHARE_CLUSTER_TOPOLOGY, SHARE_CLUSTER_TOPOLOGY_DEFAULT);
+      if (shareTopology) TopologySnapshots.seed(clientKey, connectionString, builder);
+      if (pool == null && WarmUp.parseSteps(prop.getProperty(WARM_UP_STEPS)).contains(WarmUp.Step.POOL)) {
+        int minPoolSize = Math.min(maxPoolSize, getIntProperty(prop, MIN_POOL_SIZE, MIN_POOL_SIZE_DEFAULT));
+        builder.applyToConnectionPoolSettings(b -> b.minSize(minPoolSize));
+      }
+
       String application = prop.getProperty(APPLICATION_NAME);
       if (!isNullOrEmpty(application)) {
         builder.applicationName(application);
@@ -96,7 +160,7 @@ public class MongoClientWrapper implements AutoCloseable {
               }
             }
             try {
-              s.context(getTrustEverybodySSLContext(keyStoreUrl, keyStoreType, keyStorePassword));
+              s.context(getCachedTrustEverybodySSLContext(keyStoreUrl, keyStoreType, keyStorePassword));
             }
             catch (SSLUtil.SSLParamsException e) {
               throw new RuntimeException(e);
@@ -116,7 +180,24 @@ public class MongoClientWrapper implements AutoCloseable {
         int timeout = Integer.parseInt(prop.getProperty(CONNECT_TIMEOUT, CONNECT_TIMEOUT_DEFAULT));
         builder.applyToSocketSettings(b -> b.connectTimeout(timeout, TimeUnit.MILLISECONDS));
       }
-      this.mongoClient = MongoClients.create(builder.build());
+      readOnlyPreference = createReadPreference(prop.getProperty(READ_ONLY_READ_PREFERENCE, READ_ONLY_READ_PREFERENCE_DEFAULT),
+          prop.getProperty(READ_PREFERENCE_TAGS), getIntProperty(prop, MAX_STALENESS_SECONDS, MAX_STALENESS_SECONDS_DEFAULT));
+      String metadataMode = prop.getProperty(METADATA_READ_PREFERENCE);
+      metadataPreference = isNullOrEmpty(metadataMode) ? null : createReadPreference(metadataMode, null, -1);
+      metadataPoolSize = Math.max(0, getIntProperty(prop, METADATA_POOL_SIZE, METADATA_POOL_SIZE_DEFAULT));
+      metadataTimeout = Math.max(0, getIntProperty(prop, METADATA_TIMEOUT, METADATA_TIMEOUT_DEFAULT));
+      this.derivedSettings = builder.build();
+      // cluster of the main client keeps capabilities and shared topology up to date, clients with the same seed do not repeat it
+      builder.applyToClusterSettings(b -> b.addClusterListener(ServerCapabilities.invalidator(clientKey)));
+      if (shareTopology) builder.applyToClusterSettings(b -> b.addClusterListener(TopologySnapshots.recorder(clientKey)));
+      if (pool != null) {
+        // only the main client reports to the adaptive pool, its gate covers statements of the main client
+        AdaptivePool listener = pool;
+        builder.applyToConnectionPoolSettings(b -> b.addConnectionPoolListener(listener));
+        builder.addCommandListener(pool);
+      }
+      this.settings = builder.build();
+      this.mongoClient = MongoClients.create(settings);
     }
     catch (Exception e) {
       throw new SQLException(e);
@@ -142,6 +223,30 @@ public class MongoClientWrapper implements AutoCloseable {
     throw new IllegalArgumentException("Unknown uuid representation: " + value);
   }
 
+  /**
+   * @param tags tag sets in the format of {@code readPreferenceTags} uri option, e.g. {@code dc:east,use:reporting},
+   *             several tag sets that are tried in order are separated with {@code ;}
+   * @param maxStalenessSeconds negative value for no limit
+   */
+  @NotNull
+  static ReadPreference createReadPreference(@NotNull String mode, @Nullable String tags, int maxStalenessSeconds) {
+    List<TagSet> tagSets = new ArrayList<>();
+    if (!isNullOrEmpty(tags)) {
+      for (String tagSet : tags.split(";")) {
+        List<Tag> tagList = new ArrayList<>();
+        for (String tag : tagSet.split(",")) {
+          if (tag.trim().isEmpty()) continue;
+          int colon = tag.indexOf(':');
+          if (colon < 0) throw new IllegalArgumentException("Tag should be in the form name:value: " + tag);
+          tagList.add(new Tag(tag.substring(0, colon).trim(), tag.substring(colon + 1).trim()));
+        }
+        tagSets.add(new TagSet(tagList));
+      }
+    }
+    if (tagSets.isEmpty() && maxStalenessSeconds < 0) return ReadPreference.valueOf(mode.trim());
+    return ReadPreference.valueOf(mode.trim(), tagSets, maxStalenessSeconds, TimeUnit.SECONDS);
+  }
+
   private int getMaxPoolSize(@NotNull Properties prop) {
     try {
       String str = prop.getProperty(MAX_POOL_SIZE);
@@ -157,10 +262,14 @@ public class MongoClientWrapper implements AutoCloseable {
   }
 
   @Override
-  public void close() throws SQLAlreadyClosedException {
+  public synchronized void close() throws SQLAlreadyClosedException {
     checkClosed();
     isClosed = true;
     mongoClient.close();
+    if (adaptivePool != null) adaptivePool.close();
+    if (reactiveClient != null) reactiveClient.close();
+    if (readOnlyClient != null) readOnlyClient.close();
+    if (metadataClient != null) metadataClient.close();
   }
 
   private void checkClosed() throws SQLAlreadyClosedException {
@@ -181,4 +290,77 @@ public class MongoClientWrapper implements AutoCloseable {
   public MongoClient getMongoClient() {
     return mongoClient;
   }
+
+  /**
+   * Client of the reactive streams driver with the same settings. It has its own connection pool
+   * and is created on first use.
+   */
+  @NotNull
+  public synchronized com.mongodb.reactivestreams.client.MongoClient getReactiveClient() throws SQLAlreadyClosedException {
+    checkClosed();
+    if (reactiveClient == null) {
+      reactiveClient = com.mongodb.reactivestreams.client.MongoClients.create(derivedSettings);
+    }
+    return reactiveClient;
+  }
+
+  /**
+   * Read preference of read-only connections
+   */
+  @NotNull
+  public ReadPreference getReadOnlyPreference() {
+    return readOnlyPreference;
+  }
+
+  /**
+   * Client with {@link #getReadOnlyPreference()} for shells of read-only connections.
+   * It has its own connection pool and is created on first use.
+   */
+  @NotNull
+  public synchronized MongoClient getReadOnlyClient() throws SQLAlreadyClosedException {
+    checkClosed();
+    if (readOnlyClient == null) {
+      readOnlyClient = MongoClients.create(MongoClientSettings.builder(derivedSettings).readPreference(readOnlyPreference).build());
+    }
+    return readOnlyClient;
+  }
+
+  /**
+   * @return 0 if schema discovery uses the main client
+   */
+  public int getMetadataPoolSize() {
+    return metadataPoolSize;
+  }
+
+  /**
+   * Client for schema discovery. With {@link DriverPropertyInfoHelper#METADATA_POOL_SIZE} it has its own small pool,
+   * read timeout and read preference, so that sampling of many collections does not delay statements, and
+   * listeners of the adaptive pool are not attached to it. It is created on first use. Otherwise it is the main client.
+   */
+  @NotNull
+  public synchronized MongoClient getMetadataClient() throws SQLAlreadyClosedException {
+    checkClosed();
+    if (metadataPoolSize == 0) return mongoClient;
+    if (metadataClient == null) {
+      MongoClientSettings.Builder builder = MongoClientSettings.builder(derivedSettings)
+          .applyToConnectionPoolSettings(b -> b.applySettings(ConnectionPoolSettings.builder().maxSize(metadataPoolSize).build()));
+      if (metadataPreference != null) builder.readPreference(metadataPreference);
+      if (metadataTimeout > 0) builder.applyToSocketSettings(b -> b.readTimeout(metadataTimeout, TimeUnit.MILLISECONDS));
+      metadataClient = MongoClients.create(builder.build());
+    }
+    return metadataClient;
+  }
+
+  /**
+   * @return null if pool size is fixed
+   */
+  @Nullable
+  public AdaptivePool getAdaptivePool() {
+    return adaptivePool;
+  }
+
+  @NotNull
+  public MongoClientSettings getSettings() {
+    return settings;
+  }
 }
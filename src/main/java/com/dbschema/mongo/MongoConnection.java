@@ -1,36 +1,74 @@
 package com.dbschema.mongo;
 
 import com.dbschema.mongo.mongosh.MongoshScriptEngine;
+import com.dbschema.mongo.mongosh.PooledScriptEngine;
+import com.dbschema.mongo.mongosh.ShellPool;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.concurrent.Executor;
 
+import static com.dbschema.mongo.DriverPropertyInfoHelper.READ_ONLY;
+import static com.dbschema.mongo.DriverPropertyInfoHelper.READ_ONLY_DEFAULT;
+import static com.dbschema.mongo.DriverPropertyInfoHelper.SHELL_POOL_SIZE;
+import static com.dbschema.mongo.DriverPropertyInfoHelper.SHELL_POOL_SIZE_DEFAULT;
+import static com.dbschema.mongo.DriverPropertyInfoHelper.WARM_UP_STEPS;
+import static com.dbschema.mongo.Util.getBooleanProperty;
+import static com.dbschema.mongo.Util.getIntProperty;
+
+/**
+ * Connection may be shared by threads. Statements of different threads run at the same time on the driver
+ * or, with {@code shell_pool_size}, on separate shells; statements that need the connection's own shell take turns.
+ * A statement object itself should be used by one thread at a time.
+ */
 public class MongoConnection implements Connection {
-  private MongoService service;
-  private MongoScriptEngine scriptEngine;
-  private String schema;
-  private boolean isClosed = false;
-  private boolean isReadOnly = false;
+  private volatile MongoService service;
+  private volatile MongoScriptEngine scriptEngine;
+  private volatile String schema;
+  private volatile boolean isClosed = false;
+  private volatile boolean isReadOnly = false;
+  private final Thread warmUp;
+  /**
+   * Statements that are not closed yet, closed with the connection so that their result sets return admission
+   * tickets and pool slots. Abandoned statements are not kept from garbage collection
+   */
+  private final Set<MongoPreparedStatement> statements = Collections.newSetFromMap(new WeakHashMap<>());
 
   public MongoConnection(@NotNull String url, @NotNull Properties info, @Nullable String username, @Nullable String password, int fetchDocumentsForMeta) throws SQLException {
     this.service = new MongoService(url, info, username, password, fetchDocumentsForMeta);
-    this.scriptEngine = new MongoshScriptEngine(this);
+    this.isReadOnly = getBooleanProperty(info, READ_ONLY, READ_ONLY_DEFAULT);
+    service.setReadOnly(isReadOnly);
+    int shellPoolSize = getIntProperty(info, SHELL_POOL_SIZE, SHELL_POOL_SIZE_DEFAULT);
+    this.scriptEngine = shellPoolSize > 0
+                        ? new PooledScriptEngine(this, ShellPool.retain(url, info, username, password, shellPoolSize))
+                        : new MongoshScriptEngine(this);
     try {
       setSchema(service.getDatabaseNameFromUrl());
     }
     catch (SQLAlreadyClosedException ignored) { // service cannot be closed because it has just been created
     }
+    this.warmUp = WarmUp.start(this, WarmUp.parseSteps(info.getProperty(WARM_UP_STEPS)));
   }
 
   public String getCatalog() {
     return null;
   }
 
-  public MongoService getService() {
+  /**
+   * @throws SQLAlreadyClosedException if the connection is closed, also when it is closed concurrently
+   */
+  @NotNull
+  public MongoService getService() throws SQLAlreadyClosedException {
+    MongoService service = this.service;
+    if (service == null) throw new SQLAlreadyClosedException(getClass().getSimpleName());
     return service;
   }
 
@@ -50,32 +88,46 @@ public class MongoConnection implements Connection {
     return false;
   }
 
+  @NotNull
+  private MongoPreparedStatement track(@NotNull MongoPreparedStatement statement) {
+    synchronized (statements) {
+      statements.add(statement);
+    }
+    return statement;
+  }
+
+  void statementClosed(@NotNull MongoPreparedStatement statement) {
+    synchronized (statements) {
+      statements.remove(statement);
+    }
+  }
+
   /**
    * @see java.sql.Connection#createStatement()
    */
   @Override
   public Statement createStatement() throws SQLException {
     checkClosed();
-    return new MongoPreparedStatement(this);
+    return track(new MongoPreparedStatement(this));
   }
 
   @Override
   public Statement createStatement(int resultSetType, int resultSetConcurrency) throws SQLException {
     checkClosed();
-    return new MongoPreparedStatement(this);
+    return track(new MongoPreparedStatement(this, null, resultSetType));
   }
 
   @Override
   public Statement createStatement(int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
     checkClosed();
-    return new MongoPreparedStatement(this);
+    return track(new MongoPreparedStatement(this, null, resultSetType));
   }
 
 
   @Override
   public PreparedStatement prepareStatement(String sql) throws SQLException {
     checkClosed();
-    return new MongoPreparedStatement(this, sql);
+    return track(new MongoPreparedStatement(this, sql));
   }
 
   @Override
@@ -121,15 +173,32 @@ public class MongoConnection implements Connection {
   }
 
   @Override
-  public void close() throws SQLAlreadyClosedException {
+  public synchronized void close() throws SQLAlreadyClosedException {
     checkClosed();
     isClosed = true;
+    if (warmUp != null) warmUp.interrupt();
+    closeStatements();
     service.close();
     service = null;
     scriptEngine.close();
     scriptEngine = null;
   }
 
+  private void closeStatements() {
+    List<MongoPreparedStatement> open;
+    synchronized (statements) {
+      open = new ArrayList<>(statements);
+    }
+    for (MongoPreparedStatement statement : open) {
+      try {
+        statement.close();
+      }
+      catch (SQLException | RuntimeException e) {
+        System.err.println("WARNING: Cannot close statement: " + e.getMessage());
+      }
+    }
+  }
+
   @Override
   public boolean isClosed() {
     return isClosed;
@@ -144,10 +213,15 @@ public class MongoConnection implements Connection {
     return metaData;
   }
 
+  /**
+   * Reads of read-only connection are routed according to {@link DriverPropertyInfoHelper#READ_ONLY_READ_PREFERENCE}
+   */
   @Override
   public void setReadOnly(boolean readOnly) throws SQLException {
     checkClosed();
+    MongoService service = getService();
     isReadOnly = readOnly;
+    service.setReadOnly(readOnly);
   }
 
   /**
@@ -193,8 +267,9 @@ public class MongoConnection implements Connection {
 
 
   @Override
-  public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency) {
-    return null;
+  public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+    checkClosed();
+    return track(new MongoPreparedStatement(this, sql, resultSetType));
   }
 
   @Override
@@ -241,8 +316,8 @@ public class MongoConnection implements Connection {
 
   @Override
   public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency,
-                                            int resultSetHoldability) {
-    return null;
+                                            int resultSetHoldability) throws SQLException {
+    return prepareStatement(sql, resultSetType, resultSetConcurrency);
   }
 
   @Override
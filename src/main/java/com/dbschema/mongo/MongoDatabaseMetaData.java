@@ -1440,18 +1440,7 @@ public ResultSet getProcedures(String catalogName, String schemaPattern, String
    */
   @Override
   public int getDatabaseMajorVersion() throws SQLException {
-    String version = getDatabaseProductVersion();
-    try {
-      String[] parts = version.split("\\.");
-      if (parts.length >= 1) return Integer.parseInt(parts[0]);
-      else {
-        System.err.println("WARNING: cannot extract major version from string: " + version);
-      }
-    }
-    catch (NumberFormatException e) {
-      e.printStackTrace();
-    }
-    return 0;
+    return con.getService().getCapabilities().getMajorVersion();
   }
 
   /**
@@ -1459,18 +1448,7 @@ public ResultSet getProcedures(String catalogName, String schemaPattern, String
    */
   @Override
   public int getDatabaseMinorVersion() throws SQLException {
-    String version = getDatabaseProductVersion();
-    try {
-      String[] parts = version.split("\\.");
-      if (parts.length >= 2) return Integer.parseInt(parts[1]);
-      else {
-        System.err.println("WARNING: cannot extract minor version from string: " + version);
-      }
-    }
-    catch (NumberFormatException e) {
-      e.printStackTrace();
-    }
-    return 0;
+    return con.getService().getCapabilities().getMinorVersion();
   }
 
   /**
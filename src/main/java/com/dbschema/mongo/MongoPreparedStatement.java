@@ -1,9 +1,25 @@
 package com.dbschema.mongo;
 
+import com.dbschema.mongo.admission.AdmissionControl;
+import com.dbschema.mongo.batch.AdaptiveBatchCursor;
+import com.dbschema.mongo.cache.CachingIterator;
+import com.dbschema.mongo.cache.QueryResultCache;
+import com.dbschema.mongo.diagnostics.SlowStatementLog;
+import com.dbschema.mongo.hedge.HedgedReads;
+import com.dbschema.mongo.pool.AdaptivePool;
+import com.dbschema.mongo.resultSet.ListResultSet;
+import com.dbschema.mongo.resultSet.ResultSetIterator;
+import com.dbschema.mongo.resultSet.ScrollableResultSet;
+import com.dbschema.mongo.session.SessionCursors;
+import com.dbschema.mongo.sql.SqlStatement;
+import com.dbschema.mongo.transfer.TransferStatement;
+import com.mongodb.MongoException;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoDatabase;
 import com.mongodb.client.model.ReplaceOptions;
 import org.bson.Document;
+import org.jetbrains.annotations.NotNull;
+import org.reactivestreams.Publisher;
 
 import java.io.InputStream;
 import java.io.Reader;
@@ -11,36 +27,60 @@ import java.math.BigDecimal;
 import java.net.URL;
 import java.sql.*;
 import java.util.Calendar;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-public class MongoPreparedStatement implements PreparedStatement {
+public class MongoPreparedStatement implements PreparedStatement, MongoAsyncStatement {
   private final MongoConnection connection;
   private ResultSet lastResultSet;
   private boolean isClosed = false;
   private int maxRows = -1;
   private final String query;
   private int fetchSize = -1;
+  private final int resultSetType;
 
   public MongoPreparedStatement(final MongoConnection connection) {
-    this.connection = connection;
-    this.query = null;
+    this(connection, null);
   }
 
   public MongoPreparedStatement(final MongoConnection connection, String query) {
+    this(connection, query, ResultSet.TYPE_FORWARD_ONLY);
+  }
+
+  /**
+   * @param resultSetType {@link ResultSet#TYPE_SCROLL_SENSITIVE} is executed as {@link ResultSet#TYPE_SCROLL_INSENSITIVE}
+   */
+  public MongoPreparedStatement(final MongoConnection connection, String query, int resultSetType) {
     this.connection = connection;
     this.query = query;
+    this.resultSetType = resultSetType;
   }
 
   @Override
   public <T> T unwrap(final Class<T> iface) {
-    return null;
+    return iface.isInstance(this) ? iface.cast(this) : null;
   }
 
   @Override
   public boolean isWrapperFor(final Class<?> iface) {
-    return false;
+    return iface.isInstance(this);
+  }
+
+  @Override
+  @NotNull
+  public CompletableFuture<ResultSet> executeAsync(@NotNull String query) {
+    return ReactiveExecutor.collect(executePublisher(query), fetchSize);
+  }
+
+  @Override
+  @NotNull
+  public Publisher<Document> executePublisher(@NotNull String query) {
+    return ReactiveExecutor.publisher(connection, query, fetchSize, maxRows);
   }
 
   @Override
@@ -52,7 +92,178 @@ public class MongoPreparedStatement implements PreparedStatement {
     if (query == null) {
       throw new SQLException("Null statement.");
     }
-    return lastResultSet = connection.getScriptEngine().execute(query, fetchSize);
+    TransferStatement transferStatement = TransferStatement.parse(query);
+    if (transferStatement != null) {
+      return lastResultSet = transferStatement.execute(connection);
+    }
+    AdmissionControl admissionControl = connection.getService().getAdmissionControl();
+    if (admissionControl == null) {
+      return lastResultSet = executePooled(query);
+    }
+    AdmissionControl.Ticket ticket = admissionControl.acquire(connection.getService().getMongoClient());
+    long start = System.nanoTime();
+    try {
+      lastResultSet = executePooled(query);
+    }
+    catch (SQLException | RuntimeException e) {
+      ticket.complete(e);
+      throw e;
+    }
+    long executeNanos = System.nanoTime() - start;
+    if (lastResultSet instanceof ResultSetIterator) {
+      // open cursor keeps its ticket, getMore also loads the cluster
+      ((ResultSetIterator) lastResultSet).addCompletionListener((rowCount, fetchNanos, error) -> ticket.complete(error, executeNanos + fetchNanos));
+    }
+    else {
+      ticket.complete(null);
+    }
+    return lastResultSet;
+  }
+
+  /**
+   * Waits for a slot of the adaptive pool, if it is turned on. The slot is held until the result set is closed
+   */
+  private ResultSet executePooled(String query) throws SQLException {
+    MongoClientWrapper client = connection.getService().getClient();
+    AdaptivePool pool = client.getAdaptivePool();
+    if (pool == null) return executeStatement(query);
+    long timeoutNanos = client.getSettings().getClusterSettings().getServerSelectionTimeout(TimeUnit.NANOSECONDS);
+    AdaptivePool.Slot slot;
+    try {
+      slot = pool.acquire(timeoutNanos);
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SQLException("Interrupted while waiting for a connection", e);
+    }
+    if (slot == null) {
+      throw new SQLTransientException("Timed out waiting for a connection, pool size is " + pool.getSize());
+    }
+    ResultSet resultSet;
+    try {
+      resultSet = executeStatement(query);
+    }
+    catch (SQLException | RuntimeException e) {
+      slot.release();
+      throw e;
+    }
+    if (resultSet instanceof ResultSetIterator) {
+      // open cursor keeps its slot, getMore also needs a connection.
+      // Result set is closed at the latest with its statement or connection
+      ((ResultSetIterator) resultSet).addCompletionListener((rowCount, fetchNanos, error) -> slot.release());
+    }
+    else {
+      slot.release();
+    }
+    return resultSet;
+  }
+
+  private ResultSet executeStatement(String query) throws SQLException {
+    SqlStatement sqlStatement = SqlStatement.parse(query);
+    if (sqlStatement != null) {
+      return timed(query, () -> sqlStatement.execute(connection, fetchSize, maxRows, resultSetType));
+    }
+    QueryResultCache cache = connection.getService().getQueryResultCache();
+    ResultSet resultSet = cache == null ? executeScript(query) : executeCached(query, cache);
+    if (resultSetType != ResultSet.TYPE_FORWARD_ONLY && resultSet instanceof ResultSetIterator) {
+      resultSet = new ScrollableResultSet(resultSet);
+    }
+    return resultSet;
+  }
+
+  private ResultSet executeCached(String query, QueryResultCache cache) throws SQLException {
+    ShellStatement statement = ShellStatement.parse(query);
+    String database = connection.getSchema();
+    if (!ShellStatement.isCacheable(statement, query) || database == null) {
+      if (statement.hasUnknownWrites) cache.invalidateAll();
+      else if (statement.kind == ShellStatement.Kind.WRITE && statement.collection != null && database != null) {
+        cache.invalidate(database, statement.collection);
+      }
+      return executeScript(query);
+    }
+    String readPreference = connection.getService().getDatabase(database).getReadPreference().toString();
+    QueryResultCache.Key key = new QueryResultCache.Key(statement.text, database, statement.collection, readPreference, maxRows);
+    Iterator<Document> cached = cache.find(key);
+    if (cached != null) return new ResultSetIterator(cached);
+    long generation = cache.getGeneration();
+    ResultSet resultSet = executeScript(query);
+    return resultSet instanceof ResultSetIterator
+           ? new ResultSetIterator(new CachingIterator(resultSet, cache, key, generation))
+           : resultSet;
+  }
+
+  private ResultSet executeScript(String query) throws SQLException {
+    MongoService service = connection.getService();
+    HedgedReads hedgedReads = service.getHedgedReads();
+    int resumableReadRetries = service.getResumableReadRetries();
+    SessionCursors sessionCursors = service.getSessionCursors();
+    int cursorFetchSize = cursorFetchSize();
+    boolean adaptive = cursorFetchSize == AdaptiveBatchCursor.ADAPTIVE_FETCH_SIZE;
+    boolean nativeRead = hedgedReads != null || resumableReadRetries > 0 || sessionCursors != null || adaptive;
+    ShellQuery parsed = (nativeRead || maxRows > 0) && connection.getSchema() != null ? ShellQuery.parse(query) : null;
+    ShellQuery shellQuery = parsed == null ? null : parsed.withMaxRows(maxRows);
+    // limit is sent to the server: find gets a limit, aggregation gets a $limit stage
+    String script = parsed == null ? query : parsed.toShell(maxRows);
+    if (shellQuery == null || !nativeRead) {
+      return timed(query, () -> connection.getScriptEngine().execute(script, cursorFetchSize, maxRows));
+    }
+    MongoDatabase database = service.getDatabase(connection.getSchema());
+    if (resumableReadRetries > 0 && shellQuery.isResumable()) {
+      return timed(query, () -> nativeRead(() -> shellQuery.openResumable(database, Document.class, cursorFetchSize, resumableReadRetries)));
+    }
+    if (sessionCursors != null) {
+      return timed(query, () -> nativeRead(() -> sessionCursors.open(session -> shellQuery.open(session, database, Document.class, cursorFetchSize))));
+    }
+    if (hedgedReads != null) {
+      return timed(query, () -> hedgedReads.execute(database, shellQuery, cursorFetchSize));
+    }
+    if (adaptive && shellQuery.isAdaptive(database)) {
+      return timed(query, () -> nativeRead(() -> shellQuery.open(database, cursorFetchSize)));
+    }
+    return timed(query, () -> connection.getScriptEngine().execute(script, cursorFetchSize, maxRows));
+  }
+
+  /**
+   * Explicit fetch size wins over adaptive batches
+   */
+  private int cursorFetchSize() throws SQLAlreadyClosedException {
+    return fetchSize <= 0 && connection.getService().isAdaptiveBatchSize() ? AdaptiveBatchCursor.ADAPTIVE_FETCH_SIZE : fetchSize;
+  }
+
+  private ResultSet nativeRead(Supplier<Iterator<Document>> cursor) throws SQLException {
+    try {
+      return new ResultSetIterator(cursor.get());
+    }
+    catch (MongoException e) {
+      throw new SQLException(e.getMessage(), e);
+    }
+  }
+
+  private interface Execution {
+    ResultSet execute() throws SQLException;
+  }
+
+  /**
+   * Records execution in slow statement log if it is enabled
+   */
+  private ResultSet timed(String query, Execution execution) throws SQLException {
+    SlowStatementLog slowStatementLog = connection.getService().getSlowStatementLog();
+    if (!slowStatementLog.isEnabled()) {
+      return execution.execute();
+    }
+    String database = connection.getSchema();
+    long start = System.nanoTime();
+    ResultSet resultSet = execution.execute();
+    long executeNanos = System.nanoTime() - start;
+    if (resultSet instanceof ResultSetIterator) {
+      ((ResultSetIterator) resultSet).addCompletionListener((rowCount, fetchNanos, error) ->
+          slowStatementLog.record(query, database, executeNanos, fetchNanos, rowCount));
+    }
+    else {
+      int rowCount = resultSet instanceof ListResultSet ? ((ListResultSet) resultSet).getRowCount() : 0;
+      slowStatementLog.record(query, database, executeNanos, 0, rowCount);
+    }
+    return resultSet;
   }
 
 
@@ -120,6 +331,7 @@ public class MongoPreparedStatement implements PreparedStatement {
         final Object id = documentParam.get("_id");
         if (matcher.matches()) {
           MongoCollection<Document> collection = getCollectionMandatory(matcher.group(1));
+          invalidateCache(collection);
           if (id == null) {
             collection.insertOne(documentParam);
           }
@@ -131,6 +343,7 @@ public class MongoPreparedStatement implements PreparedStatement {
         matcher = PATTERN_DELETE.matcher(sql);
         if (matcher.matches()) {
           MongoCollection<Document> collection = getCollectionMandatory(matcher.group(1));
+          invalidateCache(collection);
           Document m = new Document("_id", id);
           collection.deleteOne(m);
           return 1;
@@ -140,6 +353,13 @@ public class MongoPreparedStatement implements PreparedStatement {
     throw new SQLException(ERROR_MESSAGE);
   }
 
+  private void invalidateCache(MongoCollection<Document> collection) throws SQLAlreadyClosedException {
+    QueryResultCache cache = connection.getService().getQueryResultCache();
+    if (cache != null) {
+      cache.invalidate(collection.getNamespace().getDatabaseName(), collection.getNamespace().getCollectionName());
+    }
+  }
+
   private static final Pattern PATTERN_DB_IDENTIFIER = Pattern.compile("client\\.getDatabase\\('(.*)'\\).(.*)", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
   private static final Pattern PATTERN_COLLECTION_IDENTIFIER = Pattern.compile("getCollection\\('(.*)'\\).(.*)", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
   private static final Pattern PATTERN_DOT = Pattern.compile("(.*)\\.(.*)", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
@@ -168,6 +388,7 @@ public class MongoPreparedStatement implements PreparedStatement {
   @Override
   public void close() throws SQLException {
     this.isClosed = true;
+    connection.statementClosed(this);
     if (lastResultSet == null || lastResultSet.isClosed()) return;
     lastResultSet.close();
   }
@@ -275,7 +496,7 @@ public class MongoPreparedStatement implements PreparedStatement {
 
   @Override
   public int getResultSetType() {
-    return ResultSet.TYPE_FORWARD_ONLY;
+    return resultSetType == ResultSet.TYPE_FORWARD_ONLY ? resultSetType : ResultSet.TYPE_SCROLL_INSENSITIVE;
   }
 
   @Override
@@ -11,7 +11,22 @@ import java.sql.SQLException;
  **/
 public interface MongoScriptEngine {
   @Nullable
-  ResultSet execute(@NotNull String query, int fetchSize) throws SQLException;
+  default ResultSet execute(@NotNull String query, int fetchSize) throws SQLException {
+    return execute(query, fetchSize, 0);
+  }
+
+  /**
+   * @param maxRows 0 or negative for no limit. Cursors are closed after {@code maxRows} rows,
+   *                materialized results are truncated
+   */
+  @Nullable
+  ResultSet execute(@NotNull String query, int fetchSize, int maxRows) throws SQLException;
+
+  /**
+   * Prepares the engine in background so that the first statement does not wait for it
+   */
+  default void warmUp() throws SQLException {
+  }
 
   void close();
 }
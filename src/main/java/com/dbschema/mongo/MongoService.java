@@ -1,10 +1,18 @@
 package com.dbschema.mongo;
 
+import com.dbschema.mongo.admission.AdmissionControl;
+import com.dbschema.mongo.batch.AdaptiveBatchCursor;
+import com.dbschema.mongo.cache.QueryResultCache;
+import com.dbschema.mongo.diagnostics.SlowStatementLog;
+import com.dbschema.mongo.discovery.ServerCapabilities;
+import com.dbschema.mongo.hedge.HedgedReads;
 import com.dbschema.mongo.schema.MetaCollection;
-import com.mongodb.MongoSecurityException;
+import com.dbschema.mongo.session.SessionCursors;
+import com.mongodb.MongoException;
 import com.mongodb.client.MongoClient;
-import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoDatabase;
+import com.mongodb.connection.ClusterDescription;
+import com.mongodb.connection.ClusterType;
 import org.bson.Document;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -13,33 +21,191 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static com.dbschema.mongo.DriverPropertyInfoHelper.ADAPTIVE_BATCH_SIZE;
+import static com.dbschema.mongo.DriverPropertyInfoHelper.ADAPTIVE_BATCH_SIZE_DEFAULT;
+import static com.dbschema.mongo.DriverPropertyInfoHelper.CIRCUIT_BREAKER_FAILURE_RATE;
+import static com.dbschema.mongo.DriverPropertyInfoHelper.CIRCUIT_BREAKER_FAILURE_RATE_DEFAULT;
+import static com.dbschema.mongo.DriverPropertyInfoHelper.CIRCUIT_BREAKER_PROBE_INTERVAL;
+import static com.dbschema.mongo.DriverPropertyInfoHelper.CIRCUIT_BREAKER_PROBE_INTERVAL_DEFAULT;
+import static com.dbschema.mongo.DriverPropertyInfoHelper.CIRCUIT_BREAKER_SLOW_STATEMENT;
+import static com.dbschema.mongo.DriverPropertyInfoHelper.CIRCUIT_BREAKER_SLOW_STATEMENT_DEFAULT;
+import static com.dbschema.mongo.DriverPropertyInfoHelper.CURSOR_KEEP_ALIVE;
+import static com.dbschema.mongo.DriverPropertyInfoHelper.CURSOR_KEEP_ALIVE_DEFAULT;
+import static com.dbschema.mongo.DriverPropertyInfoHelper.HEDGED_READS;
+import static com.dbschema.mongo.DriverPropertyInfoHelper.HEDGED_READS_BUDGET;
+import static com.dbschema.mongo.DriverPropertyInfoHelper.HEDGED_READS_BUDGET_DEFAULT;
+import static com.dbschema.mongo.DriverPropertyInfoHelper.HEDGED_READS_DEFAULT;
+import static com.dbschema.mongo.DriverPropertyInfoHelper.HEDGED_READS_PERCENTILE;
+import static com.dbschema.mongo.DriverPropertyInfoHelper.HEDGED_READS_PERCENTILE_DEFAULT;
+import static com.dbschema.mongo.DriverPropertyInfoHelper.MAX_CONCURRENT_STATEMENTS;
+import static com.dbschema.mongo.DriverPropertyInfoHelper.MAX_CONCURRENT_STATEMENTS_DEFAULT;
+import static com.dbschema.mongo.DriverPropertyInfoHelper.QUERY_CACHE_SIZE;
+import static com.dbschema.mongo.DriverPropertyInfoHelper.QUERY_CACHE_SIZE_DEFAULT;
+import static com.dbschema.mongo.DriverPropertyInfoHelper.QUERY_CACHE_TTL;
+import static com.dbschema.mongo.DriverPropertyInfoHelper.QUERY_CACHE_TTL_DEFAULT;
+import static com.dbschema.mongo.DriverPropertyInfoHelper.RESUMABLE_READ_RETRIES;
+import static com.dbschema.mongo.DriverPropertyInfoHelper.RESUMABLE_READ_RETRIES_DEFAULT;
+import static com.dbschema.mongo.DriverPropertyInfoHelper.SCHEMA_CACHE_TTL;
+import static com.dbschema.mongo.DriverPropertyInfoHelper.SCHEMA_CACHE_TTL_DEFAULT;
+import static com.dbschema.mongo.DriverPropertyInfoHelper.SCHEMA_CACHE_TTL_WARM_UP_DEFAULT;
+import static com.dbschema.mongo.DriverPropertyInfoHelper.SLOW_STATEMENT_EXPLAIN;
+import static com.dbschema.mongo.DriverPropertyInfoHelper.SLOW_STATEMENT_EXPLAIN_DEFAULT;
+import static com.dbschema.mongo.DriverPropertyInfoHelper.SLOW_STATEMENT_LOG_CAPACITY;
+import static com.dbschema.mongo.DriverPropertyInfoHelper.SLOW_STATEMENT_LOG_CAPACITY_DEFAULT;
+import static com.dbschema.mongo.DriverPropertyInfoHelper.SLOW_STATEMENT_THRESHOLD;
+import static com.dbschema.mongo.DriverPropertyInfoHelper.SLOW_STATEMENT_THRESHOLD_DEFAULT;
+import static com.dbschema.mongo.DriverPropertyInfoHelper.WARM_UP_STEPS;
+import static com.dbschema.mongo.Util.getBooleanProperty;
+import static com.dbschema.mongo.Util.getIntProperty;
 
 public class MongoService implements AutoCloseable {
-  private boolean isClosed = false;
+  private volatile boolean isClosed = false;
   private final MongoClientWrapper client;
   private final String uri;
+  private final String clientKey;
   private final int fetchDocumentsForMeta;
+  private final SlowStatementLog slowStatementLog;
+  private final QueryResultCache queryResultCache;
+  private final HedgedReads hedgedReads;
+  private final AdmissionControl admissionControl;
+  private final int resumableReadRetries;
+  private final SessionCursors sessionCursors;
+  private final boolean adaptiveBatchSize;
+  private ExecutorService metadataExecutor;
+  private final long schemaCacheTtlNanos;
+  /**
+   * Sampled collections by {@code database.collection}
+   */
+  private final Map<String, CachedMetaCollection> schemaCache = new ConcurrentHashMap<>();
+  private volatile boolean readOnly = false;
 
   // USE STATIC SO OPENING A NEW CONNECTION WILL REMEMBER THIS
-  public static final List<String> createdDatabases = new ArrayList<>();
+  public static final List<String> createdDatabases = new CopyOnWriteArrayList<>();
 
 
   public MongoService(@NotNull String uri, @NotNull Properties prop, @Nullable String username,
                       @Nullable String password, int fetchDocumentsForMeta) throws SQLException {
     this.uri = uri;
+    this.clientKey = username + "@" + uri;
     this.fetchDocumentsForMeta = fetchDocumentsForMeta;
+    // unknown steps are rejected before any client is created
+    boolean warmUpSchema = WarmUp.parseSteps(prop.getProperty(WARM_UP_STEPS)).contains(WarmUp.Step.SCHEMA);
     client = new MongoClientWrapper(uri, prop, username, password);
+    slowStatementLog = new SlowStatementLog(client.getMongoClient(),
+        getIntProperty(prop, SLOW_STATEMENT_THRESHOLD, SLOW_STATEMENT_THRESHOLD_DEFAULT),
+        getBooleanProperty(prop, SLOW_STATEMENT_EXPLAIN, SLOW_STATEMENT_EXPLAIN_DEFAULT),
+        getIntProperty(prop, SLOW_STATEMENT_LOG_CAPACITY, SLOW_STATEMENT_LOG_CAPACITY_DEFAULT));
+    int cacheSizeMb = getIntProperty(prop, QUERY_CACHE_SIZE, QUERY_CACHE_SIZE_DEFAULT);
+    // results depend on what the user may read, connections with another password must not see them
+    String cacheKey = username + ":" + Util.digest(password) + "@" + uri;
+    queryResultCache = cacheSizeMb <= 0 ? null : QueryResultCache.retain(cacheKey, cacheSizeMb * 1024L * 1024L,
+        getIntProperty(prop, QUERY_CACHE_TTL, QUERY_CACHE_TTL_DEFAULT) * 1000L);
+    hedgedReads = getBooleanProperty(prop, HEDGED_READS, HEDGED_READS_DEFAULT)
+                  ? new HedgedReads(getIntProperty(prop, HEDGED_READS_PERCENTILE, HEDGED_READS_PERCENTILE_DEFAULT),
+                                    getIntProperty(prop, HEDGED_READS_BUDGET, HEDGED_READS_BUDGET_DEFAULT))
+                  : null;
+    int maxConcurrent = getIntProperty(prop, MAX_CONCURRENT_STATEMENTS, MAX_CONCURRENT_STATEMENTS_DEFAULT);
+    int failureRate = getIntProperty(prop, CIRCUIT_BREAKER_FAILURE_RATE, CIRCUIT_BREAKER_FAILURE_RATE_DEFAULT);
+    admissionControl = maxConcurrent <= 0 && failureRate <= 0 ? null : AdmissionControl.retain(clientKey, maxConcurrent, failureRate,
+        getIntProperty(prop, CIRCUIT_BREAKER_SLOW_STATEMENT, CIRCUIT_BREAKER_SLOW_STATEMENT_DEFAULT),
+        getIntProperty(prop, CIRCUIT_BREAKER_PROBE_INTERVAL, CIRCUIT_BREAKER_PROBE_INTERVAL_DEFAULT));
+    resumableReadRetries = Math.max(0, getIntProperty(prop, RESUMABLE_READ_RETRIES, RESUMABLE_READ_RETRIES_DEFAULT));
+    sessionCursors = getBooleanProperty(prop, CURSOR_KEEP_ALIVE, CURSOR_KEEP_ALIVE_DEFAULT) ? new SessionCursors(client.getMongoClient()) : null;
+    adaptiveBatchSize = getBooleanProperty(prop, ADAPTIVE_BATCH_SIZE, ADAPTIVE_BATCH_SIZE_DEFAULT);
+    schemaCacheTtlNanos = TimeUnit.SECONDS.toNanos(Math.max(0, getIntProperty(prop, SCHEMA_CACHE_TTL,
+        warmUpSchema ? SCHEMA_CACHE_TTL_WARM_UP_DEFAULT : SCHEMA_CACHE_TTL_DEFAULT)));
+  }
+
+  /**
+   * Reads of read-only connections use {@link MongoClientWrapper#getReadOnlyPreference()}
+   */
+  public void setReadOnly(boolean readOnly) {
+    this.readOnly = readOnly;
+  }
+
+  public boolean isReadOnly() {
+    return readOnly;
   }
 
   public MongoClientWrapper getClient() {
     return client;
   }
 
+  @NotNull
+  public SlowStatementLog getSlowStatementLog() {
+    return slowStatementLog;
+  }
+
+  /**
+   * @return 0 if reads are not resumed, see {@link ResumableCursor}
+   */
+  public int getResumableReadRetries() {
+    return resumableReadRetries;
+  }
+
+  /**
+   * @return true if cursors without explicit fetch size adapt their batch size, see {@link AdaptiveBatchCursor}.
+   * Commands of the cursor could reach different routers of a sharded cluster, so it is false with several mongos.
+   */
+  public boolean isAdaptiveBatchSize() {
+    if (!adaptiveBatchSize) return false;
+    ClusterDescription cluster = client.getMongoClient().getClusterDescription();
+    ClusterType type = cluster.getType();
+    return type != ClusterType.SHARDED && type != ClusterType.UNKNOWN || cluster.getServerDescriptions().size() == 1;
+  }
+
+  /**
+   * @return null if cursors are not kept alive
+   */
+  @Nullable
+  public SessionCursors getSessionCursors() {
+    return sessionCursors;
+  }
+
+  /**
+   * @return null if result cache is turned off
+   */
+  @Nullable
+  public QueryResultCache getQueryResultCache() {
+    return queryResultCache;
+  }
+
+  /**
+   * @return null if hedged reads are turned off
+   */
+  @Nullable
+  public HedgedReads getHedgedReads() {
+    return hedgedReads;
+  }
+
+  /**
+   * @return null if neither concurrency limit nor circuit breaker is turned on
+   */
+  @Nullable
+  public AdmissionControl getAdmissionControl() {
+    return admissionControl;
+  }
+
   @Override
-  public void close() throws SQLAlreadyClosedException {
+  public synchronized void close() throws SQLAlreadyClosedException {
     checkClosed();
     isClosed = true;
+    slowStatementLog.close();
+    if (hedgedReads != null) hedgedReads.close();
+    if (admissionControl != null) admissionControl.release();
+    if (queryResultCache != null) queryResultCache.release();
+    if (sessionCursors != null) sessionCursors.close();
+    if (metadataExecutor != null) metadataExecutor.shutdownNow();
     client.close();
   }
 
@@ -58,7 +224,7 @@ public class MongoService implements AutoCloseable {
     final List<String> names = new ArrayList<>();
     try {
       // THIS OFTEN THROWS EXCEPTION BECAUSE OF MISSING RIGHTS. IN THIS CASE WE ONLY ADD CURRENT KNOWN DB.
-      for (String c : client.listDatabaseNames()) {
+      for (String c : client.getMetadataClient().listDatabaseNames()) {
         names.add(c);
       }
     }
@@ -75,7 +241,12 @@ public class MongoService implements AutoCloseable {
 
   public MongoDatabase getDatabase(String dbName) throws SQLAlreadyClosedException {
     checkClosed();
-    return client.getDatabase(dbName);
+    return database(dbName);
+  }
+
+  private MongoDatabase database(String dbName) throws SQLAlreadyClosedException {
+    MongoDatabase database = client.getDatabase(dbName);
+    return readOnly ? database.withReadPreference(client.getReadOnlyPreference()) : database;
   }
 
   @NotNull
@@ -83,12 +254,37 @@ public class MongoService implements AutoCloseable {
     checkClosed();
     String plain = dbName.asPlain();
     if (plain != null) {
-      return Collections.singletonList(client.getDatabase(plain));
+      return Collections.singletonList(database(plain));
     }
     List<MongoDatabase> databases = new ArrayList<>();
     for (String databaseName : client.getMongoClient().listDatabaseNames()) {
       if (dbName.matches(databaseName)) {
-        databases.add(client.getMongoClient().getDatabase(databaseName));
+        databases.add(database(databaseName));
+      }
+    }
+    return databases;
+  }
+
+  /**
+   * Database of {@link MongoClientWrapper#getMetadataClient()}, for schema discovery only
+   */
+  @NotNull
+  public MongoDatabase getMetadataDatabase(@NotNull String dbName) throws SQLAlreadyClosedException {
+    checkClosed();
+    return client.getMetadataClient().getDatabase(dbName);
+  }
+
+  @NotNull
+  private List<MongoDatabase> getMetadataDatabases(@NotNull MongoNamePattern dbName) throws SQLAlreadyClosedException {
+    MongoClient metadataClient = client.getMetadataClient();
+    String plain = dbName.asPlain();
+    if (plain != null) {
+      return Collections.singletonList(metadataClient.getDatabase(plain));
+    }
+    List<MongoDatabase> databases = new ArrayList<>();
+    for (String databaseName : metadataClient.listDatabaseNames()) {
+      if (dbName.matches(databaseName)) {
+        databases.add(metadataClient.getDatabase(databaseName));
       }
     }
     return databases;
@@ -105,41 +301,60 @@ public class MongoService implements AutoCloseable {
 
   @NotNull
   public String getVersion() throws SQLException {
+    return getCapabilities().getVersion();
+  }
+
+  /**
+   * Shared by connections with the same url and user, see {@link ServerCapabilities}
+   */
+  @NotNull
+  public ServerCapabilities getCapabilities() throws SQLException {
     checkClosed();
-    MongoDatabase db = client.getDatabase("test");
     try {
-      Document info = db.runCommand(new Document("buildInfo", 1));
-      String version = info.getString("version");
-      return version == null ? "UNKNOWN" : version;
+      return ServerCapabilities.get(clientKey, client.getMongoClient());
     }
-    catch (MongoSecurityException e) {
-      throw new SQLException(e);
+    catch (MongoException e) {
+      throw new SQLException(e.getMessage(), e);
     }
   }
 
 
+  /**
+   * Collections are sampled in parallel by {@link #getMetadataExecutor()} if schema discovery has its own client
+   */
   @NotNull
   public List<MetaCollection> getMetaCollections(@Nullable String databasePattern, @Nullable String collectionPattern) throws SQLAlreadyClosedException {
     MongoNamePattern collectionName = MongoNamePattern.create(collectionPattern);
-    List<MongoDatabase> databases = getDatabases(MongoNamePattern.create(databasePattern));
+    List<MongoDatabase> databases = getMetadataDatabases(MongoNamePattern.create(databasePattern));
     List<MetaCollection> collections = new ArrayList<>();
     for (MongoDatabase database : databases) {
       try {
+        List<String> names = new ArrayList<>();
         String plainCollectionName = collectionName.asPlain();
         if (plainCollectionName != null) {
-          MongoCollection<Document> collection = database.getCollection(plainCollectionName);
-          collections.add(new MetaCollection(collection, fetchDocumentsForMeta));
+          names.add(plainCollectionName);
         }
         else {
           for (String name : database.listCollectionNames()) {
-            if (collectionName.matches(name)) {
-              MongoCollection<Document> collection = database.getCollection(name);
-              collections.add(new MetaCollection(collection, fetchDocumentsForMeta));
-            }
+            if (collectionName.matches(name)) names.add(name);
+          }
+        }
+        if (client.getMetadataPoolSize() == 0) { // discovery must not take more than one connection of statements
+          for (String name : names) {
+            collections.add(sample(database, name));
           }
+          continue;
+        }
+        List<Future<MetaCollection>> futures = new ArrayList<>();
+        for (String name : names) {
+          futures.add(getMetadataExecutor().submit(() -> sample(database, name)));
+        }
+        for (Future<MetaCollection> future : futures) {
+          collections.add(future.get());
         }
       }
       catch (Throwable ex) {
+        if (ex instanceof InterruptedException) Thread.currentThread().interrupt();
         System.err.println("Error discovering collection " + database + " " + collectionName + ". " + ex);
         ex.printStackTrace();
       }
@@ -147,6 +362,49 @@ public class MongoService implements AutoCloseable {
     return collections;
   }
 
+  /**
+   * Low priority threads for schema discovery, as many as connections of the metadata client
+   */
+  @NotNull
+  private synchronized ExecutorService getMetadataExecutor() throws SQLAlreadyClosedException {
+    checkClosed();
+    if (metadataExecutor == null) {
+      int threads = client.getMetadataPoolSize();
+      ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+        Thread thread = new Thread(r, "MongoJdbc metadata");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+      });
+      executor.allowCoreThreadTimeOut(true);
+      metadataExecutor = executor;
+    }
+    return metadataExecutor;
+  }
+
+  /**
+   * Samples documents of one collection, names are not patterns
+   */
+  @NotNull
+  public MetaCollection getMetaCollection(@NotNull String database, @NotNull String collection) throws SQLAlreadyClosedException {
+    checkClosed();
+    return sample(client.getMetadataClient().getDatabase(database), collection);
+  }
+
+  /**
+   * Reuses the sample for {@code schema_cache_ttl_seconds}
+   */
+  @NotNull
+  private MetaCollection sample(@NotNull MongoDatabase database, @NotNull String collection) {
+    if (schemaCacheTtlNanos <= 0) return new MetaCollection(database.getCollection(collection), fetchDocumentsForMeta);
+    String key = database.getName() + "." + collection;
+    CachedMetaCollection cached = schemaCache.get(key);
+    if (cached != null && System.nanoTime() - cached.createdNanos < schemaCacheTtlNanos) return cached.collection;
+    MetaCollection metaCollection = new MetaCollection(database.getCollection(collection), fetchDocumentsForMeta);
+    schemaCache.put(key, new CachedMetaCollection(metaCollection));
+    return metaCollection;
+  }
+
   public String getURI() {
     return uri;
   }
@@ -156,7 +414,7 @@ public class MongoService implements AutoCloseable {
     checkClosed();
     List<String> list = new ArrayList<>();
     try {
-      MongoDatabase db = client.getDatabase(catalog);
+      MongoDatabase db = client.getMetadataClient().getDatabase(catalog);
       if (db != null) {
         for (String str : db.listCollectionNames()) {
           list.add(str);
@@ -181,4 +439,12 @@ public class MongoService implements AutoCloseable {
     return client.getMongoClient();
   }
 
+  private static final class CachedMetaCollection {
+    final MetaCollection collection;
+    final long createdNanos = System.nanoTime();
+
+    CachedMetaCollection(@NotNull MetaCollection collection) {
+      this.collection = collection;
+    }
+  }
 }
@@ -0,0 +1,143 @@
+package com.dbschema.mongo;
+
+import com.dbschema.mongo.resultSet.ResultSetIterator;
+import com.mongodb.reactivestreams.client.AggregatePublisher;
+import com.mongodb.reactivestreams.client.FindPublisher;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import org.bson.Document;
+import org.jetbrains.annotations.NotNull;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs find and aggregate statements with the reactive streams driver
+ */
+class ReactiveExecutor {
+  private static final int DEFAULT_BATCH_SIZE = 1000;
+
+  private ReactiveExecutor() {
+  }
+
+  /**
+   * @param maxRows 0 or negative for no limit
+   */
+  @NotNull
+  static Publisher<Document> publisher(@NotNull MongoConnection connection, @NotNull String query, int fetchSize, int maxRows) {
+    ShellQuery parsed = ShellQuery.parse(query);
+    if (parsed == null) {
+      return failed(new SQLFeatureNotSupportedException("Only find and aggregate statements with JSON arguments can be executed asynchronously"));
+    }
+    ShellQuery shellQuery = parsed.withMaxRows(maxRows);
+    MongoCollection<Document> collection;
+    try {
+      String database = connection.getSchema();
+      if (database == null) throw new SQLException("No database selected");
+      MongoClientWrapper client = connection.getService().getClient();
+      com.mongodb.reactivestreams.client.MongoDatabase mongoDatabase = client.getReactiveClient().getDatabase(database);
+      if (connection.getService().isReadOnly()) mongoDatabase = mongoDatabase.withReadPreference(client.getReadOnlyPreference());
+      collection = mongoDatabase.getCollection(shellQuery.collection);
+    }
+    catch (SQLException e) {
+      return failed(e);
+    }
+    if (shellQuery.pipeline != null) {
+      AggregatePublisher<Document> publisher = collection.aggregate(shellQuery.pipeline);
+      Document options = shellQuery.options;
+      Boolean allowDiskUse = options.getBoolean("allowDiskUse");
+      if (allowDiskUse != null) publisher.allowDiskUse(allowDiskUse);
+      Number maxTimeMS = options.get("maxTimeMS", Number.class);
+      if (maxTimeMS != null) publisher.maxTime(maxTimeMS.longValue(), TimeUnit.MILLISECONDS);
+      Boolean bypassDocumentValidation = options.getBoolean("bypassDocumentValidation");
+      if (bypassDocumentValidation != null) publisher.bypassDocumentValidation(bypassDocumentValidation);
+      String comment = options.getString("comment");
+      if (comment != null) publisher.comment(comment);
+      Document hint = options.get("hint", Document.class);
+      if (hint != null) publisher.hint(hint);
+      if (fetchSize > 0) publisher.batchSize(fetchSize);
+      return publisher;
+    }
+    FindPublisher<Document> publisher = collection.find(shellQuery.filter).skip(shellQuery.skip).limit(shellQuery.limit);
+    if (shellQuery.projection != null) publisher.projection(shellQuery.projection);
+    if (shellQuery.sort != null) publisher.sort(shellQuery.sort);
+    if (fetchSize > 0) publisher.batchSize(fetchSize);
+    return publisher;
+  }
+
+  /**
+   * Requests documents in batches and completes with all of them. Cancelling the future cancels the subscription.
+   */
+  @NotNull
+  static CompletableFuture<ResultSet> collect(@NotNull Publisher<Document> publisher, int fetchSize) {
+    CompletableFuture<ResultSet> future = new CompletableFuture<>();
+    publisher.subscribe(new CollectingSubscriber(future, fetchSize > 0 ? fetchSize : DEFAULT_BATCH_SIZE));
+    return future;
+  }
+
+  @NotNull
+  private static Publisher<Document> failed(@NotNull SQLException e) {
+    return subscriber -> {
+      subscriber.onSubscribe(new Subscription() {
+        @Override
+        public void request(long n) {
+        }
+
+        @Override
+        public void cancel() {
+        }
+      });
+      subscriber.onError(e);
+    };
+  }
+
+  private static final class CollectingSubscriber implements Subscriber<Document> {
+    private final CompletableFuture<ResultSet> future;
+    private final int batchSize;
+    private final List<Document> documents = new ArrayList<>();
+    private Subscription subscription;
+    private int outstanding;
+
+    CollectingSubscriber(@NotNull CompletableFuture<ResultSet> future, int batchSize) {
+      this.future = future;
+      this.batchSize = batchSize;
+    }
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
+      this.subscription = subscription;
+      future.whenComplete((resultSet, e) -> {
+        if (future.isCancelled()) subscription.cancel();
+      });
+      outstanding = batchSize;
+      subscription.request(batchSize);
+    }
+
+    @Override
+    public void onNext(Document document) {
+      if (future.isDone()) return;
+      documents.add(document);
+      if (--outstanding == 0) {
+        outstanding = batchSize;
+        subscription.request(batchSize);
+      }
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      future.completeExceptionally(t instanceof SQLException ? t : new SQLException(t.getMessage(), t));
+    }
+
+    @Override
+    public void onComplete() {
+      future.complete(new ResultSetIterator(documents));
+    }
+  }
+}
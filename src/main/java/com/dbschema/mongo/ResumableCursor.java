@@ -0,0 +1,131 @@
+package com.dbschema.mongo;
+
+import com.mongodb.MongoCursorNotFoundException;
+import com.mongodb.MongoException;
+import com.mongodb.MongoNodeIsRecoveringException;
+import com.mongodb.MongoNotPrimaryException;
+import com.mongodb.MongoSocketException;
+import com.mongodb.MongoTimeoutException;
+import com.mongodb.client.MongoCursor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Cursor of a find sorted by {@code _id} that survives failover.
+ * <p>
+ * When fetching fails with a network error, a not-primary error or a cursor killed on the server, the query is
+ * sent again for documents after the last delivered {@code _id}, with the limit reduced by the number of delivered
+ * documents. The consumer sees one uninterrupted stream. The statement fails after {@code maxRetries} failures
+ * in a row, a delivered document resets the count.
+ *
+ * @see ShellQuery#openResumable
+ */
+public class ResumableCursor<T extends Map<String, ?>> implements Iterator<T>, Closeable {
+  private final Opener<T> opener;
+  private final int maxRetries;
+  private MongoCursor<T> cursor;
+  private Object lastId;
+  private long delivered = 0;
+  private int failures = 0;
+  private long resumes = 0;
+
+  interface Opener<T> {
+    /**
+     * @param lastId null to start from the beginning
+     * @return null if nothing is left to read
+     */
+    @Nullable
+    MongoCursor<T> open(@Nullable Object lastId, long delivered);
+  }
+
+  ResumableCursor(@NotNull Opener<T> opener, int maxRetries) {
+    this.opener = opener;
+    this.maxRetries = maxRetries;
+    this.cursor = opener.open(null, 0);
+  }
+
+  @Override
+  public boolean hasNext() {
+    while (true) {
+      try {
+        return cursor != null && cursor.hasNext();
+      }
+      catch (MongoException e) {
+        countFailure(e);
+        resume();
+      }
+    }
+  }
+
+  @Override
+  public T next() {
+    if (!hasNext()) throw new NoSuchElementException();
+    T document = cursor.next();
+    lastId = document.get("_id");
+    delivered++;
+    failures = 0;
+    return document;
+  }
+
+  /**
+   * @return how many times the query was sent again
+   */
+  public long getResumeCount() {
+    return resumes;
+  }
+
+  /**
+   * @throws MongoException the error itself if it cannot be retried or retries are exhausted
+   */
+  private void countFailure(@NotNull MongoException e) {
+    if (!isResumable(e) || ++failures > maxRetries) throw e;
+  }
+
+  /**
+   * Failed attempts to send the query again count toward the same retries as failed fetches
+   */
+  private void resume() {
+    closeQuietly();
+    cursor = null;
+    while (true) {
+      resumes++;
+      try {
+        cursor = opener.open(lastId, delivered);
+        return;
+      }
+      catch (MongoException e) {
+        countFailure(e);
+      }
+    }
+  }
+
+  private void closeQuietly() {
+    try {
+      if (cursor != null) cursor.close();
+    }
+    catch (MongoException ignored) { // server that owned the cursor may be gone
+    }
+  }
+
+  static boolean isResumable(@NotNull Throwable error) {
+    for (Throwable t = error; t != null; t = t.getCause()) {
+      if (t instanceof MongoSocketException || t instanceof MongoTimeoutException || t instanceof MongoNotPrimaryException ||
+          t instanceof MongoNodeIsRecoveringException || t instanceof MongoCursorNotFoundException) {
+        return true;
+      }
+      if (t.getCause() == t) break;
+    }
+    return false;
+  }
+
+  @Override
+  public void close() {
+    if (cursor != null) cursor.close();
+    cursor = null;
+  }
+}
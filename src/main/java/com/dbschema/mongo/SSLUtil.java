@@ -1,14 +1,23 @@
 package com.dbschema.mongo;
 
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
 import javax.net.ssl.*;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.security.*;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.sql.SQLException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
 
 import static com.dbschema.mongo.Util.isNullOrEmpty;
 
@@ -16,6 +25,61 @@ import static com.dbschema.mongo.Util.isNullOrEmpty;
  * @author Liudmila Kornilova
  **/
 public class SSLUtil {
+  // USE STATIC SO RECONNECTS REUSE LOADED KEYS AND TLS SESSIONS
+  private static final Map<String, CachedContext> contexts = new HashMap<>();
+
+  /**
+   * Same as {@link #getTrustEverybodySSLContext} but the context is shared by connections that use the same keystore,
+   * so reconnects do not read the keystore and may resume TLS sessions of previous connections.
+   * Keystore file is reloaded when its modification time or size changes, keystores at other URLs are loaded once.
+   */
+  @NotNull
+  public static SSLContext getCachedTrustEverybodySSLContext(@Nullable String clientCertificateKeyStoreUrl,
+                                                             @Nullable String clientCertificateKeyStoreType,
+                                                             @Nullable String clientCertificateKeyStorePassword) throws SSLParamsException {
+    String key = clientCertificateKeyStoreUrl + "\n" + clientCertificateKeyStoreType + "\n" + digest(clientCertificateKeyStorePassword);
+    String stamp = keyStoreStamp(clientCertificateKeyStoreUrl);
+    synchronized (contexts) {
+      CachedContext cached = contexts.get(key);
+      if (cached != null && cached.stamp.equals(stamp)) return cached.context;
+      SSLContext context = getTrustEverybodySSLContext(clientCertificateKeyStoreUrl, clientCertificateKeyStoreType, clientCertificateKeyStorePassword);
+      contexts.put(key, new CachedContext(context, stamp));
+      return context;
+    }
+  }
+
+  /**
+   * Password is kept in the cache key only as a digest
+   */
+  @NotNull
+  private static String digest(@Nullable String password) {
+    if (password == null) return "";
+    try {
+      byte[] hash = MessageDigest.getInstance("SHA-256").digest(password.getBytes(StandardCharsets.UTF_8));
+      return Base64.getEncoder().encodeToString(hash);
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * @return modification time and size of a keystore file, empty string for other URLs
+   */
+  @NotNull
+  static String keyStoreStamp(@Nullable String clientCertificateKeyStoreUrl) {
+    if (isNullOrEmpty(clientCertificateKeyStoreUrl) || !clientCertificateKeyStoreUrl.startsWith("file:")) return "";
+    File file;
+    try {
+      // URI decodes escaped characters of the path, e.g. %20
+      file = new File(new URL(clientCertificateKeyStoreUrl).toURI());
+    }
+    catch (MalformedURLException | URISyntaxException | IllegalArgumentException e) {
+      return "";
+    }
+    return file.lastModified() + "/" + file.length();
+  }
+
   public static SSLContext getTrustEverybodySSLContext(String clientCertificateKeyStoreUrl, String clientCertificateKeyStoreType, String clientCertificateKeyStorePassword) throws SSLParamsException {
     KeyManagerFactory kmf;
     KeyManager[] kms = null;
@@ -96,6 +160,16 @@ public class SSLUtil {
     }
   }
 
+  private static final class CachedContext {
+    final SSLContext context;
+    final String stamp;
+
+    CachedContext(@NotNull SSLContext context, @NotNull String stamp) {
+      this.context = context;
+      this.stamp = stamp;
+    }
+  }
+
   public static class SSLParamsException extends SQLException {
     public SSLParamsException(String message, Throwable cause) {
       super(message, cause);
@@ -0,0 +1,431 @@
+package com.dbschema.mongo;
+
+import com.dbschema.mongo.batch.AdaptiveBatchCursor;
+import com.mongodb.ReadConcern;
+import com.mongodb.ReadPreference;
+import com.mongodb.client.AggregateIterable;
+import com.mongodb.client.ClientSession;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Filters;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.conversions.Bson;
+import org.bson.json.JsonParseException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * {@code find} or {@code aggregate} statement whose arguments are plain JSON, so it can be executed
+ * with the driver instead of the shell.
+ * <p>
+ * Supported forms are {@code db.<collection>.find(<filter>, <projection>)} followed by any of
+ * {@code .sort()}, {@code .skip()}, {@code .limit()} and {@code .projection()}, and
+ * {@code db.<collection>.aggregate([<stages>], <options>)} where options are any of {@code allowDiskUse}, {@code maxTimeMS},
+ * {@code bypassDocumentValidation}, {@code comment} and {@code hint} document.
+ * Arguments are parsed with the driver JSON reader, which understands shell helpers like
+ * {@code ObjectId("...")} and {@code ISODate("...")}.
+ */
+public class ShellQuery {
+  private static final Pattern CHAINED_METHOD = Pattern.compile("\\s*\\.\\s*(\\w+)\\s*\\(");
+  /**
+   * Aggregate options that are applied by {@link #open}, statements with other options are left to the shell
+   */
+  private static final Set<String> AGGREGATE_OPTIONS = new HashSet<>(Arrays.asList(
+      "allowDiskUse", "maxTimeMS", "bypassDocumentValidation", "comment", "hint"));
+
+  public final String collection;
+  /**
+   * Stages of aggregation or null for find
+   */
+  @Nullable
+  public final List<Document> pipeline;
+  @NotNull
+  public final Document options;
+  @NotNull
+  public final Document filter;
+  @Nullable
+  public final Document projection;
+  @Nullable
+  public final Document sort;
+  public final int skip;
+  public final int limit;
+  /**
+   * Text the statement was parsed from
+   */
+  private final String statement;
+
+  private ShellQuery(@NotNull String statement, @NotNull String collection, @Nullable List<Document> pipeline, @NotNull Document options,
+                     @NotNull Document filter, @Nullable Document projection, @Nullable Document sort, int skip, int limit) {
+    this.statement = statement;
+    this.collection = collection;
+    this.pipeline = pipeline;
+    this.options = options;
+    this.filter = filter;
+    this.projection = projection;
+    this.sort = sort;
+    this.skip = skip;
+    this.limit = limit;
+  }
+
+  public boolean isAggregate() {
+    return pipeline != null;
+  }
+
+  /**
+   * @param maxRows 0 or negative for no limit
+   * @return statement that returns at most {@code maxRows} documents: limit of find is capped and {@code $limit}
+   * is appended to aggregation. Aggregation that ends with {@code $out} or {@code $merge} is returned as is.
+   */
+  @NotNull
+  public ShellQuery withMaxRows(int maxRows) {
+    if (maxRows <= 0) return this;
+    if (pipeline != null) {
+      if (!pipeline.isEmpty()) {
+        Document last = pipeline.get(pipeline.size() - 1);
+        if (last.containsKey("$out") || last.containsKey("$merge")) return this;
+      }
+      List<Document> limited = new ArrayList<>(pipeline);
+      limited.add(new Document("$limit", maxRows));
+      return new ShellQuery(statement, collection, limited, options, filter, projection, sort, skip, limit);
+    }
+    if (limit != 0 && Math.abs(limit) <= maxRows) return this;
+    // negative limit asks for a single batch
+    return new ShellQuery(statement, collection, null, options, filter, projection, sort, skip, limit < 0 ? -maxRows : maxRows);
+  }
+
+  /**
+   * Applies {@link #withMaxRows} to the text of the statement, so the shell gets values exactly as they were written:
+   * {@code .limit(n)} is appended to find and {@code {$limit: n}} is added as the last stage of aggregation
+   *
+   * @return statement as it was parsed if the limit changes nothing
+   */
+  @NotNull
+  public String toShell(int maxRows) {
+    ShellQuery limited = withMaxRows(maxRows);
+    if (limited == this) return statement;
+    String text = Util.trimEnd(statement.trim(), ';').trim();
+    if (pipeline == null) return text + ".limit(" + limited.limit + ")";
+    int start = indexOfOutsideStrings(text, '[');
+    int end = start < 0 ? -1 : findClosingBracket(text, start + 1, ']');
+    if (end < 0) return statement;
+    int insert = end;
+    while (insert > start + 1 && Character.isWhitespace(text.charAt(insert - 1))) insert--;
+    char previous = text.charAt(insert - 1);
+    String separator = previous == '[' || previous == ',' ? "" : ", ";
+    return text.substring(0, insert) + separator + "{$limit: " + maxRows + "}" + text.substring(insert);
+  }
+
+  /**
+   * Executes the statement with the driver
+   *
+   * @param fetchSize batch size, {@link AdaptiveBatchCursor#ADAPTIVE_FETCH_SIZE} for adaptive batches,
+   *                  another value that is not positive leaves the server default
+   */
+  @NotNull
+  public MongoCursor<Document> open(@NotNull MongoDatabase database, int fetchSize) {
+    return open(database, Document.class, fetchSize);
+  }
+
+  @NotNull
+  public <T> MongoCursor<T> open(@NotNull MongoDatabase database, @NotNull Class<T> documentClass, int fetchSize) {
+    return open(null, database, documentClass, fetchSize);
+  }
+
+  /**
+   * @param session if present, find cursor does not time out on the server and is kept while the session is refreshed
+   */
+  @NotNull
+  public <T> MongoCursor<T> open(@Nullable ClientSession session, @NotNull MongoDatabase database, @NotNull Class<T> documentClass,
+                                 int fetchSize) {
+    if (fetchSize == AdaptiveBatchCursor.ADAPTIVE_FETCH_SIZE && isAdaptive(database)) {
+      Document command = pipeline != null ? aggregateCommand() : findCommand(database, filter, sort, skip, limit, session != null);
+      return openAdaptive(session, database, documentClass, command);
+    }
+    MongoCollection<T> mongoCollection = database.getCollection(collection, documentClass);
+    if (pipeline != null) {
+      AggregateIterable<T> iterable = session == null ? mongoCollection.aggregate(pipeline) : mongoCollection.aggregate(session, pipeline);
+      Boolean allowDiskUse = options.getBoolean("allowDiskUse");
+      if (allowDiskUse != null) iterable.allowDiskUse(allowDiskUse);
+      Number maxTimeMS = options.get("maxTimeMS", Number.class);
+      if (maxTimeMS != null) iterable.maxTime(maxTimeMS.longValue(), TimeUnit.MILLISECONDS);
+      Boolean bypassDocumentValidation = options.getBoolean("bypassDocumentValidation");
+      if (bypassDocumentValidation != null) iterable.bypassDocumentValidation(bypassDocumentValidation);
+      String comment = options.getString("comment");
+      if (comment != null) iterable.comment(comment);
+      Document hint = options.get("hint", Document.class);
+      if (hint != null) iterable.hint(hint);
+      if (fetchSize > 0) iterable.batchSize(fetchSize);
+      return iterable.cursor();
+    }
+    FindIterable<T> iterable = (session == null ? mongoCollection.find(filter) : mongoCollection.find(session, filter)).skip(skip).limit(limit);
+    if (session != null) iterable.noCursorTimeout(true);
+    if (projection != null) iterable.projection(projection);
+    if (sort != null) iterable.sort(sort);
+    if (fetchSize > 0) iterable.batchSize(fetchSize);
+    return iterable.cursor();
+  }
+
+  /**
+   * Batches can be sized one by one (see {@link AdaptiveBatchCursor}) if every command of the cursor reaches the same
+   * server, i.e. the primary, and the statement reads: single batch finds and aggregations into a collection
+   * are executed as usual
+   */
+  public boolean isAdaptive(@NotNull MongoDatabase database) {
+    if (database.getReadPreference().isSlaveOk() || limit < 0) return false;
+    if (pipeline == null || pipeline.isEmpty()) return true;
+    Document last = pipeline.get(pipeline.size() - 1);
+    return !last.containsKey("$out") && !last.containsKey("$merge");
+  }
+
+  @NotNull
+  private static <T> AdaptiveBatchCursor<T> openAdaptive(@Nullable ClientSession session, @NotNull MongoDatabase database,
+                                                         @NotNull Class<T> documentClass, @NotNull Document command) {
+    ReadConcern readConcern = database.getReadConcern();
+    if (!readConcern.isServerDefault()) command.append("readConcern", readConcern.asDocument());
+    ReadPreference readPreference = database.getReadPreference();
+    return new AdaptiveBatchCursor<>(command, c -> session == null
+                                                   ? database.runCommand(c, readPreference, RawBsonDocument.class)
+                                                   : database.runCommand(session, c, readPreference, RawBsonDocument.class),
+                                     database.getCodecRegistry().get(documentClass));
+  }
+
+  @NotNull
+  private Document aggregateCommand() {
+    Document command = new Document("aggregate", collection).append("pipeline", pipeline);
+    // options that are applied by the driver have the names of the command fields
+    for (String option : AGGREGATE_OPTIONS) {
+      if (options.containsKey(option)) command.append(option, options.get(option));
+    }
+    return command;
+  }
+
+  /**
+   * @param limit 0 for no limit
+   */
+  @NotNull
+  private Document findCommand(@NotNull MongoDatabase database, @NotNull Bson filter, @Nullable Document sort, int skip, int limit,
+                               boolean noCursorTimeout) {
+    Document command = new Document("find", collection).append("filter", filter.toBsonDocument(Document.class, database.getCodecRegistry()));
+    if (projection != null) command.append("projection", projection);
+    if (sort != null) command.append("sort", sort);
+    if (skip > 0) command.append("skip", skip);
+    if (limit > 0) command.append("limit", limit);
+    if (noCursorTimeout) command.append("noCursorTimeout", true);
+    return command;
+  }
+
+  /**
+   * Find sorted by {@code _id} that continues after {@code lastId}, skip applies only to the first query
+   *
+   * @param documents maximum number of documents, 0 for no limit
+   */
+  @NotNull
+  private <T> FindIterable<T> findAfter(@NotNull MongoCollection<T> mongoCollection, @Nullable Object lastId, int documents) {
+    FindIterable<T> iterable = mongoCollection.find(filterAfter(lastId)).sort(new Document("_id", idSortDirection()))
+        .skip(lastId == null ? skip : 0).limit(documents);
+    if (projection != null) iterable.projection(projection);
+    return iterable;
+  }
+
+  @NotNull
+  private Bson filterAfter(@Nullable Object lastId) {
+    if (lastId == null) return filter;
+    return Filters.and(filter, idSortDirection() > 0 ? Filters.gt("_id", lastId) : Filters.lt("_id", lastId));
+  }
+
+  /**
+   * Find that returns {@code _id} and is either sorted by {@code _id} only or has neither filter nor sort,
+   * see {@link ResumableCursor}. A filtered find is not sorted by {@code _id} implicitly, because the sort
+   * may make the server scan the {@code _id} index instead of the index of the filter.
+   */
+  public boolean isResumable() {
+    if (pipeline != null || limit < 0) return false;
+    if (sort == null ? !filter.isEmpty() : sort.size() != 1 || idSortDirection() == 0) return false;
+    Object idProjection = projection == null ? null : projection.get("_id");
+    return !(Boolean.FALSE.equals(idProjection) || idProjection instanceof Number && ((Number) idProjection).intValue() == 0);
+  }
+
+  private int idSortDirection() {
+    Object direction = sort == null ? 1 : sort.get("_id");
+    return direction instanceof Number ? Integer.signum(((Number) direction).intValue()) : 0;
+  }
+
+  /**
+   * Executes the find sorted by {@code _id}, the query is sent again after failover
+   *
+   * @throws IllegalStateException if the statement is not {@link #isResumable()}
+   */
+  @NotNull
+  public <T extends Map<String, ?>> ResumableCursor<T> openResumable(@NotNull MongoDatabase database, @NotNull Class<T> documentClass,
+                                                                    int fetchSize, int maxRetries) {
+    if (!isResumable()) throw new IllegalStateException("Statement cannot be resumed");
+    MongoCollection<T> mongoCollection = database.getCollection(collection, documentClass);
+    return new ResumableCursor<>((lastId, delivered) -> {
+      if (limit > 0 && delivered >= limit) return null;
+      int documents = limit > 0 ? (int) (limit - delivered) : 0;
+      if (fetchSize == AdaptiveBatchCursor.ADAPTIVE_FETCH_SIZE && isAdaptive(database)) {
+        Document command = findCommand(database, filterAfter(lastId), new Document("_id", idSortDirection()), lastId == null ? skip : 0,
+                                       documents, false);
+        return openAdaptive(null, database, documentClass, command);
+      }
+      FindIterable<T> iterable = findAfter(mongoCollection, lastId, documents);
+      if (fetchSize > 0) iterable.batchSize(fetchSize);
+      return iterable.cursor();
+    }, maxRetries);
+  }
+
+  /**
+   * @return null if statement is not a find or aggregate with JSON arguments
+   */
+  @Nullable
+  public static ShellQuery parse(@NotNull String statement) {
+    ShellStatement shellStatement = ShellStatement.parse(statement);
+    if (!shellStatement.isRead() || shellStatement.collection == null || shellStatement.arguments == null) return null;
+    String arguments = shellStatement.arguments;
+    int end = findClosingParenthesis(arguments, 0);
+    if (end < 0) return null;
+    List<Object> args = parseArguments(arguments.substring(0, end));
+    if (args == null) return null;
+    String chain = arguments.substring(end + 1);
+    try {
+      if ("aggregate".equals(shellStatement.method)) {
+        if (!chain.trim().isEmpty() || args.isEmpty() || args.size() > 2 || !(args.get(0) instanceof List)) return null;
+        List<Document> pipeline = new ArrayList<>();
+        for (Object stage : (List<?>) args.get(0)) {
+          pipeline.add((Document) stage);
+        }
+        Document options = args.size() > 1 ? (Document) args.get(1) : new Document();
+        if (!isSupported(options)) return null;
+        return new ShellQuery(statement, shellStatement.collection, pipeline, options, new Document(), null, null, 0, 0);
+      }
+      if (!"find".equals(shellStatement.method) || args.size() > 2) return null;
+      Document filter = args.isEmpty() || args.get(0) == null ? new Document() : (Document) args.get(0);
+      Document projection = args.size() > 1 ? (Document) args.get(1) : null;
+      Document sort = null;
+      int skip = 0;
+      int limit = 0;
+      int i = 0;
+      while (i < chain.length()) {
+        Matcher matcher = CHAINED_METHOD.matcher(chain);
+        if (!matcher.find(i) || matcher.start() != i) return null;
+        int argumentsEnd = findClosingParenthesis(chain, matcher.end());
+        if (argumentsEnd < 0) return null;
+        List<Object> methodArgs = parseArguments(chain.substring(matcher.end(), argumentsEnd));
+        if (methodArgs == null || methodArgs.size() != 1) return null;
+        Object arg = methodArgs.get(0);
+        switch (matcher.group(1)) {
+          case "sort":
+            sort = (Document) arg;
+            break;
+          case "projection":
+            projection = (Document) arg;
+            break;
+          case "skip":
+            skip = ((Number) arg).intValue();
+            break;
+          case "limit":
+            limit = ((Number) arg).intValue();
+            break;
+          default:
+            return null;
+        }
+        i = argumentsEnd + 1;
+        while (i < chain.length() && Character.isWhitespace(chain.charAt(i))) i++;
+      }
+      return new ShellQuery(statement, shellStatement.collection, null, new Document(), filter, projection, sort, skip, limit);
+    }
+    catch (ClassCastException e) {
+      return null;
+    }
+  }
+
+  /**
+   * @return false if {@link #open} cannot apply all options, e.g. hint by index name
+   */
+  private static boolean isSupported(@NotNull Document aggregateOptions) {
+    if (!AGGREGATE_OPTIONS.containsAll(aggregateOptions.keySet())) return false;
+    try {
+      aggregateOptions.getBoolean("allowDiskUse");
+      aggregateOptions.get("maxTimeMS", Number.class);
+      aggregateOptions.getBoolean("bypassDocumentValidation");
+      aggregateOptions.getString("comment");
+      aggregateOptions.get("hint", Document.class);
+      return true;
+    }
+    catch (ClassCastException e) {
+      return false;
+    }
+  }
+
+  @Nullable
+  private static List<Object> parseArguments(@NotNull String arguments) {
+    if (arguments.trim().isEmpty()) return Collections.emptyList();
+    try {
+      // getList(key, Object.class) cannot be used, it fails on null arguments
+      List<?> parsed = Document.parse("{\"arguments\": [" + arguments + "]}").get("arguments", List.class);
+      return new ArrayList<>(parsed);
+    }
+    catch (JsonParseException | IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  private static int indexOfOutsideStrings(@NotNull String text, char c) {
+    int i = 0;
+    while (i < text.length()) {
+      char ch = text.charAt(i);
+      if (ch == '"' || ch == '\'' || ch == '`') {
+        i = StatementText.skipString(text, i);
+        continue;
+      }
+      if (ch == c) return i;
+      i++;
+    }
+    return -1;
+  }
+
+  /**
+   * @param start index of the first char after the opening parenthesis
+   * @return index of the matching closing parenthesis or -1
+   */
+  private static int findClosingParenthesis(@NotNull String text, int start) {
+    return findClosingBracket(text, start, ')');
+  }
+
+  /**
+   * @param start index of the first char after the opening bracket
+   * @return index of the matching closing bracket or -1
+   */
+  private static int findClosingBracket(@NotNull String text, int start, char closing) {
+    int depth = 0;
+    int i = start;
+    while (i < text.length()) {
+      char c = text.charAt(i);
+      if (c == '"' || c == '\'' || c == '`') {
+        i = StatementText.skipString(text, i);
+        continue;
+      }
+      if (c == '(' || c == '[' || c == '{') depth++;
+      else if (c == ')' || c == ']' || c == '}') {
+        if (depth == 0) return c == closing ? i : -1;
+        depth--;
+      }
+      i++;
+    }
+    return -1;
+  }
+}
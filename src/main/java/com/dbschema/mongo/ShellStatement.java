@@ -0,0 +1,97 @@
+package com.dbschema.mongo;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Shallow description of a mongosh statement: which collection it targets and whether it reads or writes.
+ * Only statements of the form {@code db.<collection>.<method>(...)} and
+ * {@code db.getCollection('<collection>').<method>(...)} are recognized, everything else is {@link Kind#OTHER}.
+ */
+public class ShellStatement {
+  private static final Pattern COLLECTION_METHOD = Pattern.compile(
+      "db\\s*\\.\\s*(?:getCollection\\s*\\(\\s*(['\"])(.+?)\\1\\s*\\)|([\\w$]+))\\s*\\.\\s*(\\w+)\\s*\\((.*)", Pattern.DOTALL);
+  private static final Pattern WRITE_METHOD_ANYWHERE = Pattern.compile(
+      "\\.\\s*(insert\\w*|update\\w*|delete\\w*|replaceOne|remove|save|bulkWrite|findOneAnd\\w+|findAndModify|drop\\w*|" +
+          "renameCollection|create\\w*|runCommand|adminCommand|getSiblingDB)\\s*\\(|\\$out\\b|\\$merge\\b");
+  /**
+   * JSON reader accepts these and evaluates them to the current time
+   */
+  private static final Pattern CURRENT_TIME = Pattern.compile("\\b(?:Date|ISODate)\\s*\\(\\s*\\)");
+  private static final Pattern PIPELINE_OUTPUT = Pattern.compile("['\"]?\\$(out|merge)['\"]?\\s*:");
+
+  private static final Set<String> READ_METHODS = new HashSet<>(Arrays.asList(
+      "find", "findOne", "aggregate", "count", "countDocuments", "estimatedDocumentCount", "distinct"));
+  private static final Set<String> WRITE_METHODS = new HashSet<>(Arrays.asList(
+      "insert", "insertOne", "insertMany", "update", "updateOne", "updateMany", "replaceOne", "deleteOne", "deleteMany",
+      "remove", "save", "bulkWrite", "findOneAndUpdate", "findOneAndReplace", "findOneAndDelete", "findAndModify",
+      "drop", "renameCollection", "createIndex", "createIndexes", "dropIndex", "dropIndexes", "mapReduce"));
+
+  public enum Kind {READ, WRITE, OTHER}
+
+  public final String text;
+  public final Kind kind;
+  @Nullable
+  public final String collection;
+  @Nullable
+  public final String method;
+  /**
+   * Text that follows the opening parenthesis of {@link #method}
+   */
+  @Nullable
+  public final String arguments;
+  /**
+   * True if the statement may modify collections that cannot be derived from the statement text,
+   * e.g. aggregation with $out stage or database command
+   */
+  public final boolean hasUnknownWrites;
+
+  private ShellStatement(@NotNull String text, @NotNull Kind kind, @Nullable String collection, @Nullable String method,
+                         @Nullable String arguments, boolean hasUnknownWrites) {
+    this.text = text;
+    this.kind = kind;
+    this.collection = collection;
+    this.method = method;
+    this.arguments = arguments;
+    this.hasUnknownWrites = hasUnknownWrites;
+  }
+
+  /**
+   * Result of a read may be cached only if all its arguments are literal JSON (see {@link ShellQuery}).
+   * Reads with JS variables, {@code new Date()} or other expressions give another result on every evaluation.
+   */
+  public static boolean isCacheable(@NotNull ShellStatement statement, @NotNull String query) {
+    return statement.isRead() && statement.collection != null && !CURRENT_TIME.matcher(statement.text).find() &&
+           ShellQuery.parse(query) != null;
+  }
+
+  @NotNull
+  public static ShellStatement parse(@NotNull String statement) {
+    String text = StatementText.canonical(statement);
+    boolean writesAnywhere = WRITE_METHOD_ANYWHERE.matcher(text).find();
+    Matcher matcher = COLLECTION_METHOD.matcher(text);
+    if (!matcher.matches() || StatementText.containsOutsideLiterals(text, ';')) {
+      return new ShellStatement(text, Kind.OTHER, null, null, null, writesAnywhere);
+    }
+    String collection = matcher.group(2) != null ? matcher.group(2) : matcher.group(3);
+    String method = matcher.group(4);
+    String arguments = matcher.group(5);
+    if (method.equals("aggregate") && PIPELINE_OUTPUT.matcher(arguments).find()) {
+      return new ShellStatement(text, Kind.WRITE, collection, method, arguments, true);
+    }
+    Kind kind = READ_METHODS.contains(method) ? Kind.READ : WRITE_METHODS.contains(method) ? Kind.WRITE : Kind.OTHER;
+    // e.g. db.a.find().forEach(d => db.b.insertOne(d))
+    boolean unknownWrites = kind == Kind.OTHER ? writesAnywhere : WRITE_METHOD_ANYWHERE.matcher(arguments).find();
+    return new ShellStatement(text, kind, collection, method, arguments, unknownWrites);
+  }
+
+  public boolean isRead() {
+    return kind == Kind.READ && !hasUnknownWrites;
+  }
+}
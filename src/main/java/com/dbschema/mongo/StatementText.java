@@ -0,0 +1,146 @@
+package com.dbschema.mongo;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Helpers that turn statement text into stable strings that can be used in logs and as keys.
+ */
+public class StatementText {
+  private static final char PLACEHOLDER = '?';
+
+  private StatementText() {
+  }
+
+  /**
+   * Replaces string and number literals with {@code ?} and collapses whitespace, so statements that differ
+   * only in their arguments are reported as one statement.
+   * Quoted object keys are kept as is: {@code {"name": "x"}} becomes {@code {"name": ?}}.
+   */
+  @NotNull
+  public static String normalize(@NotNull String statement) {
+    StringBuilder sb = new StringBuilder(statement.length());
+    int length = statement.length();
+    int i = 0;
+    while (i < length) {
+      char c = statement.charAt(i);
+      if (c == '"' || c == '\'' || c == '`') {
+        int end = skipString(statement, i);
+        if (isKey(statement, end)) sb.append(statement, i, end);
+        else appendPlaceholder(sb);
+        i = end;
+      }
+      else if (isNumberStart(statement, i)) {
+        int end = skipNumber(statement, i);
+        if (isKey(statement, end)) sb.append(statement, i, end);
+        else appendPlaceholder(sb);
+        i = end;
+      }
+      else if (Character.isWhitespace(c)) {
+        while (i < length && Character.isWhitespace(statement.charAt(i))) i++;
+        if (sb.length() > 0 && i < length) sb.append(' ');
+      }
+      else {
+        sb.append(c);
+        i++;
+      }
+    }
+    return Util.trimEnd(sb.toString().trim(), ';').trim();
+  }
+
+  /**
+   * Collapses whitespace outside of string literals and removes trailing semicolons.
+   * Unlike {@link #normalize(String)} literals are kept, so two statements have the same canonical text
+   * only if they return the same data.
+   */
+  @NotNull
+  public static String canonical(@NotNull String statement) {
+    StringBuilder sb = new StringBuilder(statement.length());
+    int length = statement.length();
+    int i = 0;
+    while (i < length) {
+      char c = statement.charAt(i);
+      if (c == '"' || c == '\'' || c == '`') {
+        int end = skipString(statement, i);
+        sb.append(statement, i, end);
+        i = end;
+      }
+      else if (Character.isWhitespace(c)) {
+        while (i < length && Character.isWhitespace(statement.charAt(i))) i++;
+        if (sb.length() > 0 && i < length) sb.append(' ');
+      }
+      else {
+        sb.append(c);
+        i++;
+      }
+    }
+    return Util.trimEnd(sb.toString().trim(), ';').trim();
+  }
+
+  public static boolean containsOutsideLiterals(@NotNull String text, char c) {
+    int i = 0;
+    while (i < text.length()) {
+      char ch = text.charAt(i);
+      if (ch == '"' || ch == '\'' || ch == '`') i = skipString(text, i);
+      else if (ch == c) return true;
+      else i++;
+    }
+    return false;
+  }
+
+  /**
+   * @return index of the first char after string literal that starts at {@code start}
+   */
+  static int skipString(@NotNull String text, int start) {
+    char quote = text.charAt(start);
+    int i = start + 1;
+    while (i < text.length()) {
+      char c = text.charAt(i);
+      if (c == '\\') i += 2;
+      else if (c == quote) return i + 1;
+      else i++;
+    }
+    return text.length();
+  }
+
+  private static boolean isNumberStart(@NotNull String text, int i) {
+    char c = text.charAt(i);
+    boolean digit = c >= '0' && c <= '9';
+    boolean signedDigit = (c == '-' || c == '.') && i + 1 < text.length() && Character.isDigit(text.charAt(i + 1));
+    if (!digit && !signedDigit) return false;
+    if (i == 0) return true;
+    char prev = text.charAt(i - 1);
+    // digits that are part of identifiers (e.g. db.collection1) are not literals
+    return !Character.isLetterOrDigit(prev) && prev != '_' && prev != '$' && (c != '.' || prev != ')');
+  }
+
+  private static int skipNumber(@NotNull String text, int start) {
+    int i = start + 1;
+    while (i < text.length()) {
+      char c = text.charAt(i);
+      if (Character.isLetterOrDigit(c) || c == '.' || ((c == '-' || c == '+') && (text.charAt(i - 1) == 'e' || text.charAt(i - 1) == 'E'))) i++;
+      else break;
+    }
+    return i;
+  }
+
+  private static boolean isKey(@NotNull String text, int end) {
+    int i = end;
+    while (i < text.length() && Character.isWhitespace(text.charAt(i))) i++;
+    return i < text.length() && text.charAt(i) == ':';
+  }
+
+  private static void appendPlaceholder(@NotNull StringBuilder sb) {
+    // collapse lists of literals, e.g. {$in: [1, 2, 3]} -> {$in: [?]}
+    int i = sb.length() - 1;
+    while (i >= 0 && sb.charAt(i) == ' ') i--;
+    if (i >= 1 && sb.charAt(i) == ',') {
+      int j = i - 1;
+      while (j >= 0 && sb.charAt(j) == ' ') j--;
+      if (j >= 0 && sb.charAt(j) == PLACEHOLDER) {
+        sb.setLength(j + 1);
+        return;
+      }
+    }
+    sb.append(PLACEHOLDER);
+  }
+}
@@ -11,6 +11,9 @@ import org.jetbrains.annotations.Nullable;
 
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.sql.ResultSet;
 import java.util.*;
 import java.util.function.Function;
@@ -116,6 +119,19 @@ public class Util {
     return bson == null ? null : getDefaultCodecRegistry().get(Document.class).decode(bson.asBsonReader(), DecoderContext.builder().build());
   }
 
+  /**
+   * @return the map itself if it is a document, otherwise a document with the same entries and keys converted to strings
+   */
+  @NotNull
+  public static Document toDocument(@NotNull Map<?, ?> map) {
+    if (map instanceof Document) return (Document) map;
+    Document document = new Document();
+    for (Map.Entry<?, ?> entry : map.entrySet()) {
+      document.put(String.valueOf(entry.getKey()), entry.getValue());
+    }
+    return document;
+  }
+
   @Nullable
   @Contract("!null -> !null")
   public static Object decode(@Nullable BsonValue bson) {
@@ -233,6 +249,31 @@ public class Util {
         c >= 'A' && c <= 'F';
   }
 
+  /**
+   * Static registries that are shared by connections use the digest in their keys,
+   * so connections with different secrets do not share state and secrets are not kept in the key
+   *
+   * @return hex SHA-256 of the values
+   */
+  @NotNull
+  public static String digest(@Nullable String... values) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      for (String value : values) {
+        digest.update(String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+      }
+      StringBuilder hex = new StringBuilder();
+      for (byte b : digest.digest()) {
+        hex.append(String.format("%02x", b));
+      }
+      return hex.toString();
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
   @NotNull
   public static String trimEnd(@NotNull String str, char end) {
     int i = str.length() - 1;
@@ -248,6 +289,23 @@ public class Util {
     return value == null || value.isEmpty();
   }
 
+  public static int getIntProperty(@NotNull Properties prop, @NotNull String name, int defaultValue) {
+    String str = prop.getProperty(name);
+    if (isNullOrEmpty(str)) return defaultValue;
+    try {
+      return Integer.parseInt(str.trim());
+    }
+    catch (NumberFormatException e) {
+      System.err.println("WARNING: cannot parse value of " + name + " driver property: " + str);
+    }
+    return defaultValue;
+  }
+
+  public static boolean getBooleanProperty(@NotNull Properties prop, @NotNull String name, boolean defaultValue) {
+    String str = prop.getProperty(name);
+    return isNullOrEmpty(str) ? defaultValue : isTrue(str.trim());
+  }
+
   @NotNull
   public static String escapeChars(@NotNull final String str, final char... character) {
     final StringBuilder buf = new StringBuilder(str);
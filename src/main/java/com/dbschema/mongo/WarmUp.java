@@ -0,0 +1,124 @@
+package com.dbschema.mongo;
+
+import com.mongodb.MongoCommandException;
+import com.mongodb.client.MongoDatabase;
+import org.bson.Document;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.sql.SQLException;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Work that a new connection does in background, so that {@link MongoJdbcDriver#connect} returns immediately
+ * and the first statements do not pay for it.
+ * <p>
+ * Steps are listed in {@code warm_up_steps} property and run in the order of {@link Step}. A step that fails
+ * is reported and the next one is started, the statement that needs the same resource will fail with the actual error.
+ */
+class WarmUp implements Runnable {
+  enum Step {
+    /**
+     * Opens {@code min_connection_pool_size} connections of the statement pool
+     */
+    POOL,
+    /**
+     * Fetches {@link com.dbschema.mongo.discovery.ServerCapabilities} and completes the handshake with {@code hello}
+     */
+    SERVER_INFO,
+    /**
+     * Creates JS context of the shell
+     */
+    SHELL,
+    /**
+     * Samples collections of the default database into the schema cache
+     */
+    SCHEMA
+  }
+
+  private final MongoConnection connection;
+  private final Set<Step> steps;
+
+  private WarmUp(@NotNull MongoConnection connection, @NotNull Set<Step> steps) {
+    this.connection = connection;
+    this.steps = steps;
+  }
+
+  /**
+   * @param value comma separated step names, {@code all} for every step
+   * @throws SQLException if a step is unknown
+   */
+  @NotNull
+  static Set<Step> parseSteps(@Nullable String value) throws SQLException {
+    EnumSet<Step> steps = EnumSet.noneOf(Step.class);
+    if (value == null) return steps;
+    for (String name : value.split(",")) {
+      name = name.trim();
+      if (name.isEmpty()) continue;
+      if (name.equalsIgnoreCase("all")) return EnumSet.allOf(Step.class);
+      try {
+        steps.add(Step.valueOf(name.toUpperCase(Locale.ENGLISH)));
+      }
+      catch (IllegalArgumentException e) {
+        throw new SQLException("Unknown warm-up step: " + name);
+      }
+    }
+    return steps;
+  }
+
+  /**
+   * @return null if there is nothing to do
+   */
+  @Nullable
+  static Thread start(@NotNull MongoConnection connection, @NotNull Set<Step> steps) {
+    if (steps.isEmpty()) return null;
+    Thread thread = new Thread(new WarmUp(connection, steps), "MongoJdbc warm-up");
+    thread.setDaemon(true);
+    thread.start();
+    return thread;
+  }
+
+  @Override
+  public void run() {
+    for (Step step : steps) {
+      if (Thread.currentThread().isInterrupted() || connection.isClosed()) return;
+      try {
+        run(step);
+      }
+      catch (Exception e) {
+        if (Thread.currentThread().isInterrupted() || connection.isClosed()) return;
+        System.err.println("WARNING: warm-up step " + step.name().toLowerCase(Locale.ENGLISH) + " failed. " + e);
+      }
+    }
+  }
+
+  private void run(@NotNull Step step) throws Exception {
+    MongoService service = connection.getService();
+    switch (step) {
+      case POOL:
+        // driver opens the rest of minSize connections once the cluster is discovered
+        service.getMongoClient().getDatabase("admin").runCommand(new Document("ping", 1));
+        break;
+      case SERVER_INFO:
+        service.getCapabilities();
+        MongoDatabase admin = service.getMongoClient().getDatabase("admin");
+        try {
+          admin.runCommand(new Document("hello", 1));
+        }
+        catch (MongoCommandException e) { // servers before 4.4.2
+          admin.runCommand(new Document("isMaster", 1));
+        }
+        break;
+      case SHELL:
+        MongoScriptEngine engine = connection.getScriptEngine();
+        if (engine != null) engine.warmUp();
+        break;
+      case SCHEMA:
+        String schema = connection.getSchema();
+        if (schema != null) service.getMetaCollections(Util.escapeChars(schema, '\\', '_', '%'), null);
+        break;
+    }
+  }
+}
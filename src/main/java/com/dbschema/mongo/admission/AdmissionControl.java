@@ -0,0 +1,213 @@
+package com.dbschema.mongo.admission;
+
+import com.mongodb.MongoExecutionTimeoutException;
+import com.mongodb.MongoNodeIsRecoveringException;
+import com.mongodb.MongoNotPrimaryException;
+import com.mongodb.MongoSocketException;
+import com.mongodb.MongoTimeoutException;
+import com.mongodb.client.MongoClient;
+import org.bson.Document;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.SQLTransientException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits concurrent statements and rejects statements while the cluster is failing, so that application threads
+ * fail fast instead of waiting for server selection timeout.
+ * <p>
+ * Concurrency limit adapts with AIMD (see {@link AimdLimiter}), statements above the limit are rejected with
+ * {@link SQLTransientException}. Circuit breaker (see {@link CircuitBreaker}) counts timeouts, network errors,
+ * not-primary errors and slow statements; while it is open statements are rejected with
+ * {@link SQLTransientConnectionException} and the cluster is pinged in background.
+ * <p>
+ * One instance is shared by all connections that use the same URL, user and settings, see {@link #retain}.
+ * A ticket is held until the result set of the statement is read to the end, fails or is closed, because every batch
+ * of an open cursor loads the cluster too. Tickets of abandoned result sets expire after {@link #TICKET_TIMEOUT_MILLIS}.
+ */
+public class AdmissionControl {
+  // USE STATIC SO CONNECTIONS TO THE SAME CLUSTER SHARE LIMITS
+  private static final Map<String, AdmissionControl> controls = new HashMap<>();
+  private static final ScheduledThreadPoolExecutor timers = new ScheduledThreadPoolExecutor(1, r -> {
+    Thread thread = new Thread(r, "MongoJdbc admission control");
+    thread.setDaemon(true);
+    return thread;
+  });
+  /**
+   * Server kills cursors that are idle for 10 minutes by default, a ticket is not held longer
+   */
+  static final long TICKET_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+  static {
+    // every ticket schedules its expiry, completed tickets must not pile up in the queue
+    timers.setRemoveOnCancelPolicy(true);
+  }
+
+  private final String key;
+  private int references = 0;
+  private final AimdLimiter limiter;
+  private final CircuitBreaker breaker;
+  private final long slowNanos;
+  private final long openMillis;
+  private final long ticketTimeoutMillis;
+  private final AtomicLong rejected = new AtomicLong();
+  /**
+   * Client of the connection that executed the last statement. It may be closed by the time of the probe
+   */
+  private volatile MongoClient probeClient;
+
+  /**
+   * @param maxConcurrent upper bound of the adaptive limit, 0 turns the limiter off
+   * @param failureRate   percent of failed statements that opens the breaker, 0 turns the breaker off
+   * @param slowMillis    statements that take longer are treated as failed, negative value turns it off
+   * @param openMillis    delay between probes while the breaker is open
+   */
+  AdmissionControl(int maxConcurrent, int failureRate, long slowMillis, long openMillis) {
+    this(null, maxConcurrent, failureRate, slowMillis, openMillis, TICKET_TIMEOUT_MILLIS);
+  }
+
+  /**
+   * @param ticketTimeoutMillis tickets that are not completed within this time are returned without an outcome
+   */
+  AdmissionControl(@Nullable String key, int maxConcurrent, int failureRate, long slowMillis, long openMillis, long ticketTimeoutMillis) {
+    this.key = key;
+    this.ticketTimeoutMillis = ticketTimeoutMillis;
+    this.limiter = maxConcurrent > 0 ? new AimdLimiter(maxConcurrent) : null;
+    this.breaker = failureRate > 0 ? new CircuitBreaker(failureRate) : null;
+    this.slowNanos = slowMillis < 0 ? -1 : TimeUnit.MILLISECONDS.toNanos(slowMillis);
+    this.openMillis = openMillis;
+  }
+
+  /**
+   * Every call must be paired with {@link #release()}
+   */
+  @NotNull
+  public static AdmissionControl retain(@NotNull String clientKey, int maxConcurrent, int failureRate, long slowMillis, long openMillis) {
+    String key = clientKey + "/" + maxConcurrent + "/" + failureRate + "/" + slowMillis + "/" + openMillis;
+    synchronized (controls) {
+      AdmissionControl control = controls.computeIfAbsent(key, k -> new AdmissionControl(k, maxConcurrent, failureRate, slowMillis, openMillis, TICKET_TIMEOUT_MILLIS));
+      control.references++;
+      return control;
+    }
+  }
+
+  public void release() {
+    synchronized (controls) {
+      if (--references == 0) controls.remove(key);
+    }
+  }
+
+  /**
+   * @param client used to probe the cluster when the breaker opens, without a client the breaker
+   *               lets trial statements through after the probe interval
+   */
+  @NotNull
+  public Ticket acquire(@Nullable MongoClient client) throws SQLException {
+    probeClient = client;
+    if (limiter != null && !limiter.tryAcquire()) {
+      rejected.incrementAndGet();
+      throw new SQLTransientException("Too many concurrent statements, current limit is " + limiter.getLimit());
+    }
+    if (breaker != null && !breaker.tryAcquire()) {
+      if (limiter != null) limiter.cancel();
+      rejected.incrementAndGet();
+      throw new SQLTransientConnectionException("Statement is rejected because recent statements failed, the cluster is probed in background");
+    }
+    return new Ticket();
+  }
+
+  public long getRejectedCount() {
+    return rejected.get();
+  }
+
+  /**
+   * @return current concurrency limit or -1 if the limiter is off
+   */
+  public int getLimit() {
+    return limiter == null ? -1 : limiter.getLimit();
+  }
+
+  /**
+   * Errors that tell about health of the cluster rather than about the statement
+   */
+  public static boolean isClusterFailure(@Nullable Throwable error) {
+    for (Throwable t = error; t != null; t = t.getCause()) {
+      if (t instanceof MongoTimeoutException || t instanceof MongoSocketException || t instanceof MongoNotPrimaryException ||
+          t instanceof MongoNodeIsRecoveringException || t instanceof MongoExecutionTimeoutException) {
+        return true;
+      }
+      if (t.getCause() == t) break;
+    }
+    return false;
+  }
+
+  private void scheduleProbe() {
+    timers.schedule(this::probe, openMillis, TimeUnit.MILLISECONDS);
+  }
+
+  private void probe() {
+    MongoClient client = probeClient;
+    try {
+      if (client != null) client.getDatabase("admin").runCommand(new Document("ping", 1));
+    }
+    catch (IllegalStateException e) { // client is closed, trial statements of other connections will decide
+    }
+    catch (RuntimeException e) {
+      scheduleProbe();
+      return;
+    }
+    breaker.probeSucceeded();
+  }
+
+  /**
+   * Permit of one statement. Only the first completion counts, a ticket that is not completed in time expires
+   */
+  public final class Ticket {
+    private final long start = System.nanoTime();
+    private final AtomicBoolean completed = new AtomicBoolean();
+    private final ScheduledFuture<?> expiry;
+
+    private Ticket() {
+      expiry = timers.schedule(this::expire, ticketTimeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param error null if statement succeeded
+     */
+    public void complete(@Nullable Throwable error) {
+      complete(error, System.nanoTime() - start);
+    }
+
+    /**
+     * @param nanos time the statement spent on the cluster, compared with the slow statement threshold.
+     *              Time the application spends between reading rows is not part of it
+     */
+    public void complete(@Nullable Throwable error, long nanos) {
+      if (!completed.compareAndSet(false, true)) return;
+      expiry.cancel(false);
+      boolean slow = slowNanos >= 0 && nanos > slowNanos;
+      boolean failed = slow || isClusterFailure(error);
+      if (limiter != null) limiter.release(failed);
+      if (breaker != null && breaker.record(failed)) scheduleProbe();
+    }
+
+    /**
+     * Outcome of an abandoned result set is unknown, the permit is returned without changing the limit
+     * and a trial statement of the half-open breaker may be retried
+     */
+    private void expire() {
+      if (!completed.compareAndSet(false, true)) return;
+      if (limiter != null) limiter.cancel();
+      if (breaker != null) breaker.cancelTrial();
+    }
+  }
+}
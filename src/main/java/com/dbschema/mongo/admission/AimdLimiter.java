@@ -0,0 +1,47 @@
+package com.dbschema.mongo.admission;
+
+/**
+ * Concurrency limit that grows by one per limit-sized window of successful statements
+ * and shrinks multiplicatively when a statement fails or is slow.
+ */
+class AimdLimiter {
+  static final double BACKOFF_RATIO = 0.75;
+
+  private final int maxLimit;
+  private double limit;
+  private int inFlight = 0;
+
+  AimdLimiter(int maxLimit) {
+    this.maxLimit = Math.max(1, maxLimit);
+    this.limit = this.maxLimit;
+  }
+
+  synchronized boolean tryAcquire() {
+    if (inFlight >= (int) limit) return false;
+    inFlight++;
+    return true;
+  }
+
+  synchronized void release(boolean congested) {
+    // limit grows only when it is actually used, otherwise it would inflate during quiet periods
+    boolean saturated = inFlight * 2 >= limit;
+    inFlight--;
+    if (congested) limit = Math.max(1, limit * BACKOFF_RATIO);
+    else if (saturated) limit = Math.min(maxLimit, limit + 1 / limit);
+  }
+
+  /**
+   * Returns a permit of a statement that was not executed, the limit does not change
+   */
+  synchronized void cancel() {
+    inFlight--;
+  }
+
+  synchronized int getLimit() {
+    return (int) limit;
+  }
+
+  synchronized int getInFlight() {
+    return inFlight;
+  }
+}
@@ -0,0 +1,104 @@
+package com.dbschema.mongo.admission;
+
+/**
+ * Count based circuit breaker.
+ * <p>
+ * Breaker opens when the share of failed or slow statements among the last {@value #WINDOW_SIZE}
+ * reaches the threshold. Open breaker rejects statements until a background probe succeeds, then it lets
+ * {@value #HALF_OPEN_CALLS} trial statements through. Breaker closes after {@value #HALF_OPEN_SUCCESSES}
+ * trials succeed and opens again if any of them fails.
+ */
+class CircuitBreaker {
+  static final int WINDOW_SIZE = 20;
+  static final int MIN_CALLS = 10;
+  static final int HALF_OPEN_CALLS = 5;
+  static final int HALF_OPEN_SUCCESSES = 3;
+
+  enum State {CLOSED, OPEN, HALF_OPEN}
+
+  private final int failureRatePercent;
+  private final boolean[] outcomes = new boolean[WINDOW_SIZE];
+  private int next = 0;
+  private int calls = 0;
+  private int failures = 0;
+  private State state = State.CLOSED;
+  private int trials = 0;
+  private int trialSuccesses = 0;
+
+  /**
+   * @param failureRatePercent share of failed statements that opens the breaker
+   */
+  CircuitBreaker(int failureRatePercent) {
+    this.failureRatePercent = failureRatePercent;
+  }
+
+  /**
+   * @return false if statement should be rejected
+   */
+  synchronized boolean tryAcquire() {
+    switch (state) {
+      case CLOSED:
+        return true;
+      case HALF_OPEN:
+        if (trials >= HALF_OPEN_CALLS) return false;
+        trials++;
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * @return true if this outcome opened the breaker
+   */
+  synchronized boolean record(boolean failed) {
+    if (state == State.HALF_OPEN) {
+      if (failed) {
+        open();
+        return true;
+      }
+      if (++trialSuccesses >= HALF_OPEN_SUCCESSES) close();
+      return false;
+    }
+    if (state == State.OPEN) return false; // statement started before the breaker opened
+    if (calls == WINDOW_SIZE && outcomes[next]) failures--;
+    outcomes[next] = failed;
+    next = (next + 1) % WINDOW_SIZE;
+    if (calls < WINDOW_SIZE) calls++;
+    if (failed) failures++;
+    if (calls >= MIN_CALLS && failures * 100 >= failureRatePercent * calls) {
+      open();
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Trial statement ended without an outcome, another one may be let through
+   */
+  synchronized void cancelTrial() {
+    if (state == State.HALF_OPEN && trials > trialSuccesses) trials--;
+  }
+
+  synchronized void probeSucceeded() {
+    if (state != State.OPEN) return;
+    state = State.HALF_OPEN;
+    trials = 0;
+    trialSuccesses = 0;
+  }
+
+  synchronized State getState() {
+    return state;
+  }
+
+  private void open() {
+    state = State.OPEN;
+  }
+
+  private void close() {
+    state = State.CLOSED;
+    next = 0;
+    calls = 0;
+    failures = 0;
+  }
+}
@@ -0,0 +1,155 @@
+package com.dbschema.mongo.batch;
+
+import com.mongodb.MongoException;
+import com.mongodb.ServerAddress;
+import com.mongodb.ServerCursor;
+import com.mongodb.client.MongoCursor;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentReader;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.Decoder;
+import org.bson.codecs.DecoderContext;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Cursor of a {@code find} or {@code aggregate} command whose every {@code getMore} asks for as many documents
+ * as {@link BatchSizer} picked.
+ * <p>
+ * The driver has no public way to change the batch size of an open cursor, so the cursor is driven with commands:
+ * the statement is sent with the first batch size, next batches are requested with {@code getMore} on the cursor id
+ * and namespace of the reply, and {@code killCursors} closes the cursor early. Batch sizes are picked from the
+ * size of the previous reply. Commands go to the server that the read preference selects, so the cursor must be
+ * opened with a read preference and a deployment that select the same server every time, e.g. the primary.
+ */
+public class AdaptiveBatchCursor<T> implements MongoCursor<T> {
+  /**
+   * Fetch size that turns on adaptive batches, other values that are not positive leave the server default
+   */
+  public static final int ADAPTIVE_FETCH_SIZE = Integer.MIN_VALUE;
+  private static final DecoderContext DECODER_CONTEXT = DecoderContext.builder().build();
+
+  public interface CommandRunner {
+    @NotNull
+    BsonDocument run(@NotNull Document command);
+  }
+
+  private final CommandRunner runner;
+  private final Decoder<T> decoder;
+  private final BatchSizer sizer;
+  private String collection;
+  private long cursorId;
+  private Iterator<BsonValue> batch = Collections.emptyIterator();
+  private int batchCount;
+  private long batchBytes;
+  private long fetchNanos;
+  private long deliveredAt;
+
+  /**
+   * @param command {@code find} or {@code aggregate} command without batch size
+   * @param runner  runs commands on the database of the statement
+   */
+  public AdaptiveBatchCursor(@NotNull Document command, @NotNull CommandRunner runner, @NotNull Decoder<T> decoder) {
+    this(command, runner, decoder, new BatchSizer());
+  }
+
+  AdaptiveBatchCursor(@NotNull Document command, @NotNull CommandRunner runner, @NotNull Decoder<T> decoder,
+                      @NotNull BatchSizer sizer) {
+    this.runner = runner;
+    this.decoder = decoder;
+    this.sizer = sizer;
+    Document first = new Document(command);
+    if (first.containsKey("aggregate")) first.put("cursor", new Document("batchSize", sizer.getBatchSize()));
+    else first.put("batchSize", sizer.getBatchSize());
+    fetch(first, "firstBatch");
+  }
+
+  private void fetch(@NotNull Document command, @NotNull String batchField) {
+    long start = System.nanoTime();
+    BsonDocument reply = runner.run(command);
+    deliveredAt = System.nanoTime();
+    fetchNanos = deliveredAt - start;
+    BsonDocument cursor = reply.getDocument("cursor");
+    cursorId = cursor.getNumber("id").longValue();
+    String namespace = cursor.getString("ns").getValue();
+    collection = namespace.substring(namespace.indexOf('.') + 1);
+    BsonArray documents = cursor.getArray(batchField);
+    batch = documents.iterator();
+    batchCount = documents.size();
+    batchBytes = bytes(reply);
+  }
+
+  @Override
+  public boolean hasNext() {
+    while (!batch.hasNext()) {
+      if (cursorId == 0) return false;
+      int size = sizer.next(batchCount, batchBytes, fetchNanos, System.nanoTime() - deliveredAt);
+      fetch(new Document("getMore", cursorId).append("collection", collection).append("batchSize", size), "nextBatch");
+    }
+    return true;
+  }
+
+  @Override
+  public T next() {
+    if (!hasNext()) throw new NoSuchElementException();
+    BsonValue document = batch.next();
+    return document instanceof RawBsonDocument
+           ? ((RawBsonDocument) document).decode(decoder)
+           : decoder.decode(new BsonDocumentReader(document.asDocument()), DECODER_CONTEXT);
+  }
+
+  /**
+   * Cursor is not tailable, so this waits for the next batch like {@link #hasNext()}
+   */
+  @Nullable
+  @Override
+  public T tryNext() {
+    return hasNext() ? next() : null;
+  }
+
+  /**
+   * @return 0 if the reply is not raw, the next batch size then follows round trips only
+   */
+  static long bytes(@NotNull BsonDocument reply) {
+    return reply instanceof RawBsonDocument ? ((RawBsonDocument) reply).getByteBuffer().remaining() : 0;
+  }
+
+  /**
+   * @return null, the reply of a command does not tell which server holds the cursor
+   */
+  @Nullable
+  @Override
+  public ServerCursor getServerCursor() {
+    return null;
+  }
+
+  /**
+   * @return null for the same reason as {@link #getServerCursor()}
+   */
+  @Nullable
+  @Override
+  public ServerAddress getServerAddress() {
+    return null;
+  }
+
+  @Override
+  public void close() {
+    batch = Collections.emptyIterator();
+    if (cursorId == 0) return;
+    long id = cursorId;
+    cursorId = 0;
+    try {
+      runner.run(new Document("killCursors", collection).append("cursors", Collections.singletonList(id)));
+    }
+    catch (MongoException e) { // server removes the cursor after the idle timeout
+      System.err.println("WARNING: Cannot kill cursor " + id + " of " + collection + ": " + e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,45 @@
+package com.dbschema.mongo.batch;
+
+/**
+ * Picks the size of the next batch of a cursor from the previous one.
+ * <p>
+ * First batch is small, so the first row arrives fast. The size is doubled while the application reads a batch
+ * faster than the server sends it, i.e. while it waits for round trips, and halved when the application needs
+ * more than {@value #SLOW_CONSUMER_RATIO} times longer to read a batch than the server needed to send it, because
+ * larger batches only take heap then. A batch never holds more than {@link #MAX_BATCH_BYTES} of average documents,
+ * so multi-megabyte documents come a few at a time.
+ */
+class BatchSizer {
+  static final int INITIAL_BATCH_SIZE = 16;
+  static final int MAX_BATCH_SIZE = 100_000;
+  static final long MAX_BATCH_BYTES = 8 * 1024 * 1024;
+  static final int SLOW_CONSUMER_RATIO = 4;
+
+  private int batchSize = INITIAL_BATCH_SIZE;
+  private double averageDocumentBytes = 0;
+
+  int getBatchSize() {
+    return batchSize;
+  }
+
+  /**
+   * @param documents    size of the previous batch
+   * @param bytes        bytes of the previous batch, 0 if unknown
+   * @param fetchNanos   time from the request of the previous batch until it arrived
+   * @param consumeNanos time the application needed to read the previous batch
+   * @return size of the next batch
+   */
+  int next(int documents, long bytes, long fetchNanos, long consumeNanos) {
+    if (documents > 0 && bytes > 0) {
+      double documentBytes = (double) bytes / documents;
+      averageDocumentBytes = averageDocumentBytes == 0 ? documentBytes : (averageDocumentBytes + documentBytes) / 2;
+    }
+    long size = batchSize;
+    if (consumeNanos < fetchNanos) size *= 2;
+    else if (consumeNanos > fetchNanos * SLOW_CONSUMER_RATIO) size /= 2;
+    size = Math.max(INITIAL_BATCH_SIZE, Math.min(MAX_BATCH_SIZE, size));
+    if (averageDocumentBytes > 0) size = Math.min(size, Math.max(1, (long) (MAX_BATCH_BYTES / averageDocumentBytes)));
+    batchSize = (int) size;
+    return batchSize;
+  }
+}
@@ -0,0 +1,105 @@
+package com.dbschema.mongo.cache;
+
+import com.dbschema.mongo.Util;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates over documents of a result set and stores them in {@link QueryResultCache}
+ * once the result set is exhausted.
+ * Nothing is cached if the caller stops reading early or if the result does not fit into a cache entry.
+ */
+public class CachingIterator implements Iterator<Object>, Closeable {
+  /**
+   * Approximate heap overhead of a cached document in addition to its BSON bytes
+   */
+  private static final int DOCUMENT_OVERHEAD = 64;
+
+  private final ResultSet source;
+  private final QueryResultCache cache;
+  private final QueryResultCache.Key key;
+  private final long generation;
+  private final DocumentCodec codec = new DocumentCodec();
+  private List<RawBsonDocument> documents = new ArrayList<>();
+  private long sizeBytes = 0;
+  private Boolean hasNext;
+
+  public CachingIterator(@NotNull ResultSet source, @NotNull QueryResultCache cache, @NotNull QueryResultCache.Key key, long generation) {
+    this.source = source;
+    this.cache = cache;
+    this.key = key;
+    this.generation = generation;
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (hasNext == null) {
+      try {
+        hasNext = source.next();
+      }
+      catch (SQLException e) {
+        throw new RuntimeException(e);
+      }
+      if (!hasNext && documents != null) {
+        cache.put(key, documents, sizeBytes, generation);
+        documents = null;
+      }
+    }
+    return hasNext;
+  }
+
+  @Override
+  public Object next() {
+    if (!hasNext()) throw new NoSuchElementException();
+    hasNext = null;
+    try {
+      Object value = source.getObject(1);
+      record(value);
+      return value;
+    }
+    catch (SQLException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private void record(Object value) {
+    if (documents == null) return;
+    if (!(value instanceof Map)) {
+      documents = null;
+      return;
+    }
+    try {
+      Document document = Util.toDocument((Map<?, ?>) value);
+      RawBsonDocument raw = new RawBsonDocument(document, codec);
+      sizeBytes += raw.getByteBuffer().remaining() + DOCUMENT_OVERHEAD;
+      documents.add(raw);
+    }
+    catch (RuntimeException e) { // value cannot be encoded
+      documents = null;
+    }
+    if (sizeBytes > cache.getMaxEntryBytes()) documents = null;
+  }
+
+  @Override
+  public void close() throws IOException {
+    documents = null;
+    try {
+      if (!source.isClosed()) source.close();
+    }
+    catch (SQLException e) {
+      throw new IOException(e);
+    }
+  }
+}
@@ -0,0 +1,235 @@
+package com.dbschema.mongo.cache;
+
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Memory bounded cache of documents returned by read-only statements.
+ * <p>
+ * Documents are stored as raw BSON, so the size of an entry is known exactly and every hit decodes a fresh copy
+ * that the caller is free to modify. Entries are evicted in LRU order when the total size exceeds the limit
+ * and expire after the configured TTL. Writes that go through the driver invalidate entries of the namespace.
+ * <p>
+ * One cache is shared by all connections that use the same URL, user and cache settings, see {@link #retain}.
+ */
+public class QueryResultCache {
+  // USE STATIC SO CONNECTIONS TO THE SAME CLUSTER SHARE CACHED RESULTS
+  private static final Map<String, QueryResultCache> caches = new HashMap<>();
+  /**
+   * Entry should not take more than this part of the cache, otherwise a single result would evict everything else
+   */
+  private static final int MAX_ENTRY_FRACTION = 10;
+
+  private final String key;
+  private int references = 0;
+  private final long maxBytes;
+  private final long ttlNanos;
+  private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private long totalBytes = 0;
+  /**
+   * Incremented on every invalidation. Results that were fetched while an invalidation happened are not cached
+   */
+  private final AtomicLong generation = new AtomicLong();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  public QueryResultCache(long maxBytes, long ttlMillis) {
+    this(null, maxBytes, ttlMillis);
+  }
+
+  private QueryResultCache(@Nullable String key, long maxBytes, long ttlMillis) {
+    this.key = key;
+    this.maxBytes = maxBytes;
+    this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+  }
+
+  /**
+   * Every call must be paired with {@link #release()}
+   */
+  @NotNull
+  public static QueryResultCache retain(@NotNull String clientKey, long maxBytes, long ttlMillis) {
+    String key = clientKey + "/" + maxBytes + "/" + ttlMillis;
+    synchronized (caches) {
+      QueryResultCache cache = caches.computeIfAbsent(key, k -> new QueryResultCache(k, maxBytes, ttlMillis));
+      cache.references++;
+      return cache;
+    }
+  }
+
+  /**
+   * Cached documents are dropped when the last connection releases the cache
+   */
+  public void release() {
+    if (key == null) return;
+    synchronized (caches) {
+      if (--references > 0) return;
+      caches.remove(key);
+    }
+    invalidateAll();
+  }
+
+  public long getMaxEntryBytes() {
+    return maxBytes / MAX_ENTRY_FRACTION;
+  }
+
+  public long getGeneration() {
+    return generation.get();
+  }
+
+  /**
+   * @return fresh copies of cached documents or null if there is no valid entry for the key
+   */
+  @Nullable
+  public Iterator<Document> find(@NotNull Key key) {
+    Entry entry;
+    synchronized (entries) {
+      entry = entries.get(key);
+      if (entry != null && System.nanoTime() - entry.createdNanos > ttlNanos) {
+        remove(key);
+        entry = null;
+      }
+    }
+    if (entry == null) {
+      misses.incrementAndGet();
+      return null;
+    }
+    hits.incrementAndGet();
+    DocumentCodec codec = new DocumentCodec();
+    Iterator<RawBsonDocument> iterator = entry.documents.iterator();
+    return new Iterator<Document>() {
+      @Override
+      public boolean hasNext() {
+        return iterator.hasNext();
+      }
+
+      @Override
+      public Document next() {
+        return iterator.next().decode(codec);
+      }
+    };
+  }
+
+  /**
+   * @param generation value of {@link #getGeneration()} before the statement was executed
+   */
+  public void put(@NotNull Key key, @NotNull List<RawBsonDocument> documents, long sizeBytes, long generation) {
+    if (sizeBytes > getMaxEntryBytes()) return;
+    synchronized (entries) {
+      if (this.generation.get() != generation) return;
+      remove(key);
+      entries.put(key, new Entry(documents, sizeBytes));
+      totalBytes += sizeBytes;
+      Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+      while (totalBytes > maxBytes && iterator.hasNext()) {
+        totalBytes -= iterator.next().getValue().sizeBytes;
+        iterator.remove();
+      }
+    }
+  }
+
+  /**
+   * @param collection null to invalidate all collections of the database
+   */
+  public void invalidate(@NotNull String database, @Nullable String collection) {
+    synchronized (entries) {
+      generation.incrementAndGet();
+      Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+      while (iterator.hasNext()) {
+        Map.Entry<Key, Entry> e = iterator.next();
+        if (e.getKey().database.equals(database) && (collection == null || collection.equals(e.getKey().collection))) {
+          totalBytes -= e.getValue().sizeBytes;
+          iterator.remove();
+        }
+      }
+    }
+  }
+
+  public void invalidateAll() {
+    synchronized (entries) {
+      generation.incrementAndGet();
+      entries.clear();
+      totalBytes = 0;
+    }
+  }
+
+  private void remove(@NotNull Key key) {
+    Entry removed = entries.remove(key);
+    if (removed != null) totalBytes -= removed.sizeBytes;
+  }
+
+  public long getHitCount() {
+    return hits.get();
+  }
+
+  public long getMissCount() {
+    return misses.get();
+  }
+
+  public long getSizeBytes() {
+    synchronized (entries) {
+      return totalBytes;
+    }
+  }
+
+  public static final class Key {
+    public final String statement;
+    public final String database;
+    public final String collection;
+    public final String readPreference;
+    /**
+     * Statements with a row limit return a prefix of the result and are cached separately
+     */
+    public final int maxRows;
+
+    public Key(@NotNull String statement, @NotNull String database, @NotNull String collection, @NotNull String readPreference) {
+      this(statement, database, collection, readPreference, 0);
+    }
+
+    public Key(@NotNull String statement, @NotNull String database, @NotNull String collection, @NotNull String readPreference,
+               int maxRows) {
+      this.statement = statement;
+      this.database = database;
+      this.collection = collection;
+      this.readPreference = readPreference;
+      this.maxRows = Math.max(0, maxRows);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof Key)) return false;
+      Key key = (Key) o;
+      return statement.equals(key.statement) && database.equals(key.database) &&
+          collection.equals(key.collection) && readPreference.equals(key.readPreference) && maxRows == key.maxRows;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(statement, database, collection, readPreference, maxRows);
+    }
+  }
+
+  private static final class Entry {
+    final List<RawBsonDocument> documents;
+    final long sizeBytes;
+    final long createdNanos = System.nanoTime();
+
+    Entry(@NotNull List<RawBsonDocument> documents, long sizeBytes) {
+      this.documents = new ArrayList<>(documents);
+      this.sizeBytes = sizeBytes;
+    }
+  }
+}
@@ -0,0 +1,57 @@
+package com.dbschema.mongo.diagnostics;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Statement that took longer than the configured threshold.
+ */
+public class SlowStatement {
+  public final long timestamp;
+  public final String statement;
+  public final String normalizedStatement;
+  public final String database;
+  public final long executeNanos;
+  public final long fetchNanos;
+  public final int documents;
+  private volatile String plan;
+
+  public SlowStatement(@NotNull String statement, @NotNull String normalizedStatement, @Nullable String database,
+                       long executeNanos, long fetchNanos, int documents) {
+    this.timestamp = System.currentTimeMillis();
+    this.statement = statement;
+    this.normalizedStatement = normalizedStatement;
+    this.database = database;
+    this.executeNanos = executeNanos;
+    this.fetchNanos = fetchNanos;
+    this.documents = documents;
+  }
+
+  public long getTotalMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(executeNanos + fetchNanos);
+  }
+
+  /**
+   * @return output of {@code explain("queryPlanner")} in JSON or null if plan was not captured
+   */
+  @Nullable
+  public String getPlan() {
+    return plan;
+  }
+
+  void setPlan(@Nullable String plan) {
+    this.plan = plan;
+  }
+
+  @Override
+  public String toString() {
+    return "Slow statement (" + getTotalMillis() + " ms" +
+        ", execute " + TimeUnit.NANOSECONDS.toMillis(executeNanos) + " ms" +
+        ", fetch " + TimeUnit.NANOSECONDS.toMillis(fetchNanos) + " ms" +
+        ", documents " + documents +
+        ", database " + database + "): " + normalizedStatement +
+        (plan == null ? "" : "\nPlan: " + plan);
+  }
+}
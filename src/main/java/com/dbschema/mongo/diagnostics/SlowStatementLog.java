@@ -0,0 +1,159 @@
+package com.dbschema.mongo.diagnostics;
+
+import com.dbschema.mongo.ShellQuery;
+import com.dbschema.mongo.StatementText;
+import com.mongodb.client.MongoClient;
+import org.bson.Document;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Collects statements that exceed the configured threshold.
+ * <p>
+ * Statements are written to the {@code com.dbschema.mongo.slow} logger by a background thread that is shared
+ * by all connections, so the thread that executes the statement never blocks on logging.
+ * Every log holds at most {@code capacity} pending entries, further entries are dropped and counted in
+ * {@link #getDroppedCount()}.
+ * When explain is enabled, plans of plain find and aggregate statements with JSON arguments
+ * (see {@link ShellQuery}) are requested with the {@code explain} command in {@code queryPlanner} verbosity
+ * on the same background thread. The command only plans the statement, it never executes it.
+ */
+public class SlowStatementLog implements AutoCloseable {
+  private static final Logger LOGGER = Logger.getLogger("com.dbschema.mongo.slow");
+  private static final int RECENT_STATEMENTS = 100;
+  // USE STATIC SO ALL CONNECTIONS SHARE ONE THREAD
+  private static final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+    Thread thread = new Thread(r, "MongoJdbc slow statement log");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private final MongoClient client;
+  private final long thresholdNanos;
+  private final boolean explain;
+  private final int capacity;
+  private final AtomicInteger pending = new AtomicInteger();
+  private final Deque<SlowStatement> recent = new ArrayDeque<>();
+  private final AtomicLong dropped = new AtomicLong();
+  private volatile boolean isClosed = false;
+
+  /**
+   * @param thresholdMillis negative value disables the log
+   */
+  public SlowStatementLog(@NotNull MongoClient client, long thresholdMillis, boolean explain, int capacity) {
+    this.client = client;
+    this.thresholdNanos = thresholdMillis < 0 ? -1 : TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+    this.explain = explain;
+    this.capacity = Math.max(capacity, 1);
+  }
+
+  public boolean isEnabled() {
+    return thresholdNanos >= 0 && !isClosed;
+  }
+
+  public void record(@NotNull String statement, @Nullable String database, long executeNanos, long fetchNanos, int documents) {
+    if (!isEnabled() || executeNanos + fetchNanos < thresholdNanos) return;
+    if (pending.incrementAndGet() > capacity) {
+      pending.decrementAndGet();
+      dropped.incrementAndGet();
+      return;
+    }
+    SlowStatement entry = new SlowStatement(statement, StatementText.normalize(statement), database, executeNanos, fetchNanos, documents);
+    try {
+      writer.execute(() -> {
+        try {
+          write(entry);
+        }
+        finally {
+          pending.decrementAndGet();
+        }
+      });
+    }
+    catch (RejectedExecutionException e) {
+      pending.decrementAndGet();
+      dropped.incrementAndGet();
+    }
+  }
+
+  /**
+   * @return up to {@value #RECENT_STATEMENTS} last slow statements that were already processed by the log
+   */
+  @NotNull
+  public List<SlowStatement> getRecentStatements() {
+    synchronized (recent) {
+      return new ArrayList<>(recent);
+    }
+  }
+
+  public long getDroppedCount() {
+    return dropped.get();
+  }
+
+  private void write(@NotNull SlowStatement entry) {
+    if (isClosed) return;
+    if (explain) entry.setPlan(explain(entry));
+    LOGGER.warning(entry.toString());
+    synchronized (recent) {
+      if (recent.size() == RECENT_STATEMENTS) recent.removeFirst();
+      recent.addLast(entry);
+    }
+  }
+
+  @Nullable
+  private String explain(@NotNull SlowStatement entry) {
+    Document command = toExplainCommand(entry.statement);
+    if (command == null || entry.database == null) return null;
+    try {
+      return client.getDatabase(entry.database).runCommand(command).toJson();
+    }
+    catch (Exception e) {
+      LOGGER.log(Level.FINE, "Cannot explain statement: " + entry.normalizedStatement, e);
+      return null;
+    }
+  }
+
+  /**
+   * Only a plain find or aggregate statement is explained, anything that may modify data,
+   * e.g. chained {@code forEach} or {@code $out} stage, is rejected.
+   *
+   * @return {@code explain} command or null if statement cannot be explained
+   */
+  @Nullable
+  static Document toExplainCommand(@NotNull String statement) {
+    ShellQuery query = ShellQuery.parse(statement);
+    if (query == null) return null;
+    Document explained;
+    if (query.isAggregate()) {
+      explained = new Document("aggregate", query.collection).append("pipeline", query.pipeline);
+      explained.putAll(query.options);
+      explained.putIfAbsent("cursor", new Document());
+    }
+    else {
+      explained = new Document("find", query.collection).append("filter", query.filter);
+      if (query.projection != null) explained.append("projection", query.projection);
+      if (query.sort != null) explained.append("sort", query.sort);
+      if (query.skip > 0) explained.append("skip", query.skip);
+      if (query.limit != 0) explained.append("limit", Math.abs(query.limit));
+      if (query.limit < 0) explained.append("singleBatch", true);
+    }
+    return new Document("explain", explained).append("verbosity", "queryPlanner");
+  }
+
+  @Override
+  public void close() {
+    isClosed = true;
+  }
+}
@@ -0,0 +1,183 @@
+package com.dbschema.mongo.discovery;
+
+import com.mongodb.MongoCommandException;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.connection.ClusterDescription;
+import com.mongodb.connection.ClusterType;
+import com.mongodb.connection.ServerDescription;
+import com.mongodb.event.ClusterDescriptionChangedEvent;
+import com.mongodb.event.ClusterListener;
+import org.bson.Document;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * What the cluster is and what it supports, fetched once per URL and user and shared by connections.
+ * <p>
+ * Record is dropped when the topology type or the wire version of the cluster changes, e.g. after an upgrade
+ * or when a replica set member is replaced, and fetched again by the next caller.
+ * Features are derived from the lowest wire version of the known servers, so they are available on every member.
+ */
+public class ServerCapabilities {
+  // USE STATIC SO CONNECTIONS TO THE SAME CLUSTER ASK THE SERVER ONCE
+  private static final Map<String, ServerCapabilities> capabilities = new ConcurrentHashMap<>();
+
+  private static final int WIRE_VERSION_3_2 = 4;
+  private static final int WIRE_VERSION_4_0 = 7;
+  private static final int WIRE_VERSION_4_2 = 8;
+  private static final int WIRE_VERSION_4_4 = 9;
+  private static final int WIRE_VERSION_5_0 = 13;
+
+  private final String version;
+  private final int majorVersion;
+  private final int minorVersion;
+  private final int maxWireVersion;
+  private final ClusterType clusterType;
+  private final String storageEngine;
+
+  ServerCapabilities(@NotNull String version, int maxWireVersion, @NotNull ClusterType clusterType, @Nullable String storageEngine) {
+    this.version = version;
+    String[] parts = version.split("[.-]");
+    this.majorVersion = parts.length >= 1 ? parseInt(parts[0]) : 0;
+    this.minorVersion = parts.length >= 2 ? parseInt(parts[1]) : 0;
+    this.maxWireVersion = maxWireVersion;
+    this.clusterType = clusterType;
+    this.storageEngine = storageEngine;
+  }
+
+  @NotNull
+  public static ServerCapabilities get(@NotNull String clientKey, @NotNull MongoClient client) {
+    ServerCapabilities cached = capabilities.get(clientKey);
+    if (cached != null) return cached;
+    ServerCapabilities fetched = fetch(client);
+    capabilities.put(clientKey, fetched);
+    return fetched;
+  }
+
+  /**
+   * Listener that drops the record when topology changes, to be registered in cluster settings of the client
+   */
+  @NotNull
+  public static ClusterListener invalidator(@NotNull String clientKey) {
+    return new ClusterListener() {
+      @Override
+      public void clusterDescriptionChanged(ClusterDescriptionChangedEvent event) {
+        ServerCapabilities cached = capabilities.get(clientKey);
+        ClusterDescription description = event.getNewDescription();
+        int wireVersion = minWireVersion(description.getServerDescriptions());
+        if (cached != null && wireVersion >= 0 &&
+            (cached.clusterType != description.getType() || cached.maxWireVersion != wireVersion)) {
+          capabilities.remove(clientKey, cached);
+        }
+      }
+    };
+  }
+
+  @NotNull
+  private static ServerCapabilities fetch(@NotNull MongoClient client) {
+    MongoDatabase admin = client.getDatabase("admin");
+    String version = admin.runCommand(new Document("buildInfo", 1)).getString("version");
+    String storageEngine = null;
+    try {
+      Object engine = admin.runCommand(new Document("serverStatus", 1).append("repl", 0).append("metrics", 0).append("locks", 0))
+          .get("storageEngine");
+      if (engine instanceof Document) storageEngine = ((Document) engine).getString("name");
+    }
+    catch (MongoCommandException ignored) { // not authorized, storage engine stays unknown
+    }
+    ClusterDescription description = client.getClusterDescription();
+    return new ServerCapabilities(version == null ? "UNKNOWN" : version,
+                                  Math.max(0, minWireVersion(description.getServerDescriptions())),
+                                  description.getType(), storageEngine);
+  }
+
+  /**
+   * @return -1 if no server is connected
+   */
+  static int minWireVersion(@NotNull List<ServerDescription> servers) {
+    int min = -1;
+    for (ServerDescription server : servers) {
+      if (!server.isOk()) continue;
+      min = min < 0 ? server.getMaxWireVersion() : Math.min(min, server.getMaxWireVersion());
+    }
+    return min;
+  }
+
+  private static int parseInt(@NotNull String str) {
+    try {
+      return Integer.parseInt(str);
+    }
+    catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+
+  /**
+   * @return version of the server binary, e.g. 4.4.3
+   */
+  @NotNull
+  public String getVersion() {
+    return version;
+  }
+
+  public int getMajorVersion() {
+    return majorVersion;
+  }
+
+  public int getMinorVersion() {
+    return minorVersion;
+  }
+
+  public int getMaxWireVersion() {
+    return maxWireVersion;
+  }
+
+  @NotNull
+  public ClusterType getClusterType() {
+    return clusterType;
+  }
+
+  /**
+   * @return null for mongos or if serverStatus is not allowed
+   */
+  @Nullable
+  public String getStorageEngine() {
+    return storageEngine;
+  }
+
+  public boolean supportsSample() {
+    return maxWireVersion >= WIRE_VERSION_3_2;
+  }
+
+  public boolean supportsUnionWith() {
+    return maxWireVersion >= WIRE_VERSION_4_4;
+  }
+
+  public boolean supportsSetWindowFields() {
+    return maxWireVersion >= WIRE_VERSION_5_0;
+  }
+
+  public boolean supportsTransactions() {
+    if (clusterType == ClusterType.REPLICA_SET) return maxWireVersion >= WIRE_VERSION_4_0;
+    if (clusterType == ClusterType.SHARDED) return maxWireVersion >= WIRE_VERSION_4_2;
+    return false;
+  }
+
+  /**
+   * Hedged reads are executed by mongos
+   */
+  public boolean supportsServerHedgedReads() {
+    return clusterType == ClusterType.SHARDED && maxWireVersion >= WIRE_VERSION_4_4;
+  }
+
+  @Override
+  public String toString() {
+    return "MongoDB " + version + " (wire version " + maxWireVersion + ", " + clusterType +
+           (storageEngine == null ? "" : ", " + storageEngine) + ")";
+  }
+}
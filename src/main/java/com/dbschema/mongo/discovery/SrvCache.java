@@ -0,0 +1,203 @@
+package com.dbschema.mongo.discovery;
+
+import com.mongodb.MongoConfigurationException;
+import com.mongodb.MongoException;
+import org.jetbrains.annotations.NotNull;
+
+import javax.naming.Context;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.InitialDirContext;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resolves {@code mongodb+srv://} URLs to plain {@code mongodb://} URLs and keeps SRV and TXT records
+ * of every host for the configured time.
+ * <p>
+ * Resolved URL lists the hosts from SRV records, options from TXT records and {@code tls=true}; options
+ * of the original URL take precedence, as with the driver's own resolution. When records expire and the DNS
+ * server does not answer, the expired records are used and a warning is printed, so a DNS outage does not
+ * stop new connections to a running cluster.
+ * <p>
+ * Records are looked up with JNDI DNS provider, the same way the driver does.
+ */
+public class SrvCache {
+  private static final String SRV_PREFIX = "mongodb+srv://";
+  // USE STATIC SO CONNECTIONS OPENED IN A BURST RESOLVE THE HOST ONCE
+  private static final SrvCache INSTANCE = new SrvCache(new JndiResolver(), System::currentTimeMillis);
+
+  private final Resolver resolver;
+  private final Clock clock;
+  private final Map<String, Records> records = new ConcurrentHashMap<>();
+
+  SrvCache(@NotNull Resolver resolver, @NotNull Clock clock) {
+    this.resolver = resolver;
+    this.clock = clock;
+  }
+
+  @NotNull
+  public static SrvCache getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * @return the same URL if it is not a {@code mongodb+srv://} URL
+   */
+  @NotNull
+  public String resolve(@NotNull String uri, long ttlMillis) {
+    if (!uri.regionMatches(true, 0, SRV_PREFIX, 0, SRV_PREFIX.length())) return uri;
+    String rest = uri.substring(SRV_PREFIX.length());
+    int queryStart = rest.indexOf('?');
+    int hostStart = rest.lastIndexOf('@', queryStart < 0 ? rest.length() - 1 : queryStart) + 1;
+    int hostEnd = hostStart;
+    while (hostEnd < rest.length() && rest.charAt(hostEnd) != '/' && rest.charAt(hostEnd) != '?') hostEnd++;
+    String userInfo = rest.substring(0, hostStart);
+    String host = rest.substring(hostStart, hostEnd);
+    String path = queryStart < 0 ? rest.substring(hostEnd) : rest.substring(hostEnd, queryStart);
+    String query = queryStart < 0 ? "" : rest.substring(queryStart + 1);
+
+    Records resolved = get(host, ttlMillis);
+    Map<String, String> options = new LinkedHashMap<>();
+    addOptions(options, resolved.txt);
+    if (!hasOption(query, "tls") && !hasOption(query, "ssl")) options.put("tls", "tls=true");
+    addOptions(options, query);
+    return "mongodb://" + userInfo + String.join(",", resolved.hosts) + (path.isEmpty() ? "/" : path) +
+           (options.isEmpty() ? "" : "?" + String.join("&", options.values()));
+  }
+
+  @NotNull
+  private Records get(@NotNull String host, long ttlMillis) {
+    String key = host.toLowerCase(Locale.ENGLISH);
+    Records cached = records.get(key);
+    long now = clock.millis();
+    if (cached != null && now < cached.expiresAt) return cached;
+    try {
+      Records fresh = new Records(resolver.srvHosts(host), resolver.txtOptions(host), now + ttlMillis);
+      records.put(key, fresh);
+      return fresh;
+    }
+    catch (MongoException e) {
+      if (cached == null) throw e;
+      System.err.println("WARNING: cannot resolve " + host + ", using expired DNS records. " + e.getMessage());
+      return cached;
+    }
+  }
+
+  private static void addOptions(@NotNull Map<String, String> options, @NotNull String query) {
+    for (String option : query.split("&")) {
+      if (option.isEmpty()) continue;
+      int eq = option.indexOf('=');
+      options.put((eq < 0 ? option : option.substring(0, eq)).toLowerCase(Locale.ENGLISH), option);
+    }
+  }
+
+  private static boolean hasOption(@NotNull String query, @NotNull String name) {
+    for (String option : query.split("&")) {
+      int eq = option.indexOf('=');
+      if ((eq < 0 ? option : option.substring(0, eq)).equalsIgnoreCase(name)) return true;
+    }
+    return false;
+  }
+
+  interface Clock {
+    long millis();
+  }
+
+  interface Resolver {
+    /**
+     * @return {@code host:port} of every SRV record of {@code _mongodb._tcp.host}
+     * @throws MongoException if there are no records or a record points outside of the parent domain
+     */
+    @NotNull
+    List<String> srvHosts(@NotNull String host);
+
+    /**
+     * @return options from the TXT record of the host, empty string if there is none
+     * @throws MongoException if there is more than one record
+     */
+    @NotNull
+    String txtOptions(@NotNull String host);
+  }
+
+  private static final class JndiResolver implements Resolver {
+    @NotNull
+    @Override
+    public List<String> srvHosts(@NotNull String host) {
+      String srvHost = "_mongodb._tcp." + host;
+      String parentDomain = host.substring(host.indexOf('.') + 1).toLowerCase(Locale.ENGLISH);
+      List<String> hosts = new ArrayList<>();
+      try {
+        for (String record : lookup(srvHost, "SRV")) {
+          // priority weight port target
+          String[] parts = record.split(" ");
+          if (parts.length != 4) throw new MongoConfigurationException("Invalid SRV record for host " + srvHost + ": " + record);
+          String target = parts[3].endsWith(".") ? parts[3].substring(0, parts[3].length() - 1) : parts[3];
+          if (!target.toLowerCase(Locale.ENGLISH).endsWith("." + parentDomain)) {
+            throw new MongoConfigurationException("Host " + target + " from SRV record is not in the parent domain " + parentDomain);
+          }
+          hosts.add(target + ":" + parts[2]);
+        }
+      }
+      catch (NamingException e) {
+        throw new MongoConfigurationException("Cannot resolve SRV records of host " + srvHost, e);
+      }
+      if (hosts.isEmpty()) throw new MongoConfigurationException("No SRV records available for host " + srvHost);
+      return hosts;
+    }
+
+    @NotNull
+    @Override
+    public String txtOptions(@NotNull String host) {
+      List<String> txt;
+      try {
+        txt = lookup(host, "TXT");
+      }
+      catch (NamingException e) {
+        throw new MongoConfigurationException("Cannot resolve TXT records of host " + host, e);
+      }
+      if (txt.size() > 1) throw new MongoConfigurationException("Multiple TXT records found for host " + host + ", only one is permitted");
+      return txt.isEmpty() ? "" : txt.get(0).replaceAll("\\s", "");
+    }
+
+    @NotNull
+    private static List<String> lookup(@NotNull String name, @NotNull String type) throws NamingException {
+      Hashtable<String, String> environment = new Hashtable<>();
+      environment.put(Context.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.dns.DnsContextFactory");
+      environment.put(Context.PROVIDER_URL, "dns:");
+      DirContext context = new InitialDirContext(environment);
+      try {
+        List<String> values = new ArrayList<>();
+        Attribute attribute = context.getAttributes(name, new String[]{type}).get(type);
+        if (attribute == null) return values;
+        NamingEnumeration<?> records = attribute.getAll();
+        while (records.hasMore()) {
+          values.add(String.valueOf(records.next()));
+        }
+        return values;
+      }
+      finally {
+        context.close();
+      }
+    }
+  }
+
+  private static final class Records {
+    final List<String> hosts;
+    final String txt;
+    final long expiresAt;
+
+    Records(@NotNull List<String> hosts, @NotNull String txt, long expiresAt) {
+      this.hosts = hosts;
+      this.txt = txt;
+      this.expiresAt = expiresAt;
+    }
+  }
+}
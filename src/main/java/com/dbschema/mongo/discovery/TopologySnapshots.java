@@ -0,0 +1,97 @@
+package com.dbschema.mongo.discovery;
+
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.ServerAddress;
+import com.mongodb.connection.ClusterConnectionMode;
+import com.mongodb.connection.ServerDescription;
+import com.mongodb.event.ClusterDescriptionChangedEvent;
+import com.mongodb.event.ClusterListener;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Replica set members seen by earlier clients of the same URL and user.
+ * <p>
+ * A new client starts with all known members instead of the seed list of the URL, so it monitors every member
+ * from the start and finds the primary with the first round of checks. The recorded replica set name only decides
+ * whether a snapshot fits a URL that names its set, it is not added to URLs that do not.
+ * The driver verifies the members as usual: members removed from the set are dropped and new ones are added.
+ */
+public class TopologySnapshots {
+  // USE STATIC SO NEW CLIENTS START WITH THE TOPOLOGY SEEN BY EARLIER ONES
+  private static final Map<String, Snapshot> snapshots = new ConcurrentHashMap<>();
+
+  private TopologySnapshots() {
+  }
+
+  /**
+   * Listener that records the topology of a client, to be registered in its cluster settings
+   */
+  @NotNull
+  public static ClusterListener recorder(@NotNull String clientKey) {
+    return new ClusterListener() {
+      @Override
+      public void clusterDescriptionChanged(ClusterDescriptionChangedEvent event) {
+        Snapshot snapshot = Snapshot.of(event.getNewDescription().getServerDescriptions());
+        if (snapshot != null) snapshots.put(clientKey, snapshot);
+      }
+    };
+  }
+
+  /**
+   * Replaces the seed list with known members. Only URLs that already connect to a replica set, i.e. name it
+   * or list several hosts, are seeded. Direct connections, single hosts without replica set name (a standalone
+   * server or a mongos), SRV URLs and URLs with another replica set name are left as they are.
+   */
+  public static void seed(@NotNull String clientKey, @NotNull ConnectionString connectionString,
+                          @NotNull MongoClientSettings.Builder builder) {
+    if (connectionString.isSrvProtocol() || Boolean.TRUE.equals(connectionString.isDirectConnection())) return;
+    String replicaSet = connectionString.getRequiredReplicaSetName();
+    if (replicaSet == null && connectionString.getHosts().size() < 2) return;
+    Snapshot snapshot = snapshots.get(clientKey);
+    if (snapshot == null) return;
+    if (replicaSet != null && !replicaSet.equals(snapshot.setName)) return;
+    List<ServerAddress> hosts = new ArrayList<>();
+    for (String host : snapshot.hosts) {
+      hosts.add(new ServerAddress(host));
+    }
+    builder.applyToClusterSettings(b -> b.hosts(hosts).mode(ClusterConnectionMode.MULTIPLE));
+  }
+
+  static final class Snapshot {
+    final String setName;
+    /**
+     * Primary goes first
+     */
+    final Set<String> hosts;
+
+    private Snapshot(@NotNull String setName, @NotNull Set<String> hosts) {
+      this.setName = setName;
+      this.hosts = hosts;
+    }
+
+    /**
+     * @return null until a primary is known, only the primary has an authoritative member list
+     */
+    @Nullable
+    static Snapshot of(@NotNull List<ServerDescription> servers) {
+      for (ServerDescription server : servers) {
+        if (!server.isOk() || !server.isPrimary() || server.getSetName() == null) continue;
+        Set<String> hosts = new LinkedHashSet<>();
+        hosts.add(server.getAddress().toString());
+        hosts.addAll(server.getHosts());
+        hosts.addAll(server.getPassives());
+        return new Snapshot(server.getSetName(), hosts);
+      }
+      return null;
+    }
+  }
+}
@@ -0,0 +1,29 @@
+package com.dbschema.mongo.hedge;
+
+/**
+ * Token bucket that limits hedged requests to a fraction of all reads.
+ * Every read deposits a fraction of a token, a hedge withdraws a whole token.
+ */
+class HedgeBudget {
+  private static final double MAX_TOKENS = 10;
+
+  private final double ratio;
+  private double tokens = 0;
+
+  /**
+   * @param percent hedged requests per 100 reads
+   */
+  HedgeBudget(int percent) {
+    this.ratio = percent / 100.0;
+  }
+
+  synchronized void deposit() {
+    tokens = Math.min(MAX_TOKENS, tokens + ratio);
+  }
+
+  synchronized boolean tryWithdraw() {
+    if (tokens < 1) return false;
+    tokens -= 1;
+    return true;
+  }
+}
@@ -0,0 +1,248 @@
+package com.dbschema.mongo.hedge;
+
+import com.dbschema.mongo.ShellQuery;
+import com.dbschema.mongo.resultSet.ResultSetIterator;
+import com.mongodb.MongoException;
+import com.mongodb.ReadPreference;
+import com.mongodb.ReadPreferenceHedgeOptions;
+import com.mongodb.TaggableReadPreference;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoDatabase;
+import org.bson.Document;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Client side hedging of find and aggregate statements.
+ * <p>
+ * Statement is sent with the read preference of the database. If the first batch does not arrive within
+ * the configured percentile of recent latencies, the same statement is sent again with a read preference
+ * that selects another member, see {@link #hedgePreference}. The first cursor that returns is used, the other
+ * one is killed as soon as it is opened.
+ * <p>
+ * Only reads that may already be served by secondaries are hedged, so hedging never weakens consistency.
+ * Reads with {@code nearest} read preference are not hedged, because any member may serve them.
+ * Hedges are limited by a budget, see {@link HedgeBudget}.
+ */
+public class HedgedReads implements AutoCloseable {
+  private static final int WINDOW_SIZE = 256;
+
+  private final int percentile;
+  private final LatencyWindow latencies = new LatencyWindow(WINDOW_SIZE);
+  private final HedgeBudget budget;
+  private final ExecutorService executor;
+  private final AtomicLong reads = new AtomicLong();
+  private final AtomicLong hedges = new AtomicLong();
+  private final AtomicLong hedgeWins = new AtomicLong();
+
+  /**
+   * @param percentile   percentile of recent latencies after which the hedge is sent
+   * @param budgetPercent maximum number of hedges per 100 reads
+   */
+  public HedgedReads(int percentile, int budgetPercent) {
+    this.percentile = Math.max(1, Math.min(100, percentile));
+    this.budget = new HedgeBudget(budgetPercent);
+    this.executor = Executors.newCachedThreadPool(r -> {
+      Thread thread = new Thread(r, "MongoJdbc hedged read");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  @NotNull
+  public ResultSet execute(@NotNull MongoDatabase database, @NotNull ShellQuery query, int fetchSize) throws SQLException {
+    reads.incrementAndGet();
+    ReadPreference preference = database.getReadPreference();
+    long delayNanos = latencies.percentile(percentile);
+    try {
+      if (!preference.isSlaveOk() || delayNanos < 0) {
+        long start = System.nanoTime();
+        MongoCursor<Document> cursor = open(database, query, fetchSize);
+        latencies.add(System.nanoTime() - start);
+        budget.deposit();
+        return new ResultSetIterator(cursor);
+      }
+      budget.deposit();
+      Winner winner = new Winner(hedgeWins::incrementAndGet);
+      long start = System.nanoTime();
+      CompletableFuture.runAsync(() -> {
+        try {
+          winner.offer(open(database, query, fetchSize), false);
+        }
+        catch (RuntimeException e) {
+          winner.fail(e);
+        }
+        finally {
+          latencies.add(System.nanoTime() - start);
+        }
+      }, executor);
+      try {
+        return new ResultSetIterator(winner.get(delayNanos));
+      }
+      catch (TimeoutException e) {
+        // hedge is counted before it is sent, so a failure of the first attempt in the meantime waits for it
+        winner.addAttempt();
+        ReadPreference hedgePreference = hedgePreference(preference);
+        if (hedgePreference != null && !winner.isDone() && budget.tryWithdraw()) {
+          hedges.incrementAndGet();
+          MongoDatabase hedgeDatabase = database.withReadPreference(hedgePreference);
+          CompletableFuture.runAsync(() -> {
+            try {
+              winner.offer(open(hedgeDatabase, query, fetchSize), true);
+            }
+            catch (RuntimeException ex) {
+              winner.fail(ex);
+            }
+          }, executor);
+        }
+        else {
+          winner.cancelAttempt();
+        }
+        return new ResultSetIterator(winner.get());
+      }
+    }
+    catch (MongoException e) {
+      throw new SQLException(e.getMessage(), e);
+    }
+  }
+
+  public long getReadCount() {
+    return reads.get();
+  }
+
+  public long getHedgeCount() {
+    return hedges.get();
+  }
+
+  /**
+   * @return number of hedges that returned before the original request
+   */
+  public long getHedgeWinCount() {
+    return hedgeWins.get();
+  }
+
+  /**
+   * Read preference that cannot select the member that serves the original request: the primary
+   * for secondary reads, a secondary with the same tags and max staleness for {@code primaryPreferred}.
+   *
+   * @return null if no other member is guaranteed, e.g. for {@code nearest}
+   */
+  @Nullable
+  static ReadPreference hedgePreference(@NotNull ReadPreference preference) {
+    String name = preference.getName();
+    if (name.equals("secondary") || name.equals("secondaryPreferred")) return ReadPreference.primary();
+    if (!name.equals("primaryPreferred")) return null;
+    TaggableReadPreference taggable = (TaggableReadPreference) preference;
+    Long maxStalenessMillis = taggable.getMaxStaleness(TimeUnit.MILLISECONDS);
+    ReadPreference secondary = maxStalenessMillis == null
+                               ? ReadPreference.secondary(taggable.getTagSetList())
+                               : ReadPreference.secondary(taggable.getTagSetList(), maxStalenessMillis, TimeUnit.MILLISECONDS);
+    return secondary.withHedgeOptions(ReadPreferenceHedgeOptions.builder().enabled(true).build());
+  }
+
+  @NotNull
+  private static MongoCursor<Document> open(@NotNull MongoDatabase database, @NotNull ShellQuery query, int fetchSize) {
+    return query.open(database, fetchSize);
+  }
+
+  @Override
+  public void close() {
+    executor.shutdownNow();
+  }
+
+  /**
+   * Keeps the first opened cursor, closes cursors that are opened later or after the caller gave up.
+   * Statement fails only when every started attempt has failed.
+   */
+  static final class Winner {
+    private final CompletableFuture<MongoCursor<Document>> future = new CompletableFuture<>();
+    private final Runnable hedgeWon;
+    /**
+     * Attempts that have neither returned a cursor nor failed, guarded by this
+     */
+    private int pending = 1;
+    private RuntimeException error;
+
+    Winner(@NotNull Runnable hedgeWon) {
+      this.hedgeWon = hedgeWon;
+    }
+
+    void offer(@NotNull MongoCursor<Document> cursor, boolean hedge) {
+      if (!future.complete(cursor)) cursor.close();
+      else if (hedge) hedgeWon.run();
+    }
+
+    /**
+     * Must be called before the next attempt may be started, see {@link #cancelAttempt()}
+     */
+    synchronized void addAttempt() {
+      pending++;
+    }
+
+    /**
+     * Attempt that was added with {@link #addAttempt()} is not started
+     */
+    void cancelAttempt() {
+      settle(null);
+    }
+
+    void fail(@NotNull RuntimeException e) {
+      settle(e);
+    }
+
+    private void settle(@Nullable RuntimeException e) {
+      RuntimeException failure;
+      synchronized (this) {
+        if (e != null) error = e;
+        if (--pending > 0 || error == null) return;
+        failure = error;
+      }
+      future.completeExceptionally(failure);
+    }
+
+    boolean isDone() {
+      return future.isDone();
+    }
+
+    @NotNull
+    MongoCursor<Document> get(long timeoutNanos) throws SQLException, TimeoutException {
+      try {
+        return future.get(timeoutNanos, TimeUnit.NANOSECONDS);
+      }
+      catch (InterruptedException | ExecutionException e) {
+        throw failure(e);
+      }
+    }
+
+    @NotNull
+    MongoCursor<Document> get() throws SQLException {
+      try {
+        return future.get();
+      }
+      catch (InterruptedException | ExecutionException e) {
+        throw failure(e);
+      }
+    }
+
+    @NotNull
+    private SQLException failure(@NotNull Exception e) {
+      future.cancel(false);
+      if (e instanceof InterruptedException) {
+        Thread.currentThread().interrupt();
+        return new SQLException("Interrupted while waiting for the result", e);
+      }
+      Throwable cause = e.getCause();
+      return new SQLException(cause.getMessage(), cause);
+    }
+  }
+}
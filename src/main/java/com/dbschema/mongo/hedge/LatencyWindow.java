@@ -0,0 +1,35 @@
+package com.dbschema.mongo.hedge;
+
+import java.util.Arrays;
+
+/**
+ * Latencies of the most recent reads, used to compute the hedging delay
+ */
+class LatencyWindow {
+  static final int MIN_SAMPLES = 20;
+
+  private final long[] samples;
+  private int next = 0;
+  private int count = 0;
+
+  LatencyWindow(int capacity) {
+    samples = new long[capacity];
+  }
+
+  synchronized void add(long nanos) {
+    samples[next] = nanos;
+    next = (next + 1) % samples.length;
+    if (count < samples.length) count++;
+  }
+
+  /**
+   * @return -1 until {@value #MIN_SAMPLES} latencies are recorded
+   */
+  synchronized long percentile(int percentile) {
+    if (count < MIN_SAMPLES) return -1;
+    long[] sorted = Arrays.copyOf(samples, count);
+    Arrays.sort(sorted);
+    int index = (int) Math.ceil(percentile / 100.0 * count) - 1;
+    return sorted[Math.max(0, Math.min(count - 1, index))];
+  }
+}
@@ -0,0 +1,121 @@
+package com.dbschema.mongo.mongosh;
+
+import com.dbschema.mongo.SQLAlreadyClosedException;
+import org.jetbrains.annotations.NotNull;
+
+import java.sql.SQLException;
+import java.sql.SQLTransientException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static com.dbschema.mongo.DriverPropertyInfoHelper.SHELL_POOL_SIZE;
+
+/**
+ * Bounded set of read-only and read-write shells of {@link ShellPool}. At most {@code size} shells exist and are
+ * leased at the same time, callers wait for a free one in FIFO order. Most recently returned shell is leased first.
+ */
+final class Leases<T> {
+  interface Factory<T> {
+    @NotNull
+    T create(boolean readOnly) throws SQLException;
+  }
+
+  private final int size;
+  private final Factory<T> factory;
+  private final Consumer<T> closer;
+  private final Semaphore permits;
+  private final Deque<T> idle = new ArrayDeque<>();
+  private final Deque<T> idleReadOnly = new ArrayDeque<>();
+  /**
+   * Mode of every existing shell, guarded by this
+   */
+  private final Map<T, Boolean> modes = new HashMap<>();
+  private boolean isClosed = false;
+
+  Leases(int size, @NotNull Factory<T> factory, @NotNull Consumer<T> closer) {
+    this.size = size;
+    this.factory = factory;
+    this.closer = closer;
+    this.permits = new Semaphore(size, true);
+  }
+
+  /**
+   * Shell must be returned with {@link #release(Object)}
+   *
+   * @throws SQLTransientException if no shell became free within the timeout
+   */
+  @NotNull
+  T acquire(boolean readOnly, long timeoutMillis) throws SQLException {
+    try {
+      if (!permits.tryAcquire(Math.max(timeoutMillis, 0), TimeUnit.MILLISECONDS)) {
+        throw new SQLTransientException("No shell became free in " + timeoutMillis + " ms, all " + size + " shells are in use. " +
+                                        "Close open result sets or increase " + SHELL_POOL_SIZE);
+      }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SQLException("Interrupted while waiting for a free shell", e);
+    }
+    try {
+      synchronized (this) {
+        if (isClosed) throw new SQLAlreadyClosedException(ShellPool.class.getSimpleName());
+        T shell = (readOnly ? idleReadOnly : idle).pollFirst();
+        if (shell != null) return shell;
+        if (modes.size() >= size) { // an idle shell of the other mode makes room
+          T other = (readOnly ? idle : idleReadOnly).pollLast();
+          if (other != null) {
+            modes.remove(other);
+            closer.accept(other);
+          }
+        }
+        shell = factory.create(readOnly);
+        modes.put(shell, readOnly);
+        return shell;
+      }
+    }
+    catch (SQLException | RuntimeException e) {
+      permits.release();
+      throw e;
+    }
+  }
+
+  void release(@NotNull T shell) {
+    synchronized (this) {
+      if (isClosed) {
+        modes.remove(shell);
+        closer.accept(shell);
+      }
+      else {
+        // most recently used shell has warm caches
+        (modes.get(shell) ? idleReadOnly : idle).addFirst(shell);
+      }
+    }
+    permits.release();
+  }
+
+  synchronized int getIdleCount() {
+    return idle.size() + idleReadOnly.size();
+  }
+
+  /**
+   * Closes idle shells, leased shells are closed when they are returned
+   */
+  synchronized void close() {
+    isClosed = true;
+    for (T shell : idle) {
+      modes.remove(shell);
+      closer.accept(shell);
+    }
+    for (T shell : idleReadOnly) {
+      modes.remove(shell);
+      closer.accept(shell);
+    }
+    idle.clear();
+    idleReadOnly.clear();
+  }
+}
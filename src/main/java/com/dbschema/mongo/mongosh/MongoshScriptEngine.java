@@ -2,36 +2,73 @@ package com.dbschema.mongo.mongosh;
 
 import com.dbschema.mongo.MongoConnection;
 import com.dbschema.mongo.MongoScriptEngine;
+import com.dbschema.mongo.MongoService;
+import com.dbschema.mongo.SQLAlreadyClosedException;
+import com.dbschema.mongo.resultSet.LimitedIterator;
 import com.dbschema.mongo.resultSet.ResultSetIterator;
 import com.mongodb.mongosh.MongoShell;
 import com.mongodb.mongosh.result.*;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.Closeable;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLTransientException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import static com.dbschema.mongo.DriverPropertyInfoHelper.SHELL_POOL_SIZE;
 import static com.dbschema.mongo.Util.ok;
 import static com.dbschema.mongo.Util.trimEnd;
 
 /**
+ * Executes statements of one connection in its own shell.
+ * <p>
+ * JS context may be entered by one thread at a time, so statements and cursors of the shell take {@link #lock}.
+ * While the shell is busy, other statements wait for it up to the server selection timeout. Threads that should
+ * not wait for each other use shells of {@link ShellPool}, see {@code shell_pool_size} property.
+ *
  * @author Liudmila Kornilova
  **/
 public class MongoshScriptEngine implements MongoScriptEngine {
   private static final Pattern USE_DATABASE = Pattern.compile("use\\s+(.*)", Pattern.CASE_INSENSITIVE);
   private static final Pattern CLEAR_CONTEXT = Pattern.compile("clearContext\\s*\\(\\s*\\)\\s*;?");
   private final MongoConnection connection;
+  private final ReentrantLock lock = new ReentrantLock();
+  /**
+   * Guarded by {@link #lock}
+   */
   private MongoShell repl;
+  private boolean replReadOnly;
+  /**
+   * Guarded by {@link #lock}, so that warm-up cannot create a shell after {@link #close()}
+   */
+  private boolean isClosed = false;
 
   public MongoshScriptEngine(@NotNull MongoConnection connection) {
     this.connection = connection;
   }
 
-  private MongoShell getRepl() {
+  /**
+   * Shell is recreated when the connection switches between read-only and read-write mode,
+   * because read preference is a setting of the client that shell uses. Must be called with {@link #lock} held
+   */
+  private MongoShell getRepl() throws SQLException {
+    if (isClosed) throw new SQLAlreadyClosedException(getClass().getSimpleName());
+    MongoService service = connection.getService();
+    boolean readOnly = service.isReadOnly();
+    if (repl != null && replReadOnly != readOnly) {
+      repl.close();
+      repl = null;
+    }
     if (repl == null) {
-      repl = new MongoShell(connection.getService().getMongoClient());
+      repl = new MongoShell(readOnly ? service.getClient().getReadOnlyClient() : service.getMongoClient());
+      replReadOnly = readOnly;
       repl.eval("use " + connection.getSchema());
     }
     return repl;
@@ -39,44 +76,185 @@ public class MongoshScriptEngine implements MongoScriptEngine {
 
   @Nullable
   @Override
-  public ResultSet execute(@NotNull String query, int fetchSize) throws SQLException {
+  public ResultSet execute(@NotNull String query, int fetchSize, int maxRows) throws SQLException {
+    lock();
     try {
-      if (CLEAR_CONTEXT.matcher(query.trim()).matches()) {
-        if (repl != null) repl.close();
-        repl = null;
+      if (isClearContext(query)) {
+        clearRepl();
         return null;
       }
-      Matcher useCommand = USE_DATABASE.matcher(trimEnd(query.trim(), ';').trim());
-      if (useCommand.matches()) {
-        String db = useCommand.group(1);
-        if ((db.startsWith("\"") && db.endsWith("\"")) || (db.startsWith("'") && db.endsWith("'"))) {
-          db = db.substring(1, db.length() - 1);
-        }
-        query = "use " + db.trim();
-      }
+      String useDatabase = useCommandDatabase(query);
+      if (useDatabase != null) query = "use " + useDatabase;
       MongoShell repl = getRepl();
       MongoShellResult<?> result = repl.eval(query);
       if (result instanceof CursorResult) {
-        Cursor<?> cursor = ((CursorResult<?>) result).getValue();
-        if (fetchSize > 1 && cursor instanceof FindCursor) {
-          ((FindCursor<?>) cursor).batchSize(fetchSize);
-        }
-        return new ResultSetIterator(cursor);
+        return new ResultSetIterator(LimitedIterator.limit(new LockedCursor(cursor((CursorResult<?>) result, fetchSize, maxRows)), maxRows));
       }
-      MongoShellResult<?> db = getRepl().eval("db");
-      if (db instanceof StringResult) connection.setSchema(((StringResult) db).getValue());
-      return result instanceof VoidResult || result instanceof BulkWriteResult || result instanceof InsertOneResult ||
-                 result instanceof InsertManyResult || result instanceof MongoShellUpdateResult
-             ? null
-             : ok(result.getValue());
+      updateSchema(repl, connection);
+      return toResultSet(result, maxRows);
     }
     catch (Exception e) {
       throw new SQLException(e);
     }
+    finally {
+      unlock();
+    }
+  }
+
+  /**
+   * Waits for the shell up to the server selection timeout, must be paired with {@link #unlock()}
+   *
+   * @throws SQLTransientException if the shell stayed busy
+   */
+  void lock() throws SQLException {
+    long timeoutMillis = connection.getService().getClient().getSettings().getClusterSettings().getServerSelectionTimeout(TimeUnit.MILLISECONDS);
+    try {
+      if (!lock.tryLock(Math.max(timeoutMillis, 0), TimeUnit.MILLISECONDS)) {
+        throw new SQLTransientException("Shell of the connection is busy with another statement for " + timeoutMillis + " ms. " +
+                                        "Close open result sets or increase " + SHELL_POOL_SIZE);
+      }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SQLException("Interrupted while waiting for the shell", e);
+    }
+  }
+
+  void unlock() {
+    lock.unlock();
+  }
+
+  static boolean isClearContext(@NotNull String query) {
+    return CLEAR_CONTEXT.matcher(query.trim()).matches();
+  }
+
+  /**
+   * @return database name if the query is a {@code use} command, quotes are removed
+   */
+  @Nullable
+  static String useCommandDatabase(@NotNull String query) {
+    Matcher useCommand = USE_DATABASE.matcher(trimEnd(query.trim(), ';').trim());
+    if (!useCommand.matches()) return null;
+    String db = useCommand.group(1);
+    if ((db.startsWith("\"") && db.endsWith("\"")) || (db.startsWith("'") && db.endsWith("'"))) {
+      db = db.substring(1, db.length() - 1);
+    }
+    return db.trim();
+  }
+
+  /**
+   * Only find cursors of the shell accept batch size. With {@code maxRows} the first batch is not larger than the result
+   */
+  @NotNull
+  static Cursor<?> cursor(@NotNull CursorResult<?> result, int fetchSize, int maxRows) {
+    Cursor<?> cursor = result.getValue();
+    int batchSize = batchSize(fetchSize, maxRows);
+    if (batchSize > 1 && cursor instanceof FindCursor) {
+      ((FindCursor<?>) cursor).batchSize(batchSize);
+    }
+    return cursor;
+  }
+
+  /**
+   * @return batch size that does not exceed max rows, 0 or negative for the server default
+   */
+  static int batchSize(int fetchSize, int maxRows) {
+    return maxRows > 0 && (fetchSize <= 0 || fetchSize > maxRows) ? maxRows : fetchSize;
+  }
+
+  /**
+   * Statement may switch database, e.g. {@code db = db.getSiblingDB('other')}
+   */
+  static void updateSchema(@NotNull MongoShell repl, @NotNull MongoConnection connection) {
+    MongoShellResult<?> db = repl.eval("db");
+    if (db instanceof StringResult) connection.setSchema(((StringResult) db).getValue());
+  }
+
+  /**
+   * @param maxRows arrays are truncated to it, 0 or negative for no limit
+   */
+  @Nullable
+  static ResultSet toResultSet(@NotNull MongoShellResult<?> result, int maxRows) {
+    if (result instanceof VoidResult || result instanceof BulkWriteResult || result instanceof InsertOneResult ||
+        result instanceof InsertManyResult || result instanceof MongoShellUpdateResult) {
+      return null;
+    }
+    Object value = result.getValue();
+    if (maxRows > 0 && value instanceof List<?> && ((List<?>) value).size() > maxRows) {
+      value = ((List<?>) value).subList(0, maxRows);
+    }
+    return ok(value);
   }
 
   @Override
-  public void close() {
+  public void warmUp() throws SQLException {
+    lock();
+    try {
+      getRepl();
+    }
+    finally {
+      unlock();
+    }
+  }
+
+  private void clearRepl() {
     if (repl != null) repl.close();
+    repl = null;
+  }
+
+  @Override
+  public void close() {
+    lock.lock();
+    try {
+      isClosed = true;
+      clearRepl();
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Fetches next batches of a shell cursor under {@link #lock}
+   */
+  private final class LockedCursor implements Iterator<Object>, Closeable {
+    private final Cursor<?> cursor;
+
+    LockedCursor(@NotNull Cursor<?> cursor) {
+      this.cursor = cursor;
+    }
+
+    @Override
+    public boolean hasNext() {
+      lock.lock();
+      try {
+        return cursor.hasNext();
+      }
+      finally {
+        lock.unlock();
+      }
+    }
+
+    @Override
+    public Object next() {
+      lock.lock();
+      try {
+        return cursor.next();
+      }
+      finally {
+        lock.unlock();
+      }
+    }
+
+    @Override
+    public void close() {
+      lock.lock();
+      try {
+        cursor.close();
+      }
+      finally {
+        lock.unlock();
+      }
+    }
   }
 }
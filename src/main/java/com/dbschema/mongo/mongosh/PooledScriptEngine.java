@@ -0,0 +1,156 @@
+package com.dbschema.mongo.mongosh;
+
+import com.dbschema.mongo.MongoConnection;
+import com.dbschema.mongo.MongoScriptEngine;
+import com.dbschema.mongo.resultSet.LimitedIterator;
+import com.dbschema.mongo.resultSet.ResultSetIterator;
+import com.mongodb.mongosh.MongoShell;
+import com.mongodb.mongosh.result.Cursor;
+import com.mongodb.mongosh.result.CursorResult;
+import com.mongodb.mongosh.result.MongoShellResult;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.dbschema.mongo.Util.ok;
+
+/**
+ * Executes statements of one connection on shells borrowed from a {@link ShellPool}.
+ * <p>
+ * Current database of the connection is selected before every statement, read-only connections get shells
+ * with the read-only read preference. JS variables are not part of the
+ * connection state: they stay in the shell that executed the statement and may not be visible to the next one.
+ * The first batch of a cursor is read right away, so the shell of a result that fits into it goes back to the pool
+ * at once. A shell that returned a longer cursor stays leased until the result set is exhausted or closed.
+ */
+public class PooledScriptEngine implements MongoScriptEngine {
+  /**
+   * Size of the first batch when neither fetch size nor max rows is set
+   */
+  private static final int DEFAULT_FIRST_BATCH = 101;
+
+  private final MongoConnection connection;
+  private final ShellPool pool;
+  private final Set<LeasedCursor> openCursors = ConcurrentHashMap.newKeySet();
+
+  public PooledScriptEngine(@NotNull MongoConnection connection, @NotNull ShellPool pool) {
+    this.connection = connection;
+    this.pool = pool;
+  }
+
+  @Nullable
+  @Override
+  public ResultSet execute(@NotNull String query, int fetchSize, int maxRows) throws SQLException {
+    if (MongoshScriptEngine.isClearContext(query)) return null; // connection has no context of its own
+    String useDatabase = MongoshScriptEngine.useCommandDatabase(query);
+    if (useDatabase != null) {
+      connection.setSchema(useDatabase);
+      return ok("switched to db " + useDatabase);
+    }
+    MongoShell shell = pool.acquire(connection.getService().isReadOnly());
+    boolean leased = false;
+    try {
+      String schema = connection.getSchema();
+      if (schema != null) shell.eval("use " + schema);
+      MongoShellResult<?> result = shell.eval(query);
+      if (result instanceof CursorResult) {
+        Cursor<?> cursor = MongoshScriptEngine.cursor((CursorResult<?>) result, fetchSize, maxRows);
+        int batchSize = MongoshScriptEngine.batchSize(fetchSize, maxRows);
+        if (batchSize <= 0) batchSize = DEFAULT_FIRST_BATCH;
+        List<Object> firstBatch = new ArrayList<>();
+        while (firstBatch.size() < batchSize && cursor.hasNext()) {
+          firstBatch.add(cursor.next());
+        }
+        if (maxRows > 0 && firstBatch.size() >= maxRows || !cursor.hasNext()) {
+          cursor.close();
+          return new ResultSetIterator(firstBatch.iterator());
+        }
+        LeasedCursor leasedCursor = new LeasedCursor(firstBatch.iterator(), cursor, shell);
+        openCursors.add(leasedCursor);
+        leased = true;
+        return new ResultSetIterator(LimitedIterator.limit(leasedCursor, maxRows));
+      }
+      MongoshScriptEngine.updateSchema(shell, connection);
+      return MongoshScriptEngine.toResultSet(result, maxRows);
+    }
+    catch (Exception e) {
+      throw new SQLException(e);
+    }
+    finally {
+      if (!leased) pool.release(shell);
+    }
+  }
+
+  /**
+   * Makes sure the pool has a shell of the current mode
+   */
+  @Override
+  public void warmUp() throws SQLException {
+    pool.release(pool.acquire(connection.getService().isReadOnly()));
+  }
+
+  @Override
+  public void close() {
+    // every lease goes back to the pool, even if closing a cursor fails
+    for (LeasedCursor cursor : new ArrayList<>(openCursors)) {
+      try {
+        cursor.close();
+      }
+      catch (RuntimeException e) {
+        System.err.println("WARNING: cannot close cursor of a pooled shell. " + e);
+      }
+    }
+    pool.release();
+  }
+
+  private final class LeasedCursor implements Iterator<Object>, Closeable {
+    private final Iterator<Object> firstBatch;
+    private final Cursor<?> cursor;
+    private MongoShell shell;
+
+    LeasedCursor(@NotNull Iterator<Object> firstBatch, @NotNull Cursor<?> cursor, @NotNull MongoShell shell) {
+      this.firstBatch = firstBatch;
+      this.cursor = cursor;
+      this.shell = shell;
+    }
+
+    @Override
+    public synchronized boolean hasNext() {
+      if (firstBatch.hasNext()) return true;
+      if (shell == null) return false;
+      boolean hasNext = cursor.hasNext();
+      if (!hasNext) returnShell();
+      return hasNext;
+    }
+
+    @Override
+    public synchronized Object next() {
+      return firstBatch.hasNext() ? firstBatch.next() : cursor.next();
+    }
+
+    @Override
+    public synchronized void close() {
+      if (shell == null) return;
+      try {
+        cursor.close();
+      }
+      finally {
+        returnShell();
+      }
+    }
+
+    private void returnShell() {
+      openCursors.remove(this);
+      pool.release(shell);
+      shell = null;
+    }
+  }
+}
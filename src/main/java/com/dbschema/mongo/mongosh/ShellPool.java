@@ -0,0 +1,126 @@
+package com.dbschema.mongo.mongosh;
+
+import com.dbschema.mongo.MongoClientWrapper;
+import com.dbschema.mongo.SQLAlreadyClosedException;
+import com.dbschema.mongo.Util;
+import com.mongodb.mongosh.MongoShell;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import static com.dbschema.mongo.DriverPropertyInfoHelper.ADAPTIVE_POOL;
+
+/**
+ * Bounded set of shell contexts shared by all connections that use the same URL, credentials and properties.
+ * <p>
+ * Every shell holds a GraalJS context, so JS memory grows with the number of statements executed at the same time
+ * rather than with the number of open connections. Connections wait for a free shell in FIFO order,
+ * at most as long as the server selection timeout.
+ * Shells are created lazily and use a client owned by the pool, the pool is closed together with its last connection.
+ */
+public class ShellPool {
+  // USE STATIC SO CONNECTIONS TO THE SAME CLUSTER SHARE SHELLS
+  private static final Map<String, ShellPool> pools = new HashMap<>();
+
+  private final String key;
+  private final String uri;
+  private final Properties prop;
+  private final String username;
+  private final String password;
+  /**
+   * Read-only shells use {@link MongoClientWrapper#getReadOnlyClient()}
+   */
+  private final Leases<MongoShell> shells;
+  private MongoClientWrapper client;
+  private int references = 0;
+  private boolean isClosed = false;
+
+  private ShellPool(@NotNull String key, @NotNull String uri, @NotNull Properties prop, @Nullable String username,
+                    @Nullable String password, int size) {
+    this.key = key;
+    this.uri = uri;
+    // shells do not pass the gate of the adaptive pool
+    this.prop = new Properties();
+    this.prop.putAll(prop);
+    this.prop.setProperty(ADAPTIVE_POOL, "false");
+    this.username = username;
+    this.password = password;
+    this.shells = new Leases<>(size, readOnly -> {
+      MongoClientWrapper poolClient = getClient();
+      return new MongoShell(readOnly ? poolClient.getReadOnlyClient() : poolClient.getMongoClient());
+    }, MongoShell::close);
+  }
+
+  /**
+   * Every call must be paired with {@link #release()}
+   */
+  @NotNull
+  public static ShellPool retain(@NotNull String uri, @NotNull Properties prop, @Nullable String username,
+                                 @Nullable String password, int size) {
+    StringBuilder properties = new StringBuilder();
+    for (String name : new TreeSet<>(prop.stringPropertyNames())) {
+      properties.append(name).append('=').append(prop.getProperty(name)).append('\n');
+    }
+    // shells are authenticated and configured by the first connection, others may only share them if they are the same
+    String key = username + ":" + Util.digest(password, properties.toString()) + "@" + uri;
+    synchronized (pools) {
+      ShellPool pool = pools.computeIfAbsent(key, k -> new ShellPool(k, uri, prop, username, password, size));
+      pool.references++;
+      return pool;
+    }
+  }
+
+  public void release() {
+    synchronized (pools) {
+      if (--references > 0) return;
+      pools.remove(key);
+    }
+    close();
+  }
+
+  /**
+   * Waits for a free shell at most as long as the server selection timeout. Shell must be returned with {@link #release(MongoShell)}
+   */
+  @NotNull
+  MongoShell acquire(boolean readOnly) throws SQLException {
+    long timeoutMillis = getClient().getSettings().getClusterSettings().getServerSelectionTimeout(TimeUnit.MILLISECONDS);
+    return shells.acquire(readOnly, timeoutMillis);
+  }
+
+  @NotNull
+  private synchronized MongoClientWrapper getClient() throws SQLException {
+    if (isClosed) throw new SQLAlreadyClosedException(getClass().getSimpleName());
+    if (client == null) client = new MongoClientWrapper(uri, prop, username, password);
+    return client;
+  }
+
+  void release(@NotNull MongoShell shell) {
+    shells.release(shell);
+  }
+
+  /**
+   * Shells are closed outside of the pool lock, because a new shell takes the client under the lock of {@link #shells}
+   */
+  private void close() {
+    shells.close();
+    MongoClientWrapper closing;
+    synchronized (this) {
+      isClosed = true;
+      closing = client;
+      client = null;
+    }
+    if (closing != null) {
+      try {
+        closing.close();
+      }
+      catch (SQLAlreadyClosedException ignored) {
+      }
+    }
+  }
+}
@@ -0,0 +1,306 @@
+package com.dbschema.mongo.pool;
+
+import com.dbschema.mongo.admission.AdmissionControl;
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandSucceededEvent;
+import com.mongodb.event.ConnectionCheckOutFailedEvent;
+import com.mongodb.event.ConnectionCheckOutStartedEvent;
+import com.mongodb.event.ConnectionCheckedOutEvent;
+import com.mongodb.event.ConnectionPoolListener;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Effective size of the connection pool that follows the load.
+ * <p>
+ * Pool of the driver cannot be resized, so it is created with the maximum size and statements pass a gate
+ * of the effective size. The gate starts at the maximum size, a statement holds its slot until its result set
+ * is read to the end or closed, because every batch of an open cursor needs a connection too. Once a second the size is adjusted from what was observed since the previous step:
+ * <ul>
+ *   <li>more than {@value #ERROR_PERCENT_THRESHOLD}% of commands failed with cluster errors, or mean command
+ *   latency exceeds {@value #LATENCY_TOLERANCE} times the baseline: size shrinks by 25%, the server is overloaded</li>
+ *   <li>statements waited for the gate or for a driver connection longer than {@value #WAIT_THRESHOLD_MICROS} us
+ *   on average: size grows by one</li>
+ *   <li>less than half of the gate was used: size shrinks by one</li>
+ * </ul>
+ * Baseline is the lowest observed mean latency, it slowly follows higher latencies so that a lasting change
+ * of workload does not keep the pool at minimum. Decisions are written to the standard error stream
+ * and are available with {@link #getRecentDecisions()}.
+ * <p>
+ * One instance is shared by all connections that use the same URL, user and pool sizes, see {@link #retain}.
+ */
+public class AdaptivePool implements ConnectionPoolListener, CommandListener, AutoCloseable {
+  static final long WAIT_THRESHOLD_MICROS = 2000;
+  static final double LATENCY_TOLERANCE = 2.0;
+  static final int ERROR_PERCENT_THRESHOLD = 5;
+  static final double BACKOFF_RATIO = 0.75;
+  private static final long STEP_MILLIS = 1000;
+  private static final int RECENT_DECISIONS = 100;
+  // USE STATIC SO CONNECTIONS TO THE SAME CLUSTER SHARE ONE GATE
+  private static final Map<String, AdaptivePool> pools = new HashMap<>();
+  private static final ScheduledExecutorService steps = Executors.newSingleThreadScheduledExecutor(r -> {
+    Thread thread = new Thread(r, "MongoJdbc adaptive pool");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private final String key;
+  private int references = 0;
+  private final int minSize;
+  private final int maxSize;
+  /**
+   * Gate state, guarded by this
+   */
+  private int size;
+  private int inUse = 0;
+  private int peakInUse = 0;
+
+  private final ThreadLocal<Long> checkOutStart = new ThreadLocal<>();
+  private final AtomicLong waits = new AtomicLong();
+  private final AtomicLong waitNanos = new AtomicLong();
+  private final AtomicLong commands = new AtomicLong();
+  private final AtomicLong latencyNanos = new AtomicLong();
+  private final AtomicLong failures = new AtomicLong();
+  /**
+   * Accessed only from the step thread
+   */
+  private long baselineNanos = -1;
+  private final Deque<PoolDecision> decisions = new ArrayDeque<>();
+  private final AtomicLong grows = new AtomicLong();
+  private final AtomicLong shrinks = new AtomicLong();
+  private final ScheduledFuture<?> task;
+
+  AdaptivePool(int minSize, int maxSize) {
+    this(null, minSize, maxSize);
+  }
+
+  private AdaptivePool(@Nullable String key, int minSize, int maxSize) {
+    this.key = key;
+    this.minSize = Math.max(1, minSize);
+    this.maxSize = Math.max(this.minSize, maxSize);
+    this.size = this.maxSize;
+    task = steps.scheduleWithFixedDelay(this::step, STEP_MILLIS, STEP_MILLIS, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Every call must be paired with {@link #close()}
+   */
+  @NotNull
+  public static AdaptivePool retain(@NotNull String clientKey, int minSize, int maxSize) {
+    String key = clientKey + "/" + minSize + "/" + maxSize;
+    synchronized (pools) {
+      AdaptivePool pool = pools.computeIfAbsent(key, k -> new AdaptivePool(k, minSize, maxSize));
+      pool.references++;
+      return pool;
+    }
+  }
+
+  public int getMinSize() {
+    return minSize;
+  }
+
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  public synchronized int getSize() {
+    return size;
+  }
+
+  public long getGrowCount() {
+    return grows.get();
+  }
+
+  public long getShrinkCount() {
+    return shrinks.get();
+  }
+
+  @NotNull
+  public List<PoolDecision> getRecentDecisions() {
+    synchronized (decisions) {
+      return new ArrayList<>(decisions);
+    }
+  }
+
+  /**
+   * @return null if no slot became free within the timeout
+   */
+  @Nullable
+  public Slot acquire(long timeoutNanos) throws InterruptedException {
+    long start = System.nanoTime();
+    synchronized (this) {
+      long remaining = timeoutNanos;
+      while (inUse >= size) {
+        if (remaining <= 0) return null;
+        TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        remaining = timeoutNanos - (System.nanoTime() - start);
+      }
+      inUse++;
+      peakInUse = Math.max(peakInUse, inUse);
+    }
+    recordWait(System.nanoTime() - start);
+    return new Slot();
+  }
+
+  private synchronized void release() {
+    inUse--;
+    notify();
+  }
+
+  @Override
+  public void connectionCheckOutStarted(ConnectionCheckOutStartedEvent event) {
+    checkOutStart.set(System.nanoTime());
+  }
+
+  @Override
+  public void connectionCheckedOut(ConnectionCheckedOutEvent event) {
+    checkOutFinished();
+  }
+
+  @Override
+  public void connectionCheckOutFailed(ConnectionCheckOutFailedEvent event) {
+    checkOutFinished();
+  }
+
+  private void checkOutFinished() {
+    Long start = checkOutStart.get();
+    if (start == null) return; // checkout of the reactive client is finished on another thread
+    checkOutStart.remove();
+    recordWait(System.nanoTime() - start);
+  }
+
+  private void recordWait(long nanos) {
+    waits.incrementAndGet();
+    waitNanos.addAndGet(nanos);
+  }
+
+  @Override
+  public void commandSucceeded(CommandSucceededEvent event) {
+    commands.incrementAndGet();
+    latencyNanos.addAndGet(event.getElapsedTime(TimeUnit.NANOSECONDS));
+  }
+
+  @Override
+  public void commandFailed(CommandFailedEvent event) {
+    commands.incrementAndGet();
+    latencyNanos.addAndGet(event.getElapsedTime(TimeUnit.NANOSECONDS));
+    if (AdmissionControl.isClusterFailure(event.getThrowable())) failures.incrementAndGet();
+  }
+
+  private void step() {
+    Window window = new Window();
+    window.waits = waits.getAndSet(0);
+    window.waitNanos = waitNanos.getAndSet(0);
+    window.commands = commands.getAndSet(0);
+    window.latencyNanos = latencyNanos.getAndSet(0);
+    window.failures = failures.getAndSet(0);
+    int currentSize;
+    synchronized (this) {
+      window.peakInUse = peakInUse;
+      peakInUse = inUse;
+      currentSize = size;
+    }
+    PoolDecision decision = decide(System.currentTimeMillis(), currentSize, minSize, maxSize, window, baselineNanos);
+    if (window.commands > 0) {
+      long mean = window.latencyNanos / window.commands;
+      baselineNanos = baselineNanos < 0 || mean < baselineNanos ? mean : baselineNanos + (mean - baselineNanos) / 20;
+    }
+    if (decision == null) return;
+    synchronized (this) {
+      size = decision.newSize;
+      notifyAll();
+    }
+    (decision.newSize > decision.oldSize ? grows : shrinks).incrementAndGet();
+    synchronized (decisions) {
+      if (decisions.size() == RECENT_DECISIONS) decisions.removeFirst();
+      decisions.addLast(decision);
+    }
+    System.err.println("WARNING: Adaptive pool " + decision);
+  }
+
+  /**
+   * @return null if size should not change
+   */
+  @Nullable
+  static PoolDecision decide(long now, int size, int minSize, int maxSize, @NotNull Window window, long baselineNanos) {
+    long meanWaitMicros = window.waits == 0 ? 0 : window.waitNanos / window.waits / 1000;
+    long meanLatencyNanos = window.commands == 0 ? 0 : window.latencyNanos / window.commands;
+    int errorPercent = window.commands == 0 ? 0 : (int) (window.failures * 100 / window.commands);
+    int newSize = size;
+    String reason;
+    if (errorPercent > ERROR_PERCENT_THRESHOLD) {
+      newSize = (int) (size * BACKOFF_RATIO);
+      reason = "errors";
+    }
+    else if (baselineNanos > 0 && window.commands > 0 && meanLatencyNanos > baselineNanos * LATENCY_TOLERANCE) {
+      newSize = (int) (size * BACKOFF_RATIO);
+      reason = "server latency";
+    }
+    else if (meanWaitMicros > WAIT_THRESHOLD_MICROS) {
+      newSize = size + 1;
+      reason = "checkout wait";
+    }
+    else if (window.peakInUse * 2 < size) {
+      newSize = size - 1;
+      reason = "idle";
+    }
+    else {
+      return null;
+    }
+    newSize = Math.max(minSize, Math.min(maxSize, newSize));
+    if (newSize == size) return null;
+    return new PoolDecision(now, size, newSize, reason, meanWaitMicros, meanLatencyNanos / 1000,
+                            Math.max(0, baselineNanos) / 1000, errorPercent);
+  }
+
+  @Override
+  public void close() {
+    if (key != null) {
+      synchronized (pools) {
+        if (--references > 0) return;
+        pools.remove(key);
+      }
+    }
+    task.cancel(false);
+  }
+
+  /**
+   * Place of one statement in the gate, only the first release returns it
+   */
+  public final class Slot {
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    private Slot() {
+    }
+
+    public void release() {
+      if (released.compareAndSet(false, true)) AdaptivePool.this.release();
+    }
+  }
+
+  /**
+   * Observations between two steps
+   */
+  static final class Window {
+    long waits;
+    long waitNanos;
+    long commands;
+    long latencyNanos;
+    long failures;
+    int peakInUse;
+  }
+}
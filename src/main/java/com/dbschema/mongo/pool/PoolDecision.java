@@ -0,0 +1,38 @@
+package com.dbschema.mongo.pool;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Date;
+
+/**
+ * Change of the effective pool size made by {@link AdaptivePool}
+ */
+public class PoolDecision {
+  public final long timeMillis;
+  public final int oldSize;
+  public final int newSize;
+  @NotNull
+  public final String reason;
+  public final long meanWaitMicros;
+  public final long meanLatencyMicros;
+  public final long baselineLatencyMicros;
+  public final int errorPercent;
+
+  PoolDecision(long timeMillis, int oldSize, int newSize, @NotNull String reason, long meanWaitMicros,
+               long meanLatencyMicros, long baselineLatencyMicros, int errorPercent) {
+    this.timeMillis = timeMillis;
+    this.oldSize = oldSize;
+    this.newSize = newSize;
+    this.reason = reason;
+    this.meanWaitMicros = meanWaitMicros;
+    this.meanLatencyMicros = meanLatencyMicros;
+    this.baselineLatencyMicros = baselineLatencyMicros;
+    this.errorPercent = errorPercent;
+  }
+
+  @Override
+  public String toString() {
+    return new Date(timeMillis) + " pool size " + oldSize + " -> " + newSize + " (" + reason + "), wait " + meanWaitMicros +
+           " us, latency " + meanLatencyMicros + " us, baseline " + baselineLatencyMicros + " us, errors " + errorPercent + "%";
+  }
+}
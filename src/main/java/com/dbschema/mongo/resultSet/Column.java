@@ -0,0 +1,326 @@
+package com.dbschema.mongo.resultSet;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Column of {@link ListResultSet}.
+ * <p>
+ * Integer, Long and Double values are kept in primitive arrays with a bitmap of nulls,
+ * any other values are kept in an object array.
+ * The type of the column is chosen by the first non-null value. When a value of another type is added
+ * the column is converted to {@link ObjectColumn}, so {@link #get(int)} always returns the value that was added.
+ */
+abstract class Column {
+  private static final int INITIAL_CAPACITY = 16;
+
+  protected final BitSet nulls = new BitSet();
+  protected int size = 0;
+
+  @NotNull
+  static Column create() {
+    return new NullColumn();
+  }
+
+  /**
+   * @return this column or a new column if the value does not fit this column
+   */
+  @NotNull
+  final Column add(@Nullable Object value) {
+    if (value == null) {
+      nulls.set(size);
+      ensureCapacity(size + 1);
+      size++;
+      return this;
+    }
+    if (!accepts(value)) {
+      Column column = convert(value);
+      return column.add(value);
+    }
+    ensureCapacity(size + 1);
+    set(size, value);
+    size++;
+    return this;
+  }
+
+  final boolean isNull(int row) {
+    return row >= size || nulls.get(row);
+  }
+
+  int size() {
+    return size;
+  }
+
+  @NotNull
+  private Column convert(@NotNull Object value) {
+    Column column = this instanceof NullColumn ? forValue(value) : new ObjectColumn();
+    column.ensureCapacity(size);
+    for (int row = 0; row < size; row++) {
+      column.add(get(row));
+    }
+    return column;
+  }
+
+  @NotNull
+  private static Column forValue(@NotNull Object value) {
+    if (value instanceof Integer) return new IntColumn();
+    if (value instanceof Long) return new LongColumn();
+    if (value instanceof Double) return new DoubleColumn();
+    return new ObjectColumn();
+  }
+
+  protected static int grow(int capacity, int required) {
+    return Math.max(required, Math.max(INITIAL_CAPACITY, capacity + (capacity >> 1)));
+  }
+
+  abstract boolean accepts(@NotNull Object value);
+
+  abstract void ensureCapacity(int capacity);
+
+  abstract void set(int row, @NotNull Object value);
+
+  @Nullable
+  abstract Object get(int row);
+
+  abstract int getInt(int row);
+
+  abstract long getLong(int row);
+
+  abstract double getDouble(int row);
+
+  /**
+   * @see java.sql.Types
+   */
+  abstract int getSqlType();
+
+  private static final class NullColumn extends Column {
+    @Override
+    boolean accepts(@NotNull Object value) {
+      return false;
+    }
+
+    @Override
+    void ensureCapacity(int capacity) {
+    }
+
+    @Override
+    void set(int row, @NotNull Object value) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    Object get(int row) {
+      return null;
+    }
+
+    @Override
+    int getInt(int row) {
+      return 0;
+    }
+
+    @Override
+    long getLong(int row) {
+      return 0;
+    }
+
+    @Override
+    double getDouble(int row) {
+      return 0;
+    }
+
+    @Override
+    int getSqlType() {
+      return Types.OTHER;
+    }
+  }
+
+  static final class IntColumn extends Column {
+    private int[] values = new int[0];
+
+    @Override
+    boolean accepts(@NotNull Object value) {
+      return value instanceof Integer;
+    }
+
+    @Override
+    void ensureCapacity(int capacity) {
+      if (capacity > values.length) values = Arrays.copyOf(values, grow(values.length, capacity));
+    }
+
+    @Override
+    void set(int row, @NotNull Object value) {
+      values[row] = (Integer) value;
+    }
+
+    @Override
+    Object get(int row) {
+      return isNull(row) ? null : values[row];
+    }
+
+    @Override
+    int getInt(int row) {
+      return isNull(row) ? 0 : values[row];
+    }
+
+    @Override
+    long getLong(int row) {
+      return isNull(row) ? 0 : values[row];
+    }
+
+    @Override
+    double getDouble(int row) {
+      return isNull(row) ? 0 : values[row];
+    }
+
+    @Override
+    int getSqlType() {
+      return Types.INTEGER;
+    }
+  }
+
+  static final class LongColumn extends Column {
+    private long[] values = new long[0];
+
+    @Override
+    boolean accepts(@NotNull Object value) {
+      return value instanceof Long;
+    }
+
+    @Override
+    void ensureCapacity(int capacity) {
+      if (capacity > values.length) values = Arrays.copyOf(values, grow(values.length, capacity));
+    }
+
+    @Override
+    void set(int row, @NotNull Object value) {
+      values[row] = (Long) value;
+    }
+
+    @Override
+    Object get(int row) {
+      return isNull(row) ? null : values[row];
+    }
+
+    @Override
+    int getInt(int row) {
+      return isNull(row) ? 0 : (int) values[row];
+    }
+
+    @Override
+    long getLong(int row) {
+      return isNull(row) ? 0 : values[row];
+    }
+
+    @Override
+    double getDouble(int row) {
+      return isNull(row) ? 0 : values[row];
+    }
+
+    @Override
+    int getSqlType() {
+      return Types.BIGINT;
+    }
+  }
+
+  static final class DoubleColumn extends Column {
+    private double[] values = new double[0];
+
+    @Override
+    boolean accepts(@NotNull Object value) {
+      return value instanceof Double;
+    }
+
+    @Override
+    void ensureCapacity(int capacity) {
+      if (capacity > values.length) values = Arrays.copyOf(values, grow(values.length, capacity));
+    }
+
+    @Override
+    void set(int row, @NotNull Object value) {
+      values[row] = (Double) value;
+    }
+
+    @Override
+    Object get(int row) {
+      return isNull(row) ? null : values[row];
+    }
+
+    @Override
+    int getInt(int row) {
+      return isNull(row) ? 0 : (int) values[row];
+    }
+
+    @Override
+    long getLong(int row) {
+      return isNull(row) ? 0 : (long) values[row];
+    }
+
+    @Override
+    double getDouble(int row) {
+      return isNull(row) ? 0 : values[row];
+    }
+
+    @Override
+    int getSqlType() {
+      return Types.DOUBLE;
+    }
+  }
+
+  static final class ObjectColumn extends Column {
+    private Object[] values = new Object[0];
+    private boolean onlyStrings = true;
+
+    @Override
+    boolean accepts(@NotNull Object value) {
+      return true;
+    }
+
+    @Override
+    void ensureCapacity(int capacity) {
+      if (capacity > values.length) values = Arrays.copyOf(values, grow(values.length, capacity));
+    }
+
+    @Override
+    void set(int row, @NotNull Object value) {
+      values[row] = value;
+      onlyStrings &= value instanceof String;
+    }
+
+    @Override
+    Object get(int row) {
+      return row < size ? values[row] : null;
+    }
+
+    @Override
+    int getInt(int row) {
+      Object value = get(row);
+      if (value instanceof Number) return ((Number) value).intValue();
+      if (value instanceof Boolean) return (Boolean) value ? 1 : 0;
+      return value == null ? 0 : Integer.parseInt(value.toString().trim());
+    }
+
+    @Override
+    long getLong(int row) {
+      Object value = get(row);
+      if (value instanceof Number) return ((Number) value).longValue();
+      if (value instanceof Boolean) return (Boolean) value ? 1 : 0;
+      return value == null ? 0 : Long.parseLong(value.toString().trim());
+    }
+
+    @Override
+    double getDouble(int row) {
+      Object value = get(row);
+      if (value instanceof Number) return ((Number) value).doubleValue();
+      return value == null ? 0 : Double.parseDouble(value.toString().trim());
+    }
+
+    @Override
+    int getSqlType() {
+      return onlyStrings && size > nulls.cardinality() ? Types.VARCHAR : Types.OTHER;
+    }
+  }
+}
@@ -0,0 +1,64 @@
+package com.dbschema.mongo.resultSet;
+
+import com.mongodb.mongosh.result.Cursor;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Returns at most {@code maxRows} elements. Underlying cursor is closed as soon as the last row is returned,
+ * so the server does not prepare further batches.
+ */
+public class LimitedIterator<T> implements Iterator<T>, Closeable {
+  private final Iterator<T> iterator;
+  private final int maxRows;
+  private int returned = 0;
+  private boolean closed = false;
+
+  private LimitedIterator(@NotNull Iterator<T> iterator, int maxRows) {
+    this.iterator = iterator;
+    this.maxRows = maxRows;
+  }
+
+  /**
+   * @param maxRows 0 or negative for no limit
+   */
+  @NotNull
+  public static <T> Iterator<T> limit(@NotNull Iterator<T> iterator, int maxRows) {
+    return maxRows > 0 ? new LimitedIterator<>(iterator, maxRows) : iterator;
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (closed) return false;
+    if (returned < maxRows) return iterator.hasNext();
+    try {
+      close();
+    }
+    catch (IOException ignored) { // rows are read already
+    }
+    return false;
+  }
+
+  @Override
+  public T next() {
+    if (!hasNext()) throw new NoSuchElementException();
+    returned++;
+    return iterator.next();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) return;
+    closed = true;
+    if (iterator instanceof Closeable) {
+      ((Closeable) iterator).close();
+    }
+    else if (iterator instanceof Cursor<?>) {
+      ((Cursor<?>) iterator).close();
+    }
+  }
+}
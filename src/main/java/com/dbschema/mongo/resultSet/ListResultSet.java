@@ -3,6 +3,7 @@ package com.dbschema.mongo.resultSet;
 import java.io.InputStream;
 import java.io.Reader;
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.net.URL;
 import java.sql.Array;
 import java.sql.Blob;
@@ -22,16 +23,27 @@ import java.sql.Time;
 import java.sql.Timestamp;
 import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
 import com.dbschema.mongo.SQLAlreadyClosedException;
 
+/**
+ * Materialized result set.
+ * Values are stored by columns, see {@link Column}, so numeric columns take no more memory than primitive arrays
+ * and typed getters do not box or parse values.
+ */
 public class ListResultSet implements ResultSet {
-    private final List<Object[]> data;
+    private Column[] columns = new Column[0];
+    private int rowCount = 0;
     private String[] columnNames;
+    private Map<String, Integer> columnIndexes;
     private int currentRow = -1;
+    private boolean wasNull = false;
     private boolean isClosed = false;
 
     public ListResultSet() {
@@ -39,22 +51,41 @@ public class ListResultSet implements ResultSet {
     }
 
     public ListResultSet(List<Object[]> data, String[] columnNames) {
-        this.data = data;
-        this.columnNames = columnNames;
+        for (Object[] row : data) {
+            addRow(row);
+        }
+        setColumnNames(columnNames);
     }
 
     public ListResultSet(Object value, String[] columnNames) {
-        this.data = new ArrayList<>();
-        this.data.add(new Object[] {value});
-        this.columnNames = columnNames;
+        addRow(new Object[] {value});
+        setColumnNames(columnNames);
     }
 
     public void setColumnNames(String... columnNames) {
         this.columnNames = columnNames;
+        this.columnIndexes = null;
     }
 
     public void addRow(Object[] columnValues) {
-        data.add(columnValues);
+        if (columnValues.length > columns.length) {
+            int oldLength = columns.length;
+            columns = Arrays.copyOf(columns, columnValues.length);
+            for (int i = oldLength; i < columns.length; i++) {
+                columns[i] = Column.create();
+                for (int row = 0; row < rowCount; row++) {
+                    columns[i] = columns[i].add(null);
+                }
+            }
+        }
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = columns[i].add(i < columnValues.length ? columnValues[i] : null);
+        }
+        rowCount++;
+    }
+
+    public int getRowCount() {
+        return rowCount;
     }
 
     @Override
@@ -72,10 +103,7 @@ public class ListResultSet implements ResultSet {
      */
     @Override
     public boolean next() {
-        if (data == null) {
-            return false;
-        }
-        if (currentRow < data.size() - 1) {
+        if (currentRow < rowCount - 1) {
             currentRow++;
             return true;
         }
@@ -106,12 +134,16 @@ public class ListResultSet implements ResultSet {
      */
     @Override
     public boolean wasNull() {
-        return false;
+        return wasNull;
     }
 
-    @Override
-    public String getString(int columnIndex) throws SQLException {
-        if (currentRow >= data.size()) {
+    /**
+     * Moves to the first row if {@link #next()} was not called yet.
+     *
+     * @return column that contains the value
+     */
+    private Column column(int columnIndex) throws SQLException {
+        if (currentRow >= rowCount) {
             throw new SQLException("ResultSet exhausted, request currentRow = " + currentRow);
         }
 
@@ -120,22 +152,31 @@ public class ListResultSet implements ResultSet {
         }
 
         int adjustedColumnIndex = columnIndex - 1;
-        if (adjustedColumnIndex >= data.get(currentRow).length) {
+        if (adjustedColumnIndex < 0 || adjustedColumnIndex >= columns.length) {
             throw new SQLException("Column index does not exist: " + columnIndex);
         }
-        final Object val = data.get(currentRow)[adjustedColumnIndex];
+        Column column = columns[adjustedColumnIndex];
+        wasNull = column.isNull(currentRow);
+        return column;
+    }
+
+    @Override
+    public String getString(int columnIndex) throws SQLException {
+        final Object val = column(columnIndex).get(currentRow);
         return val != null ? val.toString() : null;
     }
 
     @Override
     public boolean getBoolean(int columnIndex) throws SQLException {
-        return Boolean.parseBoolean(getString(columnIndex));
+        final Object val = column(columnIndex).get(currentRow);
+        if (val instanceof Boolean) return (Boolean) val;
+        if (val instanceof Number) return ((Number) val).intValue() != 0;
+        return val != null && Boolean.parseBoolean(val.toString());
     }
 
     @Override
-    public byte getByte(int columnIndex) {
-
-        return 0;
+    public byte getByte(int columnIndex) throws SQLException {
+        return (byte) getInt(columnIndex);
     }
 
     /**
@@ -143,8 +184,7 @@ public class ListResultSet implements ResultSet {
      */
     @Override
     public short getShort(int columnIndex) throws SQLException {
-        checkClosed();
-        return Short.parseShort(getString(columnIndex));
+        return (short) getInt(columnIndex);
     }
 
     /**
@@ -153,7 +193,13 @@ public class ListResultSet implements ResultSet {
     @Override
     public int getInt(int columnIndex) throws SQLException {
         checkClosed();
-        return Integer.parseInt(getString(columnIndex));
+        Column column = column(columnIndex);
+        try {
+            return column.getInt(currentRow);
+        }
+        catch (NumberFormatException e) {
+            throw notANumber(columnIndex, column.get(currentRow), e);
+        }
     }
 
     /**
@@ -162,7 +208,13 @@ public class ListResultSet implements ResultSet {
     @Override
     public long getLong(int columnIndex) throws SQLException {
         checkClosed();
-        return Long.parseLong(getString(columnIndex));
+        Column column = column(columnIndex);
+        try {
+            return column.getLong(currentRow);
+        }
+        catch (NumberFormatException e) {
+            throw notANumber(columnIndex, column.get(currentRow), e);
+        }
     }
 
     /**
@@ -170,8 +222,7 @@ public class ListResultSet implements ResultSet {
      */
     @Override
     public float getFloat(int columnIndex) throws SQLException {
-        checkClosed();
-        return Float.parseFloat(getString(columnIndex));
+        return (float) getDouble(columnIndex);
     }
 
     /**
@@ -180,37 +231,60 @@ public class ListResultSet implements ResultSet {
     @Override
     public double getDouble(int columnIndex) throws SQLException {
         checkClosed();
-        return Double.parseDouble(getString(columnIndex));
+        Column column = column(columnIndex);
+        try {
+            return column.getDouble(currentRow);
+        }
+        catch (NumberFormatException e) {
+            throw notANumber(columnIndex, column.get(currentRow), e);
+        }
     }
 
-    @Override
-    public BigDecimal getBigDecimal(int columnIndex, int scale) {
-
-        return null;
+    private static SQLException notANumber(int columnIndex, Object value, Exception cause) {
+        return new SQLException("Value of column " + columnIndex + " is not a number: " + value, cause);
     }
 
     @Override
-    public byte[] getBytes(int columnIndex) {
-
-        return null;
+    public BigDecimal getBigDecimal(int columnIndex, int scale) throws SQLException {
+        BigDecimal value = getBigDecimal(columnIndex);
+        return value == null ? null : value.setScale(scale, RoundingMode.HALF_UP);
     }
 
     @Override
-    public Date getDate(int columnIndex) {
-
-        return null;
+    public byte[] getBytes(int columnIndex) throws SQLException {
+        final Object val = column(columnIndex).get(currentRow);
+        if (val instanceof byte[]) return (byte[]) val;
+        return val != null ? val.toString().getBytes() : null;
     }
 
     @Override
-    public Time getTime(int columnIndex) {
-
-        return null;
+    public Date getDate(int columnIndex) throws SQLException {
+        Timestamp timestamp = getTimestamp(columnIndex);
+        return timestamp == null ? null : new Date(timestamp.getTime());
     }
 
     @Override
-    public Timestamp getTimestamp(int columnIndex) {
+    public Time getTime(int columnIndex) throws SQLException {
+        Timestamp timestamp = getTimestamp(columnIndex);
+        return timestamp == null ? null : new Time(timestamp.getTime());
+    }
 
-        return null;
+    @Override
+    public Timestamp getTimestamp(int columnIndex) throws SQLException {
+        Column column = column(columnIndex);
+        if (column instanceof Column.LongColumn || column instanceof Column.IntColumn) {
+            return wasNull ? null : new Timestamp(column.getLong(currentRow));
+        }
+        final Object val = column.get(currentRow);
+        if (val == null || val instanceof Timestamp) return (Timestamp) val;
+        if (val instanceof java.util.Date) return new Timestamp(((java.util.Date) val).getTime());
+        if (val instanceof Number) return new Timestamp(((Number) val).longValue());
+        try {
+            return Timestamp.valueOf(val.toString().trim());
+        }
+        catch (IllegalArgumentException e) {
+            throw new SQLException("Value of column " + columnIndex + " is not a timestamp: " + val, e);
+        }
     }
 
     @Override
@@ -234,91 +308,68 @@ public class ListResultSet implements ResultSet {
     @Override
     public String getString(String columnLabel) throws SQLException {
         checkClosed();
-        int index = -1;
-        if (columnNames == null) {
-            throw new SQLException("Use of columnLabel requires setColumnNames to be called first.");
-        }
-        for (int i = 0; i < columnNames.length; i++) {
-            if (columnLabel.equals(columnNames[i])) {
-                index = i;
-                break;
-            }
-        }
-        if (index == -1) {
-            throw new SQLException("Column " + columnLabel + " doesn't exist in this ResultSet");
-        }
-        return getString(index + 1);
+        return getString(findColumn(columnLabel));
     }
 
     @Override
     public boolean getBoolean(String columnLabel) throws SQLException {
         checkClosed();
-
-        return Boolean.parseBoolean(getString(columnLabel));
+        return getBoolean(findColumn(columnLabel));
     }
 
     @Override
-    public byte getByte(String columnLabel) {
-
-        return 0;
+    public byte getByte(String columnLabel) throws SQLException {
+        return getByte(findColumn(columnLabel));
     }
 
     @Override
     public short getShort(String columnLabel) throws SQLException {
-
-        return Short.parseShort(getString(columnLabel));
+        return getShort(findColumn(columnLabel));
     }
 
     @Override
     public int getInt(String columnLabel) throws SQLException {
-
-        return Integer.parseInt(getString(columnLabel));
+        return getInt(findColumn(columnLabel));
     }
 
     @Override
     public long getLong(String columnLabel) throws SQLException {
-
-        return Long.parseLong(getString(columnLabel));
+        return getLong(findColumn(columnLabel));
     }
 
     @Override
     public float getFloat(String columnLabel) throws SQLException {
-
-        return Float.parseFloat(getString(columnLabel));
+        return getFloat(findColumn(columnLabel));
     }
 
     @Override
     public double getDouble(String columnLabel) throws SQLException {
-        return Double.parseDouble(getString(columnLabel));
+        return getDouble(findColumn(columnLabel));
     }
 
     @Override
     public BigDecimal getBigDecimal(String columnLabel, int scale) throws SQLException {
-
-        return new BigDecimal(getString(columnLabel).replace(",", ""));
+        return getBigDecimal(findColumn(columnLabel), scale);
     }
 
     @Override
     public byte[] getBytes(String columnLabel) throws SQLException {
-        return getString(columnLabel).getBytes();
+        return getBytes(findColumn(columnLabel));
     }
 
     @Override
-    public Date getDate(String columnLabel) {
-
-        return null;
+    public Date getDate(String columnLabel) throws SQLException {
+        return getDate(findColumn(columnLabel));
     }
 
     @Override
-    public Time getTime(String columnLabel) {
-
-        return null;
+    public Time getTime(String columnLabel) throws SQLException {
+        return getTime(findColumn(columnLabel));
     }
 
     @Override
-    public Timestamp getTimestamp(String columnLabel) {
-
-        return null;
+    public Timestamp getTimestamp(String columnLabel) throws SQLException {
+        return getTimestamp(findColumn(columnLabel));
     }
 
     @Override
@@ -361,13 +412,9 @@ public class ListResultSet implements ResultSet {
     public ResultSetMetaData getMetaData() throws SQLException {
         checkClosed();
 
-        if (data == null) {
-            return new MongoResultSetMetaData(null, new String[0], new int[0]);
-        }
-
         int[] columnJavaTypes = new int[columnNames.length];
         for (int i = 0; i < columnNames.length; i++) {
-            columnJavaTypes[i] = Types.OTHER;
+            columnJavaTypes[i] = i < columns.length ? columns[i].getSqlType() : Types.OTHER;
         }
 
         return new MongoResultSetMetaData(null, columnNames, columnJavaTypes);
@@ -375,50 +422,71 @@ public class ListResultSet implements ResultSet {
 
     @Override
     public Object getObject(int columnIndex) throws SQLException {
-        if (currentRow >= data.size()) {
-            throw new SQLException("ResultSet exhausted, request currentRow = " + currentRow);
-        }
-        int adjustedColumnIndex = columnIndex - 1;
-        if (adjustedColumnIndex >= data.get(currentRow).length) {
-            throw new SQLException("Column index does not exist: " + columnIndex);
-        }
-        return data.get(currentRow)[adjustedColumnIndex];
+        return column(columnIndex).get(currentRow);
     }
 
     @Override
-    public Object getObject(String columnLabel) {
-
-        return null;
+    public Object getObject(String columnLabel) throws SQLException {
+        return getObject(findColumn(columnLabel));
     }
 
+    /**
+     * Labels are matched exactly first and then case-insensitively. If several columns have the same label
+     * the first one is returned.
+     */
     @Override
-    public int findColumn(String columnLabel) {
-
-        return 0;
+    public int findColumn(String columnLabel) throws SQLException {
+        if (columnNames == null) {
+            throw new SQLException("Use of columnLabel requires setColumnNames to be called first.");
+        }
+        if (columnIndexes == null) {
+            Map<String, Integer> indexes = new HashMap<>(columnNames.length * 4);
+            for (int i = 0; i < columnNames.length; i++) {
+                indexes.putIfAbsent(columnNames[i], i + 1);
+            }
+            for (int i = 0; i < columnNames.length; i++) {
+                indexes.putIfAbsent(columnNames[i].toLowerCase(Locale.ENGLISH), i + 1);
+            }
+            columnIndexes = indexes;
+        }
+        Integer index = columnIndexes.get(columnLabel);
+        if (index == null) index = columnIndexes.get(columnLabel.toLowerCase(Locale.ENGLISH));
+        if (index == null) {
+            throw new SQLException("Column " + columnLabel + " doesn't exist in this ResultSet");
+        }
+        return index;
     }
 
     @Override
     public Reader getCharacterStream(int columnIndex) {
-
         return null;
     }
 
     @Override
     public Reader getCharacterStream(String columnLabel) {
-
         return null;
     }
 
     @Override
-    public BigDecimal getBigDecimal(int columnIndex) {
-
-        return null;
+    public BigDecimal getBigDecimal(int columnIndex) throws SQLException {
+        Column column = column(columnIndex);
+        if (wasNull) return null;
+        if (column instanceof Column.IntColumn || column instanceof Column.LongColumn) return BigDecimal.valueOf(column.getLong(currentRow));
+        if (column instanceof Column.DoubleColumn) return BigDecimal.valueOf(column.getDouble(currentRow));
+        final Object val = column.get(currentRow);
+        if (val instanceof BigDecimal) return (BigDecimal) val;
+        if (val instanceof Number) return new BigDecimal(val.toString());
+        try {
+            return new BigDecimal(val.toString().replace(",", ""));
+        }
+        catch (NumberFormatException e) {
+            throw notANumber(columnIndex, val, e);
+        }
     }
 
     @Override
     public BigDecimal getBigDecimal(String columnLabel) throws SQLException {
-
-        return new BigDecimal(getString(columnLabel).replace(",", ""));
+        return getBigDecimal(findColumn(columnLabel));
     }
 
     @Override
@@ -886,39 +954,36 @@ public class ListResultSet implements ResultSet {
     }
 
     @Override
-    public Date getDate(int columnIndex, Calendar cal) {
-
-        return null;
+    public Date getDate(int columnIndex, Calendar cal) throws SQLException {
+        Timestamp timestamp = getTimestamp(columnIndex, cal);
+        return timestamp == null ? null : new Date(timestamp.getTime());
     }
 
     @Override
-    public Date getDate(String columnLabel, Calendar cal) {
-
-        return null;
+    public Date getDate(String columnLabel, Calendar cal) throws SQLException {
+        return getDate(findColumn(columnLabel), cal);
     }
 
     @Override
-    public Time getTime(int columnIndex, Calendar cal) {
-
-        return null;
+    public Time getTime(int columnIndex, Calendar cal) throws SQLException {
+        Timestamp timestamp = getTimestamp(columnIndex, cal);
+        return timestamp == null ? null : new Time(timestamp.getTime());
     }
 
     @Override
-    public Time getTime(String columnLabel, Calendar cal) {
-
-        return null;
+    public Time getTime(String columnLabel, Calendar cal) throws SQLException {
+        return getTime(findColumn(columnLabel), cal);
     }
 
     @Override
-    public Timestamp getTimestamp(int columnIndex, Calendar cal) {
-
-        return null;
+    public Timestamp getTimestamp(int columnIndex, Calendar cal) throws SQLException {
+        // dates are stored as instants, so the calendar does not change the value
+        return getTimestamp(columnIndex);
     }
 
     @Override
-    public Timestamp getTimestamp(String columnLabel, Calendar cal) {
-
-        return null;
+    public Timestamp getTimestamp(String columnLabel, Calendar cal) throws SQLException {
+        return getTimestamp(findColumn(columnLabel), cal);
     }
 
     @Override
@@ -1070,15 +1135,13 @@ public class ListResultSet implements ResultSet {
     }
 
     @Override
-    public String getNString(int columnIndex) {
-
-        return null;
+    public String getNString(int columnIndex) throws SQLException {
+        return getString(columnIndex);
     }
 
     @Override
-    public String getNString(String columnLabel) {
-
-        return null;
+    public String getNString(String columnLabel) throws SQLException {
+        return getString(findColumn(columnLabel));
     }
 
     @Override
@@ -1262,12 +1325,27 @@ public class ListResultSet implements ResultSet {
     }
 
     @Override
-    public <T> T getObject(int columnIndex, Class<T> type) {
-        return null;
+    public <T> T getObject(int columnIndex, Class<T> type) throws SQLException {
+        Object value;
+        if (type == Integer.class) value = getInt(columnIndex);
+        else if (type == Long.class) value = getLong(columnIndex);
+        else if (type == Double.class) value = getDouble(columnIndex);
+        else if (type == String.class) value = getString(columnIndex);
+        else if (type == Boolean.class) value = getBoolean(columnIndex);
+        else if (type == BigDecimal.class) value = getBigDecimal(columnIndex);
+        else if (type == Timestamp.class) value = getTimestamp(columnIndex);
+        else if (type == Date.class) value = getDate(columnIndex);
+        else if (type == Time.class) value = getTime(columnIndex);
+        else value = getObject(columnIndex);
+        if (wasNull || value == null) return null;
+        if (!type.isInstance(value)) {
+            throw new SQLException("Value of column " + columnIndex + " cannot be converted to " + type.getName());
+        }
+        return type.cast(value);
     }
 
     @Override
-    public <T> T getObject(String columnLabel, Class<T> type) {
-        return null;
+    public <T> T getObject(String columnLabel, Class<T> type) throws SQLException {
+        return getObject(findColumn(columnLabel), type);
     }
 }
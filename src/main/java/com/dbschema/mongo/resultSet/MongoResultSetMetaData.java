@@ -144,6 +144,21 @@ public class MongoResultSetMetaData implements ResultSetMetaData {
     switch (javaTypes[column - 1]) {
       case Types.JAVA_OBJECT:
         return "map";
+      case Types.INTEGER:
+        return "int";
+      case Types.BIGINT:
+        return "long";
+      case Types.DOUBLE:
+        return "double";
+      case Types.DECIMAL:
+        return "decimal";
+      case Types.BOOLEAN:
+        return "bool";
+      case Types.TIMESTAMP:
+      case Types.DATE:
+        return "date";
+      case Types.ARRAY:
+        return "array";
       default:
         return "varchar";
     }
@@ -178,7 +193,27 @@ public class MongoResultSetMetaData implements ResultSetMetaData {
    */
   @Override
   public String getColumnClassName(int column) throws SQLException {
-    return "java.lang.String";
+    switch (javaTypes[column - 1]) {
+      case Types.INTEGER:
+        return "java.lang.Integer";
+      case Types.BIGINT:
+        return "java.lang.Long";
+      case Types.DOUBLE:
+        return "java.lang.Double";
+      case Types.DECIMAL:
+        return "org.bson.types.Decimal128";
+      case Types.BOOLEAN:
+        return "java.lang.Boolean";
+      case Types.TIMESTAMP:
+      case Types.DATE:
+        return "java.util.Date";
+      case Types.ARRAY:
+        return "java.util.List";
+      case Types.JAVA_OBJECT:
+        return "java.util.Map";
+      default:
+        return "java.lang.String";
+    }
   }
 
 }
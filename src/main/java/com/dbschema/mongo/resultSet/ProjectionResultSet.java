@@ -0,0 +1,387 @@
+package com.dbschema.mongo.resultSet;
+
+import com.dbschema.mongo.Util;
+import org.bson.types.Decimal128;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Result set with named and typed columns over rows of documents.
+ * Navigation is delegated to the source result set, so the same class serves forward-only
+ * and scrollable results. Column values are read from documents by dotted path.
+ */
+public class ProjectionResultSet extends ResultSetIterator {
+  private final ResultSet rows;
+  private final String tableName;
+  private final String[] labels;
+  private final String[][] paths;
+  private final int[] types;
+  private boolean wasNull = false;
+
+  /**
+   * @param rows  result set which returns a document as the first column
+   * @param paths dotted path of every column in documents
+   * @param types {@link java.sql.Types} of every column
+   */
+  public ProjectionResultSet(@NotNull ResultSet rows, @NotNull String tableName, @NotNull String[] labels,
+                             @NotNull String[] paths, @NotNull int[] types) {
+    this.rows = rows;
+    this.tableName = tableName;
+    this.labels = labels;
+    this.types = types;
+    this.paths = new String[paths.length][];
+    for (int i = 0; i < paths.length; i++) {
+      this.paths[i] = paths[i].split("\\.");
+    }
+  }
+
+  @Override
+  public boolean next() throws SQLException {
+    return rows.next();
+  }
+
+  @Override
+  public boolean previous() throws SQLException {
+    return rows.previous();
+  }
+
+  @Override
+  public boolean first() throws SQLException {
+    return rows.first();
+  }
+
+  @Override
+  public boolean last() throws SQLException {
+    return rows.last();
+  }
+
+  @Override
+  public void beforeFirst() throws SQLException {
+    rows.beforeFirst();
+  }
+
+  @Override
+  public void afterLast() throws SQLException {
+    rows.afterLast();
+  }
+
+  @Override
+  public boolean absolute(int row) throws SQLException {
+    return rows.absolute(row);
+  }
+
+  @Override
+  public boolean relative(int rowCount) throws SQLException {
+    return rows.relative(rowCount);
+  }
+
+  @Override
+  public boolean isBeforeFirst() throws SQLException {
+    return rows.isBeforeFirst();
+  }
+
+  @Override
+  public boolean isAfterLast() throws SQLException {
+    return rows.isAfterLast();
+  }
+
+  @Override
+  public boolean isFirst() throws SQLException {
+    return rows.isFirst();
+  }
+
+  @Override
+  public boolean isLast() throws SQLException {
+    return rows.isLast();
+  }
+
+  @Override
+  public int getRow() throws SQLException {
+    return rows.getRow();
+  }
+
+  @Override
+  public int getType() {
+    try {
+      return rows.getType();
+    }
+    catch (SQLException e) {
+      return TYPE_FORWARD_ONLY;
+    }
+  }
+
+  @Override
+  public void addCompletionListener(CompletionListener completionListener) {
+    if (rows instanceof ResultSetIterator) ((ResultSetIterator) rows).addCompletionListener(completionListener);
+  }
+
+  @Override
+  public void close() throws SQLException {
+    rows.close();
+  }
+
+  @Override
+  public boolean isClosed() {
+    try {
+      return rows.isClosed();
+    }
+    catch (SQLException e) {
+      return true;
+    }
+  }
+
+  @Override
+  public ResultSetMetaData getMetaData() {
+    return new MongoResultSetMetaData(tableName, labels, types);
+  }
+
+  @Override
+  public boolean wasNull() {
+    return wasNull;
+  }
+
+  @Override
+  public int findColumn(String columnLabel) throws SQLException {
+    for (int i = 0; i < labels.length; i++) {
+      if (labels[i].equals(columnLabel)) return i + 1;
+    }
+    for (int i = 0; i < labels.length; i++) {
+      if (labels[i].equalsIgnoreCase(columnLabel)) return i + 1;
+    }
+    throw new SQLException("Column not found: " + columnLabel);
+  }
+
+  @Override
+  public Object getObject(int columnIndex) throws SQLException {
+    if (columnIndex < 1 || columnIndex > labels.length) throw new SQLException("Invalid column index: " + columnIndex);
+    Object value = extract(rows.getObject(1), paths[columnIndex - 1], 0);
+    wasNull = value == null;
+    return value;
+  }
+
+  /**
+   * Path through an array returns values of all its elements, the same as projection on the server
+   */
+  @Nullable
+  private static Object extract(@Nullable Object value, @NotNull String[] path, int index) {
+    if (index == path.length) return value;
+    if (value instanceof Map) return extract(((Map<?, ?>) value).get(path[index]), path, index + 1);
+    if (value instanceof List) {
+      List<Object> values = new ArrayList<>();
+      for (Object element : (List<?>) value) {
+        if (element instanceof Map) values.add(extract(element, path, index));
+      }
+      return values;
+    }
+    return null;
+  }
+
+  @Override
+  public String getString(int columnIndex) throws SQLException {
+    Object value = getObject(columnIndex);
+    if (value == null || value instanceof String) return (String) value;
+    if (value instanceof Map) return Util.toDocument((Map<?, ?>) value).toJson();
+    return value.toString();
+  }
+
+  @Override
+  public String getNString(int columnIndex) {
+    try {
+      return getString(columnIndex);
+    }
+    catch (SQLException e) {
+      return null;
+    }
+  }
+
+  @Override
+  public boolean getBoolean(int columnIndex) throws SQLException {
+    Object value = getObject(columnIndex);
+    if (value instanceof Boolean) return (Boolean) value;
+    if (value instanceof Number) return ((Number) value).intValue() != 0;
+    return value != null && Boolean.parseBoolean(value.toString());
+  }
+
+  @Override
+  public byte getByte(int columnIndex) throws SQLException {
+    return (byte) getLong(columnIndex);
+  }
+
+  @Override
+  public short getShort(int columnIndex) throws SQLException {
+    return (short) getLong(columnIndex);
+  }
+
+  @Override
+  public int getInt(int columnIndex) throws SQLException {
+    return (int) getLong(columnIndex);
+  }
+
+  @Override
+  public long getLong(int columnIndex) throws SQLException {
+    Object value = getObject(columnIndex);
+    if (value == null) return 0;
+    if (value instanceof Number) return ((Number) value).longValue();
+    if (value instanceof Decimal128) return ((Decimal128) value).longValue();
+    if (value instanceof Boolean) return (Boolean) value ? 1 : 0;
+    try {
+      return Long.parseLong(value.toString().trim());
+    }
+    catch (NumberFormatException e) {
+      throw notANumber(columnIndex, value, e);
+    }
+  }
+
+  @Override
+  public float getFloat(int columnIndex) throws SQLException {
+    return (float) getDouble(columnIndex);
+  }
+
+  @Override
+  public double getDouble(int columnIndex) throws SQLException {
+    Object value = getObject(columnIndex);
+    if (value == null) return 0;
+    if (value instanceof Number) return ((Number) value).doubleValue();
+    if (value instanceof Decimal128) return ((Decimal128) value).doubleValue();
+    if (value instanceof Boolean) return (Boolean) value ? 1 : 0;
+    try {
+      return Double.parseDouble(value.toString().trim());
+    }
+    catch (NumberFormatException e) {
+      throw notANumber(columnIndex, value, e);
+    }
+  }
+
+  @Override
+  public BigDecimal getBigDecimal(int columnIndex) throws SQLException {
+    Object value = getObject(columnIndex);
+    if (value == null || value instanceof BigDecimal) return (BigDecimal) value;
+    if (value instanceof Decimal128) return ((Decimal128) value).bigDecimalValue();
+    if (value instanceof Integer || value instanceof Long) return BigDecimal.valueOf(((Number) value).longValue());
+    if (value instanceof Number) return BigDecimal.valueOf(((Number) value).doubleValue());
+    try {
+      return new BigDecimal(value.toString().trim());
+    }
+    catch (NumberFormatException e) {
+      throw notANumber(columnIndex, value, e);
+    }
+  }
+
+  @Override
+  public BigDecimal getBigDecimal(int columnIndex, int scale) throws SQLException {
+    BigDecimal value = getBigDecimal(columnIndex);
+    return value == null ? null : value.setScale(scale, RoundingMode.HALF_UP);
+  }
+
+  private static SQLException notANumber(int columnIndex, Object value, Exception cause) {
+    return new SQLException("Value of column " + columnIndex + " is not a number: " + value, cause);
+  }
+
+  @Override
+  public Timestamp getTimestamp(int columnIndex) throws SQLException {
+    Object value = getObject(columnIndex);
+    if (value == null || value instanceof Timestamp) return (Timestamp) value;
+    if (value instanceof java.util.Date) return new Timestamp(((java.util.Date) value).getTime());
+    if (value instanceof Number) return new Timestamp(((Number) value).longValue());
+    try {
+      return Timestamp.valueOf(value.toString());
+    }
+    catch (IllegalArgumentException e) {
+      throw new SQLException("Value of column " + columnIndex + " is not a timestamp: " + value, e);
+    }
+  }
+
+  @Override
+  public Date getDate(int columnIndex) throws SQLException {
+    Timestamp timestamp = getTimestamp(columnIndex);
+    return timestamp == null ? null : new Date(timestamp.getTime());
+  }
+
+  @Override
+  public Time getTime(int columnIndex) throws SQLException {
+    Timestamp timestamp = getTimestamp(columnIndex);
+    return timestamp == null ? null : new Time(timestamp.getTime());
+  }
+
+  @Override
+  public Object getObject(String columnLabel) throws SQLException {
+    return getObject(findColumn(columnLabel));
+  }
+
+  @Override
+  public String getString(String columnLabel) throws SQLException {
+    return getString(findColumn(columnLabel));
+  }
+
+  @Override
+  public boolean getBoolean(String columnLabel) throws SQLException {
+    return getBoolean(findColumn(columnLabel));
+  }
+
+  @Override
+  public byte getByte(String columnLabel) throws SQLException {
+    return getByte(findColumn(columnLabel));
+  }
+
+  @Override
+  public short getShort(String columnLabel) throws SQLException {
+    return getShort(findColumn(columnLabel));
+  }
+
+  @Override
+  public int getInt(String columnLabel) throws SQLException {
+    return getInt(findColumn(columnLabel));
+  }
+
+  @Override
+  public long getLong(String columnLabel) throws SQLException {
+    return getLong(findColumn(columnLabel));
+  }
+
+  @Override
+  public float getFloat(String columnLabel) throws SQLException {
+    return getFloat(findColumn(columnLabel));
+  }
+
+  @Override
+  public double getDouble(String columnLabel) throws SQLException {
+    return getDouble(findColumn(columnLabel));
+  }
+
+  @Override
+  public BigDecimal getBigDecimal(String columnLabel) throws SQLException {
+    return getBigDecimal(findColumn(columnLabel));
+  }
+
+  @Override
+  public BigDecimal getBigDecimal(String columnLabel, int scale) throws SQLException {
+    return getBigDecimal(findColumn(columnLabel), scale);
+  }
+
+  @Override
+  public Timestamp getTimestamp(String columnLabel) throws SQLException {
+    return getTimestamp(findColumn(columnLabel));
+  }
+
+  @Override
+  public Date getDate(String columnLabel) throws SQLException {
+    return getDate(findColumn(columnLabel));
+  }
+
+  @Override
+  public Time getTime(String columnLabel) throws SQLException {
+    return getTime(findColumn(columnLabel));
+  }
+}
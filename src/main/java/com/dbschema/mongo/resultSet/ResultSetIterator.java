@@ -2,6 +2,7 @@ package com.dbschema.mongo.resultSet;
 
 import com.dbschema.mongo.SQLAlreadyClosedException;
 import com.mongodb.mongosh.result.Cursor;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.Closeable;
 import java.io.InputStream;
@@ -18,6 +19,9 @@ public class ResultSetIterator implements ResultSet {
   private boolean isClosed = false;
   private final Iterator<?> iterator;
   protected Object actual;
+  private CompletionListener completionListener;
+  private int rowCount = 0;
+  private long fetchNanos = 0;
 
   public ResultSetIterator() {
     this.iterator = null;
@@ -38,21 +42,54 @@ public class ResultSetIterator implements ResultSet {
   }
 
   @Override
-  public boolean next() {
+  public boolean next() throws SQLException {
     actual = null;
-    if (iterator != null) {
-      if (iterator.hasNext()) {
+    long start = completionListener != null ? System.nanoTime() : 0;
+    boolean hasNext;
+    try {
+      hasNext = iterator != null && iterator.hasNext();
+      if (hasNext) {
         actual = iterator.next();
-        return true;
+        rowCount++;
       }
     }
-    return false;
+    catch (RuntimeException e) {
+      if (completionListener != null) {
+        fetchNanos += System.nanoTime() - start;
+        fireCompleted(e);
+      }
+      throw e;
+    }
+    if (completionListener != null) {
+      fetchNanos += System.nanoTime() - start;
+      if (!hasNext) fireCompleted(null);
+    }
+    return hasNext;
+  }
+
+  /**
+   * Listeners are notified once, when the iterator is exhausted, fails or when the result set is closed,
+   * whichever happens first. They are notified in the order they were added.
+   */
+  public void addCompletionListener(CompletionListener completionListener) {
+    CompletionListener previous = this.completionListener;
+    this.completionListener = previous == null ? completionListener : (rowCount, fetchNanos, error) -> {
+      previous.completed(rowCount, fetchNanos, error);
+      completionListener.completed(rowCount, fetchNanos, error);
+    };
+  }
+
+  private void fireCompleted(@Nullable Throwable error) {
+    CompletionListener listener = completionListener;
+    completionListener = null;
+    if (listener != null) listener.completed(rowCount, fetchNanos, error);
   }
 
   @Override
   public void close() throws SQLException {
     checkClosed();
     isClosed = true;
+    fireCompleted(null);
     if (iterator instanceof Closeable) {
       try {
         ((Closeable) iterator).close();
@@ -92,42 +129,42 @@ public class ResultSetIterator implements ResultSet {
   }
 
   @Override
-  public boolean getBoolean(int columnIndex) {
+  public boolean getBoolean(int columnIndex) throws SQLException {
     return false;
   }
 
   @Override
-  public byte getByte(int columnIndex) {
+  public byte getByte(int columnIndex) throws SQLException {
     return 0;
   }
 
   @Override
-  public short getShort(int columnIndex) {
+  public short getShort(int columnIndex) throws SQLException {
     return 0;
   }
 
   @Override
-  public int getInt(int columnIndex) {
+  public int getInt(int columnIndex) throws SQLException {
     return 0;
   }
 
   @Override
-  public long getLong(int columnIndex) {
+  public long getLong(int columnIndex) throws SQLException {
     return 0;
   }
 
   @Override
-  public float getFloat(int columnIndex) {
+  public float getFloat(int columnIndex) throws SQLException {
     return 0;
   }
 
   @Override
-  public double getDouble(int columnIndex) {
+  public double getDouble(int columnIndex) throws SQLException {
     return 0;
   }
 
   @Override
-  public BigDecimal getBigDecimal(int columnIndex, int scale) {
+  public BigDecimal getBigDecimal(int columnIndex, int scale) throws SQLException {
     return null;
   }
 
@@ -137,17 +174,17 @@ public class ResultSetIterator implements ResultSet {
   }
 
   @Override
-  public Date getDate(int columnIndex) {
+  public Date getDate(int columnIndex) throws SQLException {
     return null;
   }
 
   @Override
-  public Time getTime(int columnIndex) {
+  public Time getTime(int columnIndex) throws SQLException {
     return null;
   }
 
   @Override
-  public Timestamp getTimestamp(int columnIndex) {
+  public Timestamp getTimestamp(int columnIndex) throws SQLException {
     return null;
   }
 
@@ -167,47 +204,47 @@ public class ResultSetIterator implements ResultSet {
   }
 
   @Override
-  public String getString(String columnLabel) {
+  public String getString(String columnLabel) throws SQLException {
     return null;
   }
 
   @Override
-  public boolean getBoolean(String columnLabel) {
+  public boolean getBoolean(String columnLabel) throws SQLException {
     return false;
   }
 
   @Override
-  public byte getByte(String columnLabel) {
+  public byte getByte(String columnLabel) throws SQLException {
     return 0;
   }
 
   @Override
-  public short getShort(String columnLabel) {
+  public short getShort(String columnLabel) throws SQLException {
     return 0;
   }
 
   @Override
-  public int getInt(String columnLabel) {
+  public int getInt(String columnLabel) throws SQLException {
     return 0;
   }
 
   @Override
-  public long getLong(String columnLabel) {
+  public long getLong(String columnLabel) throws SQLException {
     return 0;
   }
 
   @Override
-  public float getFloat(String columnLabel) {
+  public float getFloat(String columnLabel) throws SQLException {
     return 0;
   }
 
   @Override
-  public double getDouble(String columnLabel) {
+  public double getDouble(String columnLabel) throws SQLException {
     return 0;
   }
 
   @Override
-  public BigDecimal getBigDecimal(String columnLabel, int scale) {
+  public BigDecimal getBigDecimal(String columnLabel, int scale) throws SQLException {
     return null;
   }
 
@@ -217,17 +254,17 @@ public class ResultSetIterator implements ResultSet {
   }
 
   @Override
-  public Date getDate(String columnLabel) {
+  public Date getDate(String columnLabel) throws SQLException {
     return null;
   }
 
   @Override
-  public Time getTime(String columnLabel) {
+  public Time getTime(String columnLabel) throws SQLException {
     return null;
   }
 
   @Override
-  public Timestamp getTimestamp(String columnLabel) {
+  public Timestamp getTimestamp(String columnLabel) throws SQLException {
     return null;
   }
 
@@ -263,12 +300,12 @@ public class ResultSetIterator implements ResultSet {
 
 
   @Override
-  public Object getObject(String columnLabel) {
+  public Object getObject(String columnLabel) throws SQLException {
     return null;
   }
 
   @Override
-  public int findColumn(String columnLabel) {
+  public int findColumn(String columnLabel) throws SQLException {
     return 0;
   }
 
@@ -283,72 +320,72 @@ public class ResultSetIterator implements ResultSet {
   }
 
   @Override
-  public BigDecimal getBigDecimal(int columnIndex) {
+  public BigDecimal getBigDecimal(int columnIndex) throws SQLException {
     return null;
   }
 
   @Override
-  public BigDecimal getBigDecimal(String columnLabel) {
+  public BigDecimal getBigDecimal(String columnLabel) throws SQLException {
     return null;
   }
 
   @Override
-  public boolean isBeforeFirst() {
+  public boolean isBeforeFirst() throws SQLException {
     return false;
   }
 
   @Override
-  public boolean isAfterLast() {
+  public boolean isAfterLast() throws SQLException {
     return false;
   }
 
   @Override
-  public boolean isFirst() {
+  public boolean isFirst() throws SQLException {
     return false;
   }
 
   @Override
-  public boolean isLast() {
+  public boolean isLast() throws SQLException {
     return false;
   }
 
   @Override
-  public void beforeFirst() {
+  public void beforeFirst() throws SQLException {
 
   }
 
   @Override
-  public void afterLast() {
+  public void afterLast() throws SQLException {
 
   }
 
   @Override
-  public boolean first() {
+  public boolean first() throws SQLException {
     return false;
   }
 
   @Override
-  public boolean last() {
+  public boolean last() throws SQLException {
     return false;
   }
 
   @Override
-  public int getRow() {
+  public int getRow() throws SQLException {
     return 0;
   }
 
   @Override
-  public boolean absolute(int row) throws SQLFeatureNotSupportedException {
+  public boolean absolute(int row) throws SQLException {
     throw new SQLFeatureNotSupportedException();
   }
 
   @Override
-  public boolean relative(int rows) throws SQLFeatureNotSupportedException {
+  public boolean relative(int rows) throws SQLException {
     throw new SQLFeatureNotSupportedException();
   }
 
   @Override
-  public boolean previous() throws SQLFeatureNotSupportedException {
+  public boolean previous() throws SQLException {
     throw new SQLFeatureNotSupportedException();
   }
 
@@ -838,7 +875,7 @@ public class ResultSetIterator implements ResultSet {
   }
 
   @Override
-  public String getNString(String columnLabel) {
+  public String getNString(String columnLabel) throws SQLException {
     return null;
   }
 
@@ -1011,4 +1048,13 @@ public class ResultSetIterator implements ResultSet {
   public boolean isWrapperFor(Class<?> iface) {
     return false;
   }
+
+  public interface CompletionListener {
+    /**
+     * @param rowCount   number of rows returned by {@link #next()}
+     * @param fetchNanos time spent inside {@link #next()}, excluding the time the caller spent between calls
+     * @param error      exception thrown while reading the next row, null if the rows were read or the result set was closed
+     */
+    void completed(int rowCount, long fetchNanos, @Nullable Throwable error);
+  }
 }
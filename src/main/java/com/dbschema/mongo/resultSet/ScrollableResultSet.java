@@ -0,0 +1,268 @@
+package com.dbschema.mongo.resultSet;
+
+import com.dbschema.mongo.SQLAlreadyClosedException;
+import com.dbschema.mongo.Util;
+import com.mongodb.MongoClientSettings;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * {@link ResultSet#TYPE_SCROLL_INSENSITIVE} result set over a forward-only result.
+ * <p>
+ * Rows are read from the source only when the cursor moves past the rows that were already fetched.
+ * Fetched documents are appended as raw BSON to a {@link SpillFile}, so moving to any fetched row does not
+ * touch the server and heap use does not depend on the size of the result.
+ * Values that are not documents are kept in memory.
+ */
+public class ScrollableResultSet extends ResultSetIterator {
+  private static final DocumentCodec CODEC = new DocumentCodec(MongoClientSettings.getDefaultCodecRegistry());
+
+  private SpillFile spillFile;
+  private final Map<Integer, Object> otherValues = new HashMap<>();
+  private boolean isExhausted = false;
+  /**
+   * 0 is before the first row, {@code fetched + 1} is after the last row
+   */
+  private int row = 0;
+  private int fetched = 0;
+  private int fetchDirection = FETCH_FORWARD;
+
+  public ScrollableResultSet(@NotNull ResultSet source) {
+    super(new SourceIterator(source));
+  }
+
+  @Override
+  public boolean next() throws SQLException {
+    return absolute(row + 1);
+  }
+
+  @Override
+  public boolean previous() throws SQLException {
+    return relative(-1);
+  }
+
+  @Override
+  public boolean first() throws SQLException {
+    return absolute(1);
+  }
+
+  @Override
+  public boolean last() throws SQLException {
+    return absolute(-1);
+  }
+
+  @Override
+  public void beforeFirst() throws SQLException {
+    absolute(0);
+  }
+
+  @Override
+  public void afterLast() throws SQLException {
+    checkOpen();
+    fetchAll();
+    moveTo(fetched + 1);
+  }
+
+  @Override
+  public boolean relative(int rows) throws SQLException {
+    return absolute(Math.max(row + rows, 0));
+  }
+
+  @Override
+  public boolean absolute(int row) throws SQLException {
+    checkOpen();
+    if (row < 0) {
+      fetchAll();
+      row = Math.max(fetched + 1 + row, 0);
+    }
+    else {
+      fetch(row);
+    }
+    return moveTo(Math.min(row, fetched + 1));
+  }
+
+  @Override
+  public boolean isBeforeFirst() throws SQLException {
+    checkOpen();
+    fetch(1);
+    return row == 0 && fetched > 0;
+  }
+
+  @Override
+  public boolean isAfterLast() {
+    return row > fetched && fetched > 0;
+  }
+
+  @Override
+  public boolean isFirst() {
+    return row == 1 && fetched > 0;
+  }
+
+  @Override
+  public boolean isLast() throws SQLException {
+    checkOpen();
+    if (row == 0 || row > fetched) return false;
+    fetch(row + 1);
+    return row == fetched;
+  }
+
+  @Override
+  public int getRow() {
+    return row > 0 && row <= fetched ? row : 0;
+  }
+
+  @Override
+  public int getType() {
+    return TYPE_SCROLL_INSENSITIVE;
+  }
+
+  @Override
+  public void setFetchDirection(int direction) {
+    fetchDirection = direction;
+  }
+
+  @Override
+  public int getFetchDirection() {
+    return fetchDirection;
+  }
+
+  private boolean moveTo(int row) throws SQLException {
+    this.row = row;
+    if (row == 0 || row > fetched) {
+      actual = null;
+      return false;
+    }
+    int index = row - 1;
+    if (otherValues.containsKey(index)) {
+      actual = otherValues.get(index);
+      return true;
+    }
+    try {
+      actual = new RawBsonDocument(spillFile.read(index)).decode(CODEC);
+    }
+    catch (IOException e) {
+      throw new SQLException("Cannot read row " + row + " from temporary file", e);
+    }
+    return true;
+  }
+
+  private void fetchAll() throws SQLException {
+    fetch(Integer.MAX_VALUE);
+  }
+
+  /**
+   * Fetches rows from the source until {@code rows} rows are available or the source is exhausted
+   */
+  private void fetch(int rows) throws SQLException {
+    while (fetched < rows && !isExhausted) {
+      if (!super.next()) {
+        isExhausted = true;
+        break;
+      }
+      spill(actual);
+      fetched++;
+    }
+  }
+
+  private void spill(Object value) throws SQLException {
+    ByteBuffer bytes = null;
+    if (value instanceof Map) {
+      try {
+        Document document = Util.toDocument((Map<?, ?>) value);
+        bytes = new RawBsonDocument(document, CODEC).getByteBuffer().asNIO();
+      }
+      catch (RuntimeException ignored) { // value cannot be encoded
+      }
+    }
+    try {
+      if (spillFile == null) spillFile = new SpillFile();
+      if (bytes == null) {
+        otherValues.put(fetched, value);
+        bytes = new RawBsonDocument(new Document(), CODEC).getByteBuffer().asNIO();
+      }
+      spillFile.append(bytes);
+    }
+    catch (IOException e) {
+      throw new SQLException("Cannot write row to temporary file", e);
+    }
+  }
+
+  private void checkOpen() throws SQLAlreadyClosedException {
+    if (isClosed()) throw new SQLAlreadyClosedException(this.getClass().getSimpleName());
+  }
+
+  @Override
+  public void close() throws SQLException {
+    try {
+      super.close();
+    }
+    finally {
+      otherValues.clear();
+      if (spillFile != null) {
+        try {
+          spillFile.close();
+        }
+        catch (IOException e) {
+          System.err.println("WARNING: Cannot delete temporary file of result set: " + e.getMessage());
+        }
+        spillFile = null;
+      }
+    }
+  }
+
+  private static class SourceIterator implements Iterator<Object>, Closeable {
+    private final ResultSet source;
+    private Boolean hasNext;
+
+    SourceIterator(@NotNull ResultSet source) {
+      this.source = source;
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (hasNext == null) {
+        try {
+          hasNext = source.next();
+        }
+        catch (SQLException e) {
+          throw new RuntimeException(e);
+        }
+      }
+      return hasNext;
+    }
+
+    @Override
+    public Object next() {
+      if (!hasNext()) throw new NoSuchElementException();
+      hasNext = null;
+      try {
+        return source.getObject(1);
+      }
+      catch (SQLException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        if (!source.isClosed()) source.close();
+      }
+      catch (SQLException e) {
+        throw new IOException(e);
+      }
+    }
+  }
+}
@@ -0,0 +1,112 @@
+package com.dbschema.mongo.resultSet;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Append-only temporary file of BSON documents with an index of document offsets.
+ * <p>
+ * The file is mapped into memory in segments of {@link #SEGMENT_SIZE} bytes, so reading any document
+ * costs one index lookup and a copy of its bytes, and the heap only holds 8 bytes of index per document.
+ * The file is deleted by {@link #close()}.
+ */
+class SpillFile implements AutoCloseable {
+  private static final int SEGMENT_SIZE = 8 * 1024 * 1024;
+
+  private final File file;
+  private final RandomAccessFile randomAccessFile;
+  private final FileChannel channel;
+  private final List<MappedByteBuffer> segments = new ArrayList<>();
+  private long[] offsets = new long[1024];
+  private int count = 0;
+  private long size = 0;
+
+  SpillFile() throws IOException {
+    file = File.createTempFile("mongo-jdbc-", ".bson");
+    randomAccessFile = new RandomAccessFile(file, "rw");
+    channel = randomAccessFile.getChannel();
+  }
+
+  int getCount() {
+    return count;
+  }
+
+  /**
+   * @param document BSON document, the first four bytes are the length of the document
+   * @return index of the document
+   */
+  int append(@NotNull ByteBuffer document) throws IOException {
+    if (count == offsets.length) offsets = Arrays.copyOf(offsets, offsets.length * 2);
+    offsets[count] = size;
+    ByteBuffer source = document.duplicate();
+    while (source.hasRemaining()) {
+      ByteBuffer segment = segment(size);
+      int length = Math.min(source.remaining(), segment.remaining());
+      ByteBuffer chunk = source.duplicate();
+      chunk.limit(chunk.position() + length);
+      segment.put(chunk);
+      source.position(source.position() + length);
+      size += length;
+    }
+    return count++;
+  }
+
+  @NotNull
+  byte[] read(int index) throws IOException {
+    if (index < 0 || index >= count) throw new IndexOutOfBoundsException("Document " + index + " of " + count);
+    long offset = offsets[index];
+    byte[] lengthBytes = new byte[4];
+    read(offset, lengthBytes);
+    int length = ByteBuffer.wrap(lengthBytes).order(ByteOrder.LITTLE_ENDIAN).getInt();
+    byte[] bytes = new byte[length];
+    read(offset, bytes);
+    return bytes;
+  }
+
+  private void read(long position, byte[] destination) throws IOException {
+    int read = 0;
+    while (read < destination.length) {
+      ByteBuffer segment = segment(position + read);
+      int length = Math.min(destination.length - read, segment.remaining());
+      segment.get(destination, read, length);
+      read += length;
+    }
+  }
+
+  /**
+   * @return view of the segment that contains the position, positioned at it
+   */
+  @NotNull
+  private ByteBuffer segment(long position) throws IOException {
+    int index = (int) (position / SEGMENT_SIZE);
+    while (segments.size() <= index) {
+      segments.add(channel.map(FileChannel.MapMode.READ_WRITE, (long) segments.size() * SEGMENT_SIZE, SEGMENT_SIZE));
+    }
+    ByteBuffer segment = segments.get(index).duplicate();
+    segment.position((int) (position % SEGMENT_SIZE));
+    return segment;
+  }
+
+  @Override
+  public void close() throws IOException {
+    segments.clear();
+    offsets = null;
+    try {
+      randomAccessFile.close();
+    }
+    finally {
+      // mapped segments are released by GC, some platforms don't allow to delete the file until then
+      if (!file.delete()) file.deleteOnExit();
+    }
+  }
+}
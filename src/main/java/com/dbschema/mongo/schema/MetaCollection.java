@@ -34,7 +34,9 @@ public class MetaCollection extends MetaJson {
 
 
   private void discoverCollectionFirstRecords(MongoCollection<?> mongoCollection, int iterations) {
-    MongoCursor<?> cursor = mongoCollection.find().iterator();
+    FindIterable<?> iterable = mongoCollection.find();
+    if (iterations > 0) iterable.limit(iterations).batchSize(iterations);
+    MongoCursor<?> cursor = iterable.iterator();
     int iteration = 0;
     while (cursor.hasNext() && ++iteration <= iterations) {
       discoverMap(this, cursor.next());
@@ -0,0 +1,69 @@
+package com.dbschema.mongo.session;
+
+import com.mongodb.client.ClientSession;
+import com.mongodb.client.MongoCursor;
+import org.bson.BsonDocument;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Cursor opened in its own session, see {@link SessionCursors}
+ */
+public class SessionCursor<T> implements Iterator<T>, Closeable {
+  private final SessionCursors owner;
+  private final ClientSession session;
+  private final BsonDocument sessionIdentifier;
+  private final MongoCursor<T> cursor;
+  private final AtomicBoolean closed = new AtomicBoolean();
+  private volatile long lastUsedNanos;
+
+  SessionCursor(@NotNull SessionCursors owner, @NotNull ClientSession session, @NotNull MongoCursor<T> cursor) {
+    this.owner = owner;
+    this.session = session;
+    this.sessionIdentifier = session.getServerSession().getIdentifier();
+    this.cursor = cursor;
+    this.lastUsedNanos = owner.nanoTime();
+  }
+
+  @NotNull
+  BsonDocument getSessionIdentifier() {
+    return sessionIdentifier;
+  }
+
+  /**
+   * @return value of {@link SessionCursors#nanoTime()} when the consumer last read the cursor
+   */
+  long getLastUsedNanos() {
+    return lastUsedNanos;
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (closed.get()) return false;
+    lastUsedNanos = owner.nanoTime();
+    boolean hasNext = cursor.hasNext();
+    if (!hasNext) close(); // session goes back to the pool right away
+    return hasNext;
+  }
+
+  @Override
+  public T next() {
+    lastUsedNanos = owner.nanoTime();
+    return cursor.next();
+  }
+
+  @Override
+  public void close() {
+    if (!closed.compareAndSet(false, true)) return;
+    owner.closed(this);
+    try {
+      cursor.close();
+    }
+    finally {
+      session.close();
+    }
+  }
+}
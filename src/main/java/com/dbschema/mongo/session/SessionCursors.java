@@ -0,0 +1,118 @@
+package com.dbschema.mongo.session;
+
+import com.mongodb.client.ClientSession;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoCursor;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Cursors of one connection that are kept alive while the consumer is idle.
+ * <p>
+ * Every cursor is opened in its own explicit session. Find cursors are opened with {@code noCursorTimeout},
+ * so they are bound to the session instead of the 10 minute idle timeout. Sessions of open cursors are refreshed
+ * with {@code refreshSessions} well within the 30 minute session timeout. A cursor and its session are closed
+ * when the cursor is exhausted, when the result set is closed or when the connection is closed.
+ * <p>
+ * A cursor that was not read for {@value #MAX_IDLE_MINUTES} minutes is treated as abandoned: its session is no longer
+ * refreshed, so the server expires the session and kills the cursor. The consumer that comes back later gets
+ * a cursor-not-found error, the cursor is still closed with the result set or the connection.
+ */
+public class SessionCursors implements AutoCloseable {
+  private static final long REFRESH_MINUTES = 5;
+  static final long MAX_IDLE_MINUTES = 60;
+  private static final ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+    Thread thread = new Thread(r, "MongoJdbc session refresh");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private final MongoClient client;
+  private final Set<SessionCursor<?>> cursors = ConcurrentHashMap.newKeySet();
+  private final LongSupplier clock;
+  private final ScheduledFuture<?> task;
+
+  public SessionCursors(@NotNull MongoClient client) {
+    this(client, System::nanoTime);
+  }
+
+  SessionCursors(@NotNull MongoClient client, @NotNull LongSupplier clock) {
+    this.client = client;
+    this.clock = clock;
+    this.task = refresher.scheduleWithFixedDelay(this::refresh, REFRESH_MINUTES, REFRESH_MINUTES, TimeUnit.MINUTES);
+  }
+
+  /**
+   * @param opener opens the cursor in the given session
+   */
+  @NotNull
+  public <T> SessionCursor<T> open(@NotNull Function<ClientSession, MongoCursor<T>> opener) {
+    ClientSession session = client.startSession();
+    try {
+      SessionCursor<T> cursor = new SessionCursor<>(this, session, opener.apply(session));
+      cursors.add(cursor);
+      return cursor;
+    }
+    catch (RuntimeException e) {
+      session.close();
+      throw e;
+    }
+  }
+
+  public int getOpenCount() {
+    return cursors.size();
+  }
+
+  void closed(@NotNull SessionCursor<?> cursor) {
+    cursors.remove(cursor);
+  }
+
+  long nanoTime() {
+    return clock.getAsLong();
+  }
+
+  /**
+   * @return sessions of cursors that were read within {@value #MAX_IDLE_MINUTES} minutes
+   */
+  @NotNull
+  List<BsonDocument> sessionsToRefresh() {
+    long idleSince = nanoTime() - TimeUnit.MINUTES.toNanos(MAX_IDLE_MINUTES);
+    List<BsonDocument> sessions = new ArrayList<>();
+    for (SessionCursor<?> cursor : cursors) {
+      // abandoned cursors are left to the session timeout of the server
+      if (cursor.getLastUsedNanos() - idleSince >= 0) sessions.add(cursor.getSessionIdentifier());
+    }
+    return sessions;
+  }
+
+  private void refresh() {
+    List<BsonDocument> sessions = sessionsToRefresh();
+    if (sessions.isEmpty()) return;
+    try {
+      client.getDatabase("admin").runCommand(new Document("refreshSessions", sessions));
+    }
+    catch (RuntimeException e) { // next refresh is still within the session timeout
+      System.err.println("WARNING: cannot refresh sessions of open cursors. " + e);
+    }
+  }
+
+  @Override
+  public void close() {
+    task.cancel(false);
+    for (SessionCursor<?> cursor : new ArrayList<>(cursors)) {
+      cursor.close();
+    }
+  }
+}
@@ -0,0 +1,21 @@
+package com.dbschema.mongo.sql;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Set;
+
+/**
+ * Size and indexes of a collection, used to choose the driving collection of a join
+ */
+class CollectionStatistics {
+  final long documentCount;
+  /**
+   * First keys of indexes which can serve equality lookups
+   */
+  final Set<String> leadingIndexKeys;
+
+  CollectionStatistics(long documentCount, @NotNull Set<String> leadingIndexKeys) {
+    this.documentCount = documentCount;
+    this.leadingIndexKeys = leadingIndexKeys;
+  }
+}
@@ -0,0 +1,179 @@
+package com.dbschema.mongo.sql;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+
+/**
+ * Node of SQL expression tree
+ */
+abstract class Expression {
+
+  @NotNull
+  private static String join(@NotNull List<Expression> expressions) {
+    StringBuilder sb = new StringBuilder();
+    for (Expression expression : expressions) {
+      if (sb.length() > 0) sb.append(", ");
+      sb.append(expression);
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Reference to a field, e.g. {@code o.address.city}. Parts are identifiers as written,
+   * the compiler decides which of them is a table qualifier.
+   */
+  static final class ColumnRef extends Expression {
+    final List<String> parts;
+
+    ColumnRef(@NotNull List<String> parts) {
+      this.parts = parts;
+    }
+
+    @Override
+    public String toString() {
+      return String.join(".", parts);
+    }
+  }
+
+  static final class Literal extends Expression {
+    @Nullable
+    final Object value;
+
+    Literal(@Nullable Object value) {
+      this.value = value;
+    }
+
+    @Override
+    public String toString() {
+      return value instanceof String ? "'" + value + "'" : String.valueOf(value);
+    }
+  }
+
+  /**
+   * Comparison, arithmetic, concatenation, AND and OR
+   */
+  static final class Binary extends Expression {
+    final String operator;
+    final Expression left;
+    final Expression right;
+
+    Binary(@NotNull String operator, @NotNull Expression left, @NotNull Expression right) {
+      this.operator = operator;
+      this.left = left;
+      this.right = right;
+    }
+
+    @Override
+    public String toString() {
+      return "(" + left + " " + operator + " " + right + ")";
+    }
+  }
+
+  /**
+   * NOT and unary minus
+   */
+  static final class Unary extends Expression {
+    final String operator;
+    final Expression operand;
+
+    Unary(@NotNull String operator, @NotNull Expression operand) {
+      this.operator = operator;
+      this.operand = operand;
+    }
+
+    @Override
+    public String toString() {
+      return operator + " " + operand;
+    }
+  }
+
+  static final class InList extends Expression {
+    final Expression operand;
+    final List<Expression> values;
+    final boolean negated;
+
+    InList(@NotNull Expression operand, @NotNull List<Expression> values, boolean negated) {
+      this.operand = operand;
+      this.values = values;
+      this.negated = negated;
+    }
+
+    @Override
+    public String toString() {
+      return operand + (negated ? " NOT IN (" : " IN (") + join(values) + ")";
+    }
+  }
+
+  static final class Between extends Expression {
+    final Expression operand;
+    final Expression low;
+    final Expression high;
+    final boolean negated;
+
+    Between(@NotNull Expression operand, @NotNull Expression low, @NotNull Expression high, boolean negated) {
+      this.operand = operand;
+      this.low = low;
+      this.high = high;
+      this.negated = negated;
+    }
+
+    @Override
+    public String toString() {
+      return operand + (negated ? " NOT BETWEEN " : " BETWEEN ") + low + " AND " + high;
+    }
+  }
+
+  static final class Like extends Expression {
+    final Expression operand;
+    final Expression pattern;
+    final boolean negated;
+
+    Like(@NotNull Expression operand, @NotNull Expression pattern, boolean negated) {
+      this.operand = operand;
+      this.pattern = pattern;
+      this.negated = negated;
+    }
+
+    @Override
+    public String toString() {
+      return operand + (negated ? " NOT LIKE " : " LIKE ") + pattern;
+    }
+  }
+
+  static final class IsNull extends Expression {
+    final Expression operand;
+    final boolean negated;
+
+    IsNull(@NotNull Expression operand, boolean negated) {
+      this.operand = operand;
+      this.negated = negated;
+    }
+
+    @Override
+    public String toString() {
+      return operand + (negated ? " IS NOT NULL" : " IS NULL");
+    }
+  }
+
+  /**
+   * Function call. Name is upper case, {@code COUNT(*)} has no arguments.
+   */
+  static final class FunctionCall extends Expression {
+    final String name;
+    final List<Expression> arguments;
+    final boolean distinct;
+
+    FunctionCall(@NotNull String name, @NotNull List<Expression> arguments, boolean distinct) {
+      this.name = name;
+      this.arguments = arguments;
+      this.distinct = distinct;
+    }
+
+    @Override
+    public String toString() {
+      return name + "(" + (distinct ? "DISTINCT " : "") + (arguments.isEmpty() && name.equals("COUNT") ? "*" : join(arguments)) + ")";
+    }
+  }
+}
@@ -0,0 +1,119 @@
+package com.dbschema.mongo.sql;
+
+import com.mongodb.client.AggregateIterable;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoDatabase;
+import org.bson.Document;
+import org.bson.json.JsonMode;
+import org.bson.json.JsonWriterSettings;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Result of SQL compilation: either a find with filter, projection, sort, skip and limit,
+ * or an aggregation pipeline, and the columns to read from result documents.
+ */
+class MongoQuery {
+  private static final JsonWriterSettings JSON_SETTINGS = JsonWriterSettings.builder().outputMode(JsonMode.RELAXED).build();
+
+  /**
+   * Null for the current database
+   */
+  @Nullable
+  final String database;
+  final String collection;
+  final List<OutputColumn> columns = new ArrayList<>();
+
+  Document filter = new Document();
+  @Nullable
+  Document projection;
+  @Nullable
+  Document sort;
+  int skip = 0;
+  int limit = 0;
+
+  /**
+   * Null for find
+   */
+  @Nullable
+  List<Document> pipeline;
+
+  MongoQuery(@Nullable String database, @NotNull String collection) {
+    this.database = database;
+    this.collection = collection;
+  }
+
+  boolean isAggregate() {
+    return pipeline != null;
+  }
+
+  /**
+   * @param maxRows caps the limit of find or is appended as {@code $limit} stage, 0 or negative for no limit
+   */
+  @NotNull
+  MongoCursor<Document> execute(@NotNull MongoDatabase database, int fetchSize, int maxRows) {
+    MongoCollection<Document> mongoCollection = database.getCollection(collection);
+    if (pipeline != null) {
+      List<Document> stages = pipeline;
+      if (maxRows > 0) {
+        stages = new ArrayList<>(pipeline);
+        stages.add(new Document("$limit", maxRows));
+      }
+      AggregateIterable<Document> iterable = mongoCollection.aggregate(stages).allowDiskUse(true);
+      if (fetchSize > 0) iterable.batchSize(fetchSize);
+      return iterable.iterator();
+    }
+    int rows = maxRows > 0 && (limit <= 0 || limit > maxRows) ? maxRows : limit;
+    FindIterable<Document> iterable = mongoCollection.find(filter).skip(skip).limit(rows);
+    if (projection != null) iterable.projection(projection);
+    if (sort != null) iterable.sort(sort);
+    if (fetchSize > 0) iterable.batchSize(fetchSize);
+    return iterable.iterator();
+  }
+
+  /**
+   * @return equivalent shell statement
+   */
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("db.").append(collection);
+    if (pipeline != null) {
+      sb.append(".aggregate([");
+      for (int i = 0; i < pipeline.size(); i++) {
+        if (i > 0) sb.append(", ");
+        sb.append(pipeline.get(i).toJson(JSON_SETTINGS));
+      }
+      return sb.append("], {\"allowDiskUse\": true})").toString();
+    }
+    sb.append(".find(").append(filter.toJson(JSON_SETTINGS));
+    if (projection != null) sb.append(", ").append(projection.toJson(JSON_SETTINGS));
+    sb.append(")");
+    if (sort != null) sb.append(".sort(").append(sort.toJson(JSON_SETTINGS)).append(")");
+    if (skip > 0) sb.append(".skip(").append(skip).append(")");
+    if (limit > 0) sb.append(".limit(").append(limit).append(")");
+    return sb.toString();
+  }
+
+  static final class OutputColumn {
+    final String label;
+    /**
+     * Dotted path of the value in result documents
+     */
+    final String path;
+    /**
+     * @see java.sql.Types
+     */
+    final int sqlType;
+
+    OutputColumn(@NotNull String label, @NotNull String path, int sqlType) {
+      this.label = label;
+      this.path = path;
+      this.sqlType = sqlType;
+    }
+  }
+}
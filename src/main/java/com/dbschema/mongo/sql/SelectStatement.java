@@ -0,0 +1,88 @@
+package com.dbschema.mongo.sql;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parsed {@code SELECT} statement
+ */
+class SelectStatement {
+  /**
+   * Empty for {@code SELECT *}
+   */
+  final List<SelectItem> items = new ArrayList<>();
+  TableRef from;
+  final List<Join> joins = new ArrayList<>();
+  @Nullable
+  Expression where;
+  boolean distinct;
+  final List<Expression> groupBy = new ArrayList<>();
+  @Nullable
+  Expression having;
+  final List<OrderItem> orderBy = new ArrayList<>();
+  int limit = -1;
+  int offset = 0;
+
+  static final class SelectItem {
+    final Expression expression;
+    @Nullable
+    final String alias;
+
+    SelectItem(@NotNull Expression expression, @Nullable String alias) {
+      this.expression = expression;
+      this.alias = alias;
+    }
+  }
+
+  static final class OrderItem {
+    final Expression expression;
+    final boolean ascending;
+
+    OrderItem(@NotNull Expression expression, boolean ascending) {
+      this.expression = expression;
+      this.ascending = ascending;
+    }
+  }
+
+  static final class Join {
+    final TableRef table;
+    final Expression condition;
+    /**
+     * True for {@code LEFT JOIN}
+     */
+    final boolean outer;
+
+    Join(@NotNull TableRef table, @NotNull Expression condition, boolean outer) {
+      this.table = table;
+      this.condition = condition;
+      this.outer = outer;
+    }
+  }
+
+  static final class TableRef {
+    /**
+     * Null for the current database
+     */
+    @Nullable
+    final String database;
+    final String collection;
+    @Nullable
+    final String alias;
+
+    TableRef(@Nullable String database, @NotNull String collection, @Nullable String alias) {
+      this.database = database;
+      this.collection = collection;
+      this.alias = alias;
+    }
+
+    /**
+     * @return true if identifier refers to this table in a qualified column name
+     */
+    boolean isQualifier(@NotNull String identifier) {
+      return alias != null ? alias.equalsIgnoreCase(identifier) : collection.equalsIgnoreCase(identifier);
+    }
+  }
+}
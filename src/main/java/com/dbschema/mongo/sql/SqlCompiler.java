@@ -0,0 +1,1371 @@
+package com.dbschema.mongo.sql;
+
+import com.dbschema.mongo.schema.MetaCollection;
+import com.dbschema.mongo.schema.MetaField;
+import com.dbschema.mongo.schema.MetaJson;
+import com.dbschema.mongo.sql.Expression.*;
+import com.dbschema.mongo.sql.SelectStatement.OrderItem;
+import com.dbschema.mongo.sql.SelectStatement.SelectItem;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLSyntaxErrorException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Translates {@link SelectStatement} into a find when every selected item is a plain field and the sort
+ * uses only fields, otherwise into an aggregation pipeline. Filter, sort, skip and limit are pushed
+ * to the server in both cases, field names are resolved against the sampled collection schema.
+ * <p>
+ * Joins are compiled to {@code $lookup} with {@code let} and a pipeline. Conditions of WHERE that use only
+ * one collection are applied before the lookup or inside its pipeline, so fewer documents are joined.
+ * For a single inner join the driving collection is chosen so that the lookup probes an indexed key,
+ * or the smaller collection drives when indexes do not decide.
+ * <p>
+ * GROUP BY, DISTINCT and aggregate functions are compiled to {@code $group}, HAVING to {@code $match}
+ * after it, so only grouped rows leave the server.
+ */
+class SqlCompiler {
+  interface SchemaProvider {
+    /**
+     * @return null if schema of the collection is not known
+     */
+    @Nullable
+    MetaCollection getCollection(@Nullable String database, @NotNull String collection) throws SQLException;
+
+    /**
+     * @return null if statistics are not available
+     */
+    @Nullable
+    default CollectionStatistics getStatistics(@Nullable String database, @NotNull String collection) throws SQLException {
+      return null;
+    }
+  }
+
+  private static final Object NOT_CONSTANT = new Object();
+  private static final Map<String, String> COMPARISON_OPERATORS = new HashMap<>();
+  private static final Map<String, String> FLIPPED_OPERATORS = new HashMap<>();
+  private static final Map<String, String> ARITHMETIC_OPERATORS = new HashMap<>();
+
+  static {
+    COMPARISON_OPERATORS.put("=", "$eq");
+    COMPARISON_OPERATORS.put("<>", "$ne");
+    COMPARISON_OPERATORS.put("<", "$lt");
+    COMPARISON_OPERATORS.put("<=", "$lte");
+    COMPARISON_OPERATORS.put(">", "$gt");
+    COMPARISON_OPERATORS.put(">=", "$gte");
+    FLIPPED_OPERATORS.put("=", "=");
+    FLIPPED_OPERATORS.put("<>", "<>");
+    FLIPPED_OPERATORS.put("<", ">");
+    FLIPPED_OPERATORS.put("<=", ">=");
+    FLIPPED_OPERATORS.put(">", "<");
+    FLIPPED_OPERATORS.put(">=", "<=");
+    ARITHMETIC_OPERATORS.put("+", "$add");
+    ARITHMETIC_OPERATORS.put("-", "$subtract");
+    ARITHMETIC_OPERATORS.put("*", "$multiply");
+    ARITHMETIC_OPERATORS.put("/", "$divide");
+    ARITHMETIC_OPERATORS.put("%", "$mod");
+    ARITHMETIC_OPERATORS.put("||", "$concat");
+  }
+
+  private final SelectStatement statement;
+  /**
+   * FROM table followed by joined tables
+   */
+  private final List<Table> tables;
+  private Table driving;
+  /**
+   * Joined table while its {@code $lookup} pipeline is compiled, fields of other tables are passed as variables
+   */
+  @Nullable
+  private Table lookupTable;
+  private Document lookupVariables;
+  private final List<Table> joinedTables = new ArrayList<>();
+  /**
+   * True while expressions evaluated after {@code $group} are compiled
+   */
+  private boolean afterGroup = false;
+  private final List<String> groupKeys = new ArrayList<>();
+  private final List<FunctionCall> aggregates = new ArrayList<>();
+  private final List<String> aggregateKeys = new ArrayList<>();
+
+  private SqlCompiler(@NotNull SelectStatement statement, @NotNull List<Table> tables) {
+    this.statement = statement;
+    this.tables = tables;
+    this.driving = tables.get(0);
+  }
+
+  @NotNull
+  static MongoQuery compile(@NotNull SelectStatement statement, @NotNull SchemaProvider schemaProvider) throws SQLException {
+    List<Table> tables = new ArrayList<>();
+    tables.add(new Table(statement.from, schemaProvider.getCollection(statement.from.database, statement.from.collection)));
+    for (SelectStatement.Join join : statement.joins) {
+      if (!Objects.equals(join.table.database, statement.from.database)) {
+        throw new SQLFeatureNotSupportedException("Joins across databases are not supported");
+      }
+      tables.add(new Table(join.table, schemaProvider.getCollection(join.table.database, join.table.collection)));
+    }
+    SqlCompiler compiler = new SqlCompiler(statement, tables);
+    compiler.chooseDrivingTable(schemaProvider);
+    return compiler.compile();
+  }
+
+  /**
+   * Every document of the driving collection runs the lookup pipeline once. For a single inner join
+   * the lookup should probe an indexed key, when both or neither key is indexed the smaller collection drives.
+   */
+  private void chooseDrivingTable(@NotNull SchemaProvider schemaProvider) throws SQLException {
+    if (statement.joins.size() == 1 && !statement.joins.get(0).outer) {
+      Table first = tables.get(0);
+      Table second = tables.get(1);
+      String[] keys = joinKeys(statement.joins.get(0).condition, first, second);
+      if (keys != null) {
+        CollectionStatistics firstStatistics = schemaProvider.getStatistics(first.ref.database, first.ref.collection);
+        CollectionStatistics secondStatistics = schemaProvider.getStatistics(second.ref.database, second.ref.collection);
+        if (firstStatistics != null && secondStatistics != null) {
+          boolean firstIndexed = firstStatistics.leadingIndexKeys.contains(keys[0]);
+          boolean secondIndexed = secondStatistics.leadingIndexKeys.contains(keys[1]);
+          if (firstIndexed && !secondIndexed ||
+              firstIndexed == secondIndexed && secondStatistics.documentCount < firstStatistics.documentCount) {
+            driving = second;
+          }
+        }
+      }
+    }
+    int joined = 0;
+    for (Table table : tables) {
+      if (table != driving) table.field = "_j" + joined++;
+    }
+  }
+
+  /**
+   * @return paths of the first equality between fields of the two tables, or null
+   */
+  @Nullable
+  private String[] joinKeys(@NotNull Expression condition, @NotNull Table first, @NotNull Table second) throws SQLException {
+    for (Expression conjunct : flatten(condition, "AND", new ArrayList<>())) {
+      if (!(conjunct instanceof Binary) || !((Binary) conjunct).operator.equals("=")) continue;
+      Binary equality = (Binary) conjunct;
+      if (!(equality.left instanceof ColumnRef) || !(equality.right instanceof ColumnRef)) continue;
+      Resolved left = resolve((ColumnRef) equality.left);
+      Resolved right = resolve((ColumnRef) equality.right);
+      if (left.table == first && right.table == second) return new String[]{left.path, right.path};
+      if (left.table == second && right.table == first) return new String[]{right.path, left.path};
+    }
+    return null;
+  }
+
+  @NotNull
+  private MongoQuery compile() throws SQLException {
+    MongoQuery query = new MongoQuery(driving.ref.database, driving.ref.collection);
+    List<Document> pipeline = new ArrayList<>();
+    Document filter;
+    if (statement.joins.isEmpty()) {
+      filter = statement.where == null ? new Document() : toFilter(statement.where);
+    }
+    else {
+      filter = addJoins(pipeline);
+    }
+    if (statement.limit == 0) {
+      pipeline.clear();
+      filter = new Document("$expr", false);
+    }
+
+    if (isGrouped()) {
+      addGroup(pipeline, filter);
+      addComputedColumns(query);
+      query.pipeline = pipeline;
+      return query;
+    }
+
+    boolean plainItems = true;
+    for (SelectItem item : statement.items) {
+      if (!(item.expression instanceof ColumnRef)) plainItems = false;
+    }
+    List<String> sortPaths = new ArrayList<>();
+    for (OrderItem orderItem : statement.orderBy) {
+      String path = sourceSortPath(orderItem.expression);
+      if (path == null) {
+        sortPaths = null;
+        break;
+      }
+      sortPaths.add(path);
+    }
+
+    if (statement.joins.isEmpty() && plainItems && sortPaths != null) {
+      query.filter = filter;
+      if (!statement.items.isEmpty()) query.projection = findProjection();
+      if (!sortPaths.isEmpty()) query.sort = sortDocument(sortPaths);
+      query.skip = statement.offset;
+      query.limit = Math.max(statement.limit, 0);
+      addSourceColumns(query);
+      return query;
+    }
+
+    if (!filter.isEmpty()) pipeline.add(new Document("$match", filter));
+    if (sortPaths != null) {
+      if (!sortPaths.isEmpty()) pipeline.add(new Document("$sort", sortDocument(sortPaths)));
+      addSkipAndLimit(pipeline);
+      if (statement.items.isEmpty()) {
+        addSourceColumns(query);
+      }
+      else {
+        pipeline.add(new Document("$project", computedProjection(Collections.emptyList())));
+        addComputedColumns(query);
+      }
+    }
+    else {
+      List<String> sortFields = new ArrayList<>();
+      List<Expression> hidden = new ArrayList<>();
+      for (OrderItem orderItem : statement.orderBy) {
+        int index = selectItemIndex(orderItem.expression);
+        if (index >= 0 && !statement.items.isEmpty()) {
+          sortFields.add("c" + index);
+        }
+        else {
+          sortFields.add("s" + hidden.size());
+          hidden.add(orderItem.expression);
+        }
+      }
+      if (statement.items.isEmpty()) {
+        Document added = new Document();
+        Document removed = new Document();
+        for (int i = 0; i < hidden.size(); i++) {
+          added.put("s" + i, toAggregation(hidden.get(i)));
+          removed.put("s" + i, 0);
+        }
+        pipeline.add(new Document("$addFields", added));
+        pipeline.add(new Document("$sort", sortDocument(sortFields)));
+        addSkipAndLimit(pipeline);
+        pipeline.add(new Document("$project", removed));
+        addSourceColumns(query);
+      }
+      else {
+        pipeline.add(new Document("$project", computedProjection(hidden)));
+        pipeline.add(new Document("$sort", sortDocument(sortFields)));
+        addSkipAndLimit(pipeline);
+        addComputedColumns(query);
+      }
+    }
+    query.pipeline = pipeline;
+    return query;
+  }
+
+  private boolean isGrouped() {
+    if (statement.distinct || !statement.groupBy.isEmpty() || statement.having != null) return true;
+    for (SelectItem item : statement.items) {
+      if (containsAggregate(item.expression)) return true;
+    }
+    for (OrderItem orderItem : statement.orderBy) {
+      if (containsAggregate(orderItem.expression)) return true;
+    }
+    return false;
+  }
+
+  private static boolean containsAggregate(@NotNull Expression expression) {
+    if (isAggregate(expression)) return true;
+    if (expression instanceof Binary) {
+      return containsAggregate(((Binary) expression).left) || containsAggregate(((Binary) expression).right);
+    }
+    if (expression instanceof Unary) return containsAggregate(((Unary) expression).operand);
+    if (expression instanceof FunctionCall) {
+      for (Expression argument : ((FunctionCall) expression).arguments) {
+        if (containsAggregate(argument)) return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean isAggregate(@NotNull Expression expression) {
+    if (!(expression instanceof FunctionCall)) return false;
+    switch (((FunctionCall) expression).name) {
+      case "COUNT":
+      case "SUM":
+      case "AVG":
+      case "MIN":
+      case "MAX":
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Adds {@code $group} with a field for every aggregate function, HAVING as {@code $match} on grouped rows,
+   * and projection, sort, skip and limit of grouped rows
+   */
+  private void addGroup(@NotNull List<Document> pipeline, @NotNull Document filter) throws SQLException {
+    if (statement.items.isEmpty()) throw new SQLSyntaxErrorException("SELECT * cannot be used with GROUP BY or DISTINCT");
+    if (!filter.isEmpty()) pipeline.add(new Document("$match", filter));
+    List<Expression> keys = new ArrayList<>();
+    for (Expression expression : statement.groupBy) {
+      keys.add(groupExpression(expression));
+    }
+    if (statement.distinct) {
+      for (SelectItem item : statement.items) {
+        if (containsAggregate(item.expression)) throw new SQLFeatureNotSupportedException("SELECT DISTINCT with aggregate functions is not supported");
+        keys.add(item.expression);
+      }
+    }
+    Document id = new Document();
+    for (Expression key : keys) {
+      if (containsAggregate(key)) throw new SQLSyntaxErrorException("Aggregate functions are not allowed in GROUP BY");
+      String signature = signature(key);
+      if (groupKeys.contains(signature)) continue;
+      id.put("k" + groupKeys.size(), toAggregation(key));
+      groupKeys.add(signature);
+    }
+
+    afterGroup = true;
+    Object having = statement.having == null ? null : toAggregation(statement.having);
+    List<String> sortFields = new ArrayList<>();
+    List<Expression> hidden = new ArrayList<>();
+    for (OrderItem orderItem : statement.orderBy) {
+      int index = selectItemIndex(orderItem.expression);
+      if (index >= 0) {
+        sortFields.add("c" + index);
+      }
+      else {
+        sortFields.add("s" + hidden.size());
+        hidden.add(orderItem.expression);
+      }
+    }
+    Document projection = computedProjection(hidden);
+    afterGroup = false;
+
+    Document group = new Document("_id", id.isEmpty() ? null : id);
+    for (int i = 0; i < aggregates.size(); i++) {
+      group.put("a" + i, accumulator(aggregates.get(i)));
+    }
+    if (id.isEmpty()) {
+      // without GROUP BY an empty input still gives one row, $facet outputs a document even for empty input
+      Document defaults = new Document("_id", null);
+      for (int i = 0; i < aggregates.size(); i++) {
+        defaults.put("a" + i, emptyValue(aggregates.get(i)));
+      }
+      pipeline.add(new Document("$facet", new Document("g", Collections.singletonList(new Document("$group", group)))));
+      pipeline.add(new Document("$replaceRoot", new Document("newRoot",
+          new Document("$ifNull", Arrays.asList(new Document("$arrayElemAt", Arrays.asList("$g", 0)), defaults)))));
+    }
+    else {
+      pipeline.add(new Document("$group", group));
+    }
+    if (having != null) pipeline.add(new Document("$match", new Document("$expr", having)));
+    pipeline.add(new Document("$project", projection));
+    if (!sortFields.isEmpty()) pipeline.add(new Document("$sort", sortDocument(sortFields)));
+    addSkipAndLimit(pipeline);
+  }
+
+  /**
+   * GROUP BY item may be an ordinal or an alias of select item
+   */
+  @NotNull
+  private Expression groupExpression(@NotNull Expression expression) throws SQLException {
+    if (expression instanceof Literal && ((Literal) expression).value instanceof Integer) {
+      int ordinal = (Integer) ((Literal) expression).value;
+      if (ordinal < 1 || ordinal > statement.items.size()) {
+        throw new SQLSyntaxErrorException("GROUP BY position " + ordinal + " is not in select list");
+      }
+      return statement.items.get(ordinal - 1).expression;
+    }
+    if (expression instanceof ColumnRef && ((ColumnRef) expression).parts.size() == 1) {
+      String name = ((ColumnRef) expression).parts.get(0);
+      for (Table table : tables) {
+        if (table.find(name) != null) return expression;
+      }
+      for (SelectItem item : statement.items) {
+        if (name.equalsIgnoreCase(item.alias)) return item.expression;
+      }
+    }
+    return expression;
+  }
+
+  /**
+   * Equal signatures mean the same value, fields are compared by resolved path
+   */
+  @NotNull
+  private String signature(@NotNull Expression expression) throws SQLException {
+    return expression instanceof ColumnRef ? "$" + resolvePath((ColumnRef) expression) : expression.toString();
+  }
+
+  /**
+   * @return reference to grouped value in expressions evaluated after {@code $group}
+   */
+  @NotNull
+  private Object aggregateReference(@NotNull FunctionCall call) throws SQLException {
+    String signature = signature(call);
+    int index = aggregateKeys.indexOf(signature);
+    if (index < 0) {
+      index = aggregates.size();
+      aggregates.add(call);
+      aggregateKeys.add(signature);
+    }
+    String field = "$a" + index;
+    if (!call.distinct) return field;
+    switch (call.name) {
+      case "COUNT":
+        // SQL does not count nulls
+        return new Document("$toLong", new Document("$size", new Document("$setDifference", Arrays.asList(field, Collections.singletonList(null)))));
+      case "SUM":
+        // null of an empty input stays null
+        return new Document("$cond", Arrays.asList(new Document("$eq", Arrays.asList(field, null)), null, new Document("$sum", field)));
+      case "AVG":
+        return new Document("$avg", field);
+      default:
+        return field;
+    }
+  }
+
+  /**
+   * @return value of the accumulator for an empty input: 0 for COUNT and NULL for other functions
+   */
+  @Nullable
+  private static Object emptyValue(@NotNull FunctionCall call) {
+    if (!call.name.equals("COUNT")) return null;
+    return call.distinct ? Collections.emptyList() : 0L;
+  }
+
+  @NotNull
+  private Document accumulator(@NotNull FunctionCall call) throws SQLException {
+    if (call.name.equals("COUNT") && call.arguments.isEmpty()) return new Document("$sum", 1L);
+    if (call.arguments.size() != 1) throw new SQLSyntaxErrorException("Function " + call.name + " expects 1 argument but got " + call.arguments.size());
+    Expression argument = call.arguments.get(0);
+    if (containsAggregate(argument)) throw new SQLSyntaxErrorException("Aggregate functions cannot be nested: " + call);
+    Object value = toAggregation(argument);
+    if (call.distinct && !call.name.equals("MIN") && !call.name.equals("MAX")) return new Document("$addToSet", value);
+    switch (call.name) {
+      case "COUNT":
+        return new Document("$sum", new Document("$cond", Arrays.asList(new Document("$gt", Arrays.asList(value, null)), 1L, 0L)));
+      case "SUM":
+        return new Document("$sum", value);
+      case "AVG":
+        return new Document("$avg", value);
+      case "MIN":
+        return new Document("$min", value);
+      default:
+        return new Document("$max", value);
+    }
+  }
+
+  /**
+   * Adds stages that filter the driving collection and look up joined documents
+   *
+   * @return filter to apply after all lookups
+   */
+  @NotNull
+  private Document addJoins(@NotNull List<Document> pipeline) throws SQLException {
+    List<Document> drivingFilters = new ArrayList<>();
+    List<Expression> joinedConditions = new ArrayList<>();
+    Map<Table, List<Expression>> pushedConditions = new HashMap<>();
+    if (statement.where != null) {
+      for (Expression conjunct : flatten(statement.where, "AND", new ArrayList<>())) {
+        Set<Table> used = tablesOf(conjunct);
+        Table table = used.size() == 1 ? used.iterator().next() : null;
+        if (used.isEmpty() || table == driving) {
+          drivingFilters.add(toFilter(conjunct));
+        }
+        else if (table != null && !joinOf(table).outer) {
+          // for inner join the condition may filter the joined collection before the lookup returns
+          pushedConditions.computeIfAbsent(table, t -> new ArrayList<>()).add(conjunct);
+        }
+        else {
+          joinedConditions.add(conjunct);
+        }
+      }
+    }
+    if (!drivingFilters.isEmpty()) pipeline.add(new Document("$match", merge(drivingFilters)));
+    joinedTables.add(driving);
+    for (Table table : tables) {
+      if (table == driving) continue;
+      SelectStatement.Join join = joinOf(table);
+      List<Expression> conditions = flatten(join.condition, "AND", new ArrayList<>());
+      conditions.addAll(pushedConditions.getOrDefault(table, Collections.emptyList()));
+      lookupTable = table;
+      lookupVariables = new Document();
+      List<Document> filters = new ArrayList<>();
+      List<Object> expressions = new ArrayList<>();
+      for (Expression condition : conditions) {
+        if (tablesOf(condition).equals(Collections.singleton(table))) filters.add(toFilter(condition));
+        else expressions.add(toAggregation(condition));
+      }
+      if (!expressions.isEmpty()) {
+        filters.add(new Document("$expr", expressions.size() == 1 ? expressions.get(0) : new Document("$and", expressions)));
+      }
+      List<Document> lookupPipeline = new ArrayList<>();
+      if (!filters.isEmpty()) lookupPipeline.add(new Document("$match", merge(filters)));
+      Document projection = lookupProjection(table);
+      if (projection != null) lookupPipeline.add(new Document("$project", projection));
+      Document lookup = new Document("from", table.ref.collection);
+      if (!lookupVariables.isEmpty()) lookup.put("let", lookupVariables);
+      lookup.append("pipeline", lookupPipeline).append("as", table.field);
+      lookupTable = null;
+      lookupVariables = null;
+      pipeline.add(new Document("$lookup", lookup));
+      pipeline.add(new Document("$unwind", join.outer
+                                           ? new Document("path", "$" + table.field).append("preserveNullAndEmptyArrays", true)
+                                           : "$" + table.field));
+      joinedTables.add(table);
+    }
+    List<Document> filters = new ArrayList<>();
+    for (Expression condition : joinedConditions) {
+      filters.add(toFilter(condition));
+    }
+    return filters.isEmpty() ? new Document() : merge(filters);
+  }
+
+  @NotNull
+  private SelectStatement.Join joinOf(@NotNull Table table) {
+    int index = tables.indexOf(table);
+    // FROM table is joined only when the joined table drives
+    return statement.joins.get(index == 0 ? 0 : index - 1);
+  }
+
+  /**
+   * Only fields of the joined collection used by the statement are returned by the lookup
+   *
+   * @return null if all fields are needed
+   */
+  @Nullable
+  private Document lookupProjection(@NotNull Table table) throws SQLException {
+    if (statement.items.isEmpty()) return null;
+    List<ColumnRef> refs = new ArrayList<>();
+    for (SelectItem item : statement.items) {
+      collectColumns(item.expression, refs);
+    }
+    if (statement.where != null) collectColumns(statement.where, refs);
+    for (OrderItem orderItem : statement.orderBy) {
+      collectColumns(orderItem.expression, refs);
+    }
+    for (SelectStatement.Join join : statement.joins) {
+      collectColumns(join.condition, refs);
+    }
+    List<String> paths = new ArrayList<>();
+    for (ColumnRef ref : refs) {
+      Resolved resolved = resolve(ref);
+      if (resolved.table == table && !paths.contains(resolved.path)) paths.add(resolved.path);
+    }
+    return projection(paths);
+  }
+
+  @NotNull
+  private Set<Table> tablesOf(@NotNull Expression expression) throws SQLException {
+    List<ColumnRef> refs = new ArrayList<>();
+    collectColumns(expression, refs);
+    Set<Table> result = new HashSet<>();
+    for (ColumnRef ref : refs) {
+      result.add(resolve(ref).table);
+    }
+    return result;
+  }
+
+  private static void collectColumns(@NotNull Expression expression, @NotNull List<ColumnRef> result) {
+    if (expression instanceof ColumnRef) {
+      result.add((ColumnRef) expression);
+    }
+    else if (expression instanceof Binary) {
+      collectColumns(((Binary) expression).left, result);
+      collectColumns(((Binary) expression).right, result);
+    }
+    else if (expression instanceof Unary) {
+      collectColumns(((Unary) expression).operand, result);
+    }
+    else if (expression instanceof InList) {
+      collectColumns(((InList) expression).operand, result);
+      for (Expression value : ((InList) expression).values) {
+        collectColumns(value, result);
+      }
+    }
+    else if (expression instanceof Between) {
+      collectColumns(((Between) expression).operand, result);
+      collectColumns(((Between) expression).low, result);
+      collectColumns(((Between) expression).high, result);
+    }
+    else if (expression instanceof Like) {
+      collectColumns(((Like) expression).operand, result);
+      collectColumns(((Like) expression).pattern, result);
+    }
+    else if (expression instanceof IsNull) {
+      collectColumns(((IsNull) expression).operand, result);
+    }
+    else if (expression instanceof FunctionCall) {
+      for (Expression argument : ((FunctionCall) expression).arguments) {
+        collectColumns(argument, result);
+      }
+    }
+  }
+
+  private void addSkipAndLimit(@NotNull List<Document> pipeline) {
+    if (statement.offset > 0) pipeline.add(new Document("$skip", statement.offset));
+    if (statement.limit > 0) pipeline.add(new Document("$limit", statement.limit));
+  }
+
+  /**
+   * @return path of the source field the order item refers to, or null if it sorts by a computed value
+   */
+  @Nullable
+  private String sourceSortPath(@NotNull Expression expression) throws SQLException {
+    int index = selectItemIndex(expression);
+    if (index >= 0) {
+      if (statement.items.isEmpty()) return null;
+      Expression item = statement.items.get(index).expression;
+      return item instanceof ColumnRef ? resolvePath((ColumnRef) item) : null;
+    }
+    return expression instanceof ColumnRef ? resolvePath((ColumnRef) expression) : null;
+  }
+
+  /**
+   * Order item may be an ordinal or an alias of select item
+   *
+   * @return index of select item or -1
+   */
+  private int selectItemIndex(@NotNull Expression expression) throws SQLSyntaxErrorException {
+    if (expression instanceof Literal && ((Literal) expression).value instanceof Integer) {
+      int ordinal = (Integer) ((Literal) expression).value;
+      int count = statement.items.isEmpty() ? -1 : statement.items.size();
+      if (ordinal < 1 || (count >= 0 && ordinal > count)) {
+        throw new SQLSyntaxErrorException("ORDER BY position " + ordinal + " is not in select list");
+      }
+      if (count < 0) throw new SQLSyntaxErrorException("ORDER BY position cannot be used with SELECT *");
+      return ordinal - 1;
+    }
+    if (expression instanceof ColumnRef && ((ColumnRef) expression).parts.size() == 1) {
+      String name = ((ColumnRef) expression).parts.get(0);
+      for (int i = 0; i < statement.items.size(); i++) {
+        if (name.equalsIgnoreCase(statement.items.get(i).alias)) return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @param keys sort key for every order item
+   */
+  @NotNull
+  private Document sortDocument(@NotNull List<String> keys) {
+    Document sort = new Document();
+    for (int i = 0; i < keys.size(); i++) {
+      sort.putIfAbsent(keys.get(i), statement.orderBy.get(i).ascending ? 1 : -1);
+    }
+    return sort;
+  }
+
+  @NotNull
+  private Document findProjection() throws SQLException {
+    List<String> paths = new ArrayList<>();
+    for (SelectItem item : statement.items) {
+      paths.add(resolvePath((ColumnRef) item.expression));
+    }
+    return projection(paths);
+  }
+
+  @NotNull
+  private static Document projection(@NotNull List<String> paths) {
+    Document projection = new Document();
+    boolean hasId = false;
+    for (String path : paths) {
+      if (isCoveredBy(path, paths)) continue;
+      projection.put(path, 1);
+      if (path.equals("_id") || path.startsWith("_id.")) hasId = true;
+    }
+    if (!hasId) projection.put("_id", 0);
+    return projection;
+  }
+
+  /**
+   * Projection of parent and child path at once is rejected by the server
+   */
+  private static boolean isCoveredBy(@NotNull String path, @NotNull List<String> paths) {
+    for (String other : paths) {
+      if (path.startsWith(other + ".")) return true;
+    }
+    return false;
+  }
+
+  @NotNull
+  private Document computedProjection(@NotNull List<Expression> hidden) throws SQLException {
+    Document projection = new Document("_id", 0);
+    for (int i = 0; i < statement.items.size(); i++) {
+      projection.put("c" + i, projected(statement.items.get(i).expression));
+    }
+    for (int i = 0; i < hidden.size(); i++) {
+      projection.put("s" + i, projected(hidden.get(i)));
+    }
+    return projection;
+  }
+
+  /**
+   * Numbers and booleans in $project mean inclusion or exclusion, constants must be wrapped
+   */
+  @Nullable
+  private Object projected(@NotNull Expression expression) throws SQLException {
+    Object value = constant(expression);
+    if (value != NOT_CONSTANT) return new Document("$literal", value);
+    return toAggregation(expression);
+  }
+
+  private void addSourceColumns(@NotNull MongoQuery query) throws SQLException {
+    if (statement.items.isEmpty()) {
+      for (Table table : tables) {
+        addTableColumns(query, table);
+      }
+      return;
+    }
+    for (SelectItem item : statement.items) {
+      ColumnRef ref = (ColumnRef) item.expression;
+      query.columns.add(new MongoQuery.OutputColumn(item.alias != null ? item.alias : resolve(ref).path, resolvePath(ref), sqlType(ref)));
+    }
+  }
+
+  /**
+   * Top level fields with {@code _id} first. Labels repeated in joined tables are qualified with table name.
+   */
+  private void addTableColumns(@NotNull MongoQuery query, @NotNull Table table) {
+    List<MetaField> fields = new ArrayList<>();
+    MetaField id = table.fields.get("_id");
+    if (id != null) fields.add(id);
+    if (table.schema != null) {
+      for (MetaField field : table.schema.fields) {
+        if (field != id && field.name.indexOf('.') < 0) fields.add(field);
+      }
+    }
+    if (fields.isEmpty()) {
+      query.columns.add(new MongoQuery.OutputColumn(label(query, table, "_id"), table.prefix() + "_id", Types.VARCHAR));
+    }
+    for (MetaField field : fields) {
+      query.columns.add(new MongoQuery.OutputColumn(label(query, table, field.name), table.prefix() + field.name, sqlType(field)));
+    }
+  }
+
+  @NotNull
+  private static String label(@NotNull MongoQuery query, @NotNull Table table, @NotNull String name) {
+    for (MongoQuery.OutputColumn column : query.columns) {
+      if (column.label.equals(name)) return (table.ref.alias != null ? table.ref.alias : table.ref.collection) + "." + name;
+    }
+    return name;
+  }
+
+  private void addComputedColumns(@NotNull MongoQuery query) throws SQLException {
+    for (int i = 0; i < statement.items.size(); i++) {
+      SelectItem item = statement.items.get(i);
+      String label = item.alias != null ? item.alias
+                     : item.expression instanceof ColumnRef ? resolve((ColumnRef) item.expression).path
+                     : item.expression.toString();
+      query.columns.add(new MongoQuery.OutputColumn(label, "c" + i, sqlType(item.expression)));
+    }
+  }
+
+  /**
+   * Qualified name refers to the table with this alias or name. Unqualified name belongs to the first table
+   * whose sampled schema has the field, or to the FROM table if none has.
+   */
+  @NotNull
+  private Resolved resolve(@NotNull ColumnRef ref) throws SQLSyntaxErrorException {
+    List<String> parts = ref.parts;
+    Table table = null;
+    if (parts.size() > 1) {
+      for (Table candidate : tables) {
+        if (candidate.ref.isQualifier(parts.get(0))) {
+          table = candidate;
+          parts = parts.subList(1, parts.size());
+          break;
+        }
+      }
+    }
+    String path = String.join(".", parts);
+    if (path.isEmpty() || path.startsWith("$")) throw new SQLSyntaxErrorException("Invalid field name: " + ref);
+    if (table != null) {
+      String known = table.find(path);
+      return new Resolved(table, known != null ? known : path);
+    }
+    for (Table candidate : tables) {
+      String known = candidate.find(path);
+      if (known != null) return new Resolved(candidate, known);
+    }
+    return new Resolved(tables.get(0), path);
+  }
+
+  /**
+   * @return path in joined documents, or path in documents of the joined collection inside its lookup pipeline
+   */
+  @NotNull
+  private String resolvePath(@NotNull ColumnRef ref) throws SQLSyntaxErrorException {
+    Resolved resolved = resolve(ref);
+    return resolved.table == lookupTable ? resolved.path : resolved.table.prefix() + resolved.path;
+  }
+
+  @NotNull
+  private static String fieldPath(@NotNull MetaField field) {
+    StringBuilder sb = new StringBuilder(field.name);
+    for (MetaJson parent = field.parentJson; parent != null && !(parent instanceof MetaCollection); parent = parent.parentJson) {
+      sb.insert(0, '.').insert(0, parent.name);
+    }
+    return sb.toString();
+  }
+
+  // FILTER
+
+  @NotNull
+  private Document toFilter(@NotNull Expression expression) throws SQLException {
+    if (expression instanceof Binary) {
+      Binary binary = (Binary) expression;
+      if (binary.operator.equals("AND")) {
+        List<Document> filters = new ArrayList<>();
+        for (Expression conjunct : flatten(binary, "AND", new ArrayList<>())) {
+          filters.add(toFilter(conjunct));
+        }
+        return merge(filters);
+      }
+      if (binary.operator.equals("OR")) {
+        List<Document> filters = new ArrayList<>();
+        for (Expression disjunct : flatten(binary, "OR", new ArrayList<>())) {
+          filters.add(toFilter(disjunct));
+        }
+        return new Document("$or", filters);
+      }
+      if (COMPARISON_OPERATORS.containsKey(binary.operator)) {
+        Document filter = comparisonFilter(binary.operator, binary.left, binary.right);
+        if (filter == null) filter = comparisonFilter(FLIPPED_OPERATORS.get(binary.operator), binary.right, binary.left);
+        if (filter != null) return filter;
+      }
+    }
+    else if (expression instanceof Unary && ((Unary) expression).operator.equals("NOT")) {
+      return new Document("$nor", Collections.singletonList(toFilter(((Unary) expression).operand)));
+    }
+    else if (expression instanceof InList) {
+      InList in = (InList) expression;
+      if (in.operand instanceof ColumnRef) {
+        String path = resolvePath((ColumnRef) in.operand);
+        List<Object> values = new ArrayList<>();
+        for (Expression value : in.values) {
+          Object constant = constant(value);
+          if (constant == NOT_CONSTANT) {
+            values = null;
+            break;
+          }
+          values.add(coerce((ColumnRef) in.operand, constant));
+        }
+        if (values != null) return new Document(path, new Document(in.negated ? "$nin" : "$in", values));
+      }
+    }
+    else if (expression instanceof Between) {
+      Between between = (Between) expression;
+      Object low = constant(between.low);
+      Object high = constant(between.high);
+      if (between.operand instanceof ColumnRef && low != NOT_CONSTANT && high != NOT_CONSTANT) {
+        String path = resolvePath((ColumnRef) between.operand);
+        low = coerce((ColumnRef) between.operand, low);
+        high = coerce((ColumnRef) between.operand, high);
+        if (!between.negated) return new Document(path, new Document("$gte", low).append("$lte", high));
+        return new Document("$or", Arrays.asList(new Document(path, new Document("$lt", low)),
+                                                 new Document(path, new Document("$gt", high))));
+      }
+    }
+    else if (expression instanceof Like) {
+      Like like = (Like) expression;
+      Object pattern = constant(like.pattern);
+      if (like.operand instanceof ColumnRef && pattern instanceof String) {
+        String path = resolvePath((ColumnRef) like.operand);
+        Pattern regex = Pattern.compile(likeToRegex((String) pattern));
+        return new Document(path, like.negated ? new Document("$not", regex) : regex);
+      }
+    }
+    else if (expression instanceof IsNull) {
+      IsNull isNull = (IsNull) expression;
+      if (isNull.operand instanceof ColumnRef) {
+        String path = resolvePath((ColumnRef) isNull.operand);
+        return new Document(path, isNull.negated ? new Document("$ne", null) : null);
+      }
+    }
+    else if (expression instanceof ColumnRef) {
+      return new Document(resolvePath((ColumnRef) expression), true);
+    }
+    else if (expression instanceof Literal && ((Literal) expression).value instanceof Boolean) {
+      return (Boolean) ((Literal) expression).value ? new Document() : new Document("$expr", false);
+    }
+    return new Document("$expr", toAggregation(expression));
+  }
+
+  @NotNull
+  private static List<Expression> flatten(@NotNull Expression expression, @NotNull String operator, @NotNull List<Expression> result) {
+    if (expression instanceof Binary && ((Binary) expression).operator.equals(operator)) {
+      flatten(((Binary) expression).left, operator, result);
+      flatten(((Binary) expression).right, operator, result);
+    }
+    else {
+      result.add(expression);
+    }
+    return result;
+  }
+
+  /**
+   * @return null unless left side is a field and right side is a constant
+   */
+  @Nullable
+  private Document comparisonFilter(@NotNull String operator, @NotNull Expression left, @NotNull Expression right) throws SQLException {
+    if (!(left instanceof ColumnRef)) return null;
+    Object value = constant(right);
+    if (value == NOT_CONSTANT) return null;
+    String path = resolvePath((ColumnRef) left);
+    value = coerce((ColumnRef) left, value);
+    if (operator.equals("=") && !(value instanceof Document)) return new Document(path, value);
+    return new Document(path, new Document(COMPARISON_OPERATORS.get(operator), value));
+  }
+
+  /**
+   * Joins conditions of AND into one document when they use different fields or different operators
+   * on the same field, so the server sees simple equality and range predicates.
+   */
+  @NotNull
+  private static Document merge(@NotNull List<Document> filters) {
+    Document merged = new Document();
+    for (Document filter : filters) {
+      for (Map.Entry<String, Object> entry : filter.entrySet()) {
+        String key = entry.getKey();
+        Object existing = merged.get(key);
+        if (!merged.containsKey(key)) {
+          merged.put(key, entry.getValue());
+        }
+        else if (!key.startsWith("$") && isOperatorDocument(existing) && isOperatorDocument(entry.getValue()) &&
+                 Collections.disjoint(((Document) existing).keySet(), ((Document) entry.getValue()).keySet())) {
+          Document operators = new Document((Document) existing);
+          operators.putAll((Document) entry.getValue());
+          merged.put(key, operators);
+        }
+        else {
+          return new Document("$and", filters);
+        }
+      }
+    }
+    return merged;
+  }
+
+  private static boolean isOperatorDocument(@Nullable Object value) {
+    if (!(value instanceof Document) || ((Document) value).isEmpty()) return false;
+    for (String key : ((Document) value).keySet()) {
+      if (!key.startsWith("$")) return false;
+    }
+    return true;
+  }
+
+  /**
+   * String literal compared with an ObjectId field is converted to ObjectId
+   */
+  @Nullable
+  private Object coerce(@NotNull ColumnRef ref, @Nullable Object value) throws SQLSyntaxErrorException {
+    if (value instanceof String && ObjectId.isValid((String) value)) {
+      Resolved resolved = resolve(ref);
+      MetaField field = resolved.table.fields.get(resolved.path);
+      if (field != null ? "ObjectId".equals(field.typeName) : resolved.path.equals("_id")) return new ObjectId((String) value);
+    }
+    return value;
+  }
+
+  @NotNull
+  static String likeToRegex(@NotNull String pattern) {
+    StringBuilder sb = new StringBuilder("^");
+    for (int i = 0; i < pattern.length(); i++) {
+      char c = pattern.charAt(i);
+      if (c == '%') sb.append(".*");
+      else if (c == '_') sb.append('.');
+      else {
+        if ("\\^$.|?*+()[]{}".indexOf(c) >= 0) sb.append('\\');
+        sb.append(c);
+      }
+    }
+    String regex = sb.toString();
+    // anchored prefix without trailing wildcard can use an index
+    if (regex.endsWith(".*") && !regex.endsWith("\\.*")) regex = regex.substring(0, regex.length() - 2);
+    else regex += "$";
+    if (regex.startsWith("^.*")) regex = regex.substring(3);
+    return regex;
+  }
+
+  // AGGREGATION EXPRESSIONS
+
+  @Nullable
+  private Object toAggregation(@NotNull Expression expression) throws SQLException {
+    Object constant = constant(expression);
+    if (constant != NOT_CONSTANT) {
+      return constant instanceof String && ((String) constant).startsWith("$") ? new Document("$literal", constant) : constant;
+    }
+    if (afterGroup) {
+      int index = groupKeys.indexOf(signature(expression));
+      if (index >= 0) return "$_id.k" + index;
+      if (isAggregate(expression)) return aggregateReference((FunctionCall) expression);
+      if (expression instanceof ColumnRef) {
+        throw new SQLSyntaxErrorException("Column " + expression + " must appear in GROUP BY or be used in an aggregate function");
+      }
+    }
+    if (expression instanceof ColumnRef) {
+      Resolved resolved = resolve((ColumnRef) expression);
+      if (lookupTable == null || resolved.table == lookupTable) return "$" + resolvePath((ColumnRef) expression);
+      if (!joinedTables.contains(resolved.table)) {
+        throw new SQLSyntaxErrorException("Field " + expression + " is used before its table is joined");
+      }
+      String value = "$" + resolved.table.prefix() + resolved.path;
+      for (Map.Entry<String, Object> variable : lookupVariables.entrySet()) {
+        if (variable.getValue().equals(value)) return "$$" + variable.getKey();
+      }
+      String name = "v" + lookupVariables.size();
+      lookupVariables.put(name, value);
+      return "$$" + name;
+    }
+    if (expression instanceof Binary) {
+      Binary binary = (Binary) expression;
+      String operator = binary.operator.equals("AND") ? "$and"
+                        : binary.operator.equals("OR") ? "$or"
+                        : COMPARISON_OPERATORS.containsKey(binary.operator) ? COMPARISON_OPERATORS.get(binary.operator)
+                        : ARITHMETIC_OPERATORS.get(binary.operator);
+      if (operator == null) throw new SQLFeatureNotSupportedException("Operator " + binary.operator + " is not supported");
+      return new Document(operator, Arrays.asList(toAggregation(binary.left), toAggregation(binary.right)));
+    }
+    if (expression instanceof Unary) {
+      Unary unary = (Unary) expression;
+      if (unary.operator.equals("NOT")) return new Document("$not", Collections.singletonList(toAggregation(unary.operand)));
+      return new Document("$multiply", Arrays.asList(-1, toAggregation(unary.operand)));
+    }
+    if (expression instanceof InList) {
+      InList in = (InList) expression;
+      List<Object> values = new ArrayList<>();
+      for (Expression value : in.values) {
+        values.add(toAggregation(value));
+      }
+      Document result = new Document("$in", Arrays.asList(toAggregation(in.operand), values));
+      return in.negated ? new Document("$not", Collections.singletonList(result)) : result;
+    }
+    if (expression instanceof Between) {
+      Between between = (Between) expression;
+      Object operand = toAggregation(between.operand);
+      Document result = new Document("$and", Arrays.asList(
+          new Document("$gte", Arrays.asList(operand, toAggregation(between.low))),
+          new Document("$lte", Arrays.asList(operand, toAggregation(between.high)))));
+      return between.negated ? new Document("$not", Collections.singletonList(result)) : result;
+    }
+    if (expression instanceof Like) {
+      Like like = (Like) expression;
+      Object pattern = constant(like.pattern);
+      if (!(pattern instanceof String)) throw new SQLFeatureNotSupportedException("LIKE pattern must be a string literal");
+      Document result = new Document("$regexMatch", new Document("input", toAggregation(like.operand))
+          .append("regex", likeToRegex((String) pattern)));
+      return like.negated ? new Document("$not", Collections.singletonList(result)) : result;
+    }
+    if (expression instanceof IsNull) {
+      IsNull isNull = (IsNull) expression;
+      // missing fields and nulls are the lowest values in aggregation comparisons
+      return new Document(isNull.negated ? "$gt" : "$lte", Arrays.asList(toAggregation(isNull.operand), null));
+    }
+    if (expression instanceof FunctionCall) {
+      return functionToAggregation((FunctionCall) expression);
+    }
+    throw new SQLFeatureNotSupportedException("Expression is not supported: " + expression);
+  }
+
+  @NotNull
+  private Object functionToAggregation(@NotNull FunctionCall call) throws SQLException {
+    switch (call.name) {
+      case "UPPER":
+      case "UCASE":
+        return new Document("$toUpper", argument(call, 1, 1, 0));
+      case "LOWER":
+      case "LCASE":
+        return new Document("$toLower", argument(call, 1, 1, 0));
+      case "LENGTH":
+      case "CHAR_LENGTH":
+        return new Document("$strLenCP", argument(call, 1, 1, 0));
+      case "TRIM":
+        return new Document("$trim", new Document("input", argument(call, 1, 1, 0)));
+      case "LTRIM":
+        return new Document("$ltrim", new Document("input", argument(call, 1, 1, 0)));
+      case "RTRIM":
+        return new Document("$rtrim", new Document("input", argument(call, 1, 1, 0)));
+      case "SUBSTRING":
+      case "SUBSTR": {
+        Object start = new Document("$subtract", Arrays.asList(argument(call, 2, 3, 1), 1));
+        Object length = call.arguments.size() > 2 ? argument(call, 2, 3, 2) : Integer.MAX_VALUE;
+        return new Document("$substrCP", Arrays.asList(argument(call, 2, 3, 0), start, length));
+      }
+      case "CONCAT":
+        return new Document("$concat", arguments(call, 1));
+      case "COALESCE":
+      case "IFNULL":
+      case "NVL": {
+        List<Object> arguments = arguments(call, 2);
+        Object result = arguments.get(arguments.size() - 1);
+        for (int i = arguments.size() - 2; i >= 0; i--) {
+          result = new Document("$ifNull", Arrays.asList(arguments.get(i), result));
+        }
+        return result;
+      }
+      case "ABS":
+        return new Document("$abs", argument(call, 1, 1, 0));
+      case "CEIL":
+      case "CEILING":
+        return new Document("$ceil", argument(call, 1, 1, 0));
+      case "FLOOR":
+        return new Document("$floor", argument(call, 1, 1, 0));
+      case "SQRT":
+        return new Document("$sqrt", argument(call, 1, 1, 0));
+      case "EXP":
+        return new Document("$exp", argument(call, 1, 1, 0));
+      case "LN":
+        return new Document("$ln", argument(call, 1, 1, 0));
+      case "LOG10":
+        return new Document("$log10", argument(call, 1, 1, 0));
+      case "ROUND":
+        return new Document("$round", arguments(call, 1, 2));
+      case "MOD":
+        return new Document("$mod", arguments(call, 2, 2));
+      case "POWER":
+      case "POW":
+        return new Document("$pow", arguments(call, 2, 2));
+      case "YEAR":
+        return new Document("$year", argument(call, 1, 1, 0));
+      case "MONTH":
+        return new Document("$month", argument(call, 1, 1, 0));
+      case "DAY":
+      case "DAYOFMONTH":
+        return new Document("$dayOfMonth", argument(call, 1, 1, 0));
+      case "HOUR":
+        return new Document("$hour", argument(call, 1, 1, 0));
+      case "MINUTE":
+        return new Document("$minute", argument(call, 1, 1, 0));
+      case "SECOND":
+        return new Document("$second", argument(call, 1, 1, 0));
+      case "NOW":
+      case "CURRENT_TIMESTAMP":
+        arguments(call, 0, 0);
+        return "$$NOW";
+      case "COUNT":
+      case "SUM":
+      case "AVG":
+      case "MIN":
+      case "MAX":
+        throw new SQLSyntaxErrorException("Aggregate function " + call.name + " is not allowed here");
+      default:
+        throw new SQLFeatureNotSupportedException("Function " + call.name + " is not supported");
+    }
+  }
+
+  @Nullable
+  private Object argument(@NotNull FunctionCall call, int min, int max, int index) throws SQLException {
+    checkArity(call, min, max);
+    return toAggregation(call.arguments.get(index));
+  }
+
+  @NotNull
+  private List<Object> arguments(@NotNull FunctionCall call, int min) throws SQLException {
+    return arguments(call, min, Integer.MAX_VALUE);
+  }
+
+  @NotNull
+  private List<Object> arguments(@NotNull FunctionCall call, int min, int max) throws SQLException {
+    checkArity(call, min, max);
+    List<Object> result = new ArrayList<>();
+    for (Expression argument : call.arguments) {
+      result.add(toAggregation(argument));
+    }
+    return result;
+  }
+
+  private static void checkArity(@NotNull FunctionCall call, int min, int max) throws SQLSyntaxErrorException {
+    int count = call.arguments.size();
+    if (count < min || count > max) {
+      String expected = min == max ? String.valueOf(min) : max == Integer.MAX_VALUE ? "at least " + min : min + " to " + max;
+      throw new SQLSyntaxErrorException("Function " + call.name + " expects " + expected + " arguments but got " + count);
+    }
+    if (call.distinct) throw new SQLSyntaxErrorException("DISTINCT is not allowed in function " + call.name);
+  }
+
+  /**
+   * @return value of literal or {@code OBJECTID('...')} call, {@link #NOT_CONSTANT} for other expressions
+   */
+  @Nullable
+  private static Object constant(@NotNull Expression expression) throws SQLSyntaxErrorException {
+    if (expression instanceof Literal) return ((Literal) expression).value;
+    if (expression instanceof FunctionCall && ((FunctionCall) expression).name.equals("OBJECTID")) {
+      FunctionCall call = (FunctionCall) expression;
+      Object value = call.arguments.size() == 1 ? constant(call.arguments.get(0)) : null;
+      if (!(value instanceof String) || !ObjectId.isValid((String) value)) {
+        throw new SQLSyntaxErrorException("OBJECTID expects a 24 character hex string");
+      }
+      return new ObjectId((String) value);
+    }
+    return NOT_CONSTANT;
+  }
+
+  // TYPES
+
+  private int sqlType(@NotNull Expression expression) throws SQLException {
+    if (expression instanceof ColumnRef) {
+      Resolved resolved = resolve((ColumnRef) expression);
+      MetaField field = resolved.table.fields.get(resolved.path);
+      return field != null ? sqlType(field) : Types.VARCHAR;
+    }
+    if (expression instanceof Literal) {
+      Object value = ((Literal) expression).value;
+      return value instanceof Integer ? Types.INTEGER
+             : value instanceof Long ? Types.BIGINT
+             : value instanceof Double ? Types.DOUBLE
+             : value instanceof Boolean ? Types.BOOLEAN
+             : value instanceof Date ? Types.TIMESTAMP
+             : Types.VARCHAR;
+    }
+    if (expression instanceof Binary) {
+      Binary binary = (Binary) expression;
+      if (!ARITHMETIC_OPERATORS.containsKey(binary.operator)) return Types.BOOLEAN;
+      if (binary.operator.equals("||")) return Types.VARCHAR;
+      if (binary.operator.equals("/")) return Types.DOUBLE;
+      return numericType(sqlType(binary.left), sqlType(binary.right));
+    }
+    if (expression instanceof Unary) {
+      Unary unary = (Unary) expression;
+      return unary.operator.equals("NOT") ? Types.BOOLEAN : sqlType(unary.operand);
+    }
+    if (expression instanceof FunctionCall) {
+      FunctionCall call = (FunctionCall) expression;
+      switch (call.name) {
+        case "LENGTH":
+        case "CHAR_LENGTH":
+        case "YEAR":
+        case "MONTH":
+        case "DAY":
+        case "DAYOFMONTH":
+        case "HOUR":
+        case "MINUTE":
+        case "SECOND":
+          return Types.INTEGER;
+        case "ABS":
+        case "CEIL":
+        case "CEILING":
+        case "FLOOR":
+        case "ROUND":
+        case "COALESCE":
+        case "IFNULL":
+        case "NVL":
+          return call.arguments.isEmpty() ? Types.VARCHAR : sqlType(call.arguments.get(0));
+        case "MOD":
+          return call.arguments.size() != 2 ? Types.DOUBLE : numericType(sqlType(call.arguments.get(0)), sqlType(call.arguments.get(1)));
+        case "SQRT":
+        case "EXP":
+        case "LN":
+        case "LOG10":
+        case "POWER":
+        case "POW":
+          return Types.DOUBLE;
+        case "NOW":
+        case "CURRENT_TIMESTAMP":
+          return Types.TIMESTAMP;
+        case "COUNT":
+          return Types.BIGINT;
+        case "AVG":
+          return Types.DOUBLE;
+        case "SUM": {
+          int type = call.arguments.size() == 1 ? sqlType(call.arguments.get(0)) : Types.DOUBLE;
+          return type == Types.INTEGER || type == Types.BIGINT ? Types.BIGINT : type == Types.DECIMAL ? Types.DECIMAL : Types.DOUBLE;
+        }
+        case "MIN":
+        case "MAX":
+          return call.arguments.size() == 1 ? sqlType(call.arguments.get(0)) : Types.VARCHAR;
+        default:
+          return Types.VARCHAR;
+      }
+    }
+    return Types.BOOLEAN;
+  }
+
+  private static int numericType(int left, int right) {
+    if (left == Types.INTEGER && right == Types.INTEGER) return Types.INTEGER;
+    if ((left == Types.INTEGER || left == Types.BIGINT) && (right == Types.INTEGER || right == Types.BIGINT)) return Types.BIGINT;
+    return Types.DOUBLE;
+  }
+
+  private static int sqlType(@NotNull MetaField field) {
+    if (field instanceof MetaJson) return field.type == MetaJson.TYPE_LIST ? Types.ARRAY : Types.JAVA_OBJECT;
+    switch (field.typeName) {
+      case "Integer":
+        return Types.INTEGER;
+      case "Long":
+        return Types.BIGINT;
+      case "Double":
+        return Types.DOUBLE;
+      case "Boolean":
+        return Types.BOOLEAN;
+      case "Date":
+        return Types.TIMESTAMP;
+      case "Decimal128":
+        return Types.DECIMAL;
+      default:
+        return field.type == MetaJson.TYPE_ARRAY ? Types.ARRAY : Types.VARCHAR;
+    }
+  }
+
+  private static final class Table {
+    final SelectStatement.TableRef ref;
+    @Nullable
+    final MetaCollection schema;
+    final Map<String, MetaField> fields = new HashMap<>();
+    final Map<String, MetaField> fieldsIgnoreCase = new HashMap<>();
+    /**
+     * Field of joined documents that holds the document of this table, null for the driving table
+     */
+    @Nullable
+    String field;
+
+    Table(@NotNull SelectStatement.TableRef ref, @Nullable MetaCollection schema) {
+      this.ref = ref;
+      this.schema = schema;
+      if (schema != null) collectFields(schema, "");
+    }
+
+    private void collectFields(@NotNull MetaJson json, @NotNull String prefix) {
+      for (MetaField field : json.fields) {
+        if (field.name.indexOf('.') >= 0) continue;
+        String path = prefix + field.name;
+        fields.put(path, field);
+        fieldsIgnoreCase.putIfAbsent(path.toLowerCase(Locale.ENGLISH), field);
+        if (field instanceof MetaJson) collectFields((MetaJson) field, path + ".");
+      }
+    }
+
+    /**
+     * @return path of the sampled field, exact match first, or null
+     */
+    @Nullable
+    String find(@NotNull String path) {
+      if (fields.containsKey(path)) return path;
+      MetaField field = fieldsIgnoreCase.get(path.toLowerCase(Locale.ENGLISH));
+      return field != null ? fieldPath(field) : null;
+    }
+
+    @NotNull
+    String prefix() {
+      return field == null ? "" : field + ".";
+    }
+  }
+
+  private static final class Resolved {
+    final Table table;
+    final String path;
+
+    Resolved(@NotNull Table table, @NotNull String path) {
+      this.table = table;
+      this.path = path;
+    }
+  }
+}
@@ -0,0 +1,131 @@
+package com.dbschema.mongo.sql;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.sql.SQLSyntaxErrorException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits SQL text into tokens. Keywords are returned as {@link TokenType#IDENTIFIER}, the parser recognizes them.
+ */
+class SqlLexer {
+  enum TokenType {IDENTIFIER, QUOTED_IDENTIFIER, STRING, NUMBER, SYMBOL, EOF}
+
+  static final class Token {
+    final TokenType type;
+    final String text;
+    final int offset;
+
+    Token(@NotNull TokenType type, @NotNull String text, int offset) {
+      this.type = type;
+      this.text = text;
+      this.offset = offset;
+    }
+
+    boolean isKeyword(@NotNull String keyword) {
+      return type == TokenType.IDENTIFIER && text.equalsIgnoreCase(keyword);
+    }
+
+    boolean isSymbol(@NotNull String symbol) {
+      return type == TokenType.SYMBOL && text.equals(symbol);
+    }
+
+    @Override
+    public String toString() {
+      return type == TokenType.EOF ? "end of statement" : "'" + text + "'";
+    }
+  }
+
+  private static final String[] SYMBOLS = {"<>", "!=", "<=", ">=", "||", "=", "<", ">", "(", ")", ",", ".", "*", "+", "-", "/", "%", ";", "?"};
+
+  private SqlLexer() {
+  }
+
+  @NotNull
+  static List<Token> tokenize(@NotNull String sql) throws SQLSyntaxErrorException {
+    List<Token> tokens = new ArrayList<>();
+    int i = 0;
+    int length = sql.length();
+    while (i < length) {
+      char c = sql.charAt(i);
+      if (Character.isWhitespace(c)) {
+        i++;
+      }
+      else if (c == '-' && i + 1 < length && sql.charAt(i + 1) == '-') {
+        while (i < length && sql.charAt(i) != '\n') i++;
+      }
+      else if (c == '/' && i + 1 < length && sql.charAt(i + 1) == '*') {
+        int end = sql.indexOf("*/", i + 2);
+        i = end < 0 ? length : end + 2;
+      }
+      else if (c == '\'') {
+        int start = i;
+        StringBuilder sb = new StringBuilder();
+        i = readQuoted(sql, i, '\'', sb);
+        tokens.add(new Token(TokenType.STRING, sb.toString(), start));
+      }
+      else if (c == '"' || c == '`' || c == '[') {
+        int start = i;
+        StringBuilder sb = new StringBuilder();
+        i = readQuoted(sql, i, c == '[' ? ']' : c, sb);
+        tokens.add(new Token(TokenType.QUOTED_IDENTIFIER, sb.toString(), start));
+      }
+      else if (Character.isDigit(c) || (c == '.' && i + 1 < length && Character.isDigit(sql.charAt(i + 1)))) {
+        int start = i;
+        while (i < length && (Character.isDigit(sql.charAt(i)) || sql.charAt(i) == '.')) i++;
+        if (i < length && (sql.charAt(i) == 'e' || sql.charAt(i) == 'E')) {
+          int exponent = i + 1;
+          if (exponent < length && (sql.charAt(exponent) == '+' || sql.charAt(exponent) == '-')) exponent++;
+          if (exponent < length && Character.isDigit(sql.charAt(exponent))) {
+            i = exponent;
+            while (i < length && Character.isDigit(sql.charAt(i))) i++;
+          }
+        }
+        tokens.add(new Token(TokenType.NUMBER, sql.substring(start, i), start));
+      }
+      else if (Character.isLetter(c) || c == '_' || c == '$') {
+        int start = i;
+        while (i < length && (Character.isLetterOrDigit(sql.charAt(i)) || sql.charAt(i) == '_' || sql.charAt(i) == '$')) i++;
+        tokens.add(new Token(TokenType.IDENTIFIER, sql.substring(start, i), start));
+      }
+      else {
+        String symbol = null;
+        for (String s : SYMBOLS) {
+          if (sql.startsWith(s, i)) {
+            symbol = s;
+            break;
+          }
+        }
+        if (symbol == null) throw new SQLSyntaxErrorException("Unexpected character '" + c + "' at position " + i);
+        tokens.add(new Token(TokenType.SYMBOL, symbol, i));
+        i += symbol.length();
+      }
+    }
+    tokens.add(new Token(TokenType.EOF, "", length));
+    return tokens;
+  }
+
+  /**
+   * Quote char inside literal is escaped by doubling it
+   *
+   * @return index of the first char after the literal
+   */
+  private static int readQuoted(@NotNull String sql, int start, char quote, @NotNull StringBuilder sb) throws SQLSyntaxErrorException {
+    int i = start + 1;
+    while (i < sql.length()) {
+      char c = sql.charAt(i);
+      if (c == quote) {
+        if (i + 1 < sql.length() && sql.charAt(i + 1) == quote) {
+          sb.append(quote);
+          i += 2;
+          continue;
+        }
+        return i + 1;
+      }
+      sb.append(c);
+      i++;
+    }
+    throw new SQLSyntaxErrorException("Unterminated literal at position " + start);
+  }
+}
@@ -0,0 +1,446 @@
+package com.dbschema.mongo.sql;
+
+import com.dbschema.mongo.sql.Expression.*;
+import com.dbschema.mongo.sql.SqlLexer.Token;
+import com.dbschema.mongo.sql.SqlLexer.TokenType;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLSyntaxErrorException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Recursive descent parser of {@code SELECT} statements
+ */
+class SqlParser {
+  private static final Set<String> RESERVED = new HashSet<>(Arrays.asList(
+      "SELECT", "DISTINCT", "FROM", "WHERE", "GROUP", "HAVING", "ORDER", "BY", "LIMIT", "OFFSET", "FETCH", "AS",
+      "AND", "OR", "NOT", "IN", "BETWEEN", "LIKE", "IS", "NULL", "TRUE", "FALSE", "ASC", "DESC",
+      "JOIN", "INNER", "LEFT", "RIGHT", "FULL", "OUTER", "CROSS", "ON", "UNION"));
+
+  private final List<Token> tokens;
+  private int position = 0;
+
+  private SqlParser(@NotNull List<Token> tokens) {
+    this.tokens = tokens;
+  }
+
+  @NotNull
+  static SelectStatement parse(@NotNull String sql) throws SQLSyntaxErrorException, SQLFeatureNotSupportedException {
+    SqlParser parser = new SqlParser(SqlLexer.tokenize(sql));
+    SelectStatement statement = parser.parseSelect();
+    parser.acceptSymbol(";");
+    if (parser.peek().type != TokenType.EOF) throw parser.unexpected();
+    return statement;
+  }
+
+  @NotNull
+  private SelectStatement parseSelect() throws SQLSyntaxErrorException, SQLFeatureNotSupportedException {
+    expectKeyword("SELECT");
+    SelectStatement statement = new SelectStatement();
+    statement.distinct = acceptKeyword("DISTINCT");
+    if (!statement.distinct) acceptKeyword("ALL");
+    if (!acceptSymbol("*")) {
+      do {
+        statement.items.add(parseSelectItem());
+      }
+      while (acceptSymbol(","));
+    }
+    expectKeyword("FROM");
+    statement.from = parseTableRef();
+    parseJoins(statement);
+    if (acceptKeyword("WHERE")) statement.where = parseExpression();
+    if (acceptKeyword("GROUP")) {
+      expectKeyword("BY");
+      do {
+        statement.groupBy.add(parseExpression());
+      }
+      while (acceptSymbol(","));
+    }
+    if (acceptKeyword("HAVING")) statement.having = parseExpression();
+    if (acceptKeyword("ORDER")) {
+      expectKeyword("BY");
+      do {
+        Expression expression = parseExpression();
+        boolean ascending = !acceptKeyword("DESC");
+        if (ascending) acceptKeyword("ASC");
+        statement.orderBy.add(new SelectStatement.OrderItem(expression, ascending));
+      }
+      while (acceptSymbol(","));
+    }
+    parseLimit(statement);
+    return statement;
+  }
+
+  private void parseJoins(@NotNull SelectStatement statement) throws SQLSyntaxErrorException, SQLFeatureNotSupportedException {
+    while (true) {
+      boolean outer = false;
+      if (acceptKeyword("INNER")) {
+        expectKeyword("JOIN");
+      }
+      else if (acceptKeyword("LEFT")) {
+        acceptKeyword("OUTER");
+        expectKeyword("JOIN");
+        outer = true;
+      }
+      else if (peek().isKeyword("RIGHT") || peek().isKeyword("FULL") || peek().isKeyword("CROSS")) {
+        throw new SQLFeatureNotSupportedException(peek().text.toUpperCase(Locale.ENGLISH) + " JOIN is not supported");
+      }
+      else if (!acceptKeyword("JOIN")) {
+        return;
+      }
+      SelectStatement.TableRef table = parseTableRef();
+      expectKeyword("ON");
+      statement.joins.add(new SelectStatement.Join(table, parseExpression(), outer));
+    }
+  }
+
+  private void parseLimit(@NotNull SelectStatement statement) throws SQLSyntaxErrorException {
+    if (acceptKeyword("LIMIT")) {
+      statement.limit = parseNonNegativeInt();
+      if (acceptSymbol(",")) { // LIMIT offset, count
+        statement.offset = statement.limit;
+        statement.limit = parseNonNegativeInt();
+      }
+    }
+    if (acceptKeyword("OFFSET")) {
+      statement.offset = parseNonNegativeInt();
+      if (!acceptKeyword("ROWS")) acceptKeyword("ROW");
+    }
+    if (acceptKeyword("FETCH")) {
+      if (!acceptKeyword("FIRST")) expectKeyword("NEXT");
+      statement.limit = parseNonNegativeInt();
+      if (!acceptKeyword("ROWS")) expectKeyword("ROW");
+      expectKeyword("ONLY");
+    }
+  }
+
+  private int parseNonNegativeInt() throws SQLSyntaxErrorException {
+    Token token = next();
+    if (token.type != TokenType.NUMBER) throw unexpected(token);
+    try {
+      return Integer.parseInt(token.text);
+    }
+    catch (NumberFormatException e) {
+      throw new SQLSyntaxErrorException("Expected non-negative integer but found " + token);
+    }
+  }
+
+  @NotNull
+  private SelectStatement.SelectItem parseSelectItem() throws SQLSyntaxErrorException {
+    Expression expression = parseExpression();
+    String alias = null;
+    if (acceptKeyword("AS")) alias = parseIdentifier();
+    else if (isIdentifier(peek())) alias = parseIdentifier();
+    return new SelectStatement.SelectItem(expression, alias);
+  }
+
+  /**
+   * Unquoted dots separate the database from the collection, so {@code orders.archive} is collection {@code archive}
+   * of database {@code orders}. Names with dots are quoted: {@code "orders.archive"} is a collection of the current
+   * database and {@code sales."orders.archive"} a collection of database {@code sales}.
+   * Prefix {@code db.} stands for the current database, so {@code db.orders.archive} is the same as
+   * {@code "orders.archive"}.
+   */
+  @NotNull
+  SelectStatement.TableRef parseTableRef() throws SQLSyntaxErrorException {
+    List<String> parts = new ArrayList<>();
+    parts.add(parseIdentifier());
+    while (acceptSymbol(".")) {
+      parts.add(parseIdentifier());
+    }
+    String alias = null;
+    if (acceptKeyword("AS")) alias = parseIdentifier();
+    else if (isIdentifier(peek())) alias = parseIdentifier();
+    if (parts.size() == 1) return new SelectStatement.TableRef(null, parts.get(0), alias);
+    String database = parts.get(0).equals("db") ? null : parts.get(0);
+    return new SelectStatement.TableRef(database, String.join(".", parts.subList(1, parts.size())), alias);
+  }
+
+  @NotNull
+  Expression parseExpression() throws SQLSyntaxErrorException {
+    Expression left = parseAnd();
+    while (acceptKeyword("OR")) {
+      left = new Binary("OR", left, parseAnd());
+    }
+    return left;
+  }
+
+  @NotNull
+  private Expression parseAnd() throws SQLSyntaxErrorException {
+    Expression left = parseNot();
+    while (acceptKeyword("AND")) {
+      left = new Binary("AND", left, parseNot());
+    }
+    return left;
+  }
+
+  @NotNull
+  private Expression parseNot() throws SQLSyntaxErrorException {
+    if (acceptKeyword("NOT")) return new Unary("NOT", parseNot());
+    return parsePredicate();
+  }
+
+  @NotNull
+  private Expression parsePredicate() throws SQLSyntaxErrorException {
+    Expression left = parseAdditive();
+    Token token = peek();
+    if (token.type == TokenType.SYMBOL) {
+      switch (token.text) {
+        case "=":
+        case "<>":
+        case "!=":
+        case "<":
+        case "<=":
+        case ">":
+        case ">=":
+          next();
+          return new Binary(token.text.equals("!=") ? "<>" : token.text, left, parseAdditive());
+      }
+    }
+    if (acceptKeyword("IS")) {
+      boolean negated = acceptKeyword("NOT");
+      expectKeyword("NULL");
+      return new IsNull(left, negated);
+    }
+    boolean negated = acceptKeyword("NOT");
+    if (acceptKeyword("IN")) {
+      expectSymbol("(");
+      List<Expression> values = new ArrayList<>();
+      do {
+        values.add(parseAdditive());
+      }
+      while (acceptSymbol(","));
+      expectSymbol(")");
+      return new InList(left, values, negated);
+    }
+    if (acceptKeyword("BETWEEN")) {
+      Expression low = parseAdditive();
+      expectKeyword("AND");
+      return new Between(left, low, parseAdditive(), negated);
+    }
+    if (acceptKeyword("LIKE")) {
+      return new Like(left, parseAdditive(), negated);
+    }
+    if (negated) throw unexpected();
+    return left;
+  }
+
+  @NotNull
+  private Expression parseAdditive() throws SQLSyntaxErrorException {
+    Expression left = parseMultiplicative();
+    while (true) {
+      Token token = peek();
+      if (token.isSymbol("+") || token.isSymbol("-") || token.isSymbol("||")) {
+        next();
+        left = new Binary(token.text, left, parseMultiplicative());
+      }
+      else {
+        return left;
+      }
+    }
+  }
+
+  @NotNull
+  private Expression parseMultiplicative() throws SQLSyntaxErrorException {
+    Expression left = parseUnary();
+    while (true) {
+      Token token = peek();
+      if (token.isSymbol("*") || token.isSymbol("/") || token.isSymbol("%")) {
+        next();
+        left = new Binary(token.text, left, parseUnary());
+      }
+      else {
+        return left;
+      }
+    }
+  }
+
+  @NotNull
+  private Expression parseUnary() throws SQLSyntaxErrorException {
+    if (acceptSymbol("-")) {
+      Expression operand = parseUnary();
+      if (operand instanceof Literal && ((Literal) operand).value instanceof Number) {
+        return new Literal(negate((Number) ((Literal) operand).value));
+      }
+      return new Unary("-", operand);
+    }
+    acceptSymbol("+");
+    return parsePrimary();
+  }
+
+  @NotNull
+  private Expression parsePrimary() throws SQLSyntaxErrorException {
+    Token token = next();
+    switch (token.type) {
+      case NUMBER:
+        return new Literal(parseNumber(token.text));
+      case STRING:
+        return new Literal(token.text);
+      case SYMBOL:
+        if (token.text.equals("(")) {
+          Expression expression = parseExpression();
+          expectSymbol(")");
+          return expression;
+        }
+        throw unexpected(token);
+      case IDENTIFIER:
+        if (token.isKeyword("NULL")) return new Literal(null);
+        if (token.isKeyword("TRUE")) return new Literal(true);
+        if (token.isKeyword("FALSE")) return new Literal(false);
+        if ((token.isKeyword("DATE") || token.isKeyword("TIMESTAMP")) && peek().type == TokenType.STRING) {
+          return new Literal(parseDate(next().text));
+        }
+        if (RESERVED.contains(token.text.toUpperCase(Locale.ENGLISH))) throw unexpected(token);
+        if (peek().isSymbol("(")) return parseFunctionCall(token.text);
+        return parseColumnRef(token.text);
+      case QUOTED_IDENTIFIER:
+        return parseColumnRef(token.text);
+      default:
+        throw unexpected(token);
+    }
+  }
+
+  @NotNull
+  private ColumnRef parseColumnRef(@NotNull String first) throws SQLSyntaxErrorException {
+    List<String> parts = new ArrayList<>();
+    parts.add(first);
+    while (acceptSymbol(".")) {
+      parts.add(parsePathPart());
+    }
+    return new ColumnRef(parts);
+  }
+
+  @NotNull
+  private Expression parseFunctionCall(@NotNull String name) throws SQLSyntaxErrorException {
+    expectSymbol("(");
+    String upperName = name.toUpperCase(Locale.ENGLISH);
+    if (acceptSymbol(")")) return new FunctionCall(upperName, Collections.emptyList(), false);
+    if (upperName.equals("COUNT") && acceptSymbol("*")) {
+      expectSymbol(")");
+      return new FunctionCall(upperName, Collections.emptyList(), false);
+    }
+    boolean distinct = acceptKeyword("DISTINCT");
+    List<Expression> arguments = new ArrayList<>();
+    do {
+      arguments.add(parseExpression());
+    }
+    while (acceptSymbol(","));
+    expectSymbol(")");
+    return new FunctionCall(upperName, arguments, distinct);
+  }
+
+  @NotNull
+  private static Object parseNumber(@NotNull String text) throws SQLSyntaxErrorException {
+    try {
+      if (text.indexOf('.') < 0 && text.indexOf('e') < 0 && text.indexOf('E') < 0) {
+        long value = Long.parseLong(text);
+        return value == (int) value ? (Object) (int) value : (Object) value;
+      }
+      return Double.parseDouble(text);
+    }
+    catch (NumberFormatException e) {
+      throw new SQLSyntaxErrorException("Invalid number: " + text);
+    }
+  }
+
+  @NotNull
+  private static Number negate(@NotNull Number number) {
+    if (number instanceof Integer) return -number.intValue();
+    if (number instanceof Long) return -number.longValue();
+    return -number.doubleValue();
+  }
+
+  /**
+   * Dates without zone are UTC, the same as dates in the shell
+   */
+  @NotNull
+  private static Date parseDate(@NotNull String text) throws SQLSyntaxErrorException {
+    String value = text.trim();
+    try {
+      if (value.length() == 10) return Date.from(LocalDate.parse(value).atStartOfDay(ZoneOffset.UTC).toInstant());
+      if (value.endsWith("Z")) return Date.from(Instant.parse(value.replace(' ', 'T')));
+      return Date.from(LocalDateTime.parse(value.replace(' ', 'T')).toInstant(ZoneOffset.UTC));
+    }
+    catch (DateTimeParseException e) {
+      throw new SQLSyntaxErrorException("Invalid date: " + text);
+    }
+  }
+
+  @NotNull
+  String parseIdentifier() throws SQLSyntaxErrorException {
+    Token token = next();
+    if (!isIdentifier(token)) throw unexpected(token);
+    return token.text;
+  }
+
+  /**
+   * Keywords are allowed after a dot, so fields like {@code o.order} need no quotes
+   */
+  @NotNull
+  private String parsePathPart() throws SQLSyntaxErrorException {
+    Token token = next();
+    if (token.type != TokenType.IDENTIFIER && token.type != TokenType.QUOTED_IDENTIFIER) throw unexpected(token);
+    return token.text;
+  }
+
+  private static boolean isIdentifier(@NotNull Token token) {
+    return token.type == TokenType.QUOTED_IDENTIFIER ||
+           token.type == TokenType.IDENTIFIER && !RESERVED.contains(token.text.toUpperCase(Locale.ENGLISH));
+  }
+
+  @NotNull
+  Token peek() {
+    return tokens.get(position);
+  }
+
+  @NotNull
+  private Token next() {
+    Token token = tokens.get(position);
+    if (token.type != TokenType.EOF) position++;
+    return token;
+  }
+
+  boolean acceptKeyword(@NotNull String keyword) {
+    if (!peek().isKeyword(keyword)) return false;
+    position++;
+    return true;
+  }
+
+  void expectKeyword(@NotNull String keyword) throws SQLSyntaxErrorException {
+    if (!acceptKeyword(keyword)) throw new SQLSyntaxErrorException("Expected " + keyword + " but found " + peek());
+  }
+
+  boolean acceptSymbol(@NotNull String symbol) {
+    if (!peek().isSymbol(symbol)) return false;
+    position++;
+    return true;
+  }
+
+  void expectSymbol(@NotNull String symbol) throws SQLSyntaxErrorException {
+    if (!acceptSymbol(symbol)) throw new SQLSyntaxErrorException("Expected '" + symbol + "' but found " + peek());
+  }
+
+  @NotNull
+  private SQLSyntaxErrorException unexpected() {
+    return unexpected(peek());
+  }
+
+  @NotNull
+  private static SQLSyntaxErrorException unexpected(@Nullable Token token) {
+    return new SQLSyntaxErrorException("Unexpected " + token + (token != null ? " at position " + token.offset : ""));
+  }
+}
@@ -0,0 +1,129 @@
+package com.dbschema.mongo.sql;
+
+import com.dbschema.mongo.MongoConnection;
+import com.dbschema.mongo.MongoService;
+import com.dbschema.mongo.resultSet.ProjectionResultSet;
+import com.dbschema.mongo.resultSet.ResultSetIterator;
+import com.dbschema.mongo.resultSet.ScrollableResultSet;
+import com.dbschema.mongo.schema.MetaCollection;
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoDatabase;
+import org.bson.Document;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * SQL {@code SELECT} executed as a find or an aggregation pipeline:
+ * <pre>
+ * SELECT name, address.city AS city FROM customers WHERE age >= 18 ORDER BY name LIMIT 10
+ * </pre>
+ * Table name may be qualified with database name. Nested fields are addressed with dotted paths,
+ * field names are matched case-insensitively against the sampled collection schema.
+ * Collections of one database can be joined:
+ * <pre>
+ * SELECT o.total, c.name FROM orders o JOIN customers c ON o.customerId = c._id WHERE c.country = 'DE'
+ * </pre>
+ */
+public class SqlStatement {
+  private static final Pattern SELECT = Pattern.compile("(?:\\s|--[^\\n]*\\n|/\\*.*?\\*/)*select\\b", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+  private final SelectStatement select;
+
+  private SqlStatement(@NotNull SelectStatement select) {
+    this.select = select;
+  }
+
+  /**
+   * @return null if the query is not a SQL statement
+   */
+  @Nullable
+  public static SqlStatement parse(@NotNull String query) throws SQLException {
+    if (!SELECT.matcher(query).lookingAt()) return null;
+    return new SqlStatement(SqlParser.parse(query));
+  }
+
+  /**
+   * @param maxRows 0 or negative for no limit
+   */
+  @NotNull
+  public ResultSet execute(@NotNull MongoConnection connection, int fetchSize, int maxRows, int resultSetType) throws SQLException {
+    MongoQuery query = compile(connection);
+    MongoDatabase database = connection.getService().getDatabase(databaseName(connection));
+    MongoCursor<Document> cursor;
+    try {
+      cursor = query.execute(database, fetchSize, maxRows);
+    }
+    catch (MongoException e) {
+      throw new SQLException(e.getMessage(), e);
+    }
+    ResultSet rows = new ResultSetIterator(cursor);
+    if (resultSetType != ResultSet.TYPE_FORWARD_ONLY) rows = new ScrollableResultSet(rows);
+    int count = query.columns.size();
+    String[] labels = new String[count];
+    String[] paths = new String[count];
+    int[] types = new int[count];
+    for (int i = 0; i < count; i++) {
+      MongoQuery.OutputColumn column = query.columns.get(i);
+      labels[i] = column.label;
+      paths[i] = column.path;
+      types[i] = column.sqlType;
+    }
+    return new ProjectionResultSet(rows, query.collection, labels, paths, types);
+  }
+
+  @NotNull
+  private MongoQuery compile(@NotNull MongoConnection connection) throws SQLException {
+    String database = databaseName(connection);
+    return SqlCompiler.compile(select, new ServerSchemaProvider(connection.getService(), database));
+  }
+
+  @NotNull
+  private String databaseName(@NotNull MongoConnection connection) throws SQLException {
+    String database = select.from.database != null ? select.from.database : connection.getSchema();
+    if (database == null) throw new SQLException("No database selected");
+    return database;
+  }
+
+  private static final class ServerSchemaProvider implements SqlCompiler.SchemaProvider {
+    private final MongoService service;
+    private final String database;
+
+    ServerSchemaProvider(@NotNull MongoService service, @NotNull String database) {
+      this.service = service;
+      this.database = database;
+    }
+
+    @Override
+    public MetaCollection getCollection(@Nullable String database, @NotNull String collection) throws SQLException {
+      return service.getMetaCollection(this.database, collection);
+    }
+
+    @Override
+    public CollectionStatistics getStatistics(@Nullable String database, @NotNull String collection) throws SQLException {
+      MongoCollection<Document> mongoCollection = service.getMetadataDatabase(this.database).getCollection(collection);
+      try {
+        Set<String> keys = new HashSet<>();
+        for (Document index : mongoCollection.listIndexes()) {
+          Object key = index.get("key");
+          if (!(key instanceof Document) || ((Document) key).isEmpty()) continue;
+          Map.Entry<String, Object> first = ((Document) key).entrySet().iterator().next();
+          // text and geo indexes cannot serve equality lookups
+          if (!(first.getValue() instanceof String) || first.getValue().equals("hashed")) keys.add(first.getKey());
+        }
+        return new CollectionStatistics(mongoCollection.estimatedDocumentCount(), keys);
+      }
+      catch (MongoException e) { // views have no indexes
+        return null;
+      }
+    }
+  }
+}
@@ -0,0 +1,416 @@
+package com.dbschema.mongo.transfer;
+
+import com.dbschema.mongo.MongoConnection;
+import com.dbschema.mongo.ShellQuery;
+import com.dbschema.mongo.Util;
+import com.dbschema.mongo.batch.AdaptiveBatchCursor;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.MongoDatabase;
+import org.bson.BsonBinaryReader;
+import org.bson.BsonDocument;
+import org.bson.BsonType;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonValueCodec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.DocumentCodec;
+import org.bson.json.JsonMode;
+import org.bson.json.JsonWriter;
+import org.bson.json.JsonWriterSettings;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streams the result of a statement to NDJSON or CSV.
+ * <p>
+ * Find and aggregate statements with JSON arguments (see {@link ShellQuery}) are executed with the driver
+ * and documents are read as {@link RawBsonDocument}, so every document is transcoded from its BSON bytes
+ * straight into the output without building a {@link Document}.
+ * Other statements are executed by the shell and their documents are encoded to BSON first.
+ */
+public class DocumentExporter {
+  private static final long PROGRESS_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final JsonWriterSettings JSON_SETTINGS = JsonWriterSettings.builder().outputMode(JsonMode.RELAXED).build();
+  private static final DocumentCodec DOCUMENT_CODEC = new DocumentCodec(MongoClientSettings.getDefaultCodecRegistry());
+
+  private final MongoConnection connection;
+
+  public DocumentExporter(@NotNull MongoConnection connection) {
+    this.connection = connection;
+  }
+
+  @NotNull
+  public TransferStats export(@NotNull String statement, @NotNull File file, @NotNull TransferFormat format,
+                              @Nullable TransferListener listener) throws SQLException {
+    try (OutputStream out = new FileOutputStream(file)) {
+      return export(statement, out, format, listener);
+    }
+    catch (IOException e) {
+      throw new SQLException("Cannot write " + file + ": " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * The stream is flushed but not closed
+   */
+  @NotNull
+  public TransferStats export(@NotNull String statement, @NotNull OutputStream out, @NotNull TransferFormat format,
+                              @Nullable TransferListener listener) throws SQLException {
+    ShellQuery query = ShellQuery.parse(statement);
+    try (DocumentSource source = query != null ? nativeSource(query) : shellSource(statement)) {
+      Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+      DocumentWriter documentWriter = format == TransferFormat.CSV
+                                      ? new CsvWriter(writer, query != null ? query.projection : null)
+                                      : new NdjsonWriter(writer);
+      long start = System.nanoTime();
+      long lastProgress = start;
+      long documents = 0;
+      long bytes = 0;
+      while (source.hasNext()) {
+        RawBsonDocument document = source.next();
+        documentWriter.write(document);
+        documents++;
+        bytes += document.getByteBuffer().remaining();
+        if (listener != null && System.nanoTime() - lastProgress > PROGRESS_INTERVAL_NANOS) {
+          lastProgress = System.nanoTime();
+          listener.progress(new TransferStats(documents, bytes, lastProgress - start));
+        }
+      }
+      writer.flush();
+      TransferStats stats = new TransferStats(documents, bytes, System.nanoTime() - start);
+      if (listener != null) listener.progress(stats);
+      return stats;
+    }
+    catch (IOException | RuntimeException e) {
+      throw new SQLException("Export failed: " + e.getMessage(), e);
+    }
+  }
+
+  @NotNull
+  private DocumentSource nativeSource(@NotNull ShellQuery query) throws SQLException {
+    String database = connection.getSchema();
+    if (database == null) throw new SQLException("Database is not selected");
+    MongoDatabase mongoDatabase = connection.getService().getDatabase(database);
+    int resumableReadRetries = connection.getService().getResumableReadRetries();
+    int fetchSize = connection.getService().isAdaptiveBatchSize() ? AdaptiveBatchCursor.ADAPTIVE_FETCH_SIZE : 0;
+    return resumableReadRetries > 0 && query.isResumable()
+           ? cursorSource(query.openResumable(mongoDatabase, RawBsonDocument.class, fetchSize, resumableReadRetries))
+           : cursorSource(query.open(mongoDatabase, RawBsonDocument.class, fetchSize));
+  }
+
+  @NotNull
+  private static <C extends Iterator<RawBsonDocument> & Closeable> DocumentSource cursorSource(@NotNull C cursor) {
+    return new DocumentSource() {
+      @Override
+      public boolean hasNext() {
+        return cursor.hasNext();
+      }
+
+      @Override
+      public RawBsonDocument next() {
+        return cursor.next();
+      }
+
+      @Override
+      public void close() throws IOException {
+        cursor.close();
+      }
+    };
+  }
+
+  @NotNull
+  private DocumentSource shellSource(@NotNull String statement) throws SQLException {
+    ResultSet resultSet = connection.getScriptEngine().execute(statement, -1);
+    return new DocumentSource() {
+      private Boolean hasNext;
+
+      @Override
+      public boolean hasNext() {
+        if (hasNext == null) {
+          try {
+            hasNext = resultSet != null && resultSet.next();
+          }
+          catch (SQLException e) {
+            throw new RuntimeException(e);
+          }
+        }
+        return hasNext;
+      }
+
+      @Override
+      public RawBsonDocument next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        hasNext = null;
+        try {
+          Object value = resultSet.getObject(1);
+          Document document = value instanceof Map ? Util.toDocument((Map<?, ?>) value) : new Document("value", value);
+          return new RawBsonDocument(document, DOCUMENT_CODEC);
+        }
+        catch (SQLException e) {
+          throw new RuntimeException(e);
+        }
+      }
+
+      @Override
+      public void close() throws IOException {
+        try {
+          if (resultSet != null && !resultSet.isClosed()) resultSet.close();
+        }
+        catch (SQLException e) {
+          throw new IOException(e);
+        }
+      }
+    };
+  }
+
+  private interface DocumentSource extends Iterator<RawBsonDocument>, Closeable {
+  }
+
+  private interface DocumentWriter {
+    void write(@NotNull RawBsonDocument document) throws IOException;
+  }
+
+  /**
+   * {@link JsonWriter} cannot start a second top-level document, so a single writer is kept for the whole export and
+   * every document is written as a value of one top-level document that is never closed.
+   * {@link ValueFilter} drops the text around the values.
+   */
+  private static class NdjsonWriter implements DocumentWriter {
+    private final Writer writer;
+    private final ValueFilter filter;
+    private final JsonWriter jsonWriter;
+
+    NdjsonWriter(@NotNull Writer writer) {
+      this.writer = writer;
+      filter = new ValueFilter(writer);
+      jsonWriter = new JsonWriter(filter, JSON_SETTINGS);
+      jsonWriter.writeStartDocument();
+    }
+
+    @Override
+    public void write(@NotNull RawBsonDocument document) throws IOException {
+      filter.skipToValue();
+      jsonWriter.writeName("d");
+      try (BsonBinaryReader reader = new BsonBinaryReader(document.getByteBuffer().asNIO())) {
+        jsonWriter.pipe(reader);
+      }
+      writer.write('\n');
+    }
+  }
+
+  /**
+   * Passes the text of a value to the writer and drops the separator and the name that come before it,
+   * i.e. everything before the opening brace
+   */
+  private static class ValueFilter extends Writer {
+    private final Writer writer;
+    private boolean skipping = true;
+    /**
+     * False until the first value, so the opening brace of the top-level document is dropped too
+     */
+    private boolean started = false;
+
+    ValueFilter(@NotNull Writer writer) {
+      this.writer = writer;
+    }
+
+    void skipToValue() {
+      skipping = true;
+      started = true;
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+      if (skipping) {
+        if (c != '{' || !started) return;
+        skipping = false;
+      }
+      writer.write(c);
+    }
+
+    @Override
+    public void write(@NotNull char[] chars, int off, int len) throws IOException {
+      for (int i = off; i < off + len; i++) {
+        if (!skipping) {
+          writer.write(chars, i, off + len - i);
+          return;
+        }
+        write(chars[i]);
+      }
+    }
+
+    @Override
+    public void write(@NotNull String str, int off, int len) throws IOException {
+      for (int i = off; i < off + len; i++) {
+        if (!skipping) {
+          writer.write(str, i, off + len - i);
+          return;
+        }
+        write(str.charAt(i));
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      writer.flush();
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
+  /**
+   * Columns are the fields included by projection or the top-level fields of the first document.
+   * Dotted projection fields like {@code a.b} are read from embedded documents.
+   * Nested documents and arrays are written as JSON.
+   */
+  private static class CsvWriter implements DocumentWriter {
+    private static final BsonValueCodec VALUE_CODEC = new BsonValueCodec();
+
+    private final Writer writer;
+    private final Map<String, Integer> columnIndexes = new HashMap<>();
+    /**
+     * Paths of embedded documents that hold dotted columns, e.g. {@code a} for {@code a.b}
+     */
+    private final Set<String> parents = new HashSet<>();
+    private String[] values;
+    private final StringBuilder line = new StringBuilder();
+
+    CsvWriter(@NotNull Writer writer, @Nullable Document projection) throws IOException {
+      this.writer = writer;
+      if (projection != null) {
+        List<String> columns = new ArrayList<>();
+        for (Map.Entry<String, Object> entry : projection.entrySet()) {
+          Object value = entry.getValue();
+          boolean excluded = value instanceof Number && ((Number) value).intValue() == 0 || Boolean.FALSE.equals(value);
+          if (!excluded) columns.add(entry.getKey());
+        }
+        if (!columns.isEmpty()) setColumns(columns);
+      }
+    }
+
+    private void setColumns(@NotNull List<String> columns) throws IOException {
+      values = new String[columns.size()];
+      for (int i = 0; i < columns.size(); i++) {
+        String column = columns.get(i);
+        columnIndexes.put(column, i);
+        for (int dot = column.indexOf('.'); dot > 0; dot = column.indexOf('.', dot + 1)) {
+          parents.add(column.substring(0, dot));
+        }
+        values[i] = column;
+      }
+      writeLine();
+    }
+
+    @Override
+    public void write(@NotNull RawBsonDocument document) throws IOException {
+      if (values == null) setColumns(new ArrayList<>(document.keySet()));
+      Arrays.fill(values, null);
+      try (BsonBinaryReader reader = new BsonBinaryReader(document.getByteBuffer().asNIO())) {
+        readDocument(reader, "");
+      }
+      writeLine();
+    }
+
+    private void readDocument(@NotNull BsonBinaryReader reader, @NotNull String prefix) {
+      reader.readStartDocument();
+      BsonType type;
+      while ((type = reader.readBsonType()) != BsonType.END_OF_DOCUMENT) {
+        String name = prefix + reader.readName();
+        Integer index = columnIndexes.get(name);
+        if (index != null) values[index] = readValue(reader, type);
+        else if (type == BsonType.DOCUMENT && parents.contains(name)) readDocument(reader, name + ".");
+        else reader.skipValue();
+      }
+      reader.readEndDocument();
+    }
+
+    @Nullable
+    private static String readValue(@NotNull BsonBinaryReader reader, @NotNull BsonType type) {
+      switch (type) {
+        case STRING:
+          return reader.readString();
+        case INT32:
+          return Integer.toString(reader.readInt32());
+        case INT64:
+          return Long.toString(reader.readInt64());
+        case DOUBLE:
+          return Double.toString(reader.readDouble());
+        case BOOLEAN:
+          return Boolean.toString(reader.readBoolean());
+        case DECIMAL128:
+          return reader.readDecimal128().toString();
+        case OBJECT_ID:
+          return reader.readObjectId().toHexString();
+        case DATE_TIME:
+          return Instant.ofEpochMilli(reader.readDateTime()).toString();
+        case NULL:
+          reader.readNull();
+          return null;
+        case UNDEFINED:
+          reader.readUndefined();
+          return null;
+        default:
+          BsonValue value = VALUE_CODEC.decode(reader, DecoderContext.builder().build());
+          String json = new BsonDocument("v", value).toJson(JSON_SETTINGS);
+          return json.substring(json.indexOf(':') + 1, json.length() - 1).trim();
+      }
+    }
+
+    private void writeLine() throws IOException {
+      line.setLength(0);
+      for (int i = 0; i < values.length; i++) {
+        if (i > 0) line.append(',');
+        appendEscaped(line, values[i]);
+      }
+      line.append('\n');
+      writer.append(line);
+    }
+
+    private static void appendEscaped(@NotNull StringBuilder sb, @Nullable String value) {
+      if (value == null) return;
+      boolean quote = false;
+      for (int i = 0; i < value.length() && !quote; i++) {
+        char c = value.charAt(i);
+        quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+      }
+      if (!quote) {
+        sb.append(value);
+        return;
+      }
+      sb.append('"');
+      for (int i = 0; i < value.length(); i++) {
+        char c = value.charAt(i);
+        if (c == '"') sb.append('"');
+        sb.append(c);
+      }
+      sb.append('"');
+    }
+  }
+}
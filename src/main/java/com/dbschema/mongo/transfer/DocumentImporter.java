@@ -0,0 +1,355 @@
+package com.dbschema.mongo.transfer;
+
+import com.dbschema.mongo.MongoConnection;
+import com.dbschema.mongo.cache.QueryResultCache;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.InsertManyOptions;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Loads NDJSON or CSV into a collection.
+ * <p>
+ * The calling thread only splits the input into records and groups them into batches of about
+ * {@link #setBatchBytes(int) batchBytes}. Worker threads convert records to BSON and send every batch
+ * with an unordered {@code insertMany}, so several batches are in flight at once.
+ * The total size of batches that are read but not yet inserted is limited by
+ * {@link #setMaxInFlightBytes(long) maxInFlightBytes}, so memory use does not depend on the size of the input.
+ * <p>
+ * Failed batches and lines that cannot be parsed are reported in {@link TransferStats#getErrors()},
+ * the rest of the input is still imported.
+ * <p>
+ * CSV must have a header line. Values that look like numbers or booleans are stored as such,
+ * empty values are omitted and dotted column names create nested documents.
+ */
+public class DocumentImporter {
+  private static final long PROGRESS_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+  private static final int MAX_ERRORS = 100;
+  private static final Pattern INTEGER = Pattern.compile("-?(0|[1-9]\\d{0,18})");
+  private static final Pattern DECIMAL = Pattern.compile("-?(0|[1-9]\\d*)(\\.\\d+)?([eE][-+]?\\d+)?");
+  private static final DocumentCodec DOCUMENT_CODEC = new DocumentCodec(MongoClientSettings.getDefaultCodecRegistry());
+
+  private final MongoConnection connection;
+  private int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+  private int batchBytes = 4 * 1024 * 1024;
+  private long maxInFlightBytes = -1;
+
+  private final AtomicLong documents = new AtomicLong();
+  private final AtomicLong failedDocuments = new AtomicLong();
+  private final AtomicLong bytes = new AtomicLong();
+  private final List<TransferError> errors = new ArrayList<>();
+
+  public DocumentImporter(@NotNull MongoConnection connection) {
+    this.connection = connection;
+  }
+
+  public void setThreads(int threads) {
+    this.threads = Math.max(1, threads);
+  }
+
+  public void setBatchBytes(int batchBytes) {
+    this.batchBytes = Math.max(1024, batchBytes);
+  }
+
+  /**
+   * @param maxInFlightBytes negative value means two batches per thread
+   */
+  public void setMaxInFlightBytes(long maxInFlightBytes) {
+    this.maxInFlightBytes = maxInFlightBytes;
+  }
+
+  @NotNull
+  public TransferStats importFile(@NotNull File file, @NotNull String collection, @NotNull TransferFormat format,
+                                  @Nullable TransferListener listener) throws SQLException {
+    try (InputStream in = new FileInputStream(file)) {
+      return importStream(in, collection, format, listener);
+    }
+    catch (IOException e) {
+      throw new SQLException("Cannot read " + file + ": " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * The stream is not closed
+   */
+  @NotNull
+  public TransferStats importStream(@NotNull InputStream in, @NotNull String collectionName, @NotNull TransferFormat format,
+                                    @Nullable TransferListener listener) throws SQLException {
+    String database = connection.getSchema();
+    if (database == null) throw new SQLException("Database is not selected");
+    MongoCollection<RawBsonDocument> collection = connection.getService().getDatabase(database)
+        .getCollection(collectionName, RawBsonDocument.class);
+    documents.set(0);
+    failedDocuments.set(0);
+    bytes.set(0);
+    synchronized (errors) {
+      errors.clear();
+    }
+    // permits are kilobytes, so limits above 2 GB do not overflow
+    long inFlightBytes = maxInFlightBytes < 0 ? 2L * threads * batchBytes : Math.max(maxInFlightBytes, batchBytes);
+    int maxPermits = (int) Math.max(1, Math.min(Integer.MAX_VALUE, inFlightBytes / 1024));
+    Semaphore inFlight = new Semaphore(maxPermits);
+    AtomicInteger threadNumber = new AtomicInteger();
+    ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+      Thread thread = new Thread(r, "MongoJdbc import " + threadNumber.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+    long start = System.nanoTime();
+    long lastProgress = start;
+    try {
+      BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 64 * 1024);
+      RecordReader records = new RecordReader(reader, format);
+      String[] header = null;
+      if (format == TransferFormat.CSV) {
+        String headerRecord = records.next();
+        if (headerRecord == null) return stats(start);
+        header = parseCsvRecord(headerRecord).toArray(new String[0]);
+      }
+      while (true) {
+        Batch batch = records.nextBatch(batchBytes);
+        if (batch == null) break;
+        // records are kept as strings until they are converted, two bytes per char
+        int permits = (int) Math.min(maxPermits, Math.max(1, batch.chars * 2 / 1024));
+        inFlight.acquire(permits);
+        String[] columns = header;
+        executor.execute(() -> {
+          try {
+            insert(collection, batch, columns);
+          }
+          finally {
+            inFlight.release(permits);
+          }
+        });
+        if (listener != null && System.nanoTime() - lastProgress > PROGRESS_INTERVAL_NANOS) {
+          lastProgress = System.nanoTime();
+          listener.progress(stats(start));
+        }
+      }
+      executor.shutdown();
+      while (!executor.awaitTermination(PROGRESS_INTERVAL_NANOS, TimeUnit.NANOSECONDS)) {
+        if (listener != null) listener.progress(stats(start));
+      }
+    }
+    catch (IOException e) {
+      throw new SQLException("Import failed: " + e.getMessage(), e);
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SQLException("Import was interrupted", e);
+    }
+    finally {
+      executor.shutdownNow();
+      QueryResultCache cache = connection.getService().getQueryResultCache();
+      if (cache != null) cache.invalidate(database, collectionName);
+    }
+    TransferStats stats = stats(start);
+    if (listener != null) listener.progress(stats);
+    return stats;
+  }
+
+  @NotNull
+  private TransferStats stats(long start) {
+    synchronized (errors) {
+      return new TransferStats(documents.get(), bytes.get(), System.nanoTime() - start, failedDocuments.get(), new ArrayList<>(errors));
+    }
+  }
+
+  private void insert(@NotNull MongoCollection<RawBsonDocument> collection, @NotNull Batch batch, @Nullable String[] columns) {
+    List<RawBsonDocument> batchDocuments = new ArrayList<>(batch.records.size());
+    long batchBytes = 0;
+    for (int i = 0; i < batch.records.size(); i++) {
+      long line = batch.lines.get(i);
+      try {
+        RawBsonDocument document = columns == null
+                                   ? RawBsonDocument.parse(batch.records.get(i))
+                                   : new RawBsonDocument(toDocument(columns, parseCsvRecord(batch.records.get(i))), DOCUMENT_CODEC);
+        batchDocuments.add(document);
+        batchBytes += document.getByteBuffer().remaining();
+      }
+      catch (RuntimeException e) {
+        failedDocuments.incrementAndGet();
+        addError(new TransferError(line, line, 1, String.valueOf(e.getMessage())));
+      }
+    }
+    if (batchDocuments.isEmpty()) return;
+    long firstLine = batch.lines.get(0);
+    long lastLine = batch.lines.get(batch.lines.size() - 1);
+    try {
+      collection.insertMany(batchDocuments, new InsertManyOptions().ordered(false));
+      documents.addAndGet(batchDocuments.size());
+      bytes.addAndGet(batchBytes);
+    }
+    catch (MongoBulkWriteException e) {
+      List<BulkWriteError> writeErrors = e.getWriteErrors();
+      int inserted = e.getWriteResult().getInsertedCount();
+      documents.addAndGet(inserted);
+      failedDocuments.addAndGet(batchDocuments.size() - inserted);
+      bytes.addAndGet(batchBytes * inserted / batchDocuments.size());
+      String message = writeErrors.isEmpty() ? e.getMessage() : writeErrors.get(0).getMessage();
+      addError(new TransferError(firstLine, lastLine, batchDocuments.size() - inserted, message));
+    }
+    catch (RuntimeException e) {
+      failedDocuments.addAndGet(batchDocuments.size());
+      addError(new TransferError(firstLine, lastLine, batchDocuments.size(), String.valueOf(e.getMessage())));
+    }
+  }
+
+  private void addError(@NotNull TransferError error) {
+    synchronized (errors) {
+      if (errors.size() < MAX_ERRORS) errors.add(error);
+    }
+  }
+
+  @NotNull
+  private static Document toDocument(@NotNull String[] columns, @NotNull List<String> values) {
+    Document document = new Document();
+    for (int i = 0; i < columns.length && i < values.size(); i++) {
+      String value = values.get(i);
+      if (value.isEmpty()) continue;
+      Document parent = document;
+      String[] path = columns[i].split("\\.");
+      for (int j = 0; j < path.length - 1; j++) {
+        Object child = parent.get(path[j]);
+        if (!(child instanceof Document)) {
+          child = new Document();
+          parent.put(path[j], child);
+        }
+        parent = (Document) child;
+      }
+      parent.put(path[path.length - 1], toValue(value));
+    }
+    return document;
+  }
+
+  @NotNull
+  private static Object toValue(@NotNull String value) {
+    if (value.equals("true") || value.equals("false")) return Boolean.parseBoolean(value);
+    try {
+      if (INTEGER.matcher(value).matches()) {
+        long number = Long.parseLong(value);
+        return number == (int) number ? (Object) (int) number : (Object) number;
+      }
+      if (DECIMAL.matcher(value).matches()) return Double.parseDouble(value);
+    }
+    catch (NumberFormatException ignored) {
+    }
+    return value;
+  }
+
+  /**
+   * Splits a CSV record into fields. Quoted fields may contain separators, line breaks and doubled quotes.
+   */
+  @NotNull
+  static List<String> parseCsvRecord(@NotNull String record) {
+    List<String> fields = new ArrayList<>();
+    StringBuilder field = new StringBuilder();
+    boolean quoted = false;
+    for (int i = 0; i < record.length(); i++) {
+      char c = record.charAt(i);
+      if (quoted) {
+        if (c == '"' && i + 1 < record.length() && record.charAt(i + 1) == '"') {
+          field.append('"');
+          i++;
+        }
+        else if (c == '"') quoted = false;
+        else field.append(c);
+      }
+      else if (c == '"') quoted = true;
+      else if (c == ',') {
+        fields.add(field.toString());
+        field.setLength(0);
+      }
+      else field.append(c);
+    }
+    fields.add(field.toString());
+    return fields;
+  }
+
+  private static final class Batch {
+    final List<String> records = new ArrayList<>();
+    final List<Long> lines = new ArrayList<>();
+    long chars = 0;
+  }
+
+  /**
+   * Reads one record per line, CSV records continue on the next line while a quoted field is open
+   */
+  private static final class RecordReader {
+    private final BufferedReader reader;
+    private final boolean csv;
+    private long lineNumber = 0;
+    private long recordLine = 0;
+
+    RecordReader(@NotNull BufferedReader reader, @NotNull TransferFormat format) {
+      this.reader = reader;
+      this.csv = format == TransferFormat.CSV;
+    }
+
+    @Nullable
+    String next() throws IOException {
+      while (true) {
+        String line = reader.readLine();
+        if (line == null) return null;
+        lineNumber++;
+        recordLine = lineNumber;
+        if (line.trim().isEmpty()) continue;
+        if (!csv || countQuotes(line) % 2 == 0) return line;
+        StringBuilder record = new StringBuilder(line);
+        int quotes = countQuotes(line);
+        while (quotes % 2 != 0 && (line = reader.readLine()) != null) {
+          lineNumber++;
+          record.append('\n').append(line);
+          quotes += countQuotes(line);
+        }
+        return record.toString();
+      }
+    }
+
+    @Nullable
+    Batch nextBatch(int maxChars) throws IOException {
+      Batch batch = null;
+      while (batch == null || batch.chars < maxChars) {
+        String record = next();
+        if (record == null) break;
+        if (batch == null) batch = new Batch();
+        batch.records.add(record);
+        batch.lines.add(recordLine);
+        batch.chars += record.length();
+      }
+      return batch;
+    }
+
+    private static int countQuotes(@NotNull String line) {
+      int count = 0;
+      for (int i = 0; i < line.length(); i++) {
+        if (line.charAt(i) == '"') count++;
+      }
+      return count;
+    }
+  }
+}
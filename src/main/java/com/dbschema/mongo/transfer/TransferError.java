@@ -0,0 +1,43 @@
+package com.dbschema.mongo.transfer;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Failure of a batch or of a single line during import
+ */
+public class TransferError {
+  private final long firstLine;
+  private final long lastLine;
+  private final long failedDocuments;
+  private final String message;
+
+  public TransferError(long firstLine, long lastLine, long failedDocuments, @NotNull String message) {
+    this.firstLine = firstLine;
+    this.lastLine = lastLine;
+    this.failedDocuments = failedDocuments;
+    this.message = message;
+  }
+
+  public long getFirstLine() {
+    return firstLine;
+  }
+
+  public long getLastLine() {
+    return lastLine;
+  }
+
+  public long getFailedDocuments() {
+    return failedDocuments;
+  }
+
+  @NotNull
+  public String getMessage() {
+    return message;
+  }
+
+  @Override
+  public String toString() {
+    String lines = firstLine == lastLine ? "line " + firstLine : "lines " + firstLine + "-" + lastLine;
+    return lines + ": " + failedDocuments + " documents failed: " + message;
+  }
+}
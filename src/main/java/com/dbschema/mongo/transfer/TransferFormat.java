@@ -0,0 +1,36 @@
+package com.dbschema.mongo.transfer;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Locale;
+
+public enum TransferFormat {
+  /**
+   * One relaxed extended JSON document per line
+   */
+  NDJSON,
+  /**
+   * Comma separated values with a header line
+   */
+  CSV;
+
+  @Nullable
+  public static TransferFormat parse(@NotNull String name) {
+    switch (name.toLowerCase(Locale.ENGLISH)) {
+      case "ndjson":
+      case "jsonl":
+      case "json":
+        return NDJSON;
+      case "csv":
+        return CSV;
+      default:
+        return null;
+    }
+  }
+
+  @NotNull
+  public static TransferFormat fromFileName(@NotNull String fileName) {
+    return fileName.toLowerCase(Locale.ENGLISH).endsWith(".csv") ? CSV : NDJSON;
+  }
+}
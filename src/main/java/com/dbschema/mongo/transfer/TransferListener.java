@@ -0,0 +1,10 @@
+package com.dbschema.mongo.transfer;
+
+import org.jetbrains.annotations.NotNull;
+
+public interface TransferListener {
+  /**
+   * Called periodically while data is transferred and once when transfer is finished
+   */
+  void progress(@NotNull TransferStats stats);
+}
@@ -0,0 +1,84 @@
+package com.dbschema.mongo.transfer;
+
+import com.dbschema.mongo.MongoConnection;
+import com.dbschema.mongo.resultSet.ListResultSet;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Pseudo-statement that moves data between a collection and a file:
+ * <pre>
+ * export db.orders.find({status: "A"}) to '/tmp/orders.csv' [as csv|ndjson]
+ * import '/tmp/orders.csv' into db.orders [as csv|ndjson]
+ * </pre>
+ * If format is not specified it is derived from the file extension.
+ */
+public class TransferStatement {
+  private static final Pattern EXPORT = Pattern.compile(
+      "export\\s+(.+)\\s+to\\s+(['\"])(.+?)\\2(?:\\s+as\\s+(\\w+))?\\s*;?", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+  private static final Pattern IMPORT = Pattern.compile(
+      "import\\s+(['\"])(.+?)\\1\\s+into\\s+(?:db\\s*\\.\\s*)?([\\w.$-]+)(?:\\s+as\\s+(\\w+))?\\s*;?", Pattern.CASE_INSENSITIVE);
+
+  private final boolean isImport;
+  /**
+   * Exported statement or target collection of import
+   */
+  private final String source;
+  private final File file;
+  private final TransferFormat format;
+
+  private TransferStatement(boolean isImport, @NotNull String source, @NotNull File file, @NotNull TransferFormat format) {
+    this.isImport = isImport;
+    this.source = source;
+    this.file = file;
+    this.format = format;
+  }
+
+  /**
+   * @return null if the query is not a transfer statement
+   */
+  @Nullable
+  public static TransferStatement parse(@NotNull String query) throws SQLException {
+    Matcher matcher = EXPORT.matcher(query.trim());
+    if (matcher.matches()) {
+      String fileName = matcher.group(3);
+      return new TransferStatement(false, matcher.group(1).trim(), new File(fileName), format(fileName, matcher.group(4)));
+    }
+    matcher = IMPORT.matcher(query.trim());
+    if (matcher.matches()) {
+      String fileName = matcher.group(2);
+      return new TransferStatement(true, matcher.group(3), new File(fileName), format(fileName, matcher.group(4)));
+    }
+    return null;
+  }
+
+  @NotNull
+  private static TransferFormat format(@NotNull String fileName, @Nullable String formatName) throws SQLException {
+    TransferFormat format = formatName == null ? TransferFormat.fromFileName(fileName) : TransferFormat.parse(formatName);
+    if (format == null) throw new SQLException("Unknown format: " + formatName + ". Supported formats: ndjson, csv");
+    return format;
+  }
+
+  @NotNull
+  public ResultSet execute(@NotNull MongoConnection connection) throws SQLException {
+    TransferStats stats = isImport
+                          ? new DocumentImporter(connection).importFile(file, source, format, null)
+                          : new DocumentExporter(connection).export(source, file, format, null);
+    ListResultSet resultSet = new ListResultSet();
+    resultSet.setColumnNames("file", "documents", "failed_documents", "bytes", "millis", "documents_per_second", "mb_per_second", "errors");
+    StringBuilder errors = new StringBuilder();
+    for (TransferError error : stats.getErrors()) {
+      errors.append(error).append('\n');
+    }
+    resultSet.addRow(new Object[]{file.getPath(), stats.getDocuments(), stats.getFailedDocuments(), stats.getBytes(),
+        stats.getElapsedMillis(), stats.getDocumentsPerSecond(), stats.getMegabytesPerSecond(),
+        errors.length() == 0 ? null : errors.toString().trim()});
+    return resultSet;
+  }
+}
@@ -0,0 +1,72 @@
+package com.dbschema.mongo.transfer;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Snapshot of transfer progress
+ */
+public class TransferStats {
+  private final long documents;
+  private final long bytes;
+  private final long elapsedNanos;
+  private final long failedDocuments;
+  private final List<TransferError> errors;
+
+  public TransferStats(long documents, long bytes, long elapsedNanos) {
+    this(documents, bytes, elapsedNanos, 0, Collections.emptyList());
+  }
+
+  public TransferStats(long documents, long bytes, long elapsedNanos, long failedDocuments, @NotNull List<TransferError> errors) {
+    this.documents = documents;
+    this.bytes = bytes;
+    this.elapsedNanos = elapsedNanos;
+    this.failedDocuments = failedDocuments;
+    this.errors = errors;
+  }
+
+  public long getDocuments() {
+    return documents;
+  }
+
+  /**
+   * @return size of transferred documents in BSON
+   */
+  public long getBytes() {
+    return bytes;
+  }
+
+  public long getFailedDocuments() {
+    return failedDocuments;
+  }
+
+  /**
+   * @return first errors, the number of kept errors is limited
+   */
+  @NotNull
+  public List<TransferError> getErrors() {
+    return errors;
+  }
+
+  public long getElapsedMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+  }
+
+  public double getDocumentsPerSecond() {
+    return elapsedNanos == 0 ? 0 : documents * 1e9 / elapsedNanos;
+  }
+
+  public double getMegabytesPerSecond() {
+    return elapsedNanos == 0 ? 0 : bytes * 1e9 / elapsedNanos / (1024 * 1024);
+  }
+
+  @Override
+  public String toString() {
+    String failed = failedDocuments > 0 ? ", " + failedDocuments + " failed" : "";
+    return String.format("%d documents%s, %d bytes in %d ms (%.0f documents/s, %.2f MB/s)",
+        documents, failed, bytes, getElapsedMillis(), getDocumentsPerSecond(), getMegabytesPerSecond());
+  }
+}
@@ -0,0 +1,58 @@
+package com.dbschema.mongo;
+
+import com.dbschema.mongo.resultSet.LimitedIterator;
+import org.junit.Test;
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LimitedIteratorTest {
+  @Test
+  public void closesCursorAfterLastRow() {
+    TrackingIterator cursor = new TrackingIterator(Arrays.asList(1, 2, 3, 4));
+    Iterator<Integer> limited = LimitedIterator.limit(cursor, 2);
+    assertEquals(1, (int) limited.next());
+    assertEquals(2, (int) limited.next());
+    assertFalse(cursor.closed);
+    assertFalse(limited.hasNext());
+    assertTrue(cursor.closed);
+    assertEquals(2, cursor.read);
+  }
+
+  @Test
+  public void noLimit() {
+    TrackingIterator cursor = new TrackingIterator(Arrays.asList(1, 2));
+    assertSame(cursor, LimitedIterator.limit(cursor, 0));
+    assertSame(cursor, LimitedIterator.limit(cursor, -1));
+  }
+
+  private static final class TrackingIterator implements Iterator<Integer>, Closeable {
+    private final Iterator<Integer> iterator;
+    boolean closed = false;
+    int read = 0;
+
+    TrackingIterator(List<Integer> values) {
+      this.iterator = values.iterator();
+    }
+
+    @Override
+    public boolean hasNext() {
+      return iterator.hasNext();
+    }
+
+    @Override
+    public Integer next() {
+      read++;
+      return iterator.next();
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+    }
+  }
+}
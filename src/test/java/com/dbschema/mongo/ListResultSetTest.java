@@ -0,0 +1,67 @@
+package com.dbschema.mongo;
+
+import com.dbschema.mongo.resultSet.ListResultSet;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Date;
+
+import static org.junit.Assert.*;
+
+public class ListResultSetTest {
+  @Test
+  public void typedColumns() throws SQLException {
+    ListResultSet resultSet = new ListResultSet();
+    resultSet.setColumnNames("ID", "count", "ratio", "name");
+    resultSet.addRow(new Object[]{1, 10L, 0.5, "a"});
+    resultSet.addRow(new Object[]{2, null, 1.5, null});
+    assertEquals(Types.INTEGER, resultSet.getMetaData().getColumnType(1));
+    assertEquals(Types.BIGINT, resultSet.getMetaData().getColumnType(2));
+    assertEquals(Types.DOUBLE, resultSet.getMetaData().getColumnType(3));
+    assertEquals(Types.VARCHAR, resultSet.getMetaData().getColumnType(4));
+
+    assertTrue(resultSet.next());
+    assertEquals(1, resultSet.getInt("id"));
+    assertEquals(10L, resultSet.getLong("count"));
+    assertEquals(0.5, resultSet.getDouble(3), 0);
+    assertEquals("a", resultSet.getString("name"));
+    assertTrue(resultSet.next());
+    assertEquals(0L, resultSet.getLong("count"));
+    assertTrue(resultSet.wasNull());
+    assertNull(resultSet.getObject("name"));
+    assertEquals(Integer.valueOf(2), resultSet.getObject(1, Integer.class));
+    assertFalse(resultSet.next());
+  }
+
+  @Test
+  public void mixedColumnKeepsValues() throws SQLException {
+    ListResultSet resultSet = new ListResultSet();
+    resultSet.setColumnNames("value");
+    resultSet.addRow(new Object[]{1});
+    resultSet.addRow(new Object[]{"2"});
+    resultSet.addRow(new Object[]{3L});
+    assertEquals(Types.OTHER, resultSet.getMetaData().getColumnType(1));
+    assertTrue(resultSet.next());
+    assertEquals(1, resultSet.getObject(1));
+    assertTrue(resultSet.next());
+    assertEquals("2", resultSet.getObject(1));
+    assertEquals(2, resultSet.getInt(1));
+    assertTrue(resultSet.next());
+    assertEquals(3L, resultSet.getObject(1));
+  }
+
+  @Test
+  public void timestamps() throws SQLException {
+    ListResultSet resultSet = new ListResultSet(new Date(1000), new String[]{"created"});
+    assertTrue(resultSet.next());
+    assertEquals(new Timestamp(1000), resultSet.getTimestamp("created"));
+    assertEquals(1000, resultSet.getDate(1).getTime());
+  }
+
+  @Test(expected = SQLException.class)
+  public void unknownColumn() throws SQLException {
+    new ListResultSet(1, new String[]{"a"}).findColumn("b");
+  }
+}
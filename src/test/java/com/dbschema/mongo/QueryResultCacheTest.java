@@ -0,0 +1,133 @@
+package com.dbschema.mongo;
+
+import com.dbschema.mongo.cache.QueryResultCache;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class QueryResultCacheTest {
+  private static final List<RawBsonDocument> DOCUMENTS = Collections.singletonList(RawBsonDocument.parse("{\"a\": 1}"));
+
+  private static QueryResultCache.Key key(String collection, String statement) {
+    return new QueryResultCache.Key(statement, "db", collection, "primary");
+  }
+
+  @Test
+  public void hitReturnsFreshCopy() {
+    QueryResultCache cache = new QueryResultCache(10_000, 60_000);
+    cache.put(key("c", "db.c.find()"), DOCUMENTS, 100, cache.getGeneration());
+    Iterator<Document> first = cache.find(key("c", "db.c.find()"));
+    assertNotNull(first);
+    Document document = first.next();
+    assertEquals(1, document.get("a"));
+    document.put("a", 2);
+    Iterator<Document> second = cache.find(key("c", "db.c.find()"));
+    assertNotNull(second);
+    assertEquals(1, second.next().get("a"));
+    assertNull(cache.find(key("c", "db.c.find({})")));
+  }
+
+  @Test
+  public void leastRecentlyUsedIsEvicted() {
+    QueryResultCache cache = new QueryResultCache(10_000, 60_000);
+    cache.put(key("c", "1"), DOCUMENTS, 1000, cache.getGeneration());
+    cache.put(key("c", "2"), DOCUMENTS, 1000, cache.getGeneration());
+    assertNotNull(cache.find(key("c", "1")));
+    for (int i = 3; i <= 10; i++) {
+      cache.put(key("c", Integer.toString(i)), DOCUMENTS, 1000, cache.getGeneration());
+    }
+    cache.put(key("c", "11"), DOCUMENTS, 1000, cache.getGeneration());
+    assertNotNull(cache.find(key("c", "1")));
+    assertNull(cache.find(key("c", "2")));
+    assertTrue(cache.getSizeBytes() <= 10_000);
+  }
+
+  @Test
+  public void tooLargeEntryIsNotCached() {
+    QueryResultCache cache = new QueryResultCache(10_000, 60_000);
+    cache.put(key("c", "1"), DOCUMENTS, 5000, cache.getGeneration());
+    assertNull(cache.find(key("c", "1")));
+  }
+
+  @Test
+  public void writeInvalidatesNamespace() {
+    QueryResultCache cache = new QueryResultCache(10_000, 60_000);
+    long generation = cache.getGeneration();
+    cache.put(key("c", "1"), DOCUMENTS, 100, generation);
+    cache.put(key("d", "1"), DOCUMENTS, 100, generation);
+    cache.invalidate("db", "c");
+    assertNull(cache.find(key("c", "1")));
+    assertNotNull(cache.find(key("d", "1")));
+    // result that was read before invalidation must not be cached
+    cache.put(key("c", "2"), DOCUMENTS, 100, generation);
+    assertNull(cache.find(key("c", "2")));
+  }
+
+  @Test
+  public void expiredEntryIsNotReturned() throws InterruptedException {
+    QueryResultCache cache = new QueryResultCache(10_000, 1);
+    cache.put(key("c", "1"), DOCUMENTS, 100, cache.getGeneration());
+    Thread.sleep(5);
+    assertNull(cache.find(key("c", "1")));
+    assertEquals(0, cache.getSizeBytes());
+  }
+
+  @Test
+  public void statementKind() {
+    ShellStatement find = ShellStatement.parse("db.orders.find({a: 1}).sort({b: -1});");
+    assertTrue(find.isRead());
+    assertEquals("orders", find.collection);
+    assertTrue(ShellStatement.parse("db.getCollection('my.orders').aggregate([{$match: {}}])").isRead());
+    ShellStatement out = ShellStatement.parse("db.orders.aggregate([{$out: 'copy'}])");
+    assertFalse(out.isRead());
+    assertTrue(out.hasUnknownWrites);
+    ShellStatement insert = ShellStatement.parse("db.orders.insertOne({a: 1})");
+    assertEquals(ShellStatement.Kind.WRITE, insert.kind);
+    assertFalse(insert.hasUnknownWrites);
+    assertTrue(ShellStatement.parse("db.runCommand({drop: 'orders'})").hasUnknownWrites);
+    assertFalse(ShellStatement.parse("db.a.find(); db.b.find()").isRead());
+  }
+
+  @Test
+  public void onlyLiteralReadsAreCacheable() {
+    String literal = "db.orders.find({a: 1})";
+    assertTrue(ShellStatement.isCacheable(ShellStatement.parse(literal), literal));
+    String date = "db.orders.find({created: {$gt: new Date()}})";
+    assertTrue(ShellStatement.parse(date).isRead());
+    assertFalse(ShellStatement.isCacheable(ShellStatement.parse(date), date));
+    String isoDate = "db.orders.aggregate([{$match: {created: {$lt: ISODate()}}}])";
+    assertFalse(ShellStatement.isCacheable(ShellStatement.parse(isoDate), isoDate));
+    String fixedDate = "db.orders.find({created: {$gt: new Date(0)}})";
+    assertTrue(ShellStatement.isCacheable(ShellStatement.parse(fixedDate), fixedDate));
+    String variable = "db.orders.find({a: x})";
+    assertFalse(ShellStatement.isCacheable(ShellStatement.parse(variable), variable));
+  }
+
+  @Test
+  public void sharedBySettings() {
+    QueryResultCache cache = QueryResultCache.retain("user@mongodb://host", 10_000, 60_000);
+    QueryResultCache other = QueryResultCache.retain("user@mongodb://host", 20_000, 60_000);
+    try {
+      assertNotSame(cache, other);
+      QueryResultCache same = QueryResultCache.retain("user@mongodb://host", 10_000, 60_000);
+      assertSame(cache, same);
+      same.release();
+      cache.put(key("c", "1"), DOCUMENTS, 100, cache.getGeneration());
+      assertNotNull(cache.find(key("c", "1")));
+    }
+    finally {
+      cache.release();
+      other.release();
+    }
+    assertEquals(0, cache.getSizeBytes());
+    QueryResultCache fresh = QueryResultCache.retain("user@mongodb://host", 10_000, 60_000);
+    assertNotSame(cache, fresh);
+    fresh.release();
+  }
+}
@@ -0,0 +1,100 @@
+package com.dbschema.mongo;
+
+import com.mongodb.MongoSocketReadException;
+import com.mongodb.ServerAddress;
+import org.bson.Document;
+import org.junit.Test;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.*;
+
+public class ReactiveExecutorTest {
+  private final List<Long> requests = new ArrayList<>();
+  private boolean cancelled = false;
+  private Subscriber<? super Document> subscriber;
+
+  @Test
+  public void collectsInBatches() throws Exception {
+    CompletableFuture<ResultSet> future = ReactiveExecutor.collect(publisher(), 2);
+    for (int i = 0; i < 5; i++) {
+      subscriber.onNext(new Document("_id", i));
+    }
+    assertFalse(future.isDone());
+    subscriber.onComplete();
+    ResultSet resultSet = future.get();
+    List<Object> ids = new ArrayList<>();
+    while (resultSet.next()) {
+      ids.add(((Document) resultSet.getObject(1)).get("_id"));
+    }
+    assertEquals(5, ids.size());
+    assertEquals(4, ids.get(4));
+    // a new batch is requested whenever the previous one has arrived
+    assertEquals(3, requests.size());
+    assertEquals(Long.valueOf(2), requests.get(0));
+  }
+
+  @Test
+  public void errorIsReportedAsSQLException() throws InterruptedException {
+    CompletableFuture<ResultSet> future = ReactiveExecutor.collect(publisher(), 0);
+    subscriber.onNext(new Document("_id", 1));
+    subscriber.onError(new MongoSocketReadException("reset", new ServerAddress()));
+    try {
+      future.get();
+      fail();
+    }
+    catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof SQLException);
+      assertTrue(e.getCause().getCause() instanceof MongoSocketReadException);
+    }
+  }
+
+  @Test
+  public void cancelCancelsSubscription() {
+    CompletableFuture<ResultSet> future = ReactiveExecutor.collect(publisher(), 10);
+    subscriber.onNext(new Document("_id", 1));
+    assertTrue(future.cancel(true));
+    assertTrue(cancelled);
+    // late documents are ignored
+    subscriber.onNext(new Document("_id", 2));
+    assertEquals(1, requests.size());
+  }
+
+  @Test
+  public void unsupportedStatementFails() throws InterruptedException {
+    CompletableFuture<ResultSet> future = ReactiveExecutor.collect(ReactiveExecutor.publisher(null, "db.orders.find({a: x})", 0, 0), 0);
+    try {
+      future.get();
+      fail();
+    }
+    catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof SQLFeatureNotSupportedException);
+    }
+  }
+
+  private Publisher<Document> publisher() {
+    return subscriber -> {
+      this.subscriber = subscriber;
+      subscriber.onSubscribe(new Subscription() {
+        @Override
+        public void request(long n) {
+          requests.add(n);
+        }
+
+        @Override
+        public void cancel() {
+          cancelled = true;
+        }
+      });
+    };
+  }
+}
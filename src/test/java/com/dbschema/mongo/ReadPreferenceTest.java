@@ -0,0 +1,34 @@
+package com.dbschema.mongo;
+
+import com.mongodb.ReadPreference;
+import com.mongodb.Tag;
+import com.mongodb.TagSet;
+import com.mongodb.TaggableReadPreference;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static com.dbschema.mongo.MongoClientWrapper.createReadPreference;
+import static org.junit.Assert.assertEquals;
+
+public class ReadPreferenceTest {
+  @Test
+  public void modeOnly() {
+    assertEquals(ReadPreference.secondaryPreferred(), createReadPreference("secondaryPreferred", null, -1));
+    assertEquals(ReadPreference.nearest(), createReadPreference(" nearest ", "", -1));
+  }
+
+  @Test
+  public void tagsAndStaleness() {
+    TaggableReadPreference preference = (TaggableReadPreference) createReadPreference("nearest", "dc:east, use:reporting;dc:west", 120);
+    assertEquals(Arrays.asList(new TagSet(Arrays.asList(new Tag("dc", "east"), new Tag("use", "reporting"))), new TagSet(new Tag("dc", "west"))),
+                 preference.getTagSetList());
+    assertEquals(Long.valueOf(120), preference.getMaxStaleness(TimeUnit.SECONDS));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void tagsOnPrimary() {
+    createReadPreference("primary", "dc:east", -1);
+  }
+}
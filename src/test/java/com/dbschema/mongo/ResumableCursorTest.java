@@ -0,0 +1,136 @@
+package com.dbschema.mongo;
+
+import com.mongodb.MongoSocketOpenException;
+import com.mongodb.MongoSocketReadException;
+import com.mongodb.ServerAddress;
+import com.mongodb.ServerCursor;
+import com.mongodb.client.MongoCursor;
+import org.bson.Document;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ResumableCursorTest {
+  @Test
+  public void resumesAfterLastId() {
+    List<String> opens = new ArrayList<>();
+    ResumableCursor<Document> cursor = new ResumableCursor<>((lastId, delivered) -> {
+      opens.add(lastId + "/" + delivered);
+      int from = lastId == null ? 0 : (Integer) lastId + 1;
+      return new FailingCursor(from, 6, opens.size() == 1 ? 2 : -1);
+    }, 2);
+    List<Object> ids = new ArrayList<>();
+    while (cursor.hasNext()) {
+      ids.add(cursor.next().get("_id"));
+    }
+    assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5), ids);
+    assertEquals(Arrays.asList("null/0", "1/2"), opens);
+    assertEquals(1, cursor.getResumeCount());
+  }
+
+  @Test(expected = MongoSocketReadException.class)
+  public void failsAfterRetries() {
+    ResumableCursor<Document> cursor = new ResumableCursor<>((lastId, delivered) -> new FailingCursor(0, 6, 0), 2);
+    cursor.hasNext();
+  }
+
+  @Test
+  public void retriesFailedResume() {
+    List<String> opens = new ArrayList<>();
+    ResumableCursor<Document> cursor = new ResumableCursor<>((lastId, delivered) -> {
+      opens.add(lastId + "/" + delivered);
+      if (opens.size() == 2) throw new MongoSocketOpenException("refused", new ServerAddress());
+      int from = lastId == null ? 0 : (Integer) lastId + 1;
+      return new FailingCursor(from, 4, opens.size() == 1 ? 2 : -1);
+    }, 2);
+    List<Object> ids = new ArrayList<>();
+    while (cursor.hasNext()) {
+      ids.add(cursor.next().get("_id"));
+    }
+    assertEquals(Arrays.asList(0, 1, 2, 3), ids);
+    assertEquals(Arrays.asList("null/0", "1/2", "1/2"), opens);
+    assertEquals(2, cursor.getResumeCount());
+  }
+
+  @Test(expected = MongoSocketOpenException.class)
+  public void failedResumeCountsTowardRetries() {
+    ResumableCursor<Document> cursor = new ResumableCursor<>((lastId, delivered) -> {
+      if (lastId != null) throw new MongoSocketOpenException("refused", new ServerAddress());
+      return new FailingCursor(0, 4, 2);
+    }, 1);
+    while (cursor.hasNext()) {
+      cursor.next();
+    }
+  }
+
+  @Test
+  public void nothingLeft() {
+    ResumableCursor<Document> cursor = new ResumableCursor<>((lastId, delivered) -> delivered >= 1 ? null : new FailingCursor(0, 6, 1), 1);
+    assertTrue(cursor.hasNext());
+    cursor.next();
+    assertFalse(cursor.hasNext());
+  }
+
+  @Test
+  public void resumableQueries() {
+    assertTrue(ShellQuery.parse("db.c.find()").isResumable());
+    assertTrue(ShellQuery.parse("db.c.find({a: 1}).sort({_id: 1})").isResumable());
+    assertFalse(ShellQuery.parse("db.c.find({a: 1})").isResumable());
+    assertTrue(ShellQuery.parse("db.c.find({}, {a: 1}).sort({_id: -1}).limit(10)").isResumable());
+    assertFalse(ShellQuery.parse("db.c.find({}).sort({a: 1})").isResumable());
+    assertFalse(ShellQuery.parse("db.c.find({}, {_id: 0})").isResumable());
+    assertFalse(ShellQuery.parse("db.c.aggregate([])").isResumable());
+  }
+
+  /**
+   * Documents with _id from {@code from} until {@code to}, fails with a network error after {@code failAfter} documents
+   */
+  private static class FailingCursor implements MongoCursor<Document> {
+    private int next;
+    private final int to;
+    private int failAfter;
+
+    FailingCursor(int from, int to, int failAfter) {
+      this.next = from;
+      this.to = to;
+      this.failAfter = failAfter;
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (failAfter == 0) throw new MongoSocketReadException("reset", new ServerAddress());
+      return next < to;
+    }
+
+    @Override
+    public Document next() {
+      failAfter--;
+      return new Document("_id", next++);
+    }
+
+    @Override
+    public Document tryNext() {
+      return hasNext() ? next() : null;
+    }
+
+    @Override
+    public ServerCursor getServerCursor() {
+      return null;
+    }
+
+    @Override
+    public ServerAddress getServerAddress() {
+      return null;
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+}
@@ -0,0 +1,62 @@
+package com.dbschema.mongo;
+
+import org.junit.Test;
+
+import javax.net.ssl.SSLContext;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.security.KeyStore;
+
+import static com.dbschema.mongo.SSLUtil.getCachedTrustEverybodySSLContext;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SSLContextCacheTest {
+  @Test
+  public void withoutKeyStore() throws Exception {
+    assertSame(getCachedTrustEverybodySSLContext("", "JKS", ""), getCachedTrustEverybodySSLContext("", "JKS", ""));
+  }
+
+  @Test
+  public void keyStoreFile() throws Exception {
+    File file = File.createTempFile("keystore", ".jks");
+    file.deleteOnExit();
+    writeKeyStore(file, "secret");
+    String url = file.toURI().toURL().toString();
+
+    SSLContext context = getCachedTrustEverybodySSLContext(url, "JKS", "secret");
+    assertSame(context, getCachedTrustEverybodySSLContext(url, "JKS", "secret"));
+
+    writeKeyStore(file, "secret");
+    file.setLastModified(file.lastModified() - 10_000);
+    assertNotSame(context, getCachedTrustEverybodySSLContext(url, "JKS", "secret"));
+  }
+
+  @Test
+  public void keyStorePathWithSpaces() throws Exception {
+    File dir = Files.createTempDirectory("key store").toFile();
+    File file = new File(dir, "key store.jks");
+    try {
+      writeKeyStore(file, "secret");
+      String url = file.toURI().toURL().toString();
+      assertTrue(url.contains("%20"));
+      assertEquals(file.lastModified() + "/" + file.length(), SSLUtil.keyStoreStamp(url));
+    }
+    finally {
+      file.delete();
+      dir.delete();
+    }
+  }
+
+  private static void writeKeyStore(File file, String password) throws Exception {
+    KeyStore keyStore = KeyStore.getInstance("JKS");
+    keyStore.load(null, null);
+    try (OutputStream out = new FileOutputStream(file)) {
+      keyStore.store(out, password.toCharArray());
+    }
+  }
+}
@@ -0,0 +1,80 @@
+package com.dbschema.mongo;
+
+import com.dbschema.mongo.resultSet.ResultSetIterator;
+import com.dbschema.mongo.resultSet.ScrollableResultSet;
+import org.bson.Document;
+import org.junit.Test;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ScrollableResultSetTest {
+  private static ScrollableResultSet resultSet(int count) {
+    List<Document> documents = new ArrayList<>();
+    for (int i = 1; i <= count; i++) {
+      documents.add(new Document("_id", i).append("name", "document " + i));
+    }
+    return new ScrollableResultSet(new ResultSetIterator(documents));
+  }
+
+  private static int id(ResultSet resultSet) throws SQLException {
+    return ((Document) resultSet.getObject(1)).getInteger("_id");
+  }
+
+  @Test
+  public void scroll() throws SQLException {
+    ScrollableResultSet resultSet = resultSet(100);
+    assertEquals(ResultSet.TYPE_SCROLL_INSENSITIVE, resultSet.getType());
+    assertTrue(resultSet.isBeforeFirst());
+    assertTrue(resultSet.next());
+    assertTrue(resultSet.isFirst());
+    assertTrue(resultSet.absolute(50));
+    assertEquals(50, id(resultSet));
+    assertTrue(resultSet.previous());
+    assertEquals(49, id(resultSet));
+    assertTrue(resultSet.relative(10));
+    assertEquals(59, resultSet.getRow());
+    assertTrue(resultSet.absolute(-1));
+    assertTrue(resultSet.isLast());
+    assertEquals(100, id(resultSet));
+    assertFalse(resultSet.next());
+    assertTrue(resultSet.isAfterLast());
+    assertTrue(resultSet.previous());
+    assertEquals(100, id(resultSet));
+    assertTrue(resultSet.first());
+    assertEquals("document 1", ((Document) resultSet.getObject(1)).getString("name"));
+    assertFalse(resultSet.relative(-5));
+    assertEquals(0, resultSet.getRow());
+    assertFalse(resultSet.absolute(200));
+    assertTrue(resultSet.isAfterLast());
+    resultSet.close();
+    assertTrue(resultSet.isClosed());
+  }
+
+  @Test
+  public void emptyResult() throws SQLException {
+    ScrollableResultSet resultSet = resultSet(0);
+    assertFalse(resultSet.isBeforeFirst());
+    assertFalse(resultSet.first());
+    assertFalse(resultSet.last());
+    assertFalse(resultSet.isAfterLast());
+    resultSet.close();
+  }
+
+  @Test
+  public void valuesThatAreNotDocuments() throws SQLException {
+    ScrollableResultSet resultSet = new ScrollableResultSet(new ResultSetIterator(Arrays.asList("a", new Document("b", 1), 3)));
+    assertTrue(resultSet.last());
+    assertEquals(3, resultSet.getObject(1));
+    assertTrue(resultSet.previous());
+    assertEquals(new Document("b", 1), resultSet.getObject(1));
+    assertTrue(resultSet.first());
+    assertEquals("a", resultSet.getObject(1));
+    resultSet.close();
+  }
+}
@@ -0,0 +1,135 @@
+package com.dbschema.mongo;
+
+import com.dbschema.mongo.transfer.TransferFormat;
+import com.dbschema.mongo.transfer.TransferStatement;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class ShellQueryTest {
+  @Test
+  public void find() {
+    ShellQuery query = ShellQuery.parse("db.orders.find({status: 'A', _id: ObjectId(\"5f1a2b3c4d5e6f7a8b9c0d1e\")}, {name: 1}).sort({date: -1}).limit(10);");
+    assertNotNull(query);
+    assertEquals("orders", query.collection);
+    assertFalse(query.isAggregate());
+    assertEquals("A", query.filter.getString("status"));
+    assertEquals(new ObjectId("5f1a2b3c4d5e6f7a8b9c0d1e"), query.filter.get("_id"));
+    assertEquals(new Document("name", 1), query.projection);
+    assertEquals(new Document("date", -1), query.sort);
+    assertEquals(10, query.limit);
+    assertEquals(0, query.skip);
+  }
+
+  @Test
+  public void aggregate() {
+    ShellQuery query = ShellQuery.parse("db.getCollection('orders').aggregate([{$match: {a: 1}}, {$group: {_id: \"$b\"}}], {allowDiskUse: true})");
+    assertNotNull(query);
+    assertTrue(query.isAggregate());
+    assertEquals(2, query.pipeline.size());
+    assertEquals(new Document("$match", new Document("a", 1)), query.pipeline.get(0));
+    assertTrue(query.options.getBoolean("allowDiskUse"));
+  }
+
+  @Test
+  public void nullArguments() {
+    assertNotNull(ShellQuery.parse("db.orders.find(null)"));
+    assertNotNull(ShellQuery.parse("db.orders.find({a: 1}, null)"));
+  }
+
+  @Test
+  public void aggregateOptionsThatDriverCannotApply() {
+    assertNotNull(ShellQuery.parse("db.orders.aggregate([], {maxTimeMS: 1000, comment: 'report', hint: {a: 1}})"));
+    assertNull(ShellQuery.parse("db.orders.aggregate([], {hint: 'a_1'})"));
+    assertNull(ShellQuery.parse("db.orders.aggregate([], {collation: {locale: 'fr'}})"));
+    assertNull(ShellQuery.parse("db.orders.aggregate([], {readConcern: {level: 'majority'}})"));
+  }
+
+  @Test
+  public void maxRows() {
+    ShellQuery aggregate = ShellQuery.parse("db.orders.aggregate([{$match: {a: 1}}])");
+    assertNotNull(aggregate);
+    ShellQuery limited = aggregate.withMaxRows(100);
+    assertEquals(new Document("$limit", 100), limited.pipeline.get(1));
+    assertEquals(1, aggregate.pipeline.size());
+    assertSame(aggregate, aggregate.withMaxRows(0));
+
+    ShellQuery find = ShellQuery.parse("db.orders.find({}).limit(500)");
+    assertNotNull(find);
+    assertEquals(100, find.withMaxRows(100).limit);
+    assertSame(find, find.withMaxRows(1000));
+    ShellQuery unlimited = ShellQuery.parse("db.orders.find()");
+    assertNotNull(unlimited);
+    assertEquals(100, unlimited.withMaxRows(100).limit);
+  }
+
+  @Test
+  public void toShell() {
+    String findText = "db.getCollection('my orders').find({_id: ObjectId(\"5f1a2b3c4d5e6f7a8b9c0d1e\")}, {name: 1}).sort({date: -1}).skip(5).limit(500);";
+    ShellQuery find = ShellQuery.parse(findText);
+    assertNotNull(find);
+    assertEquals("db.getCollection('my orders').find({_id: ObjectId(\"5f1a2b3c4d5e6f7a8b9c0d1e\")}, {name: 1}).sort({date: -1}).skip(5).limit(500).limit(10)",
+                 find.toShell(10));
+    assertSame(findText, find.toShell(1000));
+    assertSame(findText, find.toShell(0));
+
+    ShellQuery aggregate = ShellQuery.parse("db.orders.aggregate([{$match: {a: 1}} ], {allowDiskUse: true})");
+    assertNotNull(aggregate);
+    assertEquals("db.orders.aggregate([{$match: {a: 1}}, {$limit: 3} ], {allowDiskUse: true})", aggregate.toShell(3));
+    ShellQuery empty = ShellQuery.parse("db.orders.aggregate([])");
+    assertNotNull(empty);
+    assertEquals("db.orders.aggregate([{$limit: 3}])", empty.toShell(3));
+  }
+
+  @Test
+  public void toShellKeepsValuesAsWritten() {
+    String filter = "{name: /^a\\/b.*$/i, code: {$regex: \"x/\\\\d+\", $options: \"m\"}, count: NumberLong(\"9007199254740993\"), " +
+                    "price: NumberDecimal(\"12.30\"), date: ISODate(\"2020-01-01T10:20:30.456Z\"), old: ISODate(\"1950-06-01T00:00:00Z\"), " +
+                    "data: BinData(4, \"AAECAwQFBgcICQoLDA0ODw==\")}";
+    ShellQuery find = ShellQuery.parse("db.orders.find(" + filter + ")");
+    assertNotNull(find);
+    String limitedFind = find.toShell(10);
+    assertEquals("db.orders.find(" + filter + ").limit(10)", limitedFind);
+    ShellQuery parsed = ShellQuery.parse(limitedFind);
+    assertNotNull(parsed);
+    assertEquals(find.filter.toBsonDocument(), parsed.filter.toBsonDocument());
+    assertEquals(10, parsed.limit);
+
+    ShellQuery aggregate = ShellQuery.parse("db.orders.aggregate([{$match: " + filter + "}])");
+    assertNotNull(aggregate);
+    ShellQuery parsedAggregate = ShellQuery.parse(aggregate.toShell(3));
+    assertNotNull(parsedAggregate);
+    assertEquals(aggregate.withMaxRows(3).pipeline, parsedAggregate.pipeline);
+  }
+
+  @Test
+  public void notJson() {
+    assertNull(ShellQuery.parse("db.orders.find({a: x})"));
+    assertNull(ShellQuery.parse("db.orders.find().forEach(printjson)"));
+    assertNull(ShellQuery.parse("db.orders.insertOne({a: 1})"));
+    assertNull(ShellQuery.parse("db.orders.aggregate([{$out: 'b'}])"));
+    assertNotNull(ShellQuery.parse("db.orders.find()"));
+    assertEquals(Collections.emptyList(), ShellQuery.parse("db.orders.aggregate([])").pipeline);
+  }
+
+  @Test
+  public void transferStatement() throws SQLException {
+    assertNotNull(TransferStatement.parse("export db.orders.find({a: 'to'}) to '/tmp/orders.csv'"));
+    assertNotNull(TransferStatement.parse("EXPORT db.orders.find() TO \"orders.out\" AS ndjson;"));
+    assertNotNull(TransferStatement.parse("import '/tmp/orders.csv' into db.orders"));
+    assertNotNull(TransferStatement.parse("import \"orders.txt\" into orders as csv;"));
+    assertNull(TransferStatement.parse("db.orders.find()"));
+    assertEquals(TransferFormat.CSV, TransferFormat.fromFileName("a.CSV"));
+    assertEquals(TransferFormat.NDJSON, TransferFormat.parse("jsonl"));
+  }
+
+  @Test(expected = SQLException.class)
+  public void unknownFormat() throws SQLException {
+    TransferStatement.parse("export db.orders.find() to 'orders.xml' as xml");
+  }
+}
@@ -0,0 +1,33 @@
+package com.dbschema.mongo;
+
+import org.junit.Test;
+
+import static com.dbschema.mongo.StatementText.canonical;
+import static com.dbschema.mongo.StatementText.normalize;
+import static org.junit.Assert.assertEquals;
+
+public class StatementTextTest {
+  @Test
+  public void normalizeLiterals() {
+    assertEquals("db.users.find({name: ?, age: {$gt: ?}})", normalize("db.users.find({name: 'John', age: {$gt: 18}})"));
+    assertEquals("db.users.find({\"name\": ?})", normalize("db.users.find({\"name\": \"it's\"})"));
+    assertEquals("db.orders.find({status: {$in: [?]}}).limit(?)", normalize("db.orders.find({status: {$in: ['a', 'b', \"c\"]}}).limit(10)"));
+  }
+
+  @Test
+  public void normalizeKeepsIdentifiers() {
+    assertEquals("db.collection1.find({field2: ?})", normalize("db.collection1.find({field2: -1.5e3})"));
+    assertEquals("db.getCollection(?).find()", normalize("db.getCollection('c1').find()"));
+  }
+
+  @Test
+  public void normalizeWhitespace() {
+    assertEquals("db.a.find({x: ?})", normalize("  db.a.find({x:\n\t 1});  "));
+  }
+
+  @Test
+  public void canonicalKeepsLiterals() {
+    assertEquals("db.a.find({x: 'a  b'})", canonical("db.a.find({x:   'a  b'});"));
+    assertEquals("db.a.aggregate([ {$match: {x: 1}} ])", canonical("db.a.aggregate([\n  {$match: {x: 1}}\n])"));
+  }
+}
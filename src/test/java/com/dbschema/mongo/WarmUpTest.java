@@ -0,0 +1,24 @@
+package com.dbschema.mongo;
+
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.util.EnumSet;
+
+import static com.dbschema.mongo.WarmUp.parseSteps;
+import static org.junit.Assert.assertEquals;
+
+public class WarmUpTest {
+  @Test
+  public void steps() throws SQLException {
+    assertEquals(EnumSet.noneOf(WarmUp.Step.class), parseSteps(null));
+    assertEquals(EnumSet.noneOf(WarmUp.Step.class), parseSteps(" "));
+    assertEquals(EnumSet.of(WarmUp.Step.POOL, WarmUp.Step.SCHEMA), parseSteps("schema, Pool,"));
+    assertEquals(EnumSet.allOf(WarmUp.Step.class), parseSteps("shell,all"));
+  }
+
+  @Test(expected = SQLException.class)
+  public void unknownStep() throws SQLException {
+    parseSteps("pool,indexes");
+  }
+}
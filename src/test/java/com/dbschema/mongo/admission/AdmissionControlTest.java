@@ -0,0 +1,205 @@
+package com.dbschema.mongo.admission;
+
+import com.dbschema.mongo.resultSet.ResultSetIterator;
+import com.mongodb.MongoSocketReadException;
+import com.mongodb.MongoTimeoutException;
+import com.mongodb.MongoWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.WriteError;
+import org.bson.BsonDocument;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.SQLTransientException;
+import java.util.Iterator;
+
+import static org.junit.Assert.*;
+
+public class AdmissionControlTest {
+  @Test
+  public void limiterBacksOffAndRecovers() {
+    AimdLimiter limiter = new AimdLimiter(8);
+    for (int i = 0; i < 8; i++) {
+      assertTrue(limiter.tryAcquire());
+    }
+    assertFalse(limiter.tryAcquire());
+    limiter.release(true);
+    assertEquals(6, limiter.getLimit());
+    assertFalse(limiter.tryAcquire()); // 7 in flight
+    for (int i = 0; i < 7; i++) {
+      limiter.release(false);
+    }
+    assertEquals(0, limiter.getInFlight());
+    for (int round = 0; round < 20; round++) {
+      int limit = limiter.getLimit();
+      for (int i = 0; i < limit; i++) {
+        assertTrue(limiter.tryAcquire());
+      }
+      for (int i = 0; i < limit; i++) {
+        limiter.release(false);
+      }
+    }
+    assertEquals(8, limiter.getLimit());
+  }
+
+  @Test
+  public void breakerOpensAndCloses() {
+    CircuitBreaker breaker = new CircuitBreaker(50);
+    for (int i = 0; i < CircuitBreaker.MIN_CALLS - 1; i++) {
+      assertTrue(breaker.tryAcquire());
+      assertFalse(breaker.record(true));
+    }
+    assertTrue(breaker.record(true));
+    assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    assertFalse(breaker.tryAcquire());
+
+    breaker.probeSucceeded();
+    assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+    for (int i = 0; i < CircuitBreaker.HALF_OPEN_CALLS; i++) {
+      assertTrue(breaker.tryAcquire());
+    }
+    assertFalse(breaker.tryAcquire());
+    assertTrue(breaker.record(true));
+    assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+    breaker.probeSucceeded();
+    for (int i = 0; i < CircuitBreaker.HALF_OPEN_SUCCESSES; i++) {
+      assertTrue(breaker.tryAcquire());
+      breaker.record(false);
+    }
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    // window is cleared when the breaker closes
+    assertFalse(breaker.record(true));
+  }
+
+  @Test
+  public void breakerKeepsClosedBelowThreshold() {
+    CircuitBreaker breaker = new CircuitBreaker(50);
+    for (int i = 0; i < 100; i++) {
+      assertFalse(breaker.record(i % 3 == 0));
+    }
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+  }
+
+  @Test
+  public void clusterFailures() {
+    assertTrue(AdmissionControl.isClusterFailure(new SQLException(new MongoTimeoutException("timeout"))));
+    assertTrue(AdmissionControl.isClusterFailure(new MongoSocketReadException("reset", new ServerAddress())));
+    assertFalse(AdmissionControl.isClusterFailure(new SQLException("syntax")));
+    assertFalse(AdmissionControl.isClusterFailure(null));
+    assertFalse(AdmissionControl.isClusterFailure(
+        new MongoWriteException(new WriteError(11000, "duplicate key", new BsonDocument()), new ServerAddress())));
+  }
+
+  @Test
+  public void rejectsAboveLimit() throws SQLException {
+    AdmissionControl control = new AdmissionControl(1, 0, -1, 1000);
+    AdmissionControl.Ticket ticket = control.acquire(null);
+    try {
+      control.acquire(null);
+      fail();
+    }
+    catch (SQLTransientException expected) {
+    }
+    ticket.complete(null);
+    ticket.complete(null);
+    control.acquire(null).complete(null);
+    assertEquals(1, control.getRejectedCount());
+  }
+
+  @Test
+  public void breakerRejectDoesNotChangeLimit() throws SQLException {
+    AdmissionControl control = new AdmissionControl(4, 50, -1, 60_000);
+    for (int i = 0; i < CircuitBreaker.MIN_CALLS; i++) {
+      control.acquire(null).complete(new MongoTimeoutException("timeout"));
+    }
+    int limit = control.getLimit();
+    for (int i = 0; i < 100; i++) {
+      try {
+        control.acquire(null);
+        fail();
+      }
+      catch (SQLTransientException expected) {
+      }
+    }
+    assertEquals(limit, control.getLimit());
+  }
+
+  @Test
+  public void sharedBySettings() {
+    AdmissionControl control = AdmissionControl.retain("user@localhost", 4, 50, -1, 1000);
+    assertSame(control, AdmissionControl.retain("user@localhost", 4, 50, -1, 1000));
+    AdmissionControl other = AdmissionControl.retain("user@localhost", 8, 50, -1, 1000);
+    assertNotSame(control, other);
+    assertEquals(8, other.getLimit());
+    other.release();
+    control.release();
+    control.release();
+    assertNotSame(control, AdmissionControl.retain("user@localhost", 4, 50, -1, 1000));
+  }
+
+  @Test
+  public void abandonedTicketExpires() throws Exception {
+    AdmissionControl control = new AdmissionControl(null, 1, 0, -1, 1000, 50);
+    control.acquire(null);
+    try {
+      control.acquire(null);
+      fail();
+    }
+    catch (SQLTransientException expected) {
+    }
+    Thread.sleep(200);
+    AdmissionControl.Ticket ticket = control.acquire(null);
+    // expiry does not count as a failure
+    assertEquals(1, control.getLimit());
+    ticket.complete(null);
+  }
+
+  @Test
+  public void expiredTrialLetsAnotherThrough() {
+    CircuitBreaker breaker = new CircuitBreaker(50);
+    for (int i = 0; i < CircuitBreaker.MIN_CALLS; i++) {
+      breaker.record(true);
+    }
+    breaker.probeSucceeded();
+    for (int i = 0; i < CircuitBreaker.HALF_OPEN_CALLS; i++) {
+      assertTrue(breaker.tryAcquire());
+    }
+    assertFalse(breaker.tryAcquire());
+    breaker.cancelTrial();
+    assertTrue(breaker.tryAcquire());
+  }
+
+  @Test
+  public void readErrorIsRecorded() throws SQLException {
+    AdmissionControl control = new AdmissionControl(0, 50, -1, 60_000);
+    for (int i = 0; i < CircuitBreaker.MIN_CALLS; i++) {
+      AdmissionControl.Ticket ticket = control.acquire(null);
+      ResultSetIterator resultSet = new ResultSetIterator(new Iterator<Object>() {
+        @Override
+        public boolean hasNext() {
+          throw new MongoSocketReadException("reset", new ServerAddress());
+        }
+
+        @Override
+        public Object next() {
+          throw new UnsupportedOperationException();
+        }
+      });
+      resultSet.addCompletionListener((rowCount, fetchNanos, error) -> ticket.complete(error, fetchNanos));
+      try {
+        resultSet.next();
+        fail();
+      }
+      catch (MongoSocketReadException expected) {
+      }
+    }
+    try {
+      control.acquire(null);
+      fail();
+    }
+    catch (SQLTransientConnectionException expected) {
+    }
+  }
+}
@@ -0,0 +1,125 @@
+package com.dbschema.mongo.batch;
+
+import com.mongodb.client.MongoCursor;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonInt64;
+import org.bson.BsonString;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class AdaptiveBatchCursorTest {
+  private static final long CURSOR_ID = 42;
+  private final List<Document> commands = new ArrayList<>();
+  private int position = 0;
+
+  @Test
+  public void getMoreAsksForPickedBatchSize() {
+    MongoCursor<Document> cursor = open(new Document("find", "c").append("filter", new Document()));
+    List<Object> ids = new ArrayList<>();
+    while (cursor.hasNext()) {
+      ids.add(cursor.next().get("_id"));
+    }
+    assertEquals(100, ids.size());
+    assertEquals(99, ids.get(99));
+    // 16 + 32 + 64 documents from one cursor, the last batch is not full
+    assertEquals(Arrays.asList(16, 32, 64), batchSizes());
+    assertEquals(Arrays.asList("find", "getMore", "getMore"), commandNames());
+    assertEquals(CURSOR_ID, commands.get(1).get("getMore"));
+    assertEquals("c", commands.get(1).get("collection"));
+    cursor.close();
+    assertEquals(3, commands.size());
+  }
+
+  @Test
+  public void aggregateGetsBatchSizeInCursorOption() {
+    MongoCursor<Document> cursor = open(new Document("aggregate", "c").append("pipeline", new ArrayList<>()));
+    cursor.next();
+    assertEquals(new Document("batchSize", 16), commands.get(0).get("cursor"));
+    cursor.close();
+  }
+
+  @Test
+  public void closeKillsCursor() {
+    MongoCursor<Document> cursor = open(new Document("find", "c"));
+    for (int i = 0; i < 16; i++) {
+      assertEquals(i, cursor.tryNext().get("_id"));
+    }
+    assertEquals(16, cursor.tryNext().get("_id"));
+    cursor.close();
+    cursor.close();
+    assertEquals(Arrays.asList("find", "getMore", "killCursors"), commandNames());
+    assertEquals("c", commands.get(2).get("killCursors"));
+    assertEquals(Arrays.asList(CURSOR_ID), commands.get(2).get("cursors"));
+    assertFalse(cursor.hasNext());
+  }
+
+  @Test
+  public void bytes() {
+    RawBsonDocument raw = RawBsonDocument.parse("{\"a\": 1}");
+    assertEquals(raw.getByteBuffer().remaining(), AdaptiveBatchCursor.bytes(raw));
+    assertEquals(0, AdaptiveBatchCursor.bytes(new BsonDocument("a", new BsonInt32(1))));
+  }
+
+  private MongoCursor<Document> open(Document command) {
+    return new AdaptiveBatchCursor<>(command, this::reply, new DocumentCodec(), new DoublingSizer());
+  }
+
+  /**
+   * Cursor over documents with {@code _id} from 0 to 99
+   */
+  private BsonDocument reply(Document command) {
+    commands.add(command);
+    if (command.containsKey("killCursors")) return new BsonDocument("ok", new BsonInt32(1));
+    boolean first = !command.containsKey("getMore");
+    Object batchSize = first && command.containsKey("aggregate") ? command.get("cursor", Document.class).get("batchSize") : command.get("batchSize");
+    BsonArray batch = new BsonArray();
+    while (position < 100 && batch.size() < (Integer) batchSize) {
+      batch.add(new BsonDocument("_id", new BsonInt32(position++)));
+    }
+    BsonDocument cursor = new BsonDocument("id", new BsonInt64(position < 100 ? CURSOR_ID : 0))
+        .append("ns", new BsonString("db.c"))
+        .append(first ? "firstBatch" : "nextBatch", batch);
+    return new BsonDocument("cursor", cursor).append("ok", new BsonInt32(1));
+  }
+
+  private List<Object> batchSizes() {
+    List<Object> sizes = new ArrayList<>();
+    for (Document command : commands) {
+      sizes.add(command.get("batchSize"));
+    }
+    return sizes;
+  }
+
+  private List<String> commandNames() {
+    List<String> names = new ArrayList<>();
+    for (Document command : commands) {
+      names.add(command.keySet().iterator().next());
+    }
+    return names;
+  }
+
+  private static final class DoublingSizer extends BatchSizer {
+    private int size = BatchSizer.INITIAL_BATCH_SIZE;
+
+    @Override
+    int getBatchSize() {
+      return size;
+    }
+
+    @Override
+    int next(int documents, long bytes, long fetchNanos, long consumeNanos) {
+      size *= 2;
+      return size;
+    }
+  }
+}
@@ -0,0 +1,46 @@
+package com.dbschema.mongo.batch;
+
+import org.junit.Test;
+
+import static com.dbschema.mongo.batch.BatchSizer.INITIAL_BATCH_SIZE;
+import static com.dbschema.mongo.batch.BatchSizer.MAX_BATCH_BYTES;
+import static com.dbschema.mongo.batch.BatchSizer.MAX_BATCH_SIZE;
+import static org.junit.Assert.assertEquals;
+
+public class BatchSizerTest {
+  @Test
+  public void growsWhileConsumerWaitsForNetwork() {
+    BatchSizer sizer = new BatchSizer();
+    assertEquals(INITIAL_BATCH_SIZE, sizer.getBatchSize());
+    assertEquals(INITIAL_BATCH_SIZE * 2, sizer.next(INITIAL_BATCH_SIZE, INITIAL_BATCH_SIZE * 100L, 1_000_000, 10_000));
+    assertEquals(INITIAL_BATCH_SIZE * 4, sizer.next(INITIAL_BATCH_SIZE * 2, INITIAL_BATCH_SIZE * 200L, 1_000_000, 10_000));
+    for (int i = 0; i < 30; i++) {
+      sizer.next(sizer.getBatchSize(), sizer.getBatchSize() * 10L, 1_000_000, 10_000);
+    }
+    assertEquals(MAX_BATCH_SIZE, sizer.getBatchSize());
+  }
+
+  @Test
+  public void shrinksForSlowConsumer() {
+    BatchSizer sizer = new BatchSizer();
+    for (int i = 0; i < 5; i++) {
+      sizer.next(sizer.getBatchSize(), 0, 1_000_000, 10_000);
+    }
+    assertEquals(INITIAL_BATCH_SIZE * 32, sizer.getBatchSize());
+    assertEquals(INITIAL_BATCH_SIZE * 16, sizer.next(INITIAL_BATCH_SIZE * 32, 0, 1_000_000, 100_000_000));
+    assertEquals(INITIAL_BATCH_SIZE * 16, sizer.next(INITIAL_BATCH_SIZE * 16, 0, 1_000_000, 2_000_000));
+    for (int i = 0; i < 10; i++) {
+      sizer.next(sizer.getBatchSize(), 0, 1_000_000, 100_000_000);
+    }
+    assertEquals(INITIAL_BATCH_SIZE, sizer.getBatchSize());
+  }
+
+  @Test
+  public void largeDocumentsComeInSmallBatches() {
+    BatchSizer sizer = new BatchSizer();
+    long documentBytes = 4 * 1024 * 1024;
+    assertEquals(MAX_BATCH_BYTES / documentBytes, sizer.next(INITIAL_BATCH_SIZE, INITIAL_BATCH_SIZE * documentBytes, 1_000_000, 10_000));
+    sizer.next(2, 2 * 16 * 1024 * 1024L, 1_000_000, 10_000);
+    assertEquals(1, sizer.getBatchSize());
+  }
+}
@@ -0,0 +1,42 @@
+package com.dbschema.mongo.diagnostics;
+
+import org.bson.Document;
+import org.junit.Test;
+
+import static com.dbschema.mongo.diagnostics.SlowStatementLog.toExplainCommand;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class SlowStatementLogTest {
+  @Test
+  public void explainFind() {
+    Document command = toExplainCommand("db.orders.find({status: 'A'}, {total: 1}).sort({total: -1}).limit(-5)");
+    assertEquals(Document.parse("{explain: {find: 'orders', filter: {status: 'A'}, projection: {total: 1}, sort: {total: -1}, " +
+        "limit: 5, singleBatch: true}, verbosity: 'queryPlanner'}"), command);
+  }
+
+  @Test
+  public void explainAggregate() {
+    Document command = toExplainCommand("db.getCollection('orders').aggregate([{$match: {status: 'A'}}], {allowDiskUse: true})");
+    assertEquals(Document.parse("{explain: {aggregate: 'orders', pipeline: [{$match: {status: 'A'}}], allowDiskUse: true, cursor: {}}, " +
+        "verbosity: 'queryPlanner'}"), command);
+  }
+
+  @Test
+  public void rejectWrites() {
+    assertNull(toExplainCommand("db.orders.find().forEach(d => db.archive.insertOne(d))"));
+    assertNull(toExplainCommand("db.orders.find({}).map(d => db.orders.deleteOne({_id: d._id}))"));
+    assertNull(toExplainCommand("db.orders.find().toArray().forEach(d => db.orders.remove(d))"));
+    assertNull(toExplainCommand("db.orders.aggregate([{$match: {}}, {$out: 'archive'}])"));
+    assertNull(toExplainCommand("db.orders.aggregate([{$merge: {into: 'archive'}}])"));
+    assertNull(toExplainCommand("db.orders.deleteMany({})"));
+    assertNull(toExplainCommand("db.orders.find(); db.orders.drop()"));
+  }
+
+  @Test
+  public void rejectOtherStatements() {
+    assertNull(toExplainCommand("db.orders.find().explain()"));
+    assertNull(toExplainCommand("db.orders.find().count()"));
+    assertNull(toExplainCommand("show collections"));
+  }
+}
@@ -0,0 +1,55 @@
+package com.dbschema.mongo.discovery;
+
+import com.mongodb.ServerAddress;
+import com.mongodb.connection.ClusterType;
+import com.mongodb.connection.ServerConnectionState;
+import com.mongodb.connection.ServerDescription;
+import com.mongodb.connection.ServerType;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ServerCapabilitiesTest {
+  @Test
+  public void version() {
+    ServerCapabilities capabilities = new ServerCapabilities("4.4.3", 9, ClusterType.REPLICA_SET, "wiredTiger");
+    assertEquals(4, capabilities.getMajorVersion());
+    assertEquals(4, capabilities.getMinorVersion());
+    ServerCapabilities rc = new ServerCapabilities("5.0-rc1", 13, ClusterType.STANDALONE, null);
+    assertEquals(5, rc.getMajorVersion());
+    assertEquals(0, rc.getMinorVersion());
+    assertEquals(0, new ServerCapabilities("UNKNOWN", 0, ClusterType.UNKNOWN, null).getMajorVersion());
+  }
+
+  @Test
+  public void features() {
+    ServerCapabilities replicaSet = new ServerCapabilities("4.4.3", 9, ClusterType.REPLICA_SET, "wiredTiger");
+    assertTrue(replicaSet.supportsSample());
+    assertTrue(replicaSet.supportsUnionWith());
+    assertFalse(replicaSet.supportsSetWindowFields());
+    assertTrue(replicaSet.supportsTransactions());
+    assertFalse(replicaSet.supportsServerHedgedReads());
+
+    ServerCapabilities sharded = new ServerCapabilities("4.0.1", 7, ClusterType.SHARDED, null);
+    assertFalse(sharded.supportsTransactions());
+    assertFalse(sharded.supportsUnionWith());
+    assertFalse(new ServerCapabilities("5.0.0", 13, ClusterType.STANDALONE, null).supportsTransactions());
+  }
+
+  @Test
+  public void lowestWireVersionOfConnectedServers() {
+    assertEquals(-1, ServerCapabilities.minWireVersion(Collections.emptyList()));
+    assertEquals(8, ServerCapabilities.minWireVersion(Arrays.asList(server("a:27017", 9), server("b:27017", 8),
+        ServerDescription.builder().address(new ServerAddress("c:27017")).state(ServerConnectionState.CONNECTING).build())));
+  }
+
+  private static ServerDescription server(String address, int wireVersion) {
+    return ServerDescription.builder().address(new ServerAddress(address)).state(ServerConnectionState.CONNECTED).ok(true)
+        .type(ServerType.REPLICA_SET_SECONDARY).maxWireVersion(wireVersion).build();
+  }
+}
@@ -0,0 +1,80 @@
+package com.dbschema.mongo.discovery;
+
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.ServerAddress;
+import com.mongodb.connection.ClusterConnectionMode;
+import com.mongodb.connection.ClusterDescription;
+import com.mongodb.connection.ClusterId;
+import com.mongodb.connection.ClusterSettings;
+import com.mongodb.connection.ClusterType;
+import com.mongodb.connection.ServerConnectionState;
+import com.mongodb.connection.ServerDescription;
+import com.mongodb.connection.ServerType;
+import com.mongodb.event.ClusterDescriptionChangedEvent;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TopologySnapshotsTest {
+  @Test
+  public void seedWithKnownMembers() {
+    record("k1", primary());
+    ClusterSettings settings = seed("k1", "mongodb://a:27017/?replicaSet=rs0");
+    assertEquals(Arrays.asList(new ServerAddress("a:27017"), new ServerAddress("b:27017"), new ServerAddress("c:27017")), settings.getHosts());
+    assertEquals(ClusterConnectionMode.MULTIPLE, settings.getMode());
+    assertEquals("rs0", settings.getRequiredReplicaSetName());
+    settings = seed("k1", "mongodb://a:27017,b:27017/");
+    assertEquals(3, settings.getHosts().size());
+    assertEquals(ClusterConnectionMode.MULTIPLE, settings.getMode());
+    assertNull(settings.getRequiredReplicaSetName());
+  }
+
+  @Test
+  public void singleHostIsNotSeeded() {
+    record("k4", primary());
+    ClusterSettings settings = seed("k4", "mongodb://a:27017/");
+    assertEquals(Collections.singletonList(new ServerAddress("a:27017")), settings.getHosts());
+    assertEquals(ClusterConnectionMode.SINGLE, settings.getMode());
+    assertNull(settings.getRequiredReplicaSetName());
+  }
+
+  @Test
+  public void noPrimaryNoSnapshot() {
+    record("k2", ServerDescription.builder().address(new ServerAddress("a:27017")).state(ServerConnectionState.CONNECTING).build());
+    assertEquals(Collections.singletonList(new ServerAddress("a:27017")), seed("k2", "mongodb://a:27017/").getHosts());
+  }
+
+  @Test
+  public void directConnectionAndOtherSetAreNotSeeded() {
+    record("k3", primary());
+    assertEquals(Collections.singletonList(new ServerAddress("a:27017")),
+                 seed("k3", "mongodb://a:27017/?directConnection=true").getHosts());
+    assertEquals("rs1", seed("k3", "mongodb://a:27017/?replicaSet=rs1").getRequiredReplicaSetName());
+  }
+
+  private static ServerDescription primary() {
+    return ServerDescription.builder().address(new ServerAddress("a:27017")).state(ServerConnectionState.CONNECTED).ok(true)
+        .type(ServerType.REPLICA_SET_PRIMARY).setName("rs0").hosts(new HashSet<>(Arrays.asList("a:27017", "b:27017")))
+        .passives(Collections.singleton("c:27017")).build();
+  }
+
+  private static void record(String key, ServerDescription server) {
+    ClusterDescription description = new ClusterDescription(ClusterConnectionMode.MULTIPLE, ClusterType.REPLICA_SET,
+                                                            Collections.singletonList(server));
+    ClusterDescription previous = new ClusterDescription(ClusterConnectionMode.MULTIPLE, ClusterType.UNKNOWN, Collections.emptyList());
+    TopologySnapshots.recorder(key).clusterDescriptionChanged(new ClusterDescriptionChangedEvent(new ClusterId(), description, previous));
+  }
+
+  private static ClusterSettings seed(String key, String uri) {
+    ConnectionString connectionString = new ConnectionString(uri);
+    MongoClientSettings.Builder builder = MongoClientSettings.builder().applyConnectionString(connectionString);
+    TopologySnapshots.seed(key, connectionString, builder);
+    return builder.build().getClusterSettings();
+  }
+}
@@ -0,0 +1,132 @@
+package com.dbschema.mongo.hedge;
+
+import com.mongodb.MongoException;
+import com.mongodb.ReadPreference;
+import com.mongodb.Tag;
+import com.mongodb.TagSet;
+import com.mongodb.TaggableReadPreference;
+import com.mongodb.client.MongoCursor;
+import org.bson.Document;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class HedgedReadsTest {
+  @Test
+  public void percentile() {
+    LatencyWindow window = new LatencyWindow(100);
+    for (int i = 1; i < LatencyWindow.MIN_SAMPLES; i++) {
+      window.add(i);
+    }
+    assertEquals(-1, window.percentile(95));
+    for (int i = LatencyWindow.MIN_SAMPLES; i <= 100; i++) {
+      window.add(i);
+    }
+    assertEquals(95, window.percentile(95));
+    assertEquals(100, window.percentile(100));
+    // oldest samples are replaced
+    for (int i = 0; i < 100; i++) {
+      window.add(1000);
+    }
+    assertEquals(1000, window.percentile(1));
+  }
+
+  @Test
+  public void budget() {
+    HedgeBudget budget = new HedgeBudget(10);
+    int hedges = 0;
+    for (int i = 0; i < 1000; i++) {
+      budget.deposit();
+      if (budget.tryWithdraw()) hedges++;
+    }
+    assertTrue(hedges >= 99 && hedges <= 100);
+    assertFalse(new HedgeBudget(0).tryWithdraw());
+  }
+
+  @Test
+  public void hedgeKeepsTagsAndStaleness() {
+    TagSet tags = new TagSet(new Tag("dc", "east"));
+    ReadPreference preference = ReadPreference.primaryPreferred(Collections.singletonList(tags), 120, TimeUnit.SECONDS);
+    TaggableReadPreference hedge = (TaggableReadPreference) HedgedReads.hedgePreference(preference);
+    assertEquals("secondary", hedge.getName());
+    assertEquals(Collections.singletonList(tags), hedge.getTagSetList());
+    assertEquals(Long.valueOf(120), hedge.getMaxStaleness(TimeUnit.SECONDS));
+    assertTrue(hedge.getHedgeOptions().isEnabled());
+    assertNull(((TaggableReadPreference) HedgedReads.hedgePreference(ReadPreference.primaryPreferred())).getMaxStaleness(TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void hedgeSelectsAnotherMember() {
+    assertEquals(ReadPreference.primary(), HedgedReads.hedgePreference(ReadPreference.secondary()));
+    assertEquals(ReadPreference.primary(), HedgedReads.hedgePreference(ReadPreference.secondaryPreferred()));
+    // any member may serve the original request
+    assertNull(HedgedReads.hedgePreference(ReadPreference.nearest()));
+  }
+
+  @Test
+  public void failureWhileHedgePendingWaitsForHedge() throws Exception {
+    AtomicInteger wins = new AtomicInteger();
+    HedgedReads.Winner winner = new HedgedReads.Winner(wins::incrementAndGet);
+    try {
+      winner.get(TimeUnit.MILLISECONDS.toNanos(1));
+      fail();
+    }
+    catch (TimeoutException ignored) {
+    }
+    winner.addAttempt();
+    // the first attempt fails before the hedge is sent
+    winner.fail(new MongoException("not primary"));
+    assertFalse(winner.isDone());
+    MongoCursor<Document> cursor = cursor();
+    winner.offer(cursor, true);
+    assertSame(cursor, winner.get());
+    assertEquals(1, wins.get());
+  }
+
+  @Test
+  public void failsWhenHedgeIsNotSent() throws Exception {
+    HedgedReads.Winner winner = new HedgedReads.Winner(() -> {});
+    winner.addAttempt();
+    winner.fail(new MongoException("not primary"));
+    assertFalse(winner.isDone());
+    winner.cancelAttempt();
+    try {
+      winner.get();
+      fail();
+    }
+    catch (SQLException e) {
+      assertEquals("not primary", e.getMessage());
+    }
+  }
+
+  @Test
+  public void lateCursorIsClosed() {
+    HedgedReads.Winner winner = new HedgedReads.Winner(() -> {});
+    winner.offer(cursor(), false);
+    AtomicBoolean closed = new AtomicBoolean();
+    MongoCursor<Document> late = cursor(() -> closed.set(true));
+    winner.offer(late, true);
+    assertTrue(closed.get());
+  }
+
+  private static MongoCursor<Document> cursor() {
+    return cursor(() -> {});
+  }
+
+  @SuppressWarnings("unchecked")
+  private static MongoCursor<Document> cursor(@NotNull Runnable onClose) {
+    return (MongoCursor<Document>) Proxy.newProxyInstance(HedgedReadsTest.class.getClassLoader(), new Class<?>[]{MongoCursor.class}, (proxy, method, args) -> {
+      if (method.getName().equals("close")) onClose.run();
+      return null;
+    });
+  }
+}
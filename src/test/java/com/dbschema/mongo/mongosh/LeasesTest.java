@@ -0,0 +1,114 @@
+package com.dbschema.mongo.mongosh;
+
+import com.dbschema.mongo.SQLAlreadyClosedException;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.sql.SQLTransientException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class LeasesTest {
+  private final List<String> created = new ArrayList<>();
+  private final List<String> closed = new ArrayList<>();
+  private final Leases<String> leases = new Leases<>(2, readOnly -> {
+    String shell = (readOnly ? "ro" : "rw") + created.size();
+    created.add(shell);
+    return shell;
+  }, closed::add);
+
+  @Test
+  public void releasedShellIsReused() throws SQLException {
+    String shell = leases.acquire(false, 0);
+    leases.release(shell);
+    assertEquals(1, leases.getIdleCount());
+    assertEquals(shell, leases.acquire(false, 0));
+    assertEquals(1, created.size());
+  }
+
+  @Test
+  public void exhaustedPoolTimesOut() throws SQLException {
+    leases.acquire(false, 0);
+    leases.acquire(true, 0);
+    long start = System.nanoTime();
+    try {
+      leases.acquire(false, 50);
+      fail();
+    }
+    catch (SQLTransientException e) {
+      assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+    }
+  }
+
+  @Test
+  public void waiterGetsReleasedShell() throws Exception {
+    String first = leases.acquire(false, 0);
+    leases.acquire(false, 0);
+    CompletableFuture<String> waiter = CompletableFuture.supplyAsync(() -> {
+      try {
+        return leases.acquire(false, 10_000);
+      }
+      catch (SQLException e) {
+        throw new RuntimeException(e);
+      }
+    });
+    Thread.sleep(50);
+    assertFalse(waiter.isDone());
+    leases.release(first);
+    assertEquals(first, waiter.get(10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void idleShellOfOtherModeMakesRoom() throws SQLException {
+    String readWrite = leases.acquire(false, 0);
+    String other = leases.acquire(false, 0);
+    leases.release(readWrite);
+    String readOnly = leases.acquire(true, 0);
+    assertTrue(readOnly.startsWith("ro"));
+    assertEquals(1, closed.size());
+    assertEquals(readWrite, closed.get(0));
+    leases.release(other);
+    leases.release(readOnly);
+    assertEquals(2, leases.getIdleCount());
+  }
+
+  @Test
+  public void closeClosesIdleAndReturnedShells() throws SQLException {
+    String idle = leases.acquire(false, 0);
+    String leased = leases.acquire(true, 0);
+    leases.release(idle);
+    leases.close();
+    assertEquals(1, closed.size());
+    leases.release(leased);
+    assertEquals(2, closed.size());
+    try {
+      leases.acquire(false, 0);
+      fail();
+    }
+    catch (SQLAlreadyClosedException ignored) {
+    }
+  }
+
+  @Test
+  public void failedCreationReturnsPermit() throws SQLException {
+    Leases<String> failing = new Leases<>(1, readOnly -> {
+      throw new SQLException("cannot connect");
+    }, closed::add);
+    for (int i = 0; i < 2; i++) {
+      try {
+        failing.acquire(false, 0);
+        fail();
+      }
+      catch (SQLTransientException e) {
+        fail("permit was not returned");
+      }
+      catch (SQLException e) {
+        assertEquals("cannot connect", e.getMessage());
+      }
+    }
+  }
+}
@@ -0,0 +1,109 @@
+package com.dbschema.mongo.mongosh;
+
+import com.dbschema.mongo.MongoConnection;
+import com.dbschema.mongo.SQLAlreadyClosedException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.sql.SQLTransientException;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static com.dbschema.mongo.DriverPropertyInfoHelper.SERVER_SELECTION_TIMEOUT;
+import static org.junit.Assert.*;
+
+/**
+ * Client of the connection is not used, no server is needed
+ */
+public class MongoshScriptEngineTest {
+  private MongoConnection connection;
+  private MongoshScriptEngine engine;
+
+  @Before
+  public void setUp() throws SQLException {
+    Properties info = new Properties();
+    info.setProperty(SERVER_SELECTION_TIMEOUT, "200");
+    connection = new MongoConnection("mongodb://localhost:1/test", info, null, null, 10);
+    engine = new MongoshScriptEngine(connection);
+  }
+
+  @After
+  public void tearDown() throws SQLException {
+    engine.close();
+    if (!connection.isClosed()) connection.close();
+  }
+
+  @Test
+  public void statementWaitsForBusyShell() throws Exception {
+    CountDownLatch locked = new CountDownLatch(1);
+    CompletableFuture<Void> other = CompletableFuture.runAsync(() -> {
+      try {
+        engine.lock();
+        locked.countDown();
+        Thread.sleep(50);
+        engine.unlock();
+      }
+      catch (SQLException | InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+    });
+    assertTrue(locked.await(10, TimeUnit.SECONDS));
+    long start = System.nanoTime();
+    engine.lock();
+    engine.unlock();
+    assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(200));
+    other.get(10, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void busyShellTimesOut() throws Exception {
+    CountDownLatch locked = new CountDownLatch(1);
+    CountDownLatch done = new CountDownLatch(1);
+    CompletableFuture<Void> other = CompletableFuture.runAsync(() -> {
+      try {
+        engine.lock();
+        locked.countDown();
+        done.await();
+        engine.unlock();
+      }
+      catch (SQLException | InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+    });
+    assertTrue(locked.await(10, TimeUnit.SECONDS));
+    long start = System.nanoTime();
+    try {
+      engine.lock();
+      fail();
+    }
+    catch (SQLTransientException e) {
+      assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(200));
+      assertTrue(e.getMessage().contains("shell_pool_size"));
+    }
+    finally {
+      done.countDown();
+    }
+    other.get(10, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void closedConnectionHasNoService() throws SQLException {
+    connection.close();
+    try {
+      connection.getService();
+      fail();
+    }
+    catch (SQLAlreadyClosedException expected) {
+    }
+    try {
+      engine.lock();
+      fail();
+    }
+    catch (SQLAlreadyClosedException expected) {
+    }
+  }
+}
@@ -0,0 +1,84 @@
+package com.dbschema.mongo.pool;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class AdaptivePoolTest {
+  private static AdaptivePool.Window window(long meanWaitMicros, long commands, long meanLatencyMicros, long failures, int peakInUse) {
+    AdaptivePool.Window window = new AdaptivePool.Window();
+    window.waits = 10;
+    window.waitNanos = meanWaitMicros * 1000 * 10;
+    window.commands = commands;
+    window.latencyNanos = meanLatencyMicros * 1000 * commands;
+    window.failures = failures;
+    window.peakInUse = peakInUse;
+    return window;
+  }
+
+  @Test
+  public void growsOnWait() {
+    PoolDecision decision = AdaptivePool.decide(0, 4, 1, 10, window(5000, 100, 1000, 0, 4), 1_000_000);
+    assertNotNull(decision);
+    assertEquals(5, decision.newSize);
+    assertEquals("checkout wait", decision.reason);
+    assertNull(AdaptivePool.decide(0, 10, 1, 10, window(5000, 100, 1000, 0, 10), 1_000_000));
+  }
+
+  @Test
+  public void shrinksOnOverload() {
+    PoolDecision decision = AdaptivePool.decide(0, 8, 1, 10, window(5000, 100, 3000, 0, 8), 1_000_000);
+    assertNotNull(decision);
+    assertEquals(6, decision.newSize);
+    assertEquals("server latency", decision.reason);
+    decision = AdaptivePool.decide(0, 8, 1, 10, window(5000, 100, 1000, 10, 8), 1_000_000);
+    assertNotNull(decision);
+    assertEquals("errors", decision.reason);
+    assertNull(AdaptivePool.decide(0, 2, 2, 10, window(5000, 100, 1000, 10, 2), 1_000_000));
+  }
+
+  @Test
+  public void shrinksWhenIdle() {
+    PoolDecision decision = AdaptivePool.decide(0, 8, 1, 10, window(0, 10, 1000, 0, 2), 1_000_000);
+    assertNotNull(decision);
+    assertEquals(7, decision.newSize);
+    assertNull(AdaptivePool.decide(0, 8, 1, 10, window(0, 10, 1000, 0, 5), 1_000_000));
+  }
+
+  @Test
+  public void gate() throws InterruptedException {
+    AdaptivePool pool = new AdaptivePool(1, 2);
+    try {
+      assertEquals(2, pool.getSize());
+      AdaptivePool.Slot first = pool.acquire(0);
+      assertNotNull(first);
+      assertNotNull(pool.acquire(0));
+      assertNull(pool.acquire(TimeUnit.MILLISECONDS.toNanos(10)));
+      first.release();
+      // second release of the same slot does not free another one
+      first.release();
+      assertNotNull(pool.acquire(0));
+      assertNull(pool.acquire(0));
+    }
+    finally {
+      pool.close();
+    }
+  }
+
+  @Test
+  public void sharedBySettings() {
+    AdaptivePool pool = AdaptivePool.retain("user@mongodb://host", 1, 4);
+    AdaptivePool other = AdaptivePool.retain("user@mongodb://host", 1, 8);
+    try {
+      assertSame(pool, AdaptivePool.retain("user@mongodb://host", 1, 4));
+      pool.close();
+      assertNotSame(pool, other);
+    }
+    finally {
+      pool.close();
+      other.close();
+    }
+  }
+}
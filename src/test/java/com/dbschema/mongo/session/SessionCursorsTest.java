@@ -0,0 +1,138 @@
+package com.dbschema.mongo.session;
+
+import com.mongodb.ServerAddress;
+import com.mongodb.ServerCursor;
+import com.mongodb.client.ClientSession;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.session.ServerSession;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class SessionCursorsTest {
+  private final AtomicInteger openSessions = new AtomicInteger();
+  private final AtomicInteger openCursors = new AtomicInteger();
+  private long now = 0;
+
+  @Test
+  public void exhaustedCursorReturnsSession() {
+    SessionCursors cursors = new SessionCursors(client());
+    SessionCursor<Integer> cursor = cursors.open(session -> cursor(1, 2));
+    assertEquals(1, cursors.getOpenCount());
+    assertEquals(Integer.valueOf(1), cursor.next());
+    assertEquals(Integer.valueOf(2), cursor.next());
+    assertFalse(cursor.hasNext());
+    assertEquals(0, cursors.getOpenCount());
+    assertEquals(0, openSessions.get());
+    assertEquals(0, openCursors.get());
+    cursors.close();
+  }
+
+  @Test
+  public void closeOfConnectionClosesCursors() {
+    SessionCursors cursors = new SessionCursors(client());
+    cursors.open(session -> cursor(1, 2));
+    SessionCursor<Integer> cursor = cursors.open(session -> cursor(3));
+    cursor.close();
+    cursor.close();
+    assertEquals(1, openSessions.get());
+    cursors.close();
+    assertEquals(0, openSessions.get());
+    assertEquals(0, openCursors.get());
+  }
+
+  @Test
+  public void abandonedCursorIsNotRefreshed() {
+    SessionCursors cursors = new SessionCursors(client(), () -> now);
+    SessionCursor<Integer> abandoned = cursors.open(session -> cursor(1, 2));
+    SessionCursor<Integer> read = cursors.open(session -> cursor(3, 4));
+    assertEquals(2, cursors.sessionsToRefresh().size());
+    now += TimeUnit.MINUTES.toNanos(SessionCursors.MAX_IDLE_MINUTES) / 2;
+    read.next();
+    now += TimeUnit.MINUTES.toNanos(SessionCursors.MAX_IDLE_MINUTES) / 2 + 1;
+    assertEquals(Collections.singletonList(read.getSessionIdentifier()), cursors.sessionsToRefresh());
+    assertEquals(2, cursors.getOpenCount());
+    cursors.close();
+    assertFalse(abandoned.hasNext());
+    assertEquals(0, openSessions.get());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void sessionIsClosedWhenCursorFailsToOpen() {
+    SessionCursors cursors = new SessionCursors(client());
+    try {
+      cursors.open(session -> {
+        throw new IllegalStateException();
+      });
+    }
+    finally {
+      assertEquals(0, openSessions.get());
+    }
+  }
+
+  private MongoClient client() {
+    return (MongoClient) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{MongoClient.class}, (proxy, method, args) -> {
+      if (!method.getName().equals("startSession")) throw new UnsupportedOperationException(method.getName());
+      openSessions.incrementAndGet();
+      return session();
+    });
+  }
+
+  private ClientSession session() {
+    ServerSession serverSession = (ServerSession) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{ServerSession.class},
+        (proxy, method, args) -> new BsonDocument("id", new BsonInt32(openSessions.get())));
+    return (ClientSession) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{ClientSession.class}, (proxy, method, args) -> {
+      if (method.getName().equals("getServerSession")) return serverSession;
+      if (!method.getName().equals("close")) throw new UnsupportedOperationException(method.getName());
+      openSessions.decrementAndGet();
+      return null;
+    });
+  }
+
+  private MongoCursor<Integer> cursor(Integer... values) {
+    openCursors.incrementAndGet();
+    Iterator<Integer> iterator = Arrays.asList(values).iterator();
+    return new MongoCursor<Integer>() {
+      @Override
+      public void close() {
+        openCursors.decrementAndGet();
+      }
+
+      @Override
+      public boolean hasNext() {
+        return iterator.hasNext();
+      }
+
+      @Override
+      public Integer next() {
+        return iterator.next();
+      }
+
+      @Override
+      public Integer tryNext() {
+        return iterator.hasNext() ? iterator.next() : null;
+      }
+
+      @Override
+      public ServerCursor getServerCursor() {
+        return null;
+      }
+
+      @Override
+      public ServerAddress getServerAddress() {
+        return null;
+      }
+    };
+  }
+}
@@ -0,0 +1,235 @@
+package com.dbschema.mongo.sql;
+
+import com.dbschema.mongo.schema.MetaCollection;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLSyntaxErrorException;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class SqlCompilerTest {
+  private static MongoQuery compile(String sql) throws SQLException {
+    return SqlCompiler.compile(SqlParser.parse(sql), (database, collection) -> null);
+  }
+
+  private static MongoQuery compile(String sql, Map<String, CollectionStatistics> statistics) throws SQLException {
+    return SqlCompiler.compile(SqlParser.parse(sql), new SqlCompiler.SchemaProvider() {
+      @Override
+      public MetaCollection getCollection(String database, String collection) {
+        return null;
+      }
+
+      @Override
+      public CollectionStatistics getStatistics(String database, String collection) {
+        return statistics.get(collection);
+      }
+    });
+  }
+
+  @Test
+  public void dottedCollectionNames() throws SQLException {
+    MongoQuery query = compile("SELECT * FROM \"orders.archive\"");
+    assertNull(query.database);
+    assertEquals("orders.archive", query.collection);
+    query = compile("SELECT * FROM orders.archive");
+    assertEquals("orders", query.database);
+    assertEquals("archive", query.collection);
+    query = compile("SELECT * FROM sales.`orders.archive` a");
+    assertEquals("sales", query.database);
+    assertEquals("orders.archive", query.collection);
+    query = compile("SELECT * FROM db.orders.archive");
+    assertNull(query.database);
+    assertEquals("orders.archive", query.collection);
+  }
+
+  @Test
+  public void find() throws SQLException {
+    MongoQuery query = compile("SELECT name, o.address.city AS city FROM orders o WHERE status = 'A' AND qty >= 10 AND qty < 20 " +
+                               "ORDER BY name DESC LIMIT 5 OFFSET 10");
+    assertFalse(query.isAggregate());
+    assertEquals("db.orders.find({\"status\": \"A\", \"qty\": {\"$gte\": 10, \"$lt\": 20}}, " +
+                 "{\"name\": 1, \"address.city\": 1, \"_id\": 0}).sort({\"name\": -1}).skip(10).limit(5)", query.toString());
+    assertEquals(2, query.columns.size());
+    assertEquals("city", query.columns.get(1).label);
+    assertEquals("address.city", query.columns.get(1).path);
+  }
+
+  @Test
+  public void selectAll() throws SQLException {
+    MongoQuery query = compile("select * from db.orders where _id = '5f1a2b3c4d5e6f7a8b9c0d1e' or tags in ('a', 'b')");
+    assertEquals("db.orders.find({\"$or\": [{\"_id\": {\"$oid\": \"5f1a2b3c4d5e6f7a8b9c0d1e\"}}, {\"tags\": {\"$in\": [\"a\", \"b\"]}}]})",
+                 query.toString());
+    assertNull(query.database);
+  }
+
+  @Test
+  public void predicates() throws SQLException {
+    assertEquals("db.t.find({\"a\": {\"$gte\": 1, \"$lte\": 5}, \"b\": {\"$ne\": null}, \"c\": null})",
+                 compile("SELECT * FROM t WHERE a BETWEEN 1 AND 5 AND b IS NOT NULL AND c IS NULL").toString());
+    assertEquals("db.t.find({\"$nor\": [{\"a\": {\"$gt\": 3}}]})", compile("SELECT * FROM t WHERE NOT 3 < a").toString());
+    assertEquals("db.t.find({\"$and\": [{\"a\": 1}, {\"a\": 2}]})", compile("SELECT * FROM t WHERE a = 1 AND a = 2").toString());
+    assertEquals("db.t.find({\"$expr\": {\"$gt\": [\"$a\", \"$b\"]}})", compile("SELECT * FROM t WHERE a > b").toString());
+  }
+
+  @Test
+  public void like() {
+    assertEquals("^abc", SqlCompiler.likeToRegex("abc%"));
+    assertEquals("^a.c$", SqlCompiler.likeToRegex("a_c"));
+    assertEquals("x\\.y$", SqlCompiler.likeToRegex("%x.y"));
+  }
+
+  @Test
+  public void pipeline() throws SQLException {
+    MongoQuery query = compile("SELECT UPPER(name) AS n, qty * price total FROM orders WHERE status = 'A' ORDER BY status LIMIT 3");
+    assertTrue(query.isAggregate());
+    assertEquals("db.orders.aggregate([{\"$match\": {\"status\": \"A\"}}, {\"$sort\": {\"status\": 1}}, {\"$limit\": 3}, " +
+                 "{\"$project\": {\"_id\": 0, \"c0\": {\"$toUpper\": \"$name\"}, \"c1\": {\"$multiply\": [\"$qty\", \"$price\"]}}}], " +
+                 "{\"allowDiskUse\": true})", query.toString());
+    assertEquals("total", query.columns.get(1).label);
+    assertEquals("c1", query.columns.get(1).path);
+    assertEquals(Types.VARCHAR, query.columns.get(0).sqlType);
+  }
+
+  @Test
+  public void sortByComputedValue() throws SQLException {
+    MongoQuery query = compile("SELECT name, 1 AS one FROM t ORDER BY LENGTH(name), 1");
+    assertEquals("db.t.aggregate([{\"$project\": {\"_id\": 0, \"c0\": \"$name\", \"c1\": {\"$literal\": 1}, " +
+                 "\"s0\": {\"$strLenCP\": \"$name\"}}}, {\"$sort\": {\"s0\": 1, \"c0\": 1}}], {\"allowDiskUse\": true})", query.toString());
+    assertEquals(Types.INTEGER, query.columns.get(1).sqlType);
+  }
+
+  @Test
+  public void join() throws SQLException {
+    MongoQuery query = compile("SELECT o.total, c.name FROM orders o JOIN customers c ON o.customerId = c._id " +
+                               "WHERE o.status = 'A' AND c.country = 'DE' AND o.total > c.limit");
+    assertEquals("db.orders.aggregate([{\"$match\": {\"status\": \"A\"}}, " +
+                 "{\"$lookup\": {\"from\": \"customers\", \"let\": {\"v0\": \"$customerId\"}, \"pipeline\": [" +
+                 "{\"$match\": {\"country\": \"DE\", \"$expr\": {\"$eq\": [\"$$v0\", \"$_id\"]}}}, " +
+                 "{\"$project\": {\"name\": 1, \"country\": 1, \"limit\": 1, \"_id\": 1}}], \"as\": \"_j0\"}}, " +
+                 "{\"$unwind\": \"$_j0\"}, {\"$match\": {\"$expr\": {\"$gt\": [\"$total\", \"$_j0.limit\"]}}}, " +
+                 "{\"$project\": {\"_id\": 0, \"c0\": \"$total\", \"c1\": \"$_j0.name\"}}], {\"allowDiskUse\": true})",
+                 query.toString());
+    assertEquals("name", query.columns.get(1).label);
+  }
+
+  @Test
+  public void leftJoinKeepsFilterAfterLookup() throws SQLException {
+    MongoQuery query = compile("SELECT * FROM orders o LEFT JOIN customers c ON o.customerId = c._id WHERE c.country IS NULL");
+    assertEquals("db.orders.aggregate([{\"$lookup\": {\"from\": \"customers\", \"let\": {\"v0\": \"$customerId\"}, " +
+                 "\"pipeline\": [{\"$match\": {\"$expr\": {\"$eq\": [\"$$v0\", \"$_id\"]}}}], \"as\": \"_j0\"}}, " +
+                 "{\"$unwind\": {\"path\": \"$_j0\", \"preserveNullAndEmptyArrays\": true}}, " +
+                 "{\"$match\": {\"_j0.country\": null}}], {\"allowDiskUse\": true})", query.toString());
+    assertEquals(2, query.columns.size());
+    assertEquals("c._id", query.columns.get(1).label);
+    assertEquals("_j0._id", query.columns.get(1).path);
+  }
+
+  @Test
+  public void drivingSide() throws SQLException {
+    String sql = "SELECT o.total, c.name FROM orders o JOIN customers c ON o.customerId = c._id";
+    Map<String, CollectionStatistics> statistics = new HashMap<>();
+    statistics.put("orders", new CollectionStatistics(1000000, Collections.singleton("_id")));
+    statistics.put("customers", new CollectionStatistics(1000, Collections.singleton("_id")));
+    // only the customer key is indexed: orders drive and probe customers
+    assertEquals("orders", compile(sql, statistics).collection);
+
+    statistics.put("orders", new CollectionStatistics(1000000, new HashSet<>(Arrays.asList("_id", "customerId"))));
+    // both keys indexed: the smaller collection drives
+    MongoQuery query = compile(sql, statistics);
+    assertEquals("customers", query.collection);
+    assertTrue(query.toString().contains("{\"$lookup\": {\"from\": \"orders\", \"let\": {\"v0\": \"$_id\"}"));
+    assertTrue(query.toString().contains("\"c0\": \"$_j0.total\", \"c1\": \"$name\""));
+
+    statistics.put("orders", new CollectionStatistics(10, Collections.singleton("_id")));
+    assertEquals("orders", compile(sql, statistics).collection);
+    // left join always drives from the left side
+    assertEquals("orders", compile(sql.replace("JOIN", "LEFT JOIN"), statistics).collection);
+  }
+
+  @Test
+  public void groupBy() throws SQLException {
+    MongoQuery query = compile("SELECT status, COUNT(*) AS n, SUM(qty), AVG(price), COUNT(DISTINCT customer) FROM orders " +
+                               "WHERE qty > 0 GROUP BY status HAVING COUNT(*) > 10 ORDER BY n DESC LIMIT 5");
+    assertEquals("db.orders.aggregate([{\"$match\": {\"qty\": {\"$gt\": 0}}}, " +
+                 "{\"$group\": {\"_id\": {\"k0\": \"$status\"}, \"a0\": {\"$sum\": 1}, \"a1\": {\"$sum\": \"$qty\"}, " +
+                 "\"a2\": {\"$avg\": \"$price\"}, \"a3\": {\"$addToSet\": \"$customer\"}}}, " +
+                 "{\"$match\": {\"$expr\": {\"$gt\": [\"$a0\", 10]}}}, " +
+                 "{\"$project\": {\"_id\": 0, \"c0\": \"$_id.k0\", \"c1\": \"$a0\", \"c2\": \"$a1\", \"c3\": \"$a2\", " +
+                 "\"c4\": {\"$toLong\": {\"$size\": {\"$setDifference\": [\"$a3\", [null]]}}}}}, " +
+                 "{\"$sort\": {\"c1\": -1}}, {\"$limit\": 5}], {\"allowDiskUse\": true})", query.toString());
+    assertEquals(Types.BIGINT, query.columns.get(1).sqlType);
+    assertEquals(Types.DOUBLE, query.columns.get(3).sqlType);
+    assertEquals("COUNT(DISTINCT customer)", query.columns.get(4).label);
+  }
+
+  @Test
+  public void globalAggregateAndDistinct() throws SQLException {
+    assertEquals("db.t.aggregate([{\"$facet\": {\"g\": [{\"$group\": {\"_id\": null, \"a0\": {\"$max\": \"$a\"}, " +
+                 "\"a1\": {\"$sum\": {\"$cond\": [{\"$gt\": [\"$b\", null]}, 1, 0]}}}}]}}, " +
+                 "{\"$replaceRoot\": {\"newRoot\": {\"$ifNull\": [{\"$arrayElemAt\": [\"$g\", 0]}, {\"_id\": null, \"a0\": null, \"a1\": 0}]}}}, " +
+                 "{\"$project\": {\"_id\": 0, \"c0\": {\"$add\": [\"$a0\", 1]}, \"c1\": \"$a1\"}}], {\"allowDiskUse\": true})",
+                 compile("SELECT MAX(a) + 1, COUNT(b) FROM t").toString());
+    assertEquals("db.t.aggregate([{\"$group\": {\"_id\": {\"k0\": \"$a\", \"k1\": {\"$toUpper\": \"$b\"}}}}, " +
+                 "{\"$project\": {\"_id\": 0, \"c0\": \"$_id.k0\", \"c1\": \"$_id.k1\"}}], {\"allowDiskUse\": true})",
+                 compile("SELECT DISTINCT a, UPPER(b) FROM t").toString());
+  }
+
+  @Test
+  public void globalAggregateOfEmptyInput() throws SQLException {
+    MongoQuery query = compile("SELECT COUNT(*), SUM(a), AVG(a), MIN(a), COUNT(DISTINCT b), SUM(DISTINCT b) FROM t WHERE a > 1");
+    // one row with zero counts and NULL for other functions when nothing matches
+    assertTrue(query.toString().contains("{\"$ifNull\": [{\"$arrayElemAt\": [\"$g\", 0]}, " +
+                                         "{\"_id\": null, \"a0\": 0, \"a1\": null, \"a2\": null, \"a3\": null, \"a4\": [], \"a5\": null}]}"));
+    assertTrue(query.toString().contains("\"c5\": {\"$cond\": [{\"$eq\": [\"$a5\", null]}, null, {\"$sum\": \"$a5\"}]}"));
+    // grouped statements have no row for an empty input
+    assertFalse(compile("SELECT a, COUNT(*) FROM t GROUP BY a").toString().contains("$facet"));
+  }
+
+  @Test
+  public void errors() throws SQLException {
+    try {
+      compile("SELECT a FROM");
+      fail();
+    }
+    catch (SQLSyntaxErrorException expected) {
+    }
+    try {
+      compile("SELECT FOO(a) FROM t");
+      fail();
+    }
+    catch (SQLFeatureNotSupportedException expected) {
+    }
+    try {
+      compile("SELECT a FROM t RIGHT JOIN u ON t.a = u.a");
+      fail();
+    }
+    catch (SQLFeatureNotSupportedException expected) {
+    }
+    try {
+      compile("SELECT a, COUNT(*) FROM t");
+      fail();
+    }
+    catch (SQLSyntaxErrorException expected) {
+    }
+    try {
+      compile("SELECT a FROM t WHERE COUNT(*) > 1");
+      fail();
+    }
+    catch (SQLSyntaxErrorException expected) {
+    }
+    try {
+      compile("SELECT a FROM t ORDER BY 2");
+      fail();
+    }
+    catch (SQLSyntaxErrorException expected) {
+    }
+  }
+}